@@ -0,0 +1,141 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+import eu.hansolo.discocli.util.Helper;
+import eu.hansolo.discocli.util.Pkg;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Requests a packages response from a local stand-in for the Disco API.
+ * The server answers with the recorded response given by the recording
+ * parameter (e.g. -p recording=packages.json saved with curl from a
+ * latest=all_of_version query) or with the packages fixture (a generated
+ * one with -p packages=n), gzipped if the encoding is gzip and the client
+ * accepts it. The string mode buffers the whole body as a string before it
+ * is decoded (as before), the stream mode decodes the body while it arrives. The bytes on the wire per request are
+ * printed after each iteration, the allocated bytes per request are shown
+ * by the gc profiler (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApiResponseBenchmark {
+
+    @Param({ "identity", "gzip" })
+    public String encoding;
+
+    @Param({ "string", "stream" })
+    public String mode;
+
+    @Param({ "" })
+    public String recording;
+
+    @Param({ "0" })
+    public int packages;
+
+    private HttpServer server;
+    private String     uri;
+    private AtomicLong wireBytes;
+    private AtomicLong requests;
+
+
+    @Setup(Level.Trial) public void startServer() throws IOException {
+        final byte[] identity = Fixtures.packagesResponse(recording, packages).getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(identity);
+        }
+        final byte[] gzipped = compressed.toByteArray();
+
+        wireBytes = new AtomicLong();
+        requests  = new AtomicLong();
+        server    = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/disco/v3.0/packages", exchange -> {
+            final String  acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            final boolean gzip           = "gzip".equals(encoding) && null != acceptEncoding && acceptEncoding.contains("gzip");
+            final byte[]  body           = gzip ? gzipped : identity;
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if (gzip) { exchange.getResponseHeaders().add("Content-Encoding", "gzip"); }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            wireBytes.addAndGet(body.length);
+            requests.incrementAndGet();
+        });
+        server.start();
+        uri = "http://127.0.0.1:" + server.getAddress().getPort() + "/disco/v3.0/packages?version=17&latest=all_of_version";
+
+        // Measure the transfer and decoding only
+        Helper.setResponseCache(null);
+        Helper.setRateLimit(null);
+    }
+
+    @TearDown(Level.Trial) public void stopServer() {
+        server.stop(0);
+    }
+
+    @Setup(Level.Iteration) public void startIteration() {
+        wireBytes.set(0);
+        requests.set(0);
+    }
+
+    @TearDown(Level.Iteration) public void reportIteration() {
+        System.out.printf("%n%-8s %-6s %10.1f KB on the wire per request%n", encoding, mode, wireBytes.get() / 1024.0 / Math.max(1, requests.get()));
+    }
+
+    @Benchmark public int request() {
+        switch (mode) {
+            case "string": return Helper.fetch(uri).join().map(response -> Helper.getPkgsFromJson(response.body())).orElse(Set.of()).size();
+            case "stream": return Helper.fetchPkgs(uri).join().orElse(List.<Pkg>of()).size();
+            default      : throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+    }
+}
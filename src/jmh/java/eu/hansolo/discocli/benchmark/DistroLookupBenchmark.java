@@ -0,0 +1,85 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.benchmark;
+
+import eu.hansolo.discocli.util.Distribution;
+import eu.hansolo.discocli.util.Distributions;
+import eu.hansolo.discocli.util.Distro;
+import eu.hansolo.discocli.util.Helper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Looks up the distributions of a mix of inputs like they come from the
+ * command line (-d, -fu), from the distribution field of the pkgs and
+ * from user typed aliases, including some that are not found. One
+ * operation looks up all inputs. Both lookups use the alias index of the
+ * Distributions registry (they were two large switch statements before).
+ * The fromJson mode decodes the distributions response of the fixtures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DistroLookupBenchmark {
+    private static final String[] INPUTS = { "zulu", "temurin", "corretto", "liberica", "sap_machine", "semeru", "graalvm_ce17", "microsoft",
+                                             "Zulu", "ZULU", "zulu_core", "Zulu Core", "SAP Machine", "sapmachine", "Temurin", "AOJ",
+                                             "adopt_openjdk", "oracle_open_jdk", "Oracle OpenJDK", "liberica_native", "dragonwell", "Dragonwell",
+                                             "redhat", "Red Hat", "mandrel", "kona", "bisheng", "gluon_graalvm", "trava", "openlogic",
+                                             "jetbrains", "not_a_distro", "", "zuul" };
+
+    private String distributionsJson;
+
+
+    @Setup public void setup() throws IOException {
+        distributionsJson = Fixtures.distributionsResponse();
+    }
+
+    @Benchmark public void distroFromText(final Blackhole blackhole) {
+        for (String input : INPUTS) { blackhole.consume(Distro.fromText(input)); }
+    }
+
+    @Benchmark public void distributionsFromText(final Blackhole blackhole) {
+        for (String input : INPUTS) { blackhole.consume(Distributions.fromText(input)); }
+    }
+
+    @Benchmark public void getDistributionFromText(final Blackhole blackhole) {
+        for (String input : INPUTS) { blackhole.consume(Helper.getDistributionFromText(input)); }
+    }
+
+    @Benchmark public List<Distribution> fromJson() {
+        return Distributions.fromJson(distributionsJson);
+    }
+}
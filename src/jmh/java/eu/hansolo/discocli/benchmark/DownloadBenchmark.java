@@ -0,0 +1,167 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+import eu.hansolo.discocli.util.Downloader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Compares the old URL.openStream()/4 KB loop with the HttpClient based
+ * Downloader against a local server. Besides the time per download it
+ * prints MB/s and process cpu time per GB after each iteration (the cpu
+ * time includes the local server which is the same for all modes).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DownloadBenchmark {
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    @Param({ "legacy", "sequential", "parallel4" })
+    public String mode;
+
+    @Param({ "67108864" })
+    public int size;
+
+    private HttpServer server;
+    private String     url;
+    private Path       folder;
+    private Path       target;
+    private long       bytes;
+    private long       cpuStart;
+    private long       wallStart;
+
+
+    @Setup(Level.Trial) public void startServer() throws IOException {
+        final byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/pkg.tar.gz", exchange -> {
+            final String  range   = exchange.getRequestHeaders().getFirst("Range");
+            final Matcher matcher = null == range ? null : RANGE_PATTERN.matcher(range);
+            int start = 0;
+            int end   = data.length - 1;
+            if (null != matcher && matcher.matches()) {
+                start = Integer.parseInt(matcher.group(1));
+                if (!matcher.group(2).isEmpty()) { end = Math.min(end, Integer.parseInt(matcher.group(2))); }
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+                exchange.sendResponseHeaders(206, end - start + 1);
+            } else {
+                exchange.sendResponseHeaders(200, data.length);
+            }
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(data, start, end - start + 1);
+            }
+        });
+        server.start();
+        url    = "http://127.0.0.1:" + server.getAddress().getPort() + "/pkg.tar.gz";
+        folder = Files.createTempDirectory("discocli-bench");
+    }
+
+    @TearDown(Level.Trial) public void stopServer() throws IOException {
+        server.stop(0);
+        Files.deleteIfExists(folder);
+    }
+
+    @Setup(Level.Iteration) public void startIteration() {
+        bytes     = 0;
+        cpuStart  = processCpuTime();
+        wallStart = System.nanoTime();
+    }
+
+    @TearDown(Level.Iteration) public void reportIteration() {
+        final double seconds = (System.nanoTime() - wallStart) / 1e9;
+        final double cpuMs   = (processCpuTime() - cpuStart) / 1e6;
+        final double gb      = bytes / (1024.0 * 1024.0 * 1024.0);
+        System.out.printf("%n%-10s %8.1f MB/s %8.1f cpu ms/GB%n", mode, bytes / (1024.0 * 1024.0) / seconds, cpuMs / gb);
+    }
+
+    @Setup(Level.Invocation) public void prepareTarget() throws IOException {
+        target = folder.resolve("pkg-" + System.nanoTime() + ".tar.gz");
+    }
+
+    @TearDown(Level.Invocation) public void deleteTarget() throws IOException {
+        bytes += Files.size(target);
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark public int download() throws IOException {
+        switch (mode) {
+            case "legacy"    : return legacyDownload(url, target.toString(), size);
+            case "sequential": return new Downloader(1).download(url, target.toString(), size);
+            case "parallel4" : return new Downloader(4).download(url, target.toString(), size);
+            default          : throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+    }
+
+    // The download loop DiscoCLI.downloadPkg used before the Downloader existed (without printing)
+    private static int legacyDownload(final String url, final String filename, final long size) throws IOException {
+        try (InputStream in = new URL(url).openStream()) {
+            try (OutputStream out = new FileOutputStream(filename)) {
+                final byte data[]      = new byte[4096];
+                long       total       = 0;
+                int        count       = 0;
+                int        oldProgress = 0;
+                while ((count = in.read(data)) != -1) {
+                    total += count;
+                    if (size > 0) { oldProgress = (int) (total * 100 / size); }
+                    out.write(data, 0, count);
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static long processCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.benchmark;
+
+import eu.hansolo.discocli.util.Helper;
+import eu.hansolo.discocli.util.Pkg;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The inputs of the benchmarks. By default the packages, ids and
+ * distributions responses in /fixtures are used, they have the format of
+ * the Disco API v3 responses (packages: all 17 builds of five
+ * distributions). To use a newer recording pass a packages response saved
+ * with curl or the .body file of a fixture recorded with discocli -mock as
+ * recording parameter. A positive number of packages generates a response
+ * of that size instead, e.g. to see how a benchmark scales.
+ */
+final class Fixtures {
+    private static final String JAVA_VERSION_OUTPUTS = "/fixtures/java-version.txt";
+    private static final String PACKAGES             = "/fixtures/packages.json";
+    private static final String IDS                  = "/fixtures/ids.json";
+    private static final String DISTRIBUTIONS        = "/fixtures/distributions.json";
+
+
+    // ******************** Constructors **************************************
+    private Fixtures() {}
+
+
+    // ******************** Methods *******************************************
+    static String packagesResponse(final String recording, final int packages) throws IOException {
+        if (null != recording && !recording.isEmpty()) { return Files.readString(Paths.get(recording), StandardCharsets.UTF_8); }
+        return packages > 0 ? PkgDecodeBenchmark.createResponse(packages) : read(PACKAGES);
+    }
+
+    static List<Pkg> pkgs(final String recording, final int packages) throws IOException {
+        return new ArrayList<>(Helper.getPkgsFromJson(packagesResponse(recording, packages)));
+    }
+
+    static String idsResponse() throws IOException { return read(IDS); }
+
+    static String distributionsResponse() throws IOException { return read(DISTRIBUTIONS); }
+
+    /**
+     * The java -version outputs of common distributions, the lines of each
+     * output are joined with | like the Detector does.
+     */
+    static List<String> javaVersionOutputs() throws IOException {
+        final List<String> outputs = new ArrayList<>();
+        for (String block : read(JAVA_VERSION_OUTPUTS).split("\\R\\s*\\R")) {
+            if (!block.isBlank()) { outputs.add(String.join("|", block.trim().split("\\R"))); }
+        }
+        return outputs;
+    }
+
+    private static String read(final String fixture) throws IOException {
+        try (InputStream in = Fixtures.class.getResourceAsStream(fixture)) {
+            if (null == in) { throw new IOException("Fixture " + fixture + " not found"); }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package eu.hansolo.discocli.benchmark;
+
+import eu.hansolo.discocli.util.JdkFinder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+
+/**
+ * Finds the java executables in a synthetic tree of about 100k folders
+ * (-p folders=...). Every 1000th folder is a JDK home with a release
+ * file, a bin/java and a lib tree of 20 folders, all other folders are
+ * empty or hold a few files. The legacy mode walks the tree like -fd did
+ * before (Files.walk and two extra calls per entry), the parallel mode
+ * uses the JdkFinder that prunes the JDK homes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JdkFinderBenchmark {
+    private static final String JAVA_FILE = "java";
+
+    @Param({ "legacy", "parallel" })
+    public String mode;
+
+    @Param({ "100000" })
+    public int folders;
+
+    private Path root;
+
+
+    @Setup public void createTree() throws IOException {
+        root = Files.createTempDirectory("jdkfinder");
+        final int width = 100;
+        int created = 0;
+        for (int a = 0 ; created < folders ; a++) {
+            for (int b = 0 ; b < width && created < folders ; b++) {
+                final Path parent = root.resolve("a" + a).resolve("b" + b);
+                for (int c = 0 ; c < 10 && created < folders ; c++, created++) {
+                    final Path folder = Files.createDirectories(parent.resolve("c" + c));
+                    if (0 == created % 1000) {
+                        Files.writeString(folder.resolve("release"), "JAVA_VERSION=\"17.0.2\"\n");
+                        Files.createDirectories(folder.resolve("bin"));
+                        Files.writeString(folder.resolve("bin").resolve(JAVA_FILE), "");
+                        for (int lib = 0 ; lib < 20 ; lib++) { Files.createDirectories(folder.resolve("lib").resolve("l" + lib)); }
+                    } else if (0 == created % 7) {
+                        for (int file = 0 ; file < 3 ; file++) { Files.writeString(folder.resolve("file" + file + ".txt"), ""); }
+                    }
+                }
+            }
+        }
+    }
+
+    @TearDown public void deleteTree() throws IOException {
+        try (Stream<Path> stream = Files.walk(root)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark public int find() {
+        switch (mode) {
+            case "legacy"  : return legacy(root).size();
+            case "parallel": return new JdkFinder(JAVA_FILE).find(root).size();
+            default        : throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+    }
+
+    private static Set<Path> legacy(final Path path) {
+        final Set<Path> result = new HashSet<>();
+        try (Stream<Path> stream = Files.walk(path, Integer.MAX_VALUE)) {
+            stream.filter(p -> Files.isRegularFile(p))
+                  .filter(p -> Files.isReadable(p))
+                  .filter(p -> p.getFileName().toString().equalsIgnoreCase(JAVA_FILE))
+                  .forEach(p -> result.add(p));
+        } catch (Exception e) {
+            // Silence "Operation not permitted" exception
+        }
+        return result;
+    }
+}
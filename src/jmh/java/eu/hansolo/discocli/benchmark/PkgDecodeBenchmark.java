@@ -0,0 +1,212 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import eu.hansolo.discocli.util.Helper;
+import eu.hansolo.discocli.util.Pkg;
+import eu.hansolo.discocli.util.PkgInfo;
+import eu.hansolo.jdktools.Architecture;
+import eu.hansolo.jdktools.ArchiveType;
+import eu.hansolo.jdktools.FPU;
+import eu.hansolo.jdktools.LibCType;
+import eu.hansolo.jdktools.OperatingSystem;
+import eu.hansolo.jdktools.PackageType;
+import eu.hansolo.jdktools.ReleaseStatus;
+import eu.hansolo.jdktools.TermOfSupport;
+import eu.hansolo.jdktools.Verification;
+import eu.hansolo.jdktools.versioning.Semver;
+import eu.hansolo.jdktools.versioning.VersionNumber;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Decodes the packages response of the fixtures (or a recording or
+ * generated response, see Fixtures) and the ids response. The legacy
+ * mode does what the code did before: build a json tree, turn every pkg
+ * back into a string and parse that again into a tree to read the fields.
+ * The streaming mode reads the pkgs field by field with a JsonReader.
+ * The pkgFromString mode measures the Pkg(String) constructor alone with
+ * the json of every pkg prepared as string.
+ * Run with the gc profiler (enabled in build.gradle) to see the allocated
+ * bytes per operation (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PkgDecodeBenchmark {
+    private static final String[] DISTROS = { "zulu", "temurin", "liberica", "corretto", "sap_machine" };
+    private static final String[] OSES    = { "linux", "macos", "windows" };
+    private static final String[] ARCHES  = { "x64", "aarch64" };
+
+    @Param({ "0" })
+    public int packages;
+
+    @Param({ "" })
+    public String recording;
+
+    private String   json;
+    private String[] pkgJsons;
+    private String   idsJson;
+
+
+    @Setup public void setup() throws IOException {
+        json    = Fixtures.packagesResponse(recording, packages);
+        idsJson = Fixtures.idsResponse();
+        final JsonArray result = new Gson().fromJson(json, JsonElement.class).getAsJsonObject().getAsJsonArray("result");
+        pkgJsons = new String[result.size()];
+        for (int i = 0 ; i < result.size() ; i++) { pkgJsons[i] = result.get(i).toString(); }
+    }
+
+    /**
+     * A packages response with the given number of pkgs, similar to what
+     * the Disco API returns for latest=all_of_version. Only used if the
+     * packages parameter is set, e.g. to see how a benchmark scales.
+     */
+    static String createResponse(final int packages) {
+        final StringBuilder builder = new StringBuilder("{\"result\":[");
+        for (int i = 0 ; i < packages ; i++) {
+            final String distro  = DISTROS[i % DISTROS.length];
+            final String os      = OSES[i % OSES.length];
+            final String arc     = ARCHES[i % ARCHES.length];
+            final String version = "17.0." + (i % 40) + "+" + (i % 12 + 1);
+            if (i > 0) { builder.append(','); }
+            builder.append('{')
+                   .append("\"id\":\"").append(Integer.toHexString(0x10000000 + i * 7919)).append("\",")
+                   .append("\"archive_type\":\"tar.gz\",")
+                   .append("\"distribution\":\"").append(distro).append("\",")
+                   .append("\"major_version\":17,")
+                   .append("\"java_version\":\"").append(version).append("\",")
+                   .append("\"distribution_version\":\"").append(version).append("\",")
+                   .append("\"jdk_version\":17,")
+                   .append("\"latest_build_available\":").append(i % 40 == 39).append(',')
+                   .append("\"release_status\":\"ga\",")
+                   .append("\"term_of_support\":\"lts\",")
+                   .append("\"operating_system\":\"").append(os).append("\",")
+                   .append("\"lib_c_type\":\"").append("windows".equals(os) ? "c_std_lib" : "linux".equals(os) ? "glibc" : "libc").append("\",")
+                   .append("\"architecture\":\"").append(arc).append("\",")
+                   .append("\"fpu\":\"unknown\",")
+                   .append("\"package_type\":\"jdk\",")
+                   .append("\"javafx_bundled\":").append(i % 3 == 0).append(',')
+                   .append("\"directly_downloadable\":true,")
+                   .append("\"filename\":\"").append(distro).append('-').append(version).append('-').append(os).append('-').append(arc).append(".tar.gz\",")
+                   .append("\"links\":{\"pkg_info_uri\":\"https://api.foojay.io/disco/v3.0/ids/").append(i).append("\",\"pkg_download_redirect\":\"https://api.foojay.io/disco/v3.0/ids/").append(i).append("/redirect\"},")
+                   .append("\"free_use_in_production\":true,")
+                   .append("\"tck_tested\":\"unknown\",")
+                   .append("\"tck_cert_uri\":\"\",")
+                   .append("\"aqavit_certified\":\"unknown\",")
+                   .append("\"aqavit_cert_uri\":\"\",")
+                   .append("\"size\":").append(180_000_000L + i * 1024L).append(',')
+                   .append("\"feature\":[]")
+                   .append('}');
+        }
+        return builder.append("],\"message\":\"\"}").toString();
+    }
+
+    @Benchmark public void legacy(final Blackhole blackhole) {
+        final JsonElement element = new Gson().fromJson(json, JsonElement.class);
+        final JsonArray   result  = element.getAsJsonObject().getAsJsonArray("result");
+        for (int i = 0 ; i < result.size() ; i++) {
+            final JsonObject pkgJsonObj = result.get(i).getAsJsonObject();
+            decodeLegacy(pkgJsonObj.toString(), blackhole);
+        }
+    }
+
+    @Benchmark public void streaming(final Blackhole blackhole) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("result".equals(reader.nextName())) {
+                    reader.beginArray();
+                    while (reader.hasNext()) { blackhole.consume(new Pkg(reader)); }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+        }
+    }
+
+    @Benchmark public void pkgFromString(final Blackhole blackhole) {
+        for (String pkgJson : pkgJsons) { blackhole.consume(new Pkg(pkgJson)); }
+    }
+
+    // Includes the distinct set that is built from the decoded pkgs
+    @Benchmark public Set<Pkg> getPkgsFromJson() {
+        return Helper.getPkgsFromJson(json);
+    }
+
+    @Benchmark public Optional<PkgInfo> pkgInfo() {
+        return PkgInfo.fromJson(idsJson);
+    }
+
+    // What the Pkg(String) constructor did before it used the JsonReader
+    private static void decodeLegacy(final String packageJson, final Blackhole blackhole) {
+        final Gson       gson = new Gson();
+        final JsonObject json = gson.fromJson(packageJson, JsonObject.class);
+        blackhole.consume(json.has(Pkg.FIELD_ID)                     ? json.get(Pkg.FIELD_ID).getAsString() : "");
+        blackhole.consume(json.has(Pkg.FIELD_DISTRIBUTION)           ? Helper.getDistributionFromText(json.get(Pkg.FIELD_DISTRIBUTION).getAsString()) : null);
+        blackhole.consume(json.has(Pkg.FIELD_MAJOR_VERSION)          ? json.get(Pkg.FIELD_MAJOR_VERSION).getAsInt() : 1);
+        blackhole.consume(json.has(Pkg.FIELD_JAVA_VERSION)           ? Semver.fromText(json.get(Pkg.FIELD_JAVA_VERSION).getAsString()).getSemver1()   : new Semver(new VersionNumber()));
+        blackhole.consume(json.has(Pkg.FIELD_DISTRIBUTION)           ? VersionNumber.fromText(json.get(Pkg.FIELD_DISTRIBUTION_VERSION).getAsString()) : new VersionNumber());
+        blackhole.consume(json.has(Pkg.FIELD_LATEST_BUILD_AVAILABLE) ? json.get(Pkg.FIELD_LATEST_BUILD_AVAILABLE).getAsBoolean()                      : Boolean.FALSE);
+        blackhole.consume(json.has(Pkg.FIELD_ARCHITECTURE)           ? Architecture.fromText(json.get(Pkg.FIELD_ARCHITECTURE).getAsString())          : Architecture.NOT_FOUND);
+        blackhole.consume(json.has(Pkg.FIELD_FPU)                    ? FPU.fromText(json.get(Pkg.FIELD_FPU).getAsString())                            : FPU.NOT_FOUND);
+        blackhole.consume(json.has(Pkg.FIELD_OPERATING_SYSTEM)       ? OperatingSystem.fromText(json.get(Pkg.FIELD_OPERATING_SYSTEM).getAsString())   : OperatingSystem.NOT_FOUND);
+        blackhole.consume(json.has(Pkg.FIELD_LIB_C_TYPE)             ? LibCType.fromText(json.get(Pkg.FIELD_LIB_C_TYPE).getAsString())                : LibCType.NOT_FOUND);
+        blackhole.consume(json.has(Pkg.FIELD_PACKAGE_TYPE)           ? PackageType.fromText(json.get(Pkg.FIELD_PACKAGE_TYPE).getAsString())           : PackageType.NOT_FOUND);
+        blackhole.consume(json.has(Pkg.FIELD_RELEASE_STATUS)         ? ReleaseStatus.fromText(json.get(Pkg.FIELD_RELEASE_STATUS).getAsString())       : ReleaseStatus.NOT_FOUND);
+        blackhole.consume(json.has(Pkg.FIELD_ARCHIVE_TYPE)           ? ArchiveType.fromText(json.get(Pkg.FIELD_ARCHIVE_TYPE).getAsString())           : ArchiveType.NOT_FOUND);
+        blackhole.consume(json.has(Pkg.FIELD_TERM_OF_SUPPORT)        ? TermOfSupport.fromText(json.get(Pkg.FIELD_TERM_OF_SUPPORT).getAsString())      : TermOfSupport.NOT_FOUND);
+        blackhole.consume(json.has(Pkg.FIELD_JAVAFX_BUNDLED)         ? json.get(Pkg.FIELD_JAVAFX_BUNDLED).getAsBoolean()                              : Boolean.FALSE);
+        blackhole.consume(json.has(Pkg.FIELD_DIRECTLY_DOWNLOADABLE)  ? json.get(Pkg.FIELD_DIRECTLY_DOWNLOADABLE).getAsBoolean()                       : Boolean.FALSE);
+        blackhole.consume(json.has(Pkg.FIELD_FILENAME)               ? json.get(Pkg.FIELD_FILENAME).getAsString()                                     : "");
+        blackhole.consume(json.has(Pkg.FIELD_EPHEMERAL_ID)           ? json.get(Pkg.FIELD_EPHEMERAL_ID).getAsString()                                 : "");
+        blackhole.consume(json.has(Pkg.FIELD_FREE_USE_IN_PROD)       ? json.get(Pkg.FIELD_FREE_USE_IN_PROD).getAsBoolean()                            : Boolean.TRUE);
+        blackhole.consume(json.has(Pkg.FIELD_TCK_TESTED)             ? Verification.fromText(json.get(Pkg.FIELD_TCK_TESTED).getAsString())            : Verification.UNKNOWN);
+        blackhole.consume(json.has(Pkg.FIELD_TCK_CERT_URI)           ? json.get(Pkg.FIELD_TCK_CERT_URI).getAsString()                                 : "");
+        blackhole.consume(json.has(Pkg.FIELD_AQAVIT_CERTIFIED)       ? Verification.fromText(json.get(Pkg.FIELD_AQAVIT_CERTIFIED).getAsString())      : Verification.UNKNOWN);
+        blackhole.consume(json.has(Pkg.FIELD_AQAVIT_CERT_URI)        ? json.get(Pkg.FIELD_AQAVIT_CERT_URI).getAsString()                              : "");
+        blackhole.consume(json.has(Pkg.FIELD_SIZE)                   ? json.get(Pkg.FIELD_SIZE).getAsLong()                                           : -1);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.benchmark;
+
+import eu.hansolo.discocli.util.JavaVersion;
+import eu.hansolo.discocli.util.Pkg;
+import eu.hansolo.discocli.util.PkgIndex;
+import eu.hansolo.discocli.util.PkgIndex.Dimension;
+import eu.hansolo.jdktools.util.OutputFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+
+/**
+ * Finds the latest linux x64 jdk tar.gz pkgs of 17 in the pkgs of the
+ * packages fixture, or in a generated catalog with the given number of
+ * pkgs (e.g. -p packages=10000,50000 to see how it scales). The linear mode filters and sorts the whole list
+ * like a stream pipeline does, the index mode intersects the bitmaps of
+ * the prebuilt index. The build mode measures the time to create the index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PkgIndexBenchmark {
+    private static final String[]      DISTROS        = { "zulu", "temurin", "liberica", "corretto", "sap_machine", "semeru", "dragonwell", "microsoft" };
+    private static final String[]      OSES           = { "linux", "macos", "windows", "alpine_linux" };
+    private static final String[]      ARCHES         = { "x64", "aarch64", "x86", "arm" };
+    private static final String[]      ARCHIVE_TYPES  = { "tar.gz", "zip", "pkg", "msi", "deb", "rpm" };
+    private static final String[]      PACKAGE_TYPES  = { "jdk", "jre" };
+    private static final int[]         MAJOR_VERSIONS = { 8, 11, 17, 19, 20 };
+    private static final JavaVersion   REQUESTED      = JavaVersion.fromText("17");
+
+    @Param({ "0" })
+    public int packages;
+
+    private List<Row>     rows;
+    private PkgIndex<Row> index;
+
+    public record Row(String distro, String os, String arc, String archiveType, String packageType, String releaseStatus, boolean javafxBundled, String javaVersion) {
+        private static Row of(final Pkg pkg) {
+            return new Row(null == pkg.getDistribution() ? null : pkg.getDistribution().apiString(), pkg.getOperatingSystem().getApiString(), pkg.getArchitecture().getApiString(), pkg.getArchiveType().getApiString(),
+                           pkg.getPackageType().getApiString(), pkg.getReleaseStatus().getApiString(), pkg.isJavaFXBundled(),
+                           pkg.getJavaVersion().getVersionNumber().toString(OutputFormat.REDUCED_COMPRESSED, true, true));
+        }
+
+        private String get(final Dimension dimension) {
+            switch (dimension) {
+                case DISTRIBUTION    : return distro;
+                case OPERATING_SYSTEM: return os;
+                case ARCHITECTURE    : return arc;
+                case ARCHIVE_TYPE    : return archiveType;
+                case PACKAGE_TYPE    : return packageType;
+                case RELEASE_STATUS  : return releaseStatus;
+                case JAVAFX_BUNDLED  : return Boolean.toString(javafxBundled);
+                default              : return null;
+            }
+        }
+    }
+
+
+    @Setup public void setup() throws IOException {
+        rows  = packages > 0 ? generate(packages) : Fixtures.pkgs("", 0).stream().map(Row::of).collect(Collectors.toList());
+        index = new PkgIndex<>(rows, Row::get, Row::javaVersion);
+    }
+
+    private static List<Row> generate(final int packages) {
+        final List<Row> rows = new ArrayList<>(packages);
+        for (int i = 0 ; i < packages ; i++) {
+            final int     major   = MAJOR_VERSIONS[i % MAJOR_VERSIONS.length];
+            final boolean ea      = major >= 20;
+            final String  version = ea ? major + "-ea+" + (i % 30 + 1) : major + ".0." + (i / 7 % 12) + "+" + (i % 9 + 1);
+            rows.add(new Row(DISTROS[i % DISTROS.length], OSES[i / 3 % OSES.length], ARCHES[i / 5 % ARCHES.length], ARCHIVE_TYPES[i / 11 % ARCHIVE_TYPES.length],
+                             PACKAGE_TYPES[i / 13 % PACKAGE_TYPES.length], ea ? "ea" : "ga", i % 4 == 0, version));
+        }
+        return rows;
+    }
+
+    @Benchmark public List<Row> linear() {
+        final List<Row> candidates = rows.stream()
+                                         .filter(row -> "linux".equals(row.os()))
+                                         .filter(row -> "x64".equals(row.arc()))
+                                         .filter(row -> "tar.gz".equals(row.archiveType()))
+                                         .filter(row -> "jdk".equals(row.packageType()))
+                                         .filter(row -> "ga".equals(row.releaseStatus()))
+                                         .filter(row -> REQUESTED.matches(JavaVersion.fromText(row.javaVersion()), false))
+                                         .collect(Collectors.toList());
+        final Optional<JavaVersion> latest = candidates.stream().map(row -> JavaVersion.fromText(row.javaVersion())).max(Comparator.naturalOrder());
+        if (latest.isEmpty()) { return List.of(); }
+        return candidates.stream().filter(row -> JavaVersion.fromText(row.javaVersion()).equals(latest.get())).collect(Collectors.toList());
+    }
+
+    @Benchmark public List<Row> indexed() {
+        return index.query()
+                    .where(Dimension.OPERATING_SYSTEM, "linux")
+                    .where(Dimension.ARCHITECTURE, "x64")
+                    .where(Dimension.ARCHIVE_TYPE, "tar.gz")
+                    .where(Dimension.PACKAGE_TYPE, "jdk")
+                    .where(Dimension.RELEASE_STATUS, "ga")
+                    .version(REQUESTED, false)
+                    .latest()
+                    .list();
+    }
+
+    @Benchmark public int indexedCount() {
+        return index.query().where(Dimension.DISTRIBUTION, "zulu", "temurin").where(Dimension.JAVAFX_BUNDLED, true).count();
+    }
+
+    @Benchmark public PkgIndex<Row> build() {
+        return new PkgIndex<>(rows, Row::get, Row::javaVersion);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.benchmark;
+
+import eu.hansolo.discocli.util.Pkg;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Sorts the pkgs of a packages response (in random order) by java version
+ * like the packages query does, and by operating system, java version,
+ * architecture, archive type and package type like the list of available
+ * pkgs. The collection is a LinkedList (as the pkgs were collected before)
+ * or an ArrayList, the copy of the input is part of every operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PkgSortBenchmark {
+    private static final Comparator<Pkg> BY_JAVA_VERSION = Comparator.comparing(Pkg::getJavaVersion).reversed();
+    private static final Comparator<Pkg> AVAILABLE       = Comparator.comparing(Pkg::getOperatingSystem).thenComparing(Pkg::getJavaVersion).reversed().thenComparing(Pkg::getArchitecture).thenComparing(Pkg::getArchiveType).thenComparing(Pkg::getPackageType);
+
+    @Param({ "linkedlist", "arraylist" })
+    public String collection;
+
+    @Param({ "" })
+    public String recording;
+
+    @Param({ "0" })
+    public int packages;
+
+    private List<Pkg> pkgs;
+
+
+    @Setup public void setup() throws IOException {
+        pkgs = Fixtures.pkgs(recording, packages);
+        Collections.shuffle(pkgs, new Random(42));
+    }
+
+    @Benchmark public List<Pkg> byJavaVersion() {
+        final List<Pkg> copy = copy();
+        Collections.sort(copy, BY_JAVA_VERSION);
+        return copy;
+    }
+
+    @Benchmark public List<Pkg> available() {
+        final List<Pkg> copy = copy();
+        Collections.sort(copy, AVAILABLE);
+        return copy;
+    }
+
+    private List<Pkg> copy() {
+        switch (collection) {
+            case "linkedlist": return new LinkedList<>(pkgs);
+            case "arraylist" : return new ArrayList<>(pkgs);
+            default          : throw new IllegalArgumentException("Unknown collection " + collection);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.benchmark;
+
+import eu.hansolo.discocli.util.JavaVersion;
+import eu.hansolo.discocli.util.Pkg;
+import eu.hansolo.discocli.util.PkgIndex;
+import eu.hansolo.discocli.util.PkgIndex.Dimension;
+import eu.hansolo.jdktools.util.OutputFormat;
+import eu.hansolo.jdktools.versioning.VersionNumber;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+
+/**
+ * Finds the updates of a -fu spec (17.0.2 without javafx) in the pkgs of
+ * a packages response. The reparse mode does what the -fu filter did
+ * before: print the version of every pkg and parse it again into a
+ * VersionNumber to compare it. The index mode builds the index of the
+ * pkgs and keeps the newer versions like the -fu filter does now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateFilterBenchmark {
+    private static final String VERSION = "17.0.2";
+
+    @Param({ "" })
+    public String recording;
+
+    @Param({ "0" })
+    public int packages;
+
+    private List<Pkg> pkgs;
+
+
+    @Setup public void setup() throws IOException {
+        pkgs = Fixtures.pkgs(recording, packages);
+    }
+
+    @Benchmark public List<Pkg> reparse() {
+        final VersionNumber withoutBuild = VersionNumber.fromText(VersionNumber.fromText(VERSION).toString(OutputFormat.REDUCED_COMPRESSED, true, false));
+        return pkgs.stream()
+                   .filter(pkg -> !pkg.isJavaFXBundled())
+                   .filter(pkg -> VersionNumber.fromText(pkg.getJavaVersion().getVersionNumber().toString(OutputFormat.REDUCED_COMPRESSED, true, false)).compareTo(withoutBuild) > 0)
+                   .collect(Collectors.toList());
+    }
+
+    @Benchmark public List<Pkg> index() {
+        return PkgIndex.of(pkgs).query().where(Dimension.JAVAFX_BUNDLED, false).newerThan(JavaVersion.fromText(VERSION)).listDescending();
+    }
+}
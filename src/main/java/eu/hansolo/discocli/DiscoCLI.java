@@ -18,22 +18,35 @@
 
 package eu.hansolo.discocli;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import eu.hansolo.discocli.util.ApiResult;
+import eu.hansolo.discocli.util.BatchDownloader;
+import eu.hansolo.discocli.util.BatchQuery;
+import eu.hansolo.discocli.util.Catalog;
 import eu.hansolo.discocli.util.Constants;
 import eu.hansolo.discocli.util.Detector;
-import eu.hansolo.discocli.util.Distro;
+import eu.hansolo.discocli.util.Distribution;
+import eu.hansolo.discocli.util.Distributions;
+import eu.hansolo.discocli.util.Downloader;
 import eu.hansolo.discocli.util.Helper;
+import eu.hansolo.discocli.util.Installation;
+import eu.hansolo.discocli.util.Installer;
+import eu.hansolo.discocli.util.JavaVersion;
+import eu.hansolo.discocli.util.JdkFinder;
+import eu.hansolo.discocli.util.MockDiscoApi;
+import eu.hansolo.discocli.util.PackageStore;
 import eu.hansolo.discocli.util.Pkg;
+import eu.hansolo.discocli.util.PkgIndex;
+import eu.hansolo.discocli.util.PkgIndex.Dimension;
+import eu.hansolo.discocli.util.PkgInfo;
+import eu.hansolo.discocli.util.PkgRequest;
+import eu.hansolo.discocli.util.RetryPolicy;
+import eu.hansolo.discocli.util.Timing;
 import eu.hansolo.jdktools.Architecture;
 import eu.hansolo.jdktools.ArchiveType;
 import eu.hansolo.jdktools.LibCType;
-import eu.hansolo.jdktools.OperatingMode;
 import eu.hansolo.jdktools.OperatingSystem;
 import eu.hansolo.jdktools.PackageType;
-import eu.hansolo.jdktools.util.Helper.OsArcMode;
 import eu.hansolo.jdktools.util.OutputFormat;
 import eu.hansolo.jdktools.versioning.VersionNumber;
 import picocli.CommandLine;
@@ -41,29 +54,29 @@ import picocli.CommandLine.Command;
 import picocli.CommandLine.Help.Ansi;
 import picocli.CommandLine.Option;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.URL;
-import java.net.URLEncoder;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
+import java.util.Locale;
+import java.util.Optional;
 import java.util.concurrent.Callable;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-
-import static eu.hansolo.jdktools.OperatingSystem.WINDOWS;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 
 @Command(
     name        = "discocli",
@@ -111,6 +124,18 @@ public class DiscoCLI implements Callable<Integer> {
     @Option(names = { "-fd", "--find-distros" }, description = "Find distributions in given path (e.g. \"./\")")
     private String fd = null;
 
+    @Option(names = { "-fdd", "--find-distros-depth" }, description = "Maximum folder depth searched by -fd (default unlimited)")
+    private int fdd = JdkFinder.DEFAULT_MAX_DEPTH;
+
+    @Option(names = { "-fdx", "--find-distros-exclude" }, description = "Comma separated globs of folders that -fd skips (default \"**/.git,**/node_modules\")")
+    private String fdx = null;
+
+    @Option(names = { "-fdr", "--find-distros-rescan" }, description = "Identify all distributions again instead of only the ones that changed since the last -fd")
+    private boolean fdr = false;
+
+    @Option(names = { "-fdo", "--find-distros-output" }, description = "Output format of -fd (text, json, ndjson)")
+    private String fdo = "text";
+
     @Option(names = { "-fu", "--update-available" }, description = "Find update for given distribution DISTRO,VERSION,OPERATING SYSTEM,ARCHITECTURE,PACKAGE TYPE,EA(optional),FX(optional) (e.g. \"zulu,18,macos,aarch64,jdk,ea\")")
     private String fu = null;
 
@@ -122,38 +147,340 @@ public class DiscoCLI implements Callable<Integer> {
 
     @Option(names = { "-latest-lts" }, description = "Latest available LTS release") boolean lts;
 
-    private int downloadPkg(final String url, final String filename, final long size) {
-        final Path path = Paths.get(filename);
-        if (Files.exists(path)) { return 2; }
+    @Option(names = { "-c", "--connections" }, description = "Number of parallel connections used to download the JDK pkg (1-16)")
+    private int c = Downloader.DEFAULT_CONNECTIONS;
+
+    @Option(names = { "-nv", "--no-verify" }, description = "Do not verify the checksum of the downloaded JDK pkg") boolean noVerify;
+
+    @Option(names = { "-ct", "--connect-timeout" }, description = "Connect timeout in seconds")
+    private int ct = 20;
+
+    @Option(names = { "-rt", "--read-timeout" }, description = "Read timeout in seconds (time without receiving data)")
+    private int rt = (int) Downloader.DEFAULT_READ_TIMEOUT.toSeconds();
+
+    @Option(names = { "-ns", "--no-store" }, description = "Do not use the local package store in ~/.discocli/store") boolean noStore;
+
+    @Option(names = { "-nc", "--no-cache" }, description = "Do not use the cached responses of the Disco API in ~/.discocli/cache") boolean noCache;
+
+    @Option(names = { "-sync", "--sync" }, description = "Download the pkg catalog of all distributions into ~/.discocli/catalog (only changed distributions are updated)") boolean sync;
+
+    @Option(names = { "-offline", "--offline" }, description = "Answer all queries from the local catalog without network access") boolean offline;
+
+    @Option(names = { "-timing", "--timing" }, description = "Print how long the phases of the run took (connect, packages, ids, download)") boolean timing;
+
+    @Option(names = { "-si", "--store-import" }, description = "Import the JDK pkgs found in the given paths into the local package store (e.g. \"./\")")
+    private String si = null;
+
+    @Option(names = { "-in", "--install" }, description = "Download and extract the JDK pkg into the given path in one pass (tar.gz, tgz, tar, zip)")
+    private String in = null;
+
+    @Option(names = { "-k", "--keep" }, description = "Keep the archive in the local package store when installing") boolean keep;
+
+    @Option(names = { "-b", "--batch" }, description = "Download all JDK pkgs defined in the given manifest file, one pkg per line (e.g. \"-d zulu -v 17 -os linux\")")
+    private String b = null;
+
+    @Option(names = { "-j", "--jobs" }, description = "Number of JDK pkgs that will be downloaded at the same time in batch mode (1-16)")
+    private int j = BatchDownloader.DEFAULT_JOBS;
+
+    @Option(names = { "-retries", "--retries" }, description = "Number of retries for failed requests and downloads (0-10)")
+    private int retries = RetryPolicy.DEFAULT_RETRIES;
+
+    @Option(names = { "-hedge", "--hedge" }, description = "Send a second request to the Disco API if the first one is slower than usual") boolean hedge;
+
+    @Option(names = { "-bq", "--batch-query" }, description = "Answer the -fu specs (e.g. \"zulu,17.0.2,linux,x64,jdk\") and download parameters (e.g. \"-d zulu -v 17 -os linux\") in the given file (- for stdin), one per line, as json lines")
+    private String bq = null;
+
+    @Option(names = { "-api", "--api-url" }, description = "Base url of the Disco API (e.g. \"http://127.0.0.1:8080/disco/v3.0/\" for the local stand-in)")
+    private String api = null;
+
+    @Option(names = { "-mock", "--mock" }, description = "Run a local stand-in for the Disco API on the given port with the fixtures and settings in ~/.discocli/mock")
+    private Integer mock = null;
 
+    private Timing timings;
+
+    private int downloadPkg(final String url, final String filename, final long size, final String checksum, final String checksumType, final String pkgId) {
+        final Downloader downloader = new Downloader(c, Duration.ofSeconds(rt));
+        final long       start      = System.nanoTime();
+        final int        result     = noVerify ? downloader.download(url, filename, size) : downloader.download(url, filename, size, checksum, checksumType);
+        timings.add("download", start, System.nanoTime());
+        timings.mark("first byte", downloader.getFirstByteNanos());
+        if (Downloader.DOWNLOAD_OK == result && downloader.isChecksumVerified()) {
+            System.out.println(Ansi.AUTO.string("@|green \nChecksum verified (" + checksumType + ") |@"));
+        }
+        if (Downloader.DOWNLOAD_OK == result && !noStore) {
+            // Only use the checksum of the Disco API if the file was verified against it, otherwise the store will hash it
+            final boolean verified = downloader.isChecksumVerified();
+            new PackageStore().add(Paths.get(filename), pkgId, verified ? checksum : "", verified ? checksumType : "");
+        }
+        return result;
+    }
+
+    private int installPkg(final String url, final Path folder, final ArchiveType archiveType, final Pkg pkg, final String checksum, final String checksumType) {
+        final Installer    installer = new Installer(Duration.ofSeconds(rt));
+        final PackageStore store     = new PackageStore();
+        Path keepFile = null;
         try {
-            final URL downloadUrl = new URL(url);
-            try (InputStream in = downloadUrl.openStream()) {
-                try (OutputStream out = new FileOutputStream(filename)) {
-                    final byte data[]      = new byte[4096];
-                    long       total       = 0;
-                    int        count       = 0;
-                    int        oldProgress = 0;
-                    while ((count = in.read(data)) != -1) {
-                        total += count;
-                        if (size > 0) {
-                            int progress = (int) (total * 100 / size);
-                            IntStream.range(0, (progress - oldProgress)).forEach(i -> System.out.print('.'));
-                            oldProgress = progress;
-                        }
-                        out.write(data, 0, count);
-                    }
-                }
+            keepFile = keep && !noStore ? store.createTempFile(pkg.getFilename()) : null;
+            final long start  = System.nanoTime();
+            final int  result = installer.install(url, folder, archiveType, pkg.getSize(), noVerify ? "" : checksum, checksumType, keepFile);
+            timings.add("install", start, System.nanoTime());
+            timings.mark("first byte", installer.getFirstByteNanos());
+            if (Installer.INSTALL_OK == result && installer.isChecksumVerified()) {
+                System.out.println(Ansi.AUTO.string("@|green \nChecksum verified (" + checksumType + ") |@"));
+            }
+            if (Installer.INSTALL_OK == result && null != keepFile) {
+                final boolean verified = installer.isChecksumVerified();
+                store.add(keepFile, pkg.getId(), verified ? checksum : "", verified ? checksumType : "");
             }
+            return printInstallResult(result, installer, pkg, checksum, checksumType);
+        } catch (IOException e) {
+            return printInstallResult(Installer.INSTALL_FAILED, installer, pkg, checksum, checksumType);
+        } finally {
+            if (null != keepFile) { try { Files.deleteIfExists(keepFile); } catch (IOException e) { /* Store keeps its own link */ } }
+        }
+    }
+
+    private int installFromStore(final Path stored, final Path folder, final ArchiveType archiveType, final Pkg pkg) {
+        System.out.println("\nFound JDK pkg in local package store, installing " + pkg.getFilename() + " to " + folder);
+        final Installer installer = new Installer(Duration.ofSeconds(rt));
+        return printInstallResult(installer.install(stored, folder, archiveType), installer, pkg, "", "");
+    }
+
+    private int printInstallResult(final int result, final Installer installer, final Pkg pkg, final String checksum, final String checksumType) {
+        switch (result) {
+            case Installer.INSTALL_OK:
+                installer.getInstalled().forEach(path -> System.out.println("\nSuccessfully installed JDK pkg to " + path));
+                System.out.println();
+                return 0;
+            case Installer.INSTALL_EXISTS:
+                System.out.println("\nSelected JDK pkg is already installed: " + installer.getInstalled().get(0) + " \n");
+                return 0;
+            case Installer.CHECKSUM_MISMATCH:
+                System.out.println(Ansi.AUTO.string("@|red \nChecksum (" + checksumType + ") of " + pkg.getFilename() + " does not match " + checksum + ", nothing was installed |@ \n"));
+                return 3;
+            default:
+                System.out.println(Ansi.AUTO.string("@|red \nError installing " + pkg.getFilename() + " |@ \n"));
+                return 1;
+        }
+    }
+
+    private boolean serveFromStore(final Optional<Path> stored, final Path target) {
+        if (stored.isEmpty()) { return false; }
+        try {
+            final PackageStore.Mode mode = new PackageStore().materialize(stored.get(), target);
+            System.out.println(Ansi.AUTO.string("@|green \nFound JDK pkg in local package store, " + (PackageStore.Mode.LINKED == mode ? "linked" : "copied") + " it to " + target + " |@ \n"));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    private int syncCatalog() {
+        final Catalog                  catalog = new Catalog();
+        final long                     start   = System.currentTimeMillis();
+        final List<Catalog.SyncResult> results = catalog.sync();
+        final long                     millis  = System.currentTimeMillis() - start;
+        results.stream().sorted(Comparator.comparing(result -> result.distro().apiString())).forEach(result -> {
+            final String line = String.format("%-20s %-10s %6d pkgs", result.distro().apiString(), result.state().name().toLowerCase(), result.pkgs());
+            System.out.println(Ansi.AUTO.string((Catalog.SyncState.FAILED == result.state() ? "@|red " : "@|green ") + line + " |@"));
+        });
+        final long updated = results.stream().filter(result -> Catalog.SyncState.UPDATED   == result.state()).count();
+        final long failed  = results.stream().filter(result -> Catalog.SyncState.FAILED    == result.state()).count();
+        final long pkgs    = results.stream().mapToLong(Catalog.SyncResult::pkgs).sum();
+        final long bytes   = results.stream().mapToLong(Catalog.SyncResult::bytes).sum();
+        System.out.println(Ansi.AUTO.string("@|cyan \nSynced " + pkgs + " pkgs of " + results.size() + " distributions into " + catalog.getRoot() + " (" + updated + " updated, " + failed + " failed, " + (bytes / 1024) + " KB in " + millis + " ms) |@ \n"));
+        return failed > 0 ? 1 : 0;
+    }
+
+    // Runs until the process is stopped
+    private int serveMock(final int port) {
+        final Path folder = Paths.get(Constants.MOCK_FOLDER);
+        try (MockDiscoApi mockApi = MockDiscoApi.fromFolder(folder).start(port)) {
+            final MockDiscoApi.Faults faults = mockApi.getFaults();
+            System.out.println(Ansi.AUTO.string("@|cyan \nDisco API stand-in running at " + mockApi.getApiUrl() + (mockApi.isRecording() ? " (recording)" : "") + " with the fixtures in " + folder + " |@"));
+            System.out.println(Ansi.AUTO.string("@|cyan latency " + faults.latency().toMillis() + " ms (+" + faults.jitter().toMillis() + " ms), bandwidth " + (faults.bytesPerSecond() > 0 ? faults.bytesPerSecond() / 1024 + " KB/s" : "unlimited") + ", errors " + faults.errorRate() + ", throttled " + faults.throttleRate() + " |@"));
+            System.out.println(Ansi.AUTO.string("@|cyan Use it with: discocli -api " + mockApi.getApiUrl() + " ... |@ \n"));
+            new CountDownLatch(1).await();
             return 0;
         } catch (IOException e) {
+            System.out.println(Ansi.AUTO.string("@|red \nError starting the Disco API stand-in on port " + port + " (" + e.getMessage() + ") |@ \n"));
             return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
         }
     }
 
+    private int downloadBatch(final Path manifest) {
+        final List<BatchDownloader.Item> items;
+        try {
+            items = readManifest(manifest);
+        } catch (IOException e) {
+            System.out.println(Ansi.AUTO.string("@|red \nError reading manifest " + manifest + " |@ \n"));
+            return 1;
+        }
+        if (items.isEmpty()) {
+            System.out.println(Ansi.AUTO.string("@|red \nNo JDK pkgs defined in manifest " + manifest + " |@ \n"));
+            return 1;
+        }
+        System.out.println(Ansi.AUTO.string("@|cyan \nDownloading " + items.size() + " JDK pkgs with " + Math.max(1, Math.min(BatchDownloader.MAX_JOBS, j)) + " jobs |@ \n"));
+        final long                         start   = System.currentTimeMillis();
+        final BatchDownloader              batch   = new BatchDownloader(j, c, Duration.ofSeconds(rt), !noVerify, !noStore);
+        final List<BatchDownloader.Result> results = batch.run(items);
+        BatchDownloader.printResults(results, System.currentTimeMillis() - start);
+        if (results.stream().anyMatch(result -> BatchDownloader.Status.CHECKSUM_MISMATCH == result.status())) { return Downloader.CHECKSUM_MISMATCH; }
+        return results.stream().allMatch(result -> result.status().isOk()) ? 0 : 1;
+    }
+
+    // Each line of the manifest uses the same parameters as the command line, empty lines and lines starting with # are ignored
+    private static List<BatchDownloader.Item> readManifest(final Path manifest) throws IOException {
+        final List<String>               lines = Files.readAllLines(manifest);
+        final List<BatchDownloader.Item> items = new ArrayList<>();
+        for (int i = 0 ; i < lines.size() ; i++) {
+            final String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) { continue; }
+            try {
+                items.add(new BatchDownloader.Item(i + 1, line, parseRequestLine(line), null));
+            } catch (CommandLine.ParameterException | IllegalArgumentException e) {
+                items.add(new BatchDownloader.Item(i + 1, line, null, e.getMessage().trim()));
+            }
+        }
+        return items;
+    }
+
+    // Parses a line with the same parameters as the command line, only download parameters are supported
+    private static PkgRequest parseRequestLine(final String line) {
+        final List<String> args = splitArgs(line);
+        if (!args.isEmpty() && args.get(0).equals("discocli")) { args.remove(0); }
+        final DiscoCLI spec = new DiscoCLI();
+        new CommandLine(spec).parseArgs(args.toArray(new String[0]));
+        if (spec.find || null != spec.b || null != spec.bq || null != spec.in || null != spec.fd || null != spec.fu || null != spec.si || null != spec.mock) { throw new IllegalArgumentException("Only download parameters are supported in a manifest or batch query"); }
+        return PkgRequest.parse(spec.d, spec.v, spec.os, spec.lc, spec.arc, spec.pt, spec.at, spec.p, false, spec.ea, spec.fx, spec.latest, spec.lts);
+    }
+
+    private int findDistros() {
+        final Detector detector = new Detector(fdd, null == fdx ? JdkFinder.DEFAULT_EXCLUDES : Arrays.asList(fdx.split(",")), fdr);
+        switch (fdo.trim().toLowerCase(Locale.ENGLISH)) {
+            case "text":
+                detector.detectDistributions(fd.split(","));
+                return 0;
+            case "ndjson":
+                // One json line per installation as soon as it was identified
+                detector.detectDistributions(installation -> {
+                    System.out.println(installation.toJson());
+                    System.out.flush();
+                }, fd.split(","));
+                break;
+            case "json":
+                final List<Installation> installations = detector.detectDistributions(installation -> {}, fd.split(","));
+                final StringWriter out = new StringWriter();
+                try (JsonWriter writer = new JsonWriter(out)) {
+                    writer.setIndent("  ");
+                    writer.beginObject().name("installations").beginArray();
+                    for (Installation installation : installations) { installation.writeTo(writer); }
+                    writer.endArray().name("timed_out").beginArray();
+                    for (String path : detector.getTimedOut()) { writer.value(path); }
+                    writer.endArray().endObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                System.out.println(out);
+                break;
+            default:
+                System.out.println(Ansi.AUTO.string("@|red \nPlease specify text, json or ndjson as output format (e.g. -fdo ndjson) |@ \n"));
+                return 1;
+        }
+        // The homes that timed out and the summary go to stderr to keep stdout parseable
+        detector.getTimedOut().forEach(path -> System.err.println("No answer from java -version in time: " + path));
+        System.err.println(detector.getNoOfUnchanged() + " unchanged since the last scan, " + detector.getNoOfIdentifiedFromReleaseFiles() + " identified from release files, " +
+                           detector.getNoOfIdentifiedWithJavaVersion() + " with java -version (" + detector.getTimedOut().size() + " timed out)");
+        return 0;
+    }
+
+    private int queryBatch(final String source) {
+        final List<String> lines;
+        try {
+            lines = "-".equals(source) ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)).lines().toList() : Files.readAllLines(Paths.get(source));
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println(Ansi.AUTO.string("@|red \nError reading batch query " + source + " |@ \n"));
+            return 1;
+        }
+        // Lines starting with a parameter are resolved like a download, all others are -fu specs
+        final List<BatchQuery.Spec> specs = new ArrayList<>();
+        for (int i = 0 ; i < lines.size() ; i++) {
+            final String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) { continue; }
+            if (line.startsWith("-") || line.startsWith("discocli ")) {
+                try {
+                    specs.add(BatchQuery.Spec.resolve(i + 1, line, parseRequestLine(line)));
+                } catch (CommandLine.ParameterException | IllegalArgumentException e) {
+                    specs.add(BatchQuery.Spec.invalid(i + 1, line, e.getMessage().trim()));
+                }
+            } else {
+                specs.add(BatchQuery.Spec.update(i + 1, line));
+            }
+        }
+        if (specs.isEmpty()) {
+            System.out.println(Ansi.AUTO.string("@|red \nNo specs found in batch query " + source + " |@ \n"));
+            return 1;
+        }
+        // One json line per spec in the order of the input, written as soon as the query of its group is done
+        final BatchQuery batchQuery = new BatchQuery(specs);
+        final long       start      = System.nanoTime();
+        boolean          failed     = false;
+        for (CompletableFuture<BatchQuery.Result> future : batchQuery.run()) {
+            final BatchQuery.Result result = future.join();
+            System.out.println(result.toJson());
+            System.out.flush();
+            failed |= BatchQuery.Status.ERROR == result.status();
+        }
+        timings.add("batch query", start, System.nanoTime());
+        System.err.println(batchQuery.getNoOfSpecs() + " specs answered with " + batchQuery.getNoOfQueries() + " queries");
+        return failed ? 1 : 0;
+    }
+
+    private static List<String> splitArgs(final String line) {
+        final List<String>  args    = new ArrayList<>();
+        final StringBuilder current = new StringBuilder();
+        char    quote   = 0;
+        boolean inToken = false;
+        for (char ch : line.toCharArray()) {
+            if (0 != quote) {
+                if (ch == quote) { quote = 0; } else { current.append(ch); }
+            } else if (ch == '"' || ch == '\'') {
+                quote   = ch;
+                inToken = true;
+            } else if (Character.isWhitespace(ch)) {
+                if (inToken) {
+                    args.add(current.toString());
+                    current.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                current.append(ch);
+                inToken = true;
+            }
+        }
+        if (inToken) { args.add(current.toString()); }
+        return args;
+    }
 
     @Override public Integer call() {
+        timings = new Timing();
         try {
+            Helper.setConnectTimeout(Duration.ofSeconds(ct));
+            Helper.setRetryPolicy(new RetryPolicy(retries, hedge));
+            if (null != api) { Helper.setApiUrl(api); }
+            if (noCache) { Helper.setResponseCache(null); }
+
+            // Open the connection to the Disco API while the parameters are validated
+            if (!versionRequested && !help && !info && !offline && null == si && null == fd && null == mock) {
+                timings.track("connect api", Helper.prewarm());
+                // Keeps the cached list of distributions current, unknown distributions refresh it right away
+                Distributions.refreshIfStale();
+            }
+
             if (versionRequested) {
                 String versionString = new StringBuilder().append("###################\n")
                                                           .append("#     DiscoCLI    #\n")
@@ -178,6 +505,23 @@ public class DiscoCLI implements Callable<Integer> {
                                                                 .append("[").append(yellow).append(" -at").append(end).append("=<at>]").append(" ")
                                                                 .append("[").append(yellow).append(" -pt").append(end).append("=<pt>]").append(" ")
                                                                 .append("[").append(yellow).append(" -p").append(end).append("=<p>]").append(" ")
+                                                                .append("[").append(yellow).append(" -c").append(end).append("=<c>]").append(" ")
+                                                                .append("[").append(yellow).append(" -nv").append(end).append("]").append(" ")
+                                                                .append("[").append(yellow).append(" -ct").append(end).append("=<ct>]").append(" ")
+                                                                .append("[").append(yellow).append(" -rt").append(end).append("=<rt>]").append(" ")
+                                                                .append("[").append(yellow).append(" -ns").append(end).append("]").append(" ")
+                                                                .append("[").append(yellow).append(" -nc").append(end).append("]").append(" ")
+                                                                .append("[").append(yellow).append(" -offline").append(end).append("]").append(" ")
+                                                                .append("[").append(yellow).append(" -timing").append(end).append("]").append(" ")
+                                                                .append("[").append(yellow).append(" -retries").append(end).append("=<retries>]").append(" ")
+                                                                .append("[").append(yellow).append(" -hedge").append(end).append("]").append(" ")
+                                                                .append("[").append(yellow).append(" -api").append(end).append("=<api>]").append(" ")
+                                                                .append("[").append(yellow).append(" -mock").append(end).append("=<mock>]").append(" ")
+                                                                .append("[").append(yellow).append(" -in").append(end).append("=<in>]").append(" ")
+                                                                .append("[").append(yellow).append(" -k").append(end).append("]").append(" ")
+                                                                .append("[").append(yellow).append(" -b").append(end).append("=<b>]").append(" ")
+                                                                .append("[").append(yellow).append(" -j").append(end).append("=<j>]").append(" ")
+                                                                .append("[").append(yellow).append(" -bq").append(end).append("=<bq>]").append(" ")
                                                                 .append("[").append(yellow).append(" -ea").append(end).append("]").append(" ")
                                                                 .append("[").append(yellow).append(" -fx").append(end).append("]").append(" ")
                                                                 .append("[").append(yellow).append(" -latest").append(end).append("]").append(" ")
@@ -185,23 +529,52 @@ public class DiscoCLI implements Callable<Integer> {
                                                                 .append("[").append(yellow).append(" -i").append(end).append("]").append(" ")
                                                                 .append("[").append(yellow).append(" -f").append(end).append("]").append(" ")
                                                                 .append("[").append(yellow).append(" -fd").append(end).append("=<fd>]")
-                                                                .append("[").append(yellow).append(" -fu").append(end).append("=<fu>]");
+                                                                .append("[").append(yellow).append(" -fdd").append(end).append("=<fdd>]")
+                                                                .append("[").append(yellow).append(" -fdx").append(end).append("=<fdx>]")
+                                                                .append("[").append(yellow).append(" -fdr").append(end).append("]")
+                                                                .append("[").append(yellow).append(" -fdo").append(end).append("=<fdo>]")
+                                                                .append("[").append(yellow).append(" -fu").append(end).append("=<fu>]")
+                                                                .append("[").append(yellow).append(" -si").append(end).append("=<si>]")
+                                                                .append("[").append(yellow).append(" -sync").append(end).append("]");
                 StringBuilder helpBuilder2 = new StringBuilder().append("\nDownload a JDK pkg defined by the given parameters").append("\n")
                                                                 .append(yellow).append(" -arc, --architecture").append(end).append("=<arc> Architecture (e.g. x64, aarch64)").append("\n")
                                                                 .append(yellow).append(" -at,  --archive-type").append(end).append("=<at> Archive tpye (e.g. tar.gz, zip)").append("\n")
+                                                                .append(yellow).append(" -b,   --batch").append(end).append("=<b> Download all JDK pkgs defined in the given manifest file, one pkg per line (e.g. \"-d zulu -v 17 -os linux\")").append("\n")
+                                                                .append(yellow).append(" -c,   --connections").append(end).append("=<c> Number of parallel connections used to download the JDK pkg (e.g. 4)").append("\n")
+                                                                .append(yellow).append(" -ct,  --connect-timeout").append(end).append("=<ct> Connect timeout in seconds (default 20)").append("\n")
                                                                 .append(yellow).append(" -d,   --distribution").append(end).append("=<d> Distribution (e.g. zulu, temurin, etc.)").append("\n")
                                                                 .append(yellow).append(" -ea,  --early-access").append(end).append(" Include early access builds").append("\n")
                                                                 .append(yellow).append(" -f,   --find").append(end).append(" Find available JDK pkgs for given parameters").append("\n")
                                                                 .append(yellow).append(" -fx,  --javafx").append(end).append(" Bundled with JavaFX").append("\n")
                                                                 .append(yellow).append(" -i,   --info").append(end).append(" Info about parameters").append("\n")
+                                                                .append(yellow).append(" -in,  --install").append(end).append("=<in> Download and extract the JDK pkg into the given path in one pass (e.g. /opt/jdks)").append("\n")
+                                                                .append(yellow).append(" -j,   --jobs").append(end).append("=<j> Number of JDK pkgs downloaded at the same time in batch mode (default 4)").append("\n")
+                                                                .append(yellow).append(" -k,   --keep").append(end).append(" Keep the archive in the local package store when installing").append("\n")
                                                                 .append(yellow).append(" -latest").append(end).append(" Latest available for given version number").append("\n")
                                                                 .append(yellow).append(" -latest-lts").append(end).append(" Latest available LTS release").append("\n")
+                                                                .append(yellow).append(" -nv,  --no-verify").append(end).append(" Do not verify the checksum of the downloaded JDK pkg (a mismatch exits with code 3)").append("\n")
+                                                                .append(yellow).append(" -nc,  --no-cache").append(end).append(" Do not use the cached responses of the Disco API (~/.discocli/cache)").append("\n")
+                                                                .append(yellow).append(" -ns,  --no-store").append(end).append(" Do not use the local package store (~/.discocli/store)").append("\n")
+                                                                .append(yellow).append(" -offline, --offline").append(end).append(" Answer all queries from the local catalog without network access").append("\n")
                                                                 .append(yellow).append(" -lc,  --libc-type").append(end).append("=<lc> Lib C type (libc, glibc, c_std_lib, musl)").append("\n")
                                                                 .append(yellow).append(" -os,  --operating-system").append(end).append("=<os> Operating system (e.g. windows, linux, macos)").append("\n")
                                                                 .append(yellow).append(" -p,   --path").append(end).append("=<pt> The path where the JDK pkg should be saved to (e.g. /User/hansolo").append("\n")
+                                                                .append(yellow).append(" -rt,  --read-timeout").append(end).append("=<rt> Read timeout in seconds, time without receiving data (default 30)").append("\n")
                                                                 .append(yellow).append(" -pt,  --package-type").append(end).append("=<pt> Package type (e.g. jdk, jre)").append("\n")
                                                                 .append(yellow).append(" -fd,  --find-distros").append(end).append("=<fd> Find distributions in given path (e.g. \"./\")").append("\n")
+                                                                .append(yellow).append(" -fdd, --find-distros-depth").append(end).append("=<fdd> Maximum folder depth searched by -fd (default unlimited)").append("\n")
+                                                                .append(yellow).append(" -fdx, --find-distros-exclude").append(end).append("=<fdx> Comma separated globs of folders that -fd skips (default \"**/.git,**/node_modules\")").append("\n")
+                                                                .append(yellow).append(" -fdr, --find-distros-rescan").append(end).append(" Identify all distributions again instead of only the ones that changed since the last -fd").append("\n")
+                                                                .append(yellow).append(" -fdo, --find-distros-output").append(end).append("=<fdo> Output format of -fd (text, json, ndjson)").append("\n")
+                                                                .append(yellow).append(" -bq,  --batch-query").append(end).append("=<bq> Answer the -fu specs and download parameters in the given file (- for stdin), one per line, as json lines").append("\n")
                                                                 .append(yellow).append(" -fu,  --find-update").append(end).append("=<fu> Find update for given distribution DISTRO,VERSION,OPERATING SYSTEM,ARCHITECTURE,PACKAGE TYPE,EA(optional),FX(optional) (e.g. \"zulu,18,macos,aarch64,jdk,ea\")").append("\n")
+                                                                .append(yellow).append(" -si,  --store-import").append(end).append("=<si> Import the JDK pkgs found in the given paths into the local package store (e.g. \"./\")").append("\n")
+                                                                .append(yellow).append(" -timing, --timing").append(end).append(" Print how long the phases of the run took (connect, packages, ids, download)").append("\n")
+                                                                .append(yellow).append(" -retries, --retries").append(end).append("=<retries> Number of retries for failed requests and downloads (default 2)").append("\n")
+                                                                .append(yellow).append(" -hedge, --hedge").append(end).append(" Send a second request to the Disco API if the first one is slower than usual").append("\n")
+                                                                .append(yellow).append(" -api, --api-url").append(end).append("=<api> Base url of the Disco API (default https://api.foojay.io/disco/v3.0/)").append("\n")
+                                                                .append(yellow).append(" -mock, --mock").append(end).append("=<mock> Run a local stand-in for the Disco API on the given port with the fixtures in ~/.discocli/mock").append("\n")
+                                                                .append(yellow).append(" -sync, --sync").append(end).append(" Download the pkg catalog of all distributions for offline use (only changed distributions are updated)").append("\n")
                                                                 .append(yellow).append(" -v,   --version").append(end).append("=<v> Version (e.g. 17.0.2)").append("\n");
 
                 System.out.println(Ansi.AUTO.string(helpBuilder1.toString()));
@@ -215,7 +588,7 @@ public class DiscoCLI implements Callable<Integer> {
                 System.out.println("Keep in mind that not every distribution supports all operating systems, archive types, package types etc.");
                 System.out.println();
                 System.out.println(Ansi.AUTO.string("@|bold,cyan ---------- Distributions ---------- |@"));
-                Distro.getAsListWithoutNoneAndNotFound().stream().sorted(Comparator.comparing(Distro::getUiString)).forEach(distro -> System.out.println(distro.getApiString() + distro.get().spacer() + "(" + distro.getUiString() + ")"));
+                Distributions.getAll().stream().sorted(Comparator.comparing(Distribution::uiString, String.CASE_INSENSITIVE_ORDER)).forEach(distro -> System.out.println(distro.apiString() + distro.spacer() + "(" + distro.uiString() + ")"));
                 System.out.println();
                 System.out.println(Ansi.AUTO.string("@|bold,cyan ---------- Operating systems ------ |@"));
                 System.out.println("windows");
@@ -237,12 +610,42 @@ public class DiscoCLI implements Callable<Integer> {
                 return 0;
             }
 
-            if (null != fd) {
-                final Detector detector = new Detector();
-                detector.detectDistributions(fd.split(","));
+            if (null != si) {
+                final PackageStore store    = new PackageStore();
+                final int          imported = store.importFolders(si.split(","));
+                System.out.println(Ansi.AUTO.string("@|cyan \nImported " + imported + " JDK pkgs into " + store.getRoot() + " |@ \n"));
                 return 0;
             }
 
+            if (null != mock) {
+                return serveMock(mock);
+            }
+
+            if (sync) {
+                return syncCatalog();
+            }
+
+            if (offline) {
+                final Catalog catalog = new Catalog();
+                if (catalog.isEmpty()) {
+                    System.out.println(Ansi.AUTO.string("@|red \nNo local catalog found in " + catalog.getRoot() + ", please run discocli --sync first |@ \n"));
+                    return 1;
+                }
+                Helper.setOfflineCatalog(catalog);
+            }
+
+            if (null != b) {
+                return downloadBatch(Paths.get(b));
+            }
+
+            if (null != bq) {
+                return queryBatch(bq);
+            }
+
+            if (null != fd) {
+                return findDistros();
+            }
+
             if (null != fu) {
                 if (null == fu || fu.isEmpty()) {
                     System.out.println(Ansi.AUTO.string("@|red \nPlease specify the distribution you would like to check e.g. zulu,18,macos,x64,jdk,ea,fx |@ \n"));
@@ -254,13 +657,13 @@ public class DiscoCLI implements Callable<Integer> {
                     return 1;
                 }
 
-                Distro          distro          = Distro.fromText(parts[0]);
+                Distribution    distro          = Distributions.resolve(parts[0]);
                 VersionNumber   versionNumber   = VersionNumber.fromText(parts[1]);
                 OperatingSystem operatingSystem = OperatingSystem.fromText(parts[2]);
                 Architecture    architecture    = Architecture.fromText(parts[3]);
                 PackageType     packageType     = PackageType.fromText(parts[4]);
 
-                if (Distro.NOT_FOUND          == distro          ||
+                if (null                      == distro          ||
                     OperatingSystem.NOT_FOUND == operatingSystem ||
                     Architecture.NOT_FOUND    == architecture    ||
                     PackageType.NOT_FOUND     == packageType) {
@@ -280,20 +683,13 @@ public class DiscoCLI implements Callable<Integer> {
                     javafxBundled = false;
                 }
 
-                List<Pkg> pkgs = Helper.getPkgsForDistributionAndMajorVersion(distro.get(), versionNumber.getFeature().getAsInt(), operatingSystem, operatingSystem.getLibCType(), architecture, packageType, null, earlyAccess);
+                List<Pkg> pkgs = Helper.getPkgsForDistributionAndMajorVersion(distro, versionNumber.getFeature().getAsInt(), operatingSystem, operatingSystem.getLibCType(), architecture, packageType, null, earlyAccess);
 
-                List<Pkg> updates;
-                if (earlyAccess) {
-                    updates = pkgs.stream()
-                                  .filter(pkg -> pkg.isJavaFXBundled() == javafxBundled)
-                                  .collect(Collectors.toList());
-                } else {
-                    VersionNumber withoutBuild = VersionNumber.fromText(versionNumber.toString(OutputFormat.REDUCED_COMPRESSED, true, false));
-                    updates = pkgs.stream()
-                                  .filter(pkg -> pkg.isJavaFXBundled() == javafxBundled)
-                                  .filter(pkg -> VersionNumber.fromText(pkg.getJavaVersion().getVersionNumber().toString(OutputFormat.REDUCED_COMPRESSED, true, false)).compareTo(withoutBuild) > 0)
-                                  .collect(Collectors.toList());
+                PkgIndex<Pkg>.Query query = PkgIndex.of(pkgs).query().where(Dimension.JAVAFX_BUNDLED, javafxBundled);
+                if (!earlyAccess) {
+                    query.newerThan(JavaVersion.fromText(versionNumber.toString(OutputFormat.REDUCED_COMPRESSED, true, false)));
                 }
+                List<Pkg> updates = query.listDescending();
                 if (updates.isEmpty()) {
                     System.out.println(Ansi.AUTO.string("@|cyan \nNo update found |@ \n"));
                 } else {
@@ -303,220 +699,46 @@ public class DiscoCLI implements Callable<Integer> {
                 return 0;
             }
 
-            final OsArcMode sysInfo = eu.hansolo.jdktools.util.Helper.getOperaringSystemArchitectureOperatingMode();
-
-            // Parse distro
-            final Distro parsedDistro = null == d ? Distro.ZULU : Distro.fromText(d);
-            final Distro distro;
-            if (Distro.NONE == parsedDistro || Distro.NOT_FOUND == parsedDistro) {
-                distro = Distro.ZULU;
-            } else {
-                distro = parsedDistro;
-            }
-            if (Distro.NOT_FOUND == distro || Distro.NONE == distro) {
-                System.out.println(Ansi.AUTO.string("@|red \nDistribution cannot be found |@ \n"));
-                return 1;
-            }
-
-            // Parse operating system
-            final OperatingSystem parsedOperatingSystem = null == os ? sysInfo.operatingSystem() : OperatingSystem.fromText(os);
-            final OperatingSystem operatingSystem;
-            if (find && null == os) {
-                operatingSystem = OperatingSystem.NONE;
-            } else if (OperatingSystem.NONE == parsedOperatingSystem || OperatingSystem.NOT_FOUND == parsedOperatingSystem) {
-                operatingSystem = sysInfo.operatingSystem();
-            } else {
-                operatingSystem = parsedOperatingSystem;
-            }
-            if (!find && (OperatingSystem.NOT_FOUND == operatingSystem || OperatingSystem.NONE == operatingSystem)) {
-                System.out.println(Ansi.AUTO.string("@|red \nOperating system cannot be found |@ \n"));
-                return 1;
-            }
-
-            // Parse lib c type
-            final LibCType parsedLibcType = null == lc ? operatingSystem.getLibCType() : LibCType.fromText(lc);
-            final LibCType libcType;
-            if (find && OperatingSystem.NONE == operatingSystem) {
-                libcType = LibCType.NONE;
-            } else if (LibCType.NONE == parsedLibcType || LibCType.NOT_FOUND == parsedLibcType) {
-                libcType = operatingSystem.getLibCType();
-            } else {
-                libcType = parsedLibcType;
-            }
-            if (!find && (LibCType.NONE == libcType || LibCType.NOT_FOUND == libcType)) {
-                System.out.println(Ansi.AUTO.string("@|red \nLib C type cannot be found |@ \n"));
-                return 1;
-            }
-
-            // Parse architecture
-            final boolean      rosetta2           = OperatingSystem.MACOS == sysInfo.operatingSystem() && OperatingMode.EMULATED == sysInfo.operatingMode();
-            final Architecture parsedArchitecture = null == arc ? rosetta2 ? Architecture.AARCH64 : sysInfo.architecture() : Architecture.fromText(arc);
-            final Architecture architecture;
-            if (find && null == arc) {
-                architecture = Architecture.NONE;
-            } else if (Architecture.NONE == parsedArchitecture || Architecture.NOT_FOUND == parsedArchitecture) {
-                architecture = Architecture.X64;
-            } else {
-                architecture = parsedArchitecture;
-            }
-            if (!find && (Architecture.NONE == architecture || Architecture.NOT_FOUND == architecture)) {
-                System.out.println(Ansi.AUTO.string("@|red \nArchitecture cannot be found |@ \n"));
-                return 1;
-            }
-
-            // Parse package type
-            final PackageType parsedPackageType = null == pt ? PackageType.JDK : PackageType.fromText(pt);
-            final PackageType packageType;
-            if (find && null == pt) {
-                packageType = PackageType.NONE;
-            } else if (PackageType.NONE == parsedPackageType || PackageType.NOT_FOUND == parsedPackageType) {
-                packageType = PackageType.JDK;
-            } else {
-                packageType = parsedPackageType;
-            }
-            if (!find && (PackageType.NOT_FOUND == packageType || PackageType.NONE == packageType)) {
-                System.out.println(Ansi.AUTO.string("@|red \nPackage type cannot be found |@ \n"));
-                return 1;
-            }
-
-            // Parse archive type
-            final ArchiveType parsedArchiveType = null == at ? (WINDOWS == operatingSystem ? ArchiveType.ZIP : ArchiveType.TAR_GZ) : ArchiveType.fromText(at);
-            final ArchiveType archiveType;
-            if (find && null == at) {
-                archiveType = ArchiveType.NONE;
-            } else if (ArchiveType.NONE == parsedArchiveType || ArchiveType.NOT_FOUND == parsedArchiveType) {
-                archiveType = (WINDOWS == operatingSystem ? ArchiveType.ZIP : ArchiveType.TAR_GZ);
-            } else {
-                archiveType = parsedArchiveType;
-            }
-            if (!find && (ArchiveType.NOT_FOUND == archiveType || ArchiveType.NONE == archiveType)) {
-                System.out.println(Ansi.AUTO.string("@|red \nArchive type cannot be found |@ \n"));
+            final PkgRequest pkgRequest;
+            try {
+                pkgRequest = PkgRequest.parse(d, v, os, lc, arc, pt, at, p, find, ea, fx, latest, lts);
+            } catch (IllegalArgumentException e) {
+                System.out.println(Ansi.AUTO.string("@|red \n" + e.getMessage() + " |@ \n"));
                 return 1;
             }
-
-            // Parse path
-            final String parsedPath = null == p ? null : (p.endsWith(File.separator) ? p : p + File.separator);
-            final Path path;
-            if (null != parsedPath) {
-                path = Paths.get(parsedPath);
-                if (!Files.exists(path)) {
-                    System.out.println(Ansi.AUTO.string("@|red \nGiven path does not exists |@ \n"));
-                    return 1;
-                }
-                if (!Files.isDirectory(path)) {
-                    System.out.println(Ansi.AUTO.string("@|red \nGiven path is not a folder |@ \n"));
-                    return 1;
-                }
-                if (!Files.isWritable(path)) {
-                    System.out.println(Ansi.AUTO.string("@|red \nNo rights to write to given path |@ \n"));
-                    return 1;
-                }
-            }
-
-            // Parse version number
-            VersionNumber versionNumber;
-            if (null == v) {
-                versionNumber = null;
-            } else {
-                if (v.startsWith("-")) {
-                    System.out.println(Ansi.AUTO.string("@|red \nVersion number cannot be negative |@ \n"));
-                    return 1;
-                }
-                try {
-                    versionNumber = VersionNumber.fromText(v);
-                } catch (IllegalArgumentException e) {
-                    versionNumber = null;
-                    System.out.println(Ansi.AUTO.string("@|red \nVersion number cannot be parsed |@ \n"));
-                    return 1;
-                }
-            }
-
-            if (lts && (null != versionNumber || latest || ea)) {
-                System.out.println(Ansi.AUTO.string("@|red \n -latest-lts only works without a given version number, latest or ea |@ \n"));
-                return 1;
-            }
-            if (null == versionNumber && latest) {
-                System.out.println(Ansi.AUTO.string("@|red \n -latest only works with a given version number (e.g. -v 17 -latest) |@ \n"));
-                return 1;
-            }
-            if (null == v && find) {
-                System.out.println(Ansi.AUTO.string("@|red \n -find only works with a given version number and distribution (e.g. -d zulu -v 17) |@ \n"));
-                return 1;
-            }
-            if ((null == d || Distro.NONE == distro || Distro.NOT_FOUND == distro) && find) {
-                System.out.println(Ansi.AUTO.string("@|red \n -find only works with a given version number and distribution (e.g. -d zulu -v 17) |@ \n"));
-                return 1;
-            }
-
-            final boolean majorVersionOnly = null != versionNumber && (versionNumber.getInterim().getAsInt() == 0 && versionNumber.getUpdate().getAsInt() == 0 && versionNumber.getPatch().getAsInt() == 0);
-
-            final String distributionParam         = "?distro=" + distro.getApiString();
-            final String versionParam              = null == versionNumber ? "" : "&version=" + URLEncoder.encode(versionNumber.toString(OutputFormat.FULL_COMPRESSED, true, true), StandardCharsets.UTF_8);
-            final String operatingSystemParam      = OperatingSystem.NONE == operatingSystem ? "" : "&operating_system=" + operatingSystem.getApiString();
-            final String libcTypeParam             = LibCType.NONE == libcType ? "" : "&lib_c_type=" + libcType.getApiString();
-            final String architectureParam         = Architecture.NONE == architecture ? "" : "&architecture=" + architecture.getApiString();
-            final String archiveTypeParam          = ArchiveType.NONE == archiveType ? "" : "&archive_type=" + archiveType.getApiString();
-            final String packageTypeParam          = PackageType.NONE == packageType ? "" : "&package_type=" + packageType.getApiString();
-            final String latestParam               = find ? (majorVersionOnly ? "&latest=all_of_version" : "") : ((null == versionNumber || latest) ? lts ? "" : "&latest=available" : "");
-            final String latestLtsParam            = lts ? "&latest=available&version_by_definition=latest_lts" : "";
-            final String javafxBundledParam        = fx ? "&javafx_bundled=true" : "";
-            final String releaseStatusParam        = ea ? "&release_status=ea&release_status=ga" : "&release_status=ga";
-            final String directlyDownloadableParam = "&directlyDownloadable=true";
-
-            final String request = new StringBuilder().append(Constants.DISCO_API_URL)
-                                                      .append(Constants.PACKAGES_ENDPOINT)
-                                                      .append(distributionParam)
-                                                      .append(operatingSystemParam)
-                                                      .append(libcTypeParam)
-                                                      .append(architectureParam)
-                                                      .append(versionParam)
-                                                      .append(latestParam)
-                                                      .append(latestLtsParam)
-                                                      .append(archiveTypeParam)
-                                                      .append(javafxBundledParam)
-                                                      .append(packageTypeParam)
-                                                      .append(directlyDownloadableParam)
-                                                      .append(releaseStatusParam)
-                                                      .toString();
-
-            HttpResponse<String> response = Helper.get(request);
-            if (null == response) {
-                System.out.println(Ansi.AUTO.string(Constants.DEFAULT_ERROR_MSG));
-                return 1;
-            } else if (response.statusCode() != 200) {
-                if (400 == response.statusCode()) {
+            final Distribution    distro          = pkgRequest.distro();
+            final OperatingSystem operatingSystem = pkgRequest.operatingSystem();
+            final LibCType        libcType        = pkgRequest.libcType();
+            final Architecture    architecture    = pkgRequest.architecture();
+            final PackageType     packageType     = pkgRequest.packageType();
+            final ArchiveType     archiveType     = pkgRequest.archiveType();
+            final VersionNumber   versionNumber   = pkgRequest.versionNumber();
+            final String          parsedPath      = pkgRequest.path();
+            final String          request         = pkgRequest.toRequestUri();
+
+            final ApiResult<List<Pkg>> result = timings.track("packages", Helper.fetchPkgs(request)).join();
+            if (!result.isOk()) {
+                if (400 == result.statusCode()) {
                     System.out.println(Ansi.AUTO.string("@|red \nSorry, defined pkg not found in Disco API |@ \n"));
                     if (null != versionNumber) {
-                        List<Pkg> availablePkgs = Helper.getPkgsForDistributionAndMajorVersion(distro.get(), versionNumber.getFeature().getAsInt(), operatingSystem, libcType, architecture, packageType, archiveType, ea);
-                        System.out.println(Ansi.AUTO.string("@|cyan,bold \nPackages available for " + distro.getUiString() + " for version " + versionNumber.getFeature().getAsInt() + ": |@"));
+                        List<Pkg> availablePkgs = Helper.getPkgsForDistributionAndMajorVersion(distro, versionNumber.getFeature().getAsInt(), operatingSystem, libcType, architecture, packageType, archiveType, ea);
+                        System.out.println(Ansi.AUTO.string("@|cyan,bold \nPackages available for " + distro.uiString() + " for version " + versionNumber.getFeature().getAsInt() + ": |@"));
                         availablePkgs.stream()
                                      .sorted(Comparator.comparing(Pkg::getOperatingSystem).thenComparing(Pkg::getJavaVersion).reversed().thenComparing(Pkg::getArchitecture).thenComparing(Pkg::getArchiveType).thenComparing(Pkg::getPackageType))
                                      .forEach(pkg -> System.out.println(pkg.toCliString()));
                         System.out.println();
                     }
                 } else {
-                    System.out.println(Ansi.AUTO.string(Constants.DEFAULT_ERROR_MSG));
+                    System.out.println(Ansi.AUTO.string("@|red \nError retrieving pkg info from Disco API, " + result.message() + " |@ \n"));
                 }
                 return 1;
             } else {
-                List<Pkg>   pkgs      = new LinkedList<>();
-                Set<Pkg>    pkgsFound = new HashSet<>();
-                Gson        gson      = new Gson();
-                JsonElement element   = gson.fromJson(response.body(), JsonElement.class);
-                if (element instanceof JsonObject) {
-                    JsonObject jsonObject = element.getAsJsonObject();
-                    JsonArray  jsonArray  = jsonObject.getAsJsonArray("result");
-                    for (int i = 0; i < jsonArray.size(); i++) {
-                        JsonObject pkgJsonObj = jsonArray.get(i).getAsJsonObject();
-                        pkgsFound.add(new Pkg(pkgJsonObj.toString()));
-                    }
-                }
-                pkgs.addAll(pkgsFound);
+                List<Pkg> pkgs = new LinkedList<>(result.value());
                 if (pkgs.isEmpty()) {
                     System.out.println(Ansi.AUTO.string("@|red \nSorry, defined pkg not found in Disco API |@ \n"));
                     if (null != versionNumber) {
-                        List<Pkg> availablePkgs = Helper.getPkgsForDistributionAndMajorVersion(distro.get(), versionNumber.getFeature().getAsInt(), operatingSystem, libcType, architecture, packageType, archiveType, ea);
-                        System.out.println(Ansi.AUTO.string("@|cyan,bold \nPackages available for " + distro.getUiString() + " for version " + versionNumber.getFeature().getAsInt() + ": |@"));
+                        List<Pkg> availablePkgs = Helper.getPkgsForDistributionAndMajorVersion(distro, versionNumber.getFeature().getAsInt(), operatingSystem, libcType, architecture, packageType, archiveType, ea);
+                        System.out.println(Ansi.AUTO.string("@|cyan,bold \nPackages available for " + distro.uiString() + " for version " + versionNumber.getFeature().getAsInt() + ": |@"));
                         availablePkgs.stream()
                                      .sorted(
                                      Comparator.comparing(Pkg::getOperatingSystem).thenComparing(Pkg::getJavaVersion).reversed().thenComparing(Pkg::getArchitecture).thenComparing(Pkg::getArchiveType).thenComparing(Pkg::getPackageType))
@@ -527,7 +749,7 @@ public class DiscoCLI implements Callable<Integer> {
                 }
 
                 if (find) {
-                    System.out.println(Ansi.AUTO.string("@|cyan,bold \nPackages found for " + distro.getUiString() + " for version " + versionNumber.getFeature().getAsInt() + ": |@"));
+                    System.out.println(Ansi.AUTO.string("@|cyan,bold \nPackages found for " + distro.uiString() + " for version " + versionNumber.getFeature().getAsInt() + ": |@"));
                     pkgs.stream().sorted(Comparator.comparing(Pkg::getOperatingSystem).thenComparing(Pkg::getJavaVersion).reversed().thenComparing(Pkg::getArchitecture).thenComparing(Pkg::getArchiveType).thenComparing(Pkg::getPackageType)).forEach(pkg -> System.out.println(pkg.toCliString()));
                     System.out.println();
                     return 1;
@@ -538,54 +760,93 @@ public class DiscoCLI implements Callable<Integer> {
                 // Get first package found
                 Pkg pkg = pkgs.get(0);
 
+                // Look up the direct download link while the local package store is checked
+                final String                                             urlRequest      = new StringBuilder().append(Helper.getApiUrl()).append(Constants.IDS_ENDPOINT).append(pkg.getId()).toString();
+                final CompletableFuture<ApiResult<HttpResponse<String>>> pkgInfoResponse = timings.track("ids", Helper.fetch(urlRequest));
+
+                // Install mode extracts the archive while downloading it
+                final Path        installFolder = null == in ? null : Paths.get(in);
+                final ArchiveType installType   = ArchiveType.NONE == archiveType ? pkg.getArchiveType() : archiveType;
+                if (null != installFolder && !Installer.isSupported(installType)) {
+                    System.out.println(Ansi.AUTO.string("@|red \nInstalling is only supported for tar.gz, tgz, tar and zip archives |@ \n"));
+                    return 1;
+                }
+
+                // Serve pkg from local package store if it was downloaded before
+                final Path target = Paths.get(null == parsedPath ? pkg.getFilename() : parsedPath + pkg.getFilename());
+                if (!noStore) {
+                    final Optional<Path> stored = new PackageStore().findById(pkg.getId(), pkg.getSize());
+                    if (null != installFolder && stored.isPresent())                                      { return installFromStore(stored.get(), installFolder, installType, pkg); }
+                    if (null == installFolder && !Files.exists(target) && serveFromStore(stored, target)) { return 0; }
+                }
+
                 // Get direct download link
-                String               urlRequest  = new StringBuilder().append(Constants.DISCO_API_URL).append(Constants.IDS_ENDPOINT).append(pkg.getId()).toString();
-                HttpResponse<String> urlResponse = Helper.get(urlRequest);
-                if (null == urlResponse) {
-                    System.out.println(Ansi.AUTO.string(Constants.DEFAULT_ERROR_MSG));
+                final ApiResult<HttpResponse<String>> urlResult = pkgInfoResponse.join();
+                if (ApiResult.Failure.OFFLINE == urlResult.failure()) {
+                    System.out.println(Ansi.AUTO.string("@|red \nThe JDK pkg is not in the local package store, downloading it needs network access |@"));
+                    System.out.println(pkg.toCliString() + "\n");
                     return 1;
-                } else if (urlResponse.statusCode() != 200) {
-                    System.out.println(Ansi.AUTO.string("@|red \nError retrieving pkg info from Disco API with status code " + response.statusCode() + " |@ \n"));
+                } else if (!urlResult.isOk()) {
+                    System.out.println(Ansi.AUTO.string("@|red \nError retrieving pkg info from Disco API, " + urlResult.message() + " |@ \n"));
                     return 1;
                 } else {
-                    String      packageInfoBody    = urlResponse.body();
-                    Gson        packageInfoGson    = new Gson();
-                    JsonElement packageInfoElement = packageInfoGson.fromJson(packageInfoBody, JsonElement.class);
-                    if (packageInfoElement instanceof JsonObject) {
-                        JsonObject jsonObject = packageInfoElement.getAsJsonObject();
-                        JsonArray  jsonArray  = jsonObject.getAsJsonArray("result");
-                        if (jsonArray.size() > 0) {
-                            final JsonObject packageInfoJson   = jsonArray.get(0).getAsJsonObject();
-                            final String     filename          = packageInfoJson.has(Constants.FIELD_FILENAME) ? packageInfoJson.get(Constants.FIELD_FILENAME).getAsString() : "";
-                            final String     directDownloadUri = packageInfoJson.has(Constants.FIELD_DIRECT_DOWNLOAD_URI) ? packageInfoJson.get(Constants.FIELD_DIRECT_DOWNLOAD_URI).getAsString() : "";
-                            if (null == filename) { return 1; }
-                            System.out.println("\nDownloading " + pkg.getFilename() + ":");
-                            int downloadResponse = downloadPkg(directDownloadUri, (null == parsedPath ? pkg.getFilename() : parsedPath + pkg.getFilename()), pkg.getSize());
-                            if (0 == downloadResponse) {
-                                if (null == parsedPath) {
-                                    System.out.println("\nSuccessfully downloaded JDK pkg to current folder\n");
-                                } else {
-                                    System.out.println("\nSuccessfully downloaded JDK pkg to " + (parsedPath + pkg.getFilename()) + "\n");
-                                }
-                                return 0;
-                            } else if (2 == downloadResponse) {
-                                System.out.println("\nSelected JDK pkg already exists: " + filename + " \n");
-                                return 0;
-                            } else {
-                                System.out.println(Ansi.AUTO.string("@|red \nError downloading " + pkg.getFilename() + " from " + directDownloadUri + " |@ \n"));
-                                return 1;
-                            }
+                    final Optional<PkgInfo> optPkgInfo = PkgInfo.fromJson(urlResult.value().body());
+                    if (optPkgInfo.isEmpty()) {
+                        System.out.println(Ansi.AUTO.string("@|red \nError retrieving direct download uri |@ \n"));
+                        return 1;
+                    }
+                    PkgInfo pkgInfo = optPkgInfo.get();
+                    // Connect to the vendor host while the checksum is fetched
+                    final CompletableFuture<Void> vendorConnection = timings.track("connect vendor", Helper.prewarmDownload(pkgInfo.directDownloadUri()));
+                    if (!pkgInfo.hasChecksum() && !noVerify && !pkgInfo.checksumUri().isBlank()) {
+                        final ApiResult<HttpResponse<String>> checksumResult = timings.track("checksum", Helper.fetch(pkgInfo.checksumUri())).join();
+                        if (checksumResult.isOk()) { pkgInfo = pkgInfo.withChecksumFromText(checksumResult.value().body()); }
+                    }
+                    final String filename          = pkgInfo.filename();
+                    final String directDownloadUri = pkgInfo.directDownloadUri();
+                    final String checksum          = pkgInfo.checksum();
+                    final String checksumType      = pkgInfo.checksumType();
+                    if (null == filename) { return 1; }
+                    if (null != installFolder) {
+                        final Optional<Path> stored = noStore || checksum.isBlank() ? Optional.empty() : new PackageStore().findByChecksum(checksum, checksumType, pkg.getSize());
+                        if (stored.isPresent()) { return installFromStore(stored.get(), installFolder, installType, pkg); }
+                        vendorConnection.join();
+                        System.out.println("\nInstalling " + pkg.getFilename() + " to " + installFolder + ":");
+                        return installPkg(directDownloadUri, installFolder, installType, pkg, checksum, checksumType);
+                    }
+                    if (!noStore && !Files.exists(target) && !checksum.isBlank() && serveFromStore(new PackageStore().findByChecksum(checksum, checksumType, pkg.getSize()), target)) { return 0; }
+                    vendorConnection.join();
+                    System.out.println("\nDownloading " + pkg.getFilename() + ":");
+                    int downloadResponse = downloadPkg(directDownloadUri, (null == parsedPath ? pkg.getFilename() : parsedPath + pkg.getFilename()), pkg.getSize(), checksum, checksumType, pkg.getId());
+                    if (0 == downloadResponse) {
+                        if (null == parsedPath) {
+                            System.out.println("\nSuccessfully downloaded JDK pkg to current folder\n");
                         } else {
-                            System.out.println(Ansi.AUTO.string("@|red \nError retrieving direct download uri |@ \n"));
-                            return 1;
+                            System.out.println("\nSuccessfully downloaded JDK pkg to " + (parsedPath + pkg.getFilename()) + "\n");
                         }
+                        return 0;
+                    } else if (2 == downloadResponse) {
+                        System.out.println("\nSelected JDK pkg already exists: " + filename + " \n");
+                        return 0;
+                    } else if (3 == downloadResponse) {
+                        System.out.println(Ansi.AUTO.string("@|red \nChecksum (" + checksumType + ") of " + pkg.getFilename() + " does not match " + checksum + ", downloaded file was deleted |@ \n"));
+                        return 3;
+                    } else {
+                        System.out.println(Ansi.AUTO.string("@|red \nError downloading " + pkg.getFilename() + " from " + directDownloadUri + " |@"));
+                        System.out.println(Ansi.AUTO.string("@|red Run the same command again to resume the download |@ \n"));
+                        return 1;
                     }
                 }
             }
-            return 1;
         } catch (Exception e) {
             System.out.println(Ansi.AUTO.string("@|red \nSomething went wrong, please check your parameters |@ \n"));
             return 1;
+        } finally {
+            // Keep stdout for the json lines of a batch query
+            final PrintStream       out   = null == bq ? System.out : System.err;
+            final RetryPolicy.Stats stats = Helper.getRetryPolicy().getStats();
+            if (timing || stats.hasRetriesOrHedges()) { out.println(Ansi.AUTO.string("@|cyan " + stats + " |@")); }
+            if (timing) { timings.print(out); }
         }
     }
 
@@ -0,0 +1,100 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+
+/**
+ * The result of a request to the Disco API, either a value or the reason
+ * why there is none. Futures of results complete normally in both cases,
+ * so callers that fan out many requests do not need exception handlers.
+ */
+public record ApiResult<T>(T value, int statusCode, Failure failure, String message) {
+    public enum Failure {
+        NONE("ok"),
+        OFFLINE("not available offline"),
+        CONNECT("could not connect to the Disco API"),
+        TIMEOUT("request timed out"),
+        HTTP_STATUS("unexpected status code"),
+        INVALID_RESPONSE("invalid response"),
+        INVALID_REQUEST("invalid request"),
+        INTERRUPTED("interrupted"),
+        OTHER("request failed");
+
+        private final String uiString;
+
+        Failure(final String uiString) { this.uiString = uiString; }
+
+        public String getUiString() { return uiString; }
+    }
+
+
+    // ******************** Methods *******************************************
+    public static <T> ApiResult<T> ok(final T value, final int statusCode) { return new ApiResult<>(value, statusCode, Failure.NONE, ""); }
+
+    public static <T> ApiResult<T> failed(final Failure failure, final int statusCode, final String message) { return new ApiResult<>(null, statusCode, failure, null == message ? failure.getUiString() : message); }
+
+    /**
+     * Maps the exception of a failed request to its failure, wrapping
+     * CompletionExceptions are unwrapped.
+     */
+    public static <T> ApiResult<T> failed(final Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && null != cause.getCause()) { cause = cause.getCause(); }
+        final Failure failure;
+        if (cause instanceof HttpConnectTimeoutException || cause instanceof ConnectException || cause instanceof UnknownHostException || cause instanceof UnresolvedAddressException) {
+            failure = Failure.CONNECT;
+        } else if (cause instanceof HttpTimeoutException) {
+            failure = Failure.TIMEOUT;
+        } else if (cause instanceof InterruptedException) {
+            failure = Failure.INTERRUPTED;
+        } else if (cause instanceof IllegalArgumentException) {
+            failure = Failure.INVALID_REQUEST;
+        } else {
+            failure = Failure.OTHER;
+        }
+        final String detail = null == cause.getMessage() ? cause.getClass().getSimpleName() : cause.getMessage();
+        return failed(failure, -1, detail.equalsIgnoreCase(failure.getUiString()) ? detail : failure.getUiString() + " (" + detail + ")");
+    }
+
+    public boolean isOk() { return Failure.NONE == failure; }
+
+    /**
+     * Converts the value of a successful result, a failed result keeps its failure.
+     * If the mapper throws the result fails with INVALID_RESPONSE.
+     */
+    public <R> ApiResult<R> map(final Function<? super T, ? extends R> mapper) {
+        if (!isOk()) { return new ApiResult<>(null, statusCode, failure, message); }
+        try {
+            return ok(mapper.apply(value), statusCode);
+        } catch (RuntimeException e) {
+            return failed(Failure.INVALID_RESPONSE, statusCode, Failure.INVALID_RESPONSE.getUiString() + " (" + e.getMessage() + ")");
+        }
+    }
+
+    public T orElse(final T other) { return isOk() ? value : other; }
+}
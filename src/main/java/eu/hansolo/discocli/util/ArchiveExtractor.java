@@ -0,0 +1,340 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+
+/**
+ * Extracts tar and zip archives from a stream while it is being read, so
+ * the archive never has to be written to disk. Only the parts of the tar
+ * format that are used by JDK archives are supported (ustar, GNU long
+ * names and pax headers with regular files, directories and links).
+ */
+public class ArchiveExtractor {
+    private static final int     BLOCK_SIZE   = 512;
+    private static final int     BUFFER_SIZE  = 64 * 1024;
+    private static final boolean POSIX        = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    private static final char    TYPE_FILE    = '0';
+    private static final char    TYPE_OLD     = '\0';
+    private static final char    TYPE_HARD    = '1';
+    private static final char    TYPE_SYMLINK = '2';
+    private static final char    TYPE_DIR     = '5';
+    private static final char    TYPE_CONTIG  = '7';
+    private static final char    TYPE_LONG    = 'L';
+    private static final char    TYPE_LINK    = 'K';
+    private static final char    TYPE_PAX     = 'x';
+
+
+    // ******************** Constructors **************************************
+    private ArchiveExtractor() {}
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Extracts the tar stream into the given folder and returns the number
+     * of extracted entries. The stream is read up to the end of archive
+     * marker only.
+     */
+    public static int untar(final InputStream in, final Path folder) throws IOException {
+        final Path                root        = folder.toAbsolutePath().normalize();
+        final byte[]              header      = new byte[BLOCK_SIZE];
+        final byte[]              buffer      = new byte[BUFFER_SIZE];
+        final Map<Path, Integer>  folderModes = new HashMap<>();
+        Map<String, String>       pax         = new HashMap<>();
+        String                    longName    = null;
+        String                    longLink    = null;
+        int                       entries     = 0;
+        while (readBlock(in, header)) {
+            if (isZeroBlock(header)) { break; }
+            final char type     = (char) header[156];
+            final long size     = pax.containsKey("size") ? Long.parseLong(pax.get("size")) : parseNumber(header, 124, 12);
+            final int  mode     = (int) parseNumber(header, 100, 8);
+            final long modified = pax.containsKey("mtime") ? (long) Double.parseDouble(pax.get("mtime")) : parseNumber(header, 136, 12);
+            String name = parseString(header, 0, 100);
+            if (parseString(header, 257, 5).equals("ustar")) {
+                final String prefix = parseString(header, 345, 155);
+                if (!prefix.isEmpty()) { name = prefix + "/" + name; }
+            }
+            if (null != longName)         { name = longName; }
+            if (pax.containsKey("path"))  { name = pax.get("path"); }
+            String link = parseString(header, 157, 100);
+            if (null != longLink)             { link = longLink; }
+            if (pax.containsKey("linkpath")) { link = pax.get("linkpath"); }
+
+            switch (type) {
+                case TYPE_LONG: longName = readString(in, size); continue;
+                case TYPE_LINK: longLink = readString(in, size); continue;
+                case TYPE_PAX : pax      = parsePax(readString(in, size)); continue;
+                default       : break;
+            }
+
+            final Path target = resolve(root, name);
+            switch (type) {
+                case TYPE_FILE:
+                case TYPE_OLD:
+                case TYPE_CONTIG:
+                    if (name.endsWith("/")) {
+                        Files.createDirectories(target);
+                        break;
+                    }
+                    writeFile(in, target, size, buffer);
+                    setMode(target, mode);
+                    Files.setLastModifiedTime(target, FileTime.from(modified, TimeUnit.SECONDS));
+                    skip(in, padding(size));
+                    entries++;
+                    break;
+                case TYPE_DIR:
+                    Files.createDirectories(target);
+                    folderModes.put(target, mode);
+                    skip(in, size + padding(size));
+                    entries++;
+                    break;
+                case TYPE_SYMLINK:
+                    createSymbolicLink(root, target, link);
+                    entries++;
+                    break;
+                case TYPE_HARD:
+                    createLink(target, resolve(root, link));
+                    entries++;
+                    break;
+                default:
+                    // Global pax headers, devices, fifos etc. are not needed for a JDK
+                    skip(in, size + padding(size));
+                    break;
+            }
+            longName = null;
+            longLink = null;
+            pax      = new HashMap<>();
+        }
+        // Apply folder permissions last, a read only folder would prevent extracting its content
+        for (Map.Entry<Path, Integer> entry : folderModes.entrySet()) { setMode(entry.getKey(), entry.getValue()); }
+        return entries;
+    }
+
+    /**
+     * Extracts the zip stream into the given folder and returns the number
+     * of extracted entries. ZipInputStream does not expose unix permissions,
+     * so files in bin folders and the jspawnhelper will be made executable.
+     */
+    public static int unzip(final InputStream in, final Path folder) throws IOException {
+        final Path   root    = folder.toAbsolutePath().normalize();
+        final byte[] buffer  = new byte[BUFFER_SIZE];
+        int          entries = 0;
+        final ZipInputStream zipIn = new ZipInputStream(in);
+        ZipEntry entry;
+        while (null != (entry = zipIn.getNextEntry())) {
+            final Path target = resolve(root, entry.getName());
+            if (entry.isDirectory()) {
+                Files.createDirectories(target);
+            } else {
+                writeFile(zipIn, target, -1, buffer);
+                if (POSIX && isExecutable(target)) { setMode(target, 0755); }
+                if (null != entry.getLastModifiedTime()) { Files.setLastModifiedTime(target, entry.getLastModifiedTime()); }
+            }
+            entries++;
+        }
+        return entries;
+    }
+
+    private static Path resolve(final Path root, final String name) throws IOException {
+        final String cleaned = name.replace('\\', '/');
+        // JDK archives only contain relative entries, an absolute one (/etc/x or C:/x) is an attack
+        if (cleaned.startsWith("/") || cleaned.matches("^[A-Za-z]:.*")) { throw new IOException("Entry " + name + " has an absolute path"); }
+        final Path target = root.resolve(cleaned).normalize();
+        if (!target.startsWith(root)) { throw new IOException("Entry " + name + " is outside of the target folder"); }
+        if (target.equals(root)) { return target; }
+        // A link extracted before must not redirect the entry (e.g. x/y -> .. followed by x/y/z/file)
+        Path folder = root;
+        for (Path part : root.relativize(target.getParent())) {
+            folder = folder.resolve(part);
+            if (Files.isSymbolicLink(folder)) { throw new IOException("Entry " + name + " is below the link " + root.relativize(folder)); }
+            if (!Files.exists(folder, LinkOption.NOFOLLOW_LINKS)) { break; }
+        }
+        return target;
+    }
+
+    private static void writeFile(final InputStream in, final Path target, final long size, final byte[] buffer) throws IOException {
+        final Path parent = target.getParent();
+        if (null != parent) { Files.createDirectories(parent); }
+        // Never write through a link that was extracted before
+        Files.deleteIfExists(target);
+        try (OutputStream out = Files.newOutputStream(target)) {
+            long remaining = size < 0 ? Long.MAX_VALUE : size;
+            while (remaining > 0) {
+                final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    if (size < 0) { break; }
+                    throw new EOFException("Unexpected end of archive in " + target.getFileName());
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    private static void createSymbolicLink(final Path root, final Path target, final String link) throws IOException {
+        final Path linkTarget = Paths.get(link);
+        if (linkTarget.isAbsolute() || !target.getParent().resolve(linkTarget).normalize().startsWith(root)) {
+            throw new IOException("Link " + target.getFileName() + " points outside of the target folder");
+        }
+        Files.createDirectories(target.getParent());
+        Files.deleteIfExists(target);
+        try {
+            Files.createSymbolicLink(target, linkTarget);
+        } catch (UnsupportedOperationException e) {
+            // File system without symbolic links, copy the file once it exists
+            final Path source = target.getParent().resolve(linkTarget).normalize();
+            if (Files.isRegularFile(source)) { Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING); }
+        }
+    }
+
+    private static void createLink(final Path target, final Path existing) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, existing);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(existing, target, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    private static void setMode(final Path target, final int mode) throws IOException {
+        if (!POSIX || mode <= 0 || Files.isSymbolicLink(target)) { return; }
+        final PosixFilePermission[]    values      = PosixFilePermission.values(); // OWNER_READ ... OTHERS_EXECUTE
+        final Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        for (int i = 0; i < values.length; i++) {
+            if ((mode & (1 << (8 - i))) != 0) { permissions.add(values[i]); }
+        }
+        Files.setPosixFilePermissions(target, permissions);
+    }
+
+    private static boolean isExecutable(final Path target) {
+        final Path   parent = target.getParent();
+        final String name   = target.getFileName().toString();
+        return (null != parent && parent.getFileName().toString().equals("bin")) || name.equals("jspawnhelper") || name.equals("jexec");
+    }
+
+    private static boolean readBlock(final InputStream in, final byte[] block) throws IOException {
+        int offset = 0;
+        while (offset < block.length) {
+            final int read = in.read(block, offset, block.length - offset);
+            if (read < 0) {
+                if (offset == 0) { return false; }
+                throw new EOFException("Unexpected end of archive");
+            }
+            offset += read;
+        }
+        return true;
+    }
+
+    private static boolean isZeroBlock(final byte[] block) {
+        for (byte b : block) { if (b != 0) { return false; } }
+        return true;
+    }
+
+    private static String readString(final InputStream in, final long size) throws IOException {
+        if (size > Integer.MAX_VALUE - BLOCK_SIZE) { throw new IOException("Header too large"); }
+        final byte[] bytes = in.readNBytes((int) size);
+        if (bytes.length != size) { throw new EOFException("Unexpected end of archive"); }
+        skip(in, padding(size));
+        int length = bytes.length;
+        while (length > 0 && bytes[length - 1] == 0) { length--; }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Pax records look like "<length> <key>=<value>\n" where length includes the whole record
+    private static Map<String, String> parsePax(final String text) {
+        final Map<String, String> pax      = new HashMap<>();
+        final byte[]              bytes    = text.getBytes(StandardCharsets.UTF_8);
+        int                       position = 0;
+        while (position < bytes.length) {
+            int space = position;
+            while (space < bytes.length && bytes[space] != ' ') { space++; }
+            if (space >= bytes.length) { break; }
+            final int length = Integer.parseInt(new String(bytes, position, space - position, StandardCharsets.US_ASCII).trim());
+            if (length <= 0 || position + length > bytes.length) { break; }
+            final String record = new String(bytes, space + 1, position + length - space - 2, StandardCharsets.UTF_8);
+            final int    equals = record.indexOf('=');
+            if (equals > 0) { pax.put(record.substring(0, equals), record.substring(equals + 1)); }
+            position += length;
+        }
+        return pax;
+    }
+
+    private static String parseString(final byte[] header, final int offset, final int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) { end++; }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    // Numbers are octal strings or, for large values, big endian binary with the high bit of the first byte set
+    private static long parseNumber(final byte[] header, final int offset, final int length) {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7F;
+            for (int i = 1; i < length; i++) { value = (value << 8) | (header[offset + i] & 0xFF); }
+            return value;
+        }
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            final byte b = header[i];
+            if (b == 0 || b == ' ') {
+                if (value > 0) { break; }
+                continue;
+            }
+            if (b < '0' || b > '7') { break; }
+            value = (value << 3) + (b - '0');
+        }
+        return value;
+    }
+
+    private static long padding(final long size) { return (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE; }
+
+    private static void skip(final InputStream in, final long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            final long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) { throw new EOFException("Unexpected end of archive"); }
+                remaining--;
+            } else {
+                remaining -= skipped;
+            }
+        }
+    }
+}
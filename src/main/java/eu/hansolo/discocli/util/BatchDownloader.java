@@ -0,0 +1,283 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import picocli.CommandLine.Help.Ansi;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Downloads the pkgs of a batch manifest. All items are resolved at the
+ * same time over the shared HttpClient, items that resolve to the same
+ * pkg are downloaded only once and the downloads run with a limited
+ * number of jobs, smallest pkg first.
+ */
+public class BatchDownloader {
+    public  static final int      DEFAULT_JOBS = 4;
+    public  static final int      MAX_JOBS     = 16;
+    private final        int      jobs;
+    private final        int      connections;
+    private final        Duration readTimeout;
+    private final        boolean  verify;
+    private final        boolean  useStore;
+
+    public enum Status {
+        DOWNLOADED("downloaded", true),
+        FROM_STORE("from store", true),
+        EXISTS("exists", true),
+        DUPLICATE("duplicate", true),
+        INVALID("invalid", false),
+        NOT_FOUND("not found", false),
+        CHECKSUM_MISMATCH("checksum mismatch", false),
+        FAILED("failed", false);
+
+        private final String  uiString;
+        private final boolean ok;
+
+
+        Status(final String uiString, final boolean ok) {
+            this.uiString = uiString;
+            this.ok       = ok;
+        }
+
+
+        public String getUiString() { return uiString; }
+
+        public boolean isOk() { return ok; }
+    }
+
+    /**
+     * A line of the manifest, either with a valid request or with the error message.
+     */
+    public record Item(int line, String spec, PkgRequest request, String error) {}
+
+    public record Result(Item item, String filename, long bytes, Status status, long millis, String message) {}
+
+    private record Resolved(Pkg pkg, PkgInfo pkgInfo, Status status, String message) {}
+
+
+    // ******************** Constructors **************************************
+    public BatchDownloader(final int jobs, final int connections, final Duration readTimeout, final boolean verify, final boolean useStore) {
+        this.jobs        = Math.max(1, Math.min(MAX_JOBS, jobs));
+        this.connections = connections;
+        this.readTimeout = readTimeout;
+        this.verify      = verify;
+        this.useStore    = useStore;
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Returns the results in the order of the given items.
+     */
+    public List<Result> run(final List<Item> items) {
+        final Result[] results = new Result[items.size()];
+
+        // Resolve all items at once, identical requests are only sent once
+        final Map<String, CompletableFuture<Resolved>> requests = new HashMap<>();
+        final List<CompletableFuture<Resolved>>        resolved = new ArrayList<>(items.size());
+        for (Item item : items) {
+            resolved.add(null == item.request() ? null : requests.computeIfAbsent(item.request().toRequestUri(), uri -> resolve(uri)));
+        }
+        CompletableFuture.allOf(requests.values().toArray(new CompletableFuture[0])).join();
+
+        // Group the items by pkg so that each pkg is downloaded only once
+        final Map<String, List<Integer>> itemsPerPkg = new LinkedHashMap<>();
+        final Map<String, Resolved>      pkgs        = new HashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            final Item item = items.get(i);
+            if (null == item.request()) {
+                results[i] = new Result(item, "", 0, Status.INVALID, 0, item.error());
+                continue;
+            }
+            final Resolved resolvedItem = resolved.get(i).join();
+            if (null == resolvedItem.pkg()) {
+                results[i] = new Result(item, "", 0, resolvedItem.status(), 0, resolvedItem.message());
+                continue;
+            }
+            itemsPerPkg.computeIfAbsent(resolvedItem.pkg().getId(), id -> new ArrayList<>()).add(i);
+            pkgs.put(resolvedItem.pkg().getId(), resolvedItem);
+        }
+
+        // Shortest job first, the thread pool takes the jobs in the order they have been submitted
+        final List<String> order = new ArrayList<>(itemsPerPkg.keySet());
+        order.sort(Comparator.comparingLong(id -> pkgs.get(id).pkg().getSize()));
+
+        // One progress for all downloads
+        final Progress        progress = new Progress("batch", order.stream().mapToLong(id -> Math.max(0, pkgs.get(id).pkg().getSize())).sum());
+        final AtomicInteger   finished = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (String id : order) {
+                futures.add(executor.submit(() -> {
+                    download(pkgs.get(id), itemsPerPkg.get(id), items, results, progress);
+                    final Result result = results[itemsPerPkg.get(id).get(0)];
+                    progress.println(Ansi.AUTO.string("[" + finished.incrementAndGet() + "/" + order.size() + "] " + result.filename() + " " + (result.status().isOk() ? "@|green " : "@|red ") + result.status().getUiString() + " |@"));
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (Exception e) { /* Results of failed jobs are filled in below */ }
+            }
+        } finally {
+            executor.shutdownNow();
+            progress.close();
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (null == results[i]) { results[i] = new Result(items.get(i), "", 0, Status.FAILED, 0, "Unexpected error"); }
+        }
+        return List.of(results);
+    }
+
+    private CompletableFuture<Resolved> resolve(final String requestUri) {
+        return Helper.fetchPkgs(requestUri).thenCompose(pkgs -> {
+            if (!pkgs.isOk()) {
+                return CompletableFuture.completedFuture(new Resolved(null, null, pkgs.statusCode() == 400 ? Status.NOT_FOUND : Status.FAILED, pkgs.message()));
+            }
+            if (pkgs.value().isEmpty()) { return CompletableFuture.completedFuture(new Resolved(null, null, Status.NOT_FOUND, "Pkg not found in Disco API")); }
+            final Pkg pkg = pkgs.value().get(0);
+            return Helper.fetch(Helper.getApiUrl() + Constants.IDS_ENDPOINT + pkg.getId()).thenCompose(idsResult -> {
+                final Optional<PkgInfo> pkgInfo = idsResult.isOk() ? PkgInfo.fromJson(idsResult.value().body()) : Optional.empty();
+                if (pkgInfo.isEmpty()) { return CompletableFuture.completedFuture(new Resolved(null, null, Status.FAILED, idsResult.isOk() ? "Error retrieving direct download uri" : idsResult.message())); }
+                final PkgInfo info = pkgInfo.get();
+                if (!verify || info.hasChecksum() || info.checksumUri().isBlank()) { return CompletableFuture.completedFuture(new Resolved(pkg, info, null, "")); }
+                return Helper.fetch(info.checksumUri()).thenApply(checksumResult -> new Resolved(pkg, checksumResult.isOk() ? info.withChecksumFromText(checksumResult.value().body()) : info, null, ""));
+            });
+        }).exceptionally(throwable -> new Resolved(null, null, Status.FAILED, "Error retrieving pkg info from Disco API"));
+    }
+
+    private void download(final Resolved resolved, final List<Integer> indices, final List<Item> items, final Result[] results, final Progress progress) {
+        final Pkg          pkg      = resolved.pkg();
+        final PkgInfo      pkgInfo  = resolved.pkgInfo();
+        final PackageStore store    = new PackageStore();
+        final Item         first    = items.get(indices.get(0));
+        final Path         target   = Paths.get(first.request().getTarget(pkg.getFilename()));
+        final long         start    = System.currentTimeMillis();
+        Status             status;
+        String             message  = "";
+        long               bytes    = 0;
+        if (Files.exists(target)) {
+            status = Status.EXISTS;
+        } else {
+            final Optional<Path> stored = useStore ? store.findById(pkg.getId(), pkg.getSize()).or(() -> store.findByChecksum(pkgInfo.checksum(), pkgInfo.checksumType(), pkg.getSize())) : Optional.empty();
+            if (stored.isPresent() && materialize(store, stored.get(), target)) {
+                status = Status.FROM_STORE;
+            } else {
+                final Downloader downloader = new Downloader(connections, readTimeout);
+                downloader.setProgress(progress);
+                final int result = verify ? downloader.download(pkgInfo.directDownloadUri(), target.toString(), pkg.getSize(), pkgInfo.checksum(), pkgInfo.checksumType())
+                                          : downloader.download(pkgInfo.directDownloadUri(), target.toString(), pkg.getSize());
+                switch (result) {
+                    case Downloader.DOWNLOAD_OK:
+                        status = Status.DOWNLOADED;
+                        bytes  = pkg.getSize();
+                        if (useStore) {
+                            final boolean verified = downloader.isChecksumVerified();
+                            store.add(target, pkg.getId(), verified ? pkgInfo.checksum() : "", verified ? pkgInfo.checksumType() : "");
+                        }
+                        break;
+                    case Downloader.DOWNLOAD_EXISTS:
+                        status = Status.EXISTS;
+                        break;
+                    case Downloader.CHECKSUM_MISMATCH:
+                        status  = Status.CHECKSUM_MISMATCH;
+                        message = "Checksum (" + pkgInfo.checksumType() + ") does not match " + pkgInfo.checksum();
+                        break;
+                    default:
+                        status  = Status.FAILED;
+                        message = "Error downloading from " + pkgInfo.directDownloadUri();
+                        break;
+                }
+            }
+        }
+        // Pkgs that have not been downloaded do not count for the overall progress
+        if (Status.DOWNLOADED != status) { progress.addTotal(-Math.max(0, pkg.getSize())); }
+        results[indices.get(0)] = new Result(first, pkg.getFilename(), bytes, status, System.currentTimeMillis() - start, message);
+
+        // Other items with the same pkg get a link or copy of the downloaded file
+        for (int i = 1; i < indices.size(); i++) {
+            final Item item       = items.get(indices.get(i));
+            final Path itemTarget = Paths.get(item.request().getTarget(pkg.getFilename()));
+            if (itemTarget.toAbsolutePath().normalize().equals(target.toAbsolutePath().normalize()) || !status.isOk()) {
+                results[indices.get(i)] = new Result(item, pkg.getFilename(), 0, status.isOk() ? Status.DUPLICATE : status, 0, "Same pkg as line " + first.line());
+            } else if (Files.exists(itemTarget)) {
+                results[indices.get(i)] = new Result(item, pkg.getFilename(), 0, Status.EXISTS, 0, "");
+            } else {
+                final boolean linked = materialize(store, target, itemTarget);
+                results[indices.get(i)] = new Result(item, pkg.getFilename(), 0, linked ? Status.DUPLICATE : Status.FAILED, 0, "Same pkg as line " + first.line());
+            }
+        }
+    }
+
+    private static boolean materialize(final PackageStore store, final Path source, final Path target) {
+        try {
+            store.materialize(source, target);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Prints a table with one row per manifest item followed by the overall throughput.
+     */
+    public static void printResults(final List<Result> results, final long millis) {
+        final int nameWidth = Math.max(3, results.stream().mapToInt(result -> result.filename().length()).max().orElse(3));
+        final String format = "%5s  %-" + nameWidth + "s  %10s  %-17s  %8s  %s";
+        System.out.println();
+        System.out.println(Ansi.AUTO.string("@|bold " + String.format(Locale.ENGLISH, format, "Line", "Pkg", "Size", "Status", "Time", "Message") + " |@"));
+        long downloaded = 0;
+        int  failed     = 0;
+        for (Result result : results) {
+            final String row = String.format(Locale.ENGLISH, format, result.item().line(), result.filename().isEmpty() ? "-" : result.filename(), result.bytes() > 0 ? toMegaBytes(result.bytes()) : "-",
+                                             result.status().getUiString(), result.millis() > 0 ? String.format(Locale.ENGLISH, "%.1f s", result.millis() / 1000.0) : "-",
+                                             null == result.message() ? "" : result.message());
+            System.out.println(Ansi.AUTO.string((result.status().isOk() ? "@|green " : "@|red ") + row + " |@"));
+            downloaded += result.bytes();
+            if (!result.status().isOk()) { failed++; }
+        }
+        final double seconds = Math.max(0.001, millis / 1000.0);
+        System.out.println();
+        System.out.println(String.format(Locale.ENGLISH, "%d items, %d failed, downloaded %s in %.1f s (%.1f MB/s)", results.size(), failed, toMegaBytes(downloaded), seconds, downloaded / 1024.0 / 1024.0 / seconds));
+        System.out.println();
+    }
+
+    private static String toMegaBytes(final long bytes) { return String.format(Locale.ENGLISH, "%.1f MB", bytes / 1024.0 / 1024.0); }
+}
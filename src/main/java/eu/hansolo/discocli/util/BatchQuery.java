@@ -0,0 +1,230 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import com.google.gson.stream.JsonWriter;
+import eu.hansolo.discocli.util.PkgIndex.Dimension;
+import eu.hansolo.jdktools.Architecture;
+import eu.hansolo.jdktools.ArchiveType;
+import eu.hansolo.jdktools.LibCType;
+import eu.hansolo.jdktools.OperatingSystem;
+import eu.hansolo.jdktools.PackageType;
+import eu.hansolo.jdktools.ReleaseStatus;
+import eu.hansolo.jdktools.util.OutputFormat;
+import eu.hansolo.jdktools.versioning.VersionNumber;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Answers many update (-fu) and resolve specs with a few requests. The
+ * specs are grouped by distribution, major version, operating system,
+ * architecture and package type, every group is one latest=all_of_version
+ * query (all queries run at the same time) and every spec is filtered
+ * locally from the pkgs of its group.
+ */
+public class BatchQuery {
+    public enum Type {
+        UPDATE, RESOLVE;
+
+        public String getApiString() { return name().toLowerCase(Locale.ENGLISH); }
+    }
+
+    public enum Status {
+        OK, NOT_FOUND, ERROR;
+
+        public String getApiString() { return name().toLowerCase(Locale.ENGLISH); }
+    }
+
+    private final List<Spec>                                              specs;
+    private final Map<Group, CompletableFuture<ApiResult<PkgIndex<Pkg>>>> queries;
+
+    /**
+     * The pkgs of one upstream query.
+     */
+    public record Group(Distribution distro, int majorVersion, OperatingSystem operatingSystem, Architecture architecture, PackageType packageType) {
+        public String toRequestUri(final boolean includeEA) {
+            return Helper.getPkgsForDistributionAndMajorVersionUri(distro, majorVersion, operatingSystem, null, architecture, packageType, null, includeEA);
+        }
+    }
+
+    /**
+     * One line of the input. Update specs return all newer pkgs, resolve
+     * specs the pkg that a download with the same parameters would get.
+     */
+    public record Spec(int line, String text, Type type, Group group, JavaVersion version, LibCType libcType, ArchiveType archiveType, boolean ea, boolean fx, String error) {
+
+        public static Spec invalid(final int line, final String text, final String error) {
+            return new Spec(line, text, Type.UPDATE, null, null, null, null, false, false, error);
+        }
+
+        /**
+         * Parses DISTRO,VERSION,OPERATING SYSTEM,ARCHITECTURE,PACKAGE TYPE,EA(optional),FX(optional) like -fu.
+         */
+        public static Spec update(final int line, final String text) {
+            final String[] parts = text.split(",");
+            if (parts.length < 5) { return invalid(line, text, "Please specify the distribution e.g. zulu,18,macos,x64,jdk,ea,fx"); }
+            final Distribution    distro          = Distributions.resolve(parts[0].trim());
+            final OperatingSystem operatingSystem = OperatingSystem.fromText(parts[2].trim());
+            final Architecture    architecture    = Architecture.fromText(parts[3].trim());
+            final PackageType     packageType     = PackageType.fromText(parts[4].trim());
+            if (null                      == distro          ||
+                OperatingSystem.NOT_FOUND == operatingSystem ||
+                Architecture.NOT_FOUND    == architecture    ||
+                PackageType.NOT_FOUND     == packageType) {
+                return invalid(line, text, "Please check your parameters e.g. DISTRO,VERSION,OPERATING SYSTEM,ARCHITECTURE,PACKAGE TYPE,FX(optional)");
+            }
+            final VersionNumber versionNumber;
+            try {
+                versionNumber = VersionNumber.fromText(parts[1].trim());
+            } catch (IllegalArgumentException e) {
+                return invalid(line, text, "Version number cannot be parsed");
+            }
+            final boolean earlyAccess   = parts.length >= 6 && parts[5].trim().equalsIgnoreCase("ea");
+            final boolean javafxBundled = (parts.length == 6 && parts[5].trim().equalsIgnoreCase("fx")) || (parts.length >= 7 && parts[6].trim().equalsIgnoreCase("fx"));
+            final Group   group         = new Group(distro, versionNumber.getFeature().getAsInt(), operatingSystem, architecture, packageType);
+            return new Spec(line, text, Type.UPDATE, group, toJavaVersion(versionNumber), operatingSystem.getLibCType(), null, earlyAccess, javafxBundled, null);
+        }
+
+        /**
+         * A spec with the parameters of a download (e.g. -d zulu -v 17 -os linux).
+         */
+        public static Spec resolve(final int line, final String text, final PkgRequest request) {
+            if (null == request.versionNumber()) { return invalid(line, text, "Please specify a version (e.g. -v 17)"); }
+            if (request.lts() || request.find())  { return invalid(line, text, "-latest-lts and -find are not supported in a batch query"); }
+            final Group group = new Group(request.distro(), request.versionNumber().getFeature().getAsInt(), request.operatingSystem(), request.architecture(), request.packageType());
+            return new Spec(line, text, Type.RESOLVE, group, toJavaVersion(request.versionNumber()), request.libcType(), request.archiveType(), request.ea(), request.fx(), null);
+        }
+
+        public boolean isValid() { return null == error; }
+
+        /**
+         * The matching pkgs of the given group, latest first.
+         */
+        public List<Pkg> select(final PkgIndex<Pkg> index) {
+            final PkgIndex<Pkg>.Query query = index.query().where(Dimension.LIB_C_TYPE, libcType.getApiString());
+            if (!ea) { query.where(Dimension.RELEASE_STATUS, ReleaseStatus.GA.getApiString()); }
+            if (Type.UPDATE == type) {
+                query.where(Dimension.JAVAFX_BUNDLED, fx);
+                if (!ea) { query.newerThan(version); }
+                return query.listDescending();
+            }
+            query.where(Dimension.ARCHIVE_TYPE, archiveType.getApiString()).where(Dimension.DIRECTLY_DOWNLOADABLE, true);
+            if (fx) { query.where(Dimension.JAVAFX_BUNDLED, true); }
+            return query.version(version, false).newest().map(List::of).orElse(List.of());
+        }
+
+        private static JavaVersion toJavaVersion(final VersionNumber versionNumber) {
+            return JavaVersion.fromText(versionNumber.toString(OutputFormat.REDUCED_COMPRESSED, true, false));
+        }
+    }
+
+    /**
+     * The answer to one spec.
+     */
+    public record Result(Spec spec, Status status, List<Pkg> pkgs, String message) {
+
+        /**
+         * The result as one line of json.
+         */
+        public String toJson() {
+            final StringWriter out = new StringWriter();
+            try (JsonWriter writer = new JsonWriter(out)) {
+                writer.beginObject()
+                      .name("line").value(spec.line())
+                      .name("spec").value(spec.text())
+                      .name("type").value(spec.type().getApiString())
+                      .name("status").value(status.getApiString());
+                if (!message.isEmpty()) { writer.name("message").value(message); }
+                writer.name("pkgs").beginArray();
+                for (Pkg pkg : pkgs) {
+                    writer.beginObject()
+                          .name(Pkg.FIELD_ID).value(pkg.getId())
+                          .name(Pkg.FIELD_DISTRIBUTION).value(pkg.getDistribution().apiString())
+                          .name(Pkg.FIELD_JAVA_VERSION).value(pkg.getJavaVersion().getVersionNumber().toString(OutputFormat.REDUCED_COMPRESSED, true, ReleaseStatus.EA == pkg.getReleaseStatus()))
+                          .name(Pkg.FIELD_RELEASE_STATUS).value(pkg.getReleaseStatus().getApiString())
+                          .name(Pkg.FIELD_OPERATING_SYSTEM).value(pkg.getOperatingSystem().getApiString())
+                          .name(Pkg.FIELD_LIB_C_TYPE).value(pkg.getLibCType().getApiString())
+                          .name(Pkg.FIELD_ARCHITECTURE).value(pkg.getArchitecture().getApiString())
+                          .name(Pkg.FIELD_PACKAGE_TYPE).value(pkg.getPackageType().getApiString())
+                          .name(Pkg.FIELD_ARCHIVE_TYPE).value(pkg.getArchiveType().getApiString())
+                          .name(Pkg.FIELD_JAVAFX_BUNDLED).value(pkg.isJavaFXBundled())
+                          .name(Pkg.FIELD_DIRECTLY_DOWNLOADABLE).value(pkg.isDirectlyDownloadable())
+                          .name(Pkg.FIELD_FILENAME).value(pkg.getFilename())
+                          .name(Pkg.FIELD_SIZE).value(pkg.getSize())
+                          .endObject();
+                }
+                writer.endArray().endObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toString();
+        }
+    }
+
+
+    // ******************** Constructors **************************************
+    public BatchQuery(final List<Spec> specs) {
+        this.specs   = List.copyOf(specs);
+        this.queries = new LinkedHashMap<>();
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Sends one query per group (early access pkgs are included if one
+     * spec of the group asks for them) and returns the results in the
+     * order of the specs. Every future completes when the query of its
+     * group is done, so the results can be written as they arrive.
+     */
+    public List<CompletableFuture<Result>> run() {
+        final Map<Group, Boolean> groups = new LinkedHashMap<>();
+        specs.stream().filter(Spec::isValid).forEach(spec -> groups.merge(spec.group(), spec.ea(), Boolean::logicalOr));
+        groups.forEach((group, includeEA) -> queries.put(group, Helper.fetchPkgs(group.toRequestUri(includeEA)).thenApply(result -> result.map(PkgIndex::of))));
+
+        final List<CompletableFuture<Result>> results = new ArrayList<>(specs.size());
+        for (Spec spec : specs) {
+            if (!spec.isValid()) {
+                results.add(CompletableFuture.completedFuture(new Result(spec, Status.ERROR, List.of(), spec.error())));
+                continue;
+            }
+            results.add(queries.get(spec.group()).thenApply(result -> {
+                if (!result.isOk()) { return new Result(spec, Status.ERROR, List.of(), result.message()); }
+                final List<Pkg> pkgs = spec.select(result.value());
+                return new Result(spec, Type.RESOLVE == spec.type() && pkgs.isEmpty() ? Status.NOT_FOUND : Status.OK, pkgs, "");
+            }));
+        }
+        return results;
+    }
+
+    public int getNoOfSpecs() { return specs.size(); }
+
+    /**
+     * The number of upstream queries, valid after run().
+     */
+    public int getNoOfQueries() { return queries.size(); }
+}
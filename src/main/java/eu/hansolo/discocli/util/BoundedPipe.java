@@ -0,0 +1,167 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Connects two pipeline stages running in different threads with a
+ * bounded queue of byte chunks. Other than PipedInputStream/PipedOutputStream
+ * it hands over whole chunks and wakes up the reader immediately. The
+ * writer blocks as soon as the given number of chunks is waiting.
+ */
+public class BoundedPipe {
+    private static final byte[]                EOF = new byte[0];
+    private final        int                   chunkSize;
+    private final        BlockingQueue<byte[]> queue;
+    private final        InputStream           inputStream;
+    private final        OutputStream          outputStream;
+    private volatile     Throwable             failure;
+    private volatile     boolean               readerClosed;
+
+
+    // ******************** Constructors **************************************
+    public BoundedPipe(final int chunks, final int chunkSize) {
+        this.chunkSize    = chunkSize;
+        this.queue        = new ArrayBlockingQueue<>(chunks + 1); // Leave room for the end marker
+        this.inputStream  = new PipeInputStream();
+        this.outputStream = new PipeOutputStream();
+    }
+
+
+    // ******************** Methods *******************************************
+    public InputStream getInputStream() { return inputStream; }
+
+    public OutputStream getOutputStream() { return outputStream; }
+
+    /**
+     * Called by the writer if it failed, the reader will get the failure
+     * as IOException once it consumed the chunks written before.
+     */
+    public void fail(final Throwable throwable) {
+        failure = throwable;
+        if (!queue.offer(EOF)) {
+            queue.clear();
+            queue.offer(EOF);
+        }
+    }
+
+
+    // ******************** Inner Classes *************************************
+    private class PipeOutputStream extends OutputStream {
+        private byte[]  chunk = new byte[chunkSize];
+        private int     position;
+        private boolean closed;
+
+
+        @Override public void write(final int b) throws IOException {
+            chunk[position++] = (byte) b;
+            if (position == chunk.length) { flush(); }
+        }
+
+        @Override public void write(final byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                final int count = Math.min(length, chunk.length - position);
+                System.arraycopy(bytes, offset, chunk, position, count);
+                position += count;
+                offset   += count;
+                length   -= count;
+                if (position == chunk.length) { flush(); }
+            }
+        }
+
+        @Override public void flush() throws IOException {
+            if (position == 0) { return; }
+            final byte[] full = position == chunk.length ? chunk : Arrays.copyOf(chunk, position);
+            put(full);
+            chunk    = new byte[chunkSize];
+            position = 0;
+        }
+
+        @Override public void close() throws IOException {
+            if (closed) { return; }
+            closed = true;
+            flush();
+            put(EOF);
+        }
+
+        private void put(final byte[] bytes) throws IOException {
+            try {
+                while (!queue.offer(bytes, 100, TimeUnit.MILLISECONDS)) {
+                    if (readerClosed) { throw new IOException("Pipe closed by reader"); }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    private class PipeInputStream extends InputStream {
+        private byte[] chunk;
+        private int    position;
+
+
+        @Override public int read() throws IOException {
+            if (!fill()) { return -1; }
+            return chunk[position++] & 0xFF;
+        }
+
+        @Override public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            if (length == 0) { return 0; }
+            if (!fill()) { return -1; }
+            final int count = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override public int available() { return null == chunk || chunk == EOF ? 0 : chunk.length - position; }
+
+        @Override public void close() {
+            readerClosed = true;
+            queue.clear();
+        }
+
+        private boolean fill() throws IOException {
+            while (chunk != EOF && (null == chunk || position == chunk.length)) {
+                try {
+                    chunk    = queue.take();
+                    position = 0;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (chunk == EOF) {
+                if (null != failure) { throw failure instanceof IOException ? (IOException) failure : new IOException(failure); }
+                return false;
+            }
+            return true;
+        }
+    }
+}
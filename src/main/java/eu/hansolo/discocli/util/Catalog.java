@@ -0,0 +1,306 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import eu.hansolo.discocli.util.PkgIndex.Dimension;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+
+/**
+ * Local snapshot of the package catalog of the Disco API. The pkgs of
+ * each distribution are stored as returned by the packages endpoint in
+ * <catalog>/<distro>.json together with the validators of the response,
+ * so that a later sync only transfers the distributions that changed.
+ * In offline mode the packages requests are answered from the snapshot.
+ */
+public class Catalog {
+    public  static final Duration SYNC_TIMEOUT      = Duration.ofSeconds(60);
+    private static final String   KEY_ETAG          = "etag";
+    private static final String   KEY_LAST_MODIFIED = "last_modified";
+    private static final String   KEY_SHA256        = "sha256";
+    private static final String   KEY_PKGS          = "pkgs";
+    private static final String   KEY_SYNCED        = "synced";
+    private static final String   FIELD_RESULT      = "result";
+    private final        Path                                  root;
+    private final        Map<String, PkgIndex<JsonObject>>     loaded;
+
+    public enum SyncState { UPDATED, UNCHANGED, FAILED }
+
+    public record SyncResult(Distribution distro, SyncState state, int pkgs, long bytes) {}
+
+
+    // ******************** Constructors **************************************
+    public Catalog() {
+        this(Paths.get(Constants.CATALOG_FOLDER));
+    }
+    public Catalog(final Path root) {
+        this.root   = root;
+        this.loaded = new ConcurrentHashMap<>();
+    }
+
+
+    // ******************** Methods *******************************************
+    public Path getRoot() { return root; }
+
+    public boolean isEmpty() {
+        return Distributions.getAll().stream().noneMatch(distro -> Files.isRegularFile(getSnapshot(distro.apiString())));
+    }
+
+    /**
+     * Fetches the pkgs of all distributions, paced by the rate limit of the
+     * api client. The list of distributions is refreshed first so new
+     * vendors are included.
+     * Distributions that did not change since the last sync (304 or same
+     * content) are not written again.
+     */
+    public List<SyncResult> sync() {
+        Distributions.refresh().join();
+        final List<CompletableFuture<SyncResult>> futures = Distributions.getAll().stream().map(this::sync).collect(Collectors.toList());
+        return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+
+    private CompletableFuture<SyncResult> sync(final Distribution distro) {
+        final String     apiString  = distro.apiString();
+        final Properties meta       = loadMeta(apiString);
+        final boolean    hasLocal   = Files.isRegularFile(getSnapshot(apiString));
+        final String     uri        = new StringBuilder().append(Helper.getApiUrl()).append(Constants.PACKAGES_ENDPOINT)
+                                                         .append("?distro=").append(apiString)
+                                                         .append("&release_status=ga&release_status=ea")
+                                                         .toString();
+        final HttpRequest.Builder builder = HttpRequest.newBuilder()
+                                                       .GET()
+                                                       .uri(URI.create(uri))
+                                                       .setHeader("Accept", "application/json")
+                                                       .setHeader("Accept-Encoding", ContentEncoding.ACCEPT_ENCODING)
+                                                       .setHeader("User-Agent", "DiscoCLI")
+                                                       .timeout(SYNC_TIMEOUT);
+        if (hasLocal && !meta.getProperty(KEY_ETAG, "").isEmpty())          { builder.setHeader("If-None-Match", meta.getProperty(KEY_ETAG)); }
+        if (hasLocal && !meta.getProperty(KEY_LAST_MODIFIED, "").isEmpty()) { builder.setHeader("If-Modified-Since", meta.getProperty(KEY_LAST_MODIFIED)); }
+
+        // The requests of all distributions go through the rate limit and are retried like every other api request
+        return Helper.sendAsync(builder.build()).handle((response, throwable) -> {
+            if (null != throwable) { return new SyncResult(distro, SyncState.FAILED, 0, 0); }
+            if (response.statusCode() == 304 && hasLocal) {
+                return new SyncResult(distro, SyncState.UNCHANGED, Integer.parseInt(meta.getProperty(KEY_PKGS, "0")), 0);
+            }
+            if (response.statusCode() != 200 || null == response.body()) { return new SyncResult(distro, SyncState.FAILED, 0, 0); }
+
+            final String body   = response.body();
+            final byte[] bytes  = body.getBytes(StandardCharsets.UTF_8);
+            final String sha256 = sha256(bytes);
+            final int    pkgs   = count(body);
+            if (pkgs < 0) { return new SyncResult(distro, SyncState.FAILED, 0, bytes.length); }
+
+            meta.setProperty(KEY_ETAG, response.headers().firstValue("ETag").orElse(""));
+            meta.setProperty(KEY_LAST_MODIFIED, response.headers().firstValue("Last-Modified").orElse(""));
+            meta.setProperty(KEY_SYNCED, Long.toString(System.currentTimeMillis()));
+            final boolean changed = !hasLocal || !sha256.equals(meta.getProperty(KEY_SHA256, ""));
+            try {
+                Files.createDirectories(root);
+                if (changed) { write(getSnapshot(apiString), bytes); }
+                meta.setProperty(KEY_SHA256, sha256);
+                meta.setProperty(KEY_PKGS, Integer.toString(pkgs));
+                saveMeta(apiString, meta);
+            } catch (IOException e) {
+                return new SyncResult(distro, SyncState.FAILED, 0, bytes.length);
+            }
+            loaded.remove(apiString);
+            return new SyncResult(distro, changed ? SyncState.UPDATED : SyncState.UNCHANGED, pkgs, bytes.length);
+        });
+    }
+
+    /**
+     * Answers a request to the packages endpoint of the Disco API from the
+     * snapshot, returns an empty optional for all other endpoints.
+     */
+    public Optional<String> query(final String uri) {
+        final URI parsed = URI.create(uri);
+        if (null == parsed.getPath() || !parsed.getPath().endsWith("/" + Constants.PACKAGES_ENDPOINT)) { return Optional.empty(); }
+
+        final Map<String, List<String>> params = parseQuery(parsed.getRawQuery());
+        final String                    distro = first(params, "distro");
+        final PkgIndex<JsonObject>      index  = null == distro ? null : load(distro);
+        if (null == index) { return Optional.empty(); }
+
+        final String       version       = first(params, "version");
+        final List<String> releaseStatus = params.getOrDefault("release_status", List.of());
+        final String       latest        = first(params, "latest");
+
+        final PkgIndex<JsonObject>.Query query = index.query();
+        where(query, Dimension.OPERATING_SYSTEM, first(params, "operating_system"));
+        where(query, Dimension.LIB_C_TYPE, first(params, "lib_c_type"));
+        where(query, Dimension.ARCHITECTURE, first(params, "architecture"));
+        where(query, Dimension.ARCHIVE_TYPE, first(params, "archive_type"));
+        where(query, Dimension.PACKAGE_TYPE, first(params, "package_type"));
+        if (!releaseStatus.isEmpty())                                                                                   { query.where(Dimension.RELEASE_STATUS, releaseStatus.toArray(new String[0])); }
+        if ("true".equals(first(params, "javafx_bundled")))                                                             { query.where(Dimension.JAVAFX_BUNDLED, true); }
+        if ("true".equals(first(params, "directly_downloadable")) || "true".equals(first(params, "directlyDownloadable"))) { query.where(Dimension.DIRECTLY_DOWNLOADABLE, true); }
+        if ("latest_lts".equals(first(params, "version_by_definition")))                                                { query.where(Dimension.TERM_OF_SUPPORT, "lts"); }
+        if (null != version)                                                                                            { query.version(JavaVersion.fromText(version), null == latest); }
+        // latest=available only keeps the pkgs of the newest version that matches
+        if ("available".equals(latest))                                                                                 { query.latest(); }
+        final List<JsonObject> found = query.list();
+
+        final JsonArray result = new JsonArray();
+        found.forEach(result::add);
+        final JsonObject response = new JsonObject();
+        response.add(FIELD_RESULT, result);
+        response.addProperty("message", found.isEmpty() ? "No pkgs found in local catalog" : "");
+        return Optional.of(response.toString());
+    }
+
+    private PkgIndex<JsonObject> load(final String distro) {
+        return loaded.computeIfAbsent(distro.toLowerCase(), apiString -> {
+            final List<JsonObject> pkgs     = new ArrayList<>();
+            final Path             snapshot = getSnapshot(apiString);
+            if (Files.isRegularFile(snapshot)) {
+                try (Reader reader = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8)) {
+                    final JsonElement element = JsonParser.parseReader(reader);
+                    if (element.isJsonObject() && element.getAsJsonObject().has(FIELD_RESULT)) {
+                        for (JsonElement pkg : element.getAsJsonObject().getAsJsonArray(FIELD_RESULT)) {
+                            if (pkg.isJsonObject()) { pkgs.add(pkg.getAsJsonObject()); }
+                        }
+                    }
+                } catch (IOException | RuntimeException e) { /* Treat a broken snapshot as empty */ }
+            }
+            return new PkgIndex<>(pkgs, Catalog::getKey, pkg -> string(pkg, Pkg.FIELD_JAVA_VERSION));
+        });
+    }
+
+    private static String getKey(final JsonObject pkg, final Dimension dimension) {
+        switch (dimension) {
+            case DISTRIBUTION         : return string(pkg, Pkg.FIELD_DISTRIBUTION);
+            case OPERATING_SYSTEM     : return string(pkg, Pkg.FIELD_OPERATING_SYSTEM);
+            case LIB_C_TYPE           : return string(pkg, Pkg.FIELD_LIB_C_TYPE);
+            case ARCHITECTURE         : return string(pkg, Pkg.FIELD_ARCHITECTURE);
+            case PACKAGE_TYPE         : return string(pkg, Pkg.FIELD_PACKAGE_TYPE);
+            case ARCHIVE_TYPE         : return string(pkg, Pkg.FIELD_ARCHIVE_TYPE);
+            case RELEASE_STATUS       : return string(pkg, Pkg.FIELD_RELEASE_STATUS);
+            case TERM_OF_SUPPORT      : return string(pkg, Pkg.FIELD_TERM_OF_SUPPORT);
+            case JAVAFX_BUNDLED       : return Boolean.toString(bool(pkg, Pkg.FIELD_JAVAFX_BUNDLED));
+            case DIRECTLY_DOWNLOADABLE: return Boolean.toString(bool(pkg, Pkg.FIELD_DIRECTLY_DOWNLOADABLE));
+            default                   : return null;
+        }
+    }
+
+    private static void where(final PkgIndex<JsonObject>.Query query, final Dimension dimension, final String value) {
+        if (null != value) { query.where(dimension, value); }
+    }
+
+    private Path getSnapshot(final String apiString) { return root.resolve(apiString + ".json"); }
+
+    private Properties loadMeta(final String apiString) {
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(root.resolve(apiString + ".properties"))) {
+            properties.load(in);
+        } catch (IOException e) { /* No previous sync */ }
+        return properties;
+    }
+
+    private void saveMeta(final String apiString, final Properties properties) throws IOException {
+        final Path tmp = root.resolve(apiString + ".properties.tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            properties.store(out, "DiscoCLI catalog");
+        }
+        move(tmp, root.resolve(apiString + ".properties"));
+    }
+
+    private static void write(final Path target, final byte[] bytes) throws IOException {
+        final Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(tmp, bytes);
+        move(tmp, target);
+    }
+
+    private static void move(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static int count(final String body) {
+        try {
+            final JsonElement element = JsonParser.parseString(body);
+            if (!element.isJsonObject() || !element.getAsJsonObject().has(FIELD_RESULT)) { return -1; }
+            return element.getAsJsonObject().getAsJsonArray(FIELD_RESULT).size();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static String sha256(final byte[] bytes) {
+        return HexFormat.of().formatHex(Helper.getMessageDigest("sha256").digest(bytes));
+    }
+
+    private static Map<String, List<String>> parseQuery(final String rawQuery) {
+        final Map<String, List<String>> params = new HashMap<>();
+        if (null == rawQuery) { return params; }
+        for (String param : rawQuery.split("&")) {
+            if (param.isEmpty()) { continue; }
+            final int    index = param.indexOf('=');
+            final String name  = URLDecoder.decode(index < 0 ? param : param.substring(0, index), StandardCharsets.UTF_8);
+            final String value = index < 0 ? "" : URLDecoder.decode(param.substring(index + 1), StandardCharsets.UTF_8);
+            params.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+        }
+        return params;
+    }
+
+    private static String first(final Map<String, List<String>> params, final String name) {
+        final List<String> values = params.get(name);
+        return null == values || values.isEmpty() ? null : values.get(0);
+    }
+
+    private static String string(final JsonObject pkg, final String field) {
+        final JsonElement element = pkg.get(field);
+        return null == element || element.isJsonNull() ? "" : element.getAsString();
+    }
+
+    private static boolean bool(final JsonObject pkg, final String field) {
+        final JsonElement element = pkg.get(field);
+        return null != element && !element.isJsonNull() && element.getAsBoolean();
+    }
+}
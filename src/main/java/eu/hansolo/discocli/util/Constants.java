@@ -26,12 +26,20 @@ public class Constants {
     private Constants() {}
 
     public static final String HOME_FOLDER               = new StringBuilder(System.getProperty("user.home")).append(File.separator).toString();
+    public static final String DISCOCLI_FOLDER           = new StringBuilder(HOME_FOLDER).append(".discocli").append(File.separator).toString();
+    public static final String STORE_FOLDER              = new StringBuilder(DISCOCLI_FOLDER).append("store").append(File.separator).toString();
+    public static final String CACHE_FOLDER              = new StringBuilder(DISCOCLI_FOLDER).append("cache").append(File.separator).toString();
+    public static final String CATALOG_FOLDER            = new StringBuilder(DISCOCLI_FOLDER).append("catalog").append(File.separator).toString();
+    public static final String MOCK_FOLDER               = new StringBuilder(DISCOCLI_FOLDER).append("mock").append(File.separator).toString();
     public static final String DISCO_API_URL             = "https://api.foojay.io/disco/v3.0/";
+    public static final String API_URL_PROPERTY          = "discocli.api.url";
+    public static final String API_URL_ENV               = "DISCOCLI_API_URL";
     public static final String DISTRIBUTIONS_ENDPOINT    = "distributions";
     public static final String MAJOR_VERSIONS_ENDPOINT   = "major_versions";
     public static final String PACKAGES_ENDPOINT         = "packages";
     public static final String IDS_ENDPOINT              = "ids/";
     public static final String DISTRIBUTION_JSON         = "distributions.json";
+    public static final String JDK_INDEX_JSON            = "jdks.json";
     public static final String FIELD_FILENAME            = "filename";
     public static final String FIELD_JAVA_VERSION        = "java_version";
     public static final String FIELD_DIRECT_DOWNLOAD_URI = "direct_download_uri";
@@ -0,0 +1,135 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+
+/**
+ * Compressed responses of the Disco API. The HttpClient does not decode
+ * a Content-Encoding by itself, so the requests advertise gzip and
+ * deflate and the body handlers in here decompress what arrives.
+ */
+public class ContentEncoding {
+    public  static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final int    BUFFER_SIZE     = 64 * 1024;
+
+
+    // ******************** Constructors **************************************
+    private ContentEncoding() {}
+
+
+    // ******************** Methods *******************************************
+    /**
+     * The body as string. Only the (compressed) bytes of the response are
+     * buffered, they are decompressed once into the string.
+     */
+    public static BodyHandler<String> ofString() {
+        return responseInfo -> {
+            final String encoding = getEncoding(responseInfo.headers());
+            return BodySubscribers.mapping(BodySubscribers.ofByteArray(), bytes -> {
+                if (encoding.isEmpty()) { return new String(bytes, StandardCharsets.UTF_8); }
+                try (InputStream in = decode(new ByteArrayInputStream(bytes), encoding)) {
+                    return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        };
+    }
+
+    /**
+     * The body as stream that is decompressed while it is read. Responses
+     * with another status than 200 have no body. The body must be read or
+     * closed to release the connection.
+     */
+    public static BodyHandler<Body> ofBody() {
+        return responseInfo -> {
+            if (200 != responseInfo.statusCode()) { return BodySubscribers.replacing(null); }
+            final String encoding = getEncoding(responseInfo.headers());
+            return BodySubscribers.mapping(BodySubscribers.ofInputStream(), in -> new Body(in, encoding));
+        };
+    }
+
+    /**
+     * The value of the Content-Encoding header in lower case, empty for identity.
+     */
+    public static String getEncoding(final HttpHeaders headers) {
+        final String encoding = null == headers ? "" : headers.firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ENGLISH);
+        return "identity".equals(encoding) ? "" : encoding;
+    }
+
+    /**
+     * Wraps the given stream into one that decompresses the given encoding.
+     */
+    public static InputStream decode(final InputStream in, final String encoding) throws IOException {
+        switch (null == encoding ? "" : encoding) {
+            case ""       : return in;
+            case "gzip"   :
+            case "x-gzip" : return new GZIPInputStream(in, BUFFER_SIZE);
+            case "deflate":
+                // Should be zlib wrapped but some servers send raw deflate
+                final PushbackInputStream pushback = new PushbackInputStream(in, 1);
+                final int                 first    = pushback.read();
+                if (-1 == first) { return pushback; }
+                pushback.unread(first);
+                return new InflaterInputStream(pushback, new Inflater(8 != (first & 0x0F)), BUFFER_SIZE);
+            default       : throw new IOException("Unsupported content encoding: " + encoding);
+        }
+    }
+
+
+    // ******************** Inner Classes *************************************
+    /**
+     * The not yet read body of a response. Decoding starts with the first
+     * read (on the thread of the caller), not on the thread of the client.
+     */
+    public static final class Body implements Closeable {
+        private final InputStream in;
+        private final String      encoding;
+
+        private Body(final InputStream in, final String encoding) {
+            this.in       = in;
+            this.encoding = encoding;
+        }
+
+        public String getEncoding() { return encoding; }
+
+        public InputStream openStream() throws IOException { return decode(in, encoding); }
+
+        public Reader openReader() throws IOException { return new InputStreamReader(openStream(), StandardCharsets.UTF_8); }
+
+        @Override public void close() throws IOException { in.close(); }
+    }
+}
@@ -31,24 +31,27 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
@@ -63,25 +66,51 @@ import static eu.hansolo.jdktools.OperatingSystem.WINDOWS;
 
 
 public class Detector {
-    public static final  String          MACOS_JAVA_INSTALL_PATH   = "/System/Volumes/Data/Library/Java/JavaVirtualMachines/";
-    public static final  String          WINDOWS_JAVA_INSTALL_PATH = "C:\\Program Files\\Java\\";
-    public static final  String          LINUX_JAVA_INSTALL_PATH   = "/usr/lib/jvm";
-    public  static final String          SDKMAN_FOLDER             = new StringBuilder(System.getProperty("user.home")).append(File.separator).append(".sdkman").append(File.separator).append("candidates").append(File.separator).append("java").toString();
-    private static final Pattern         GRAALVM_VERSION_PATTERN   = Pattern.compile("(.*graalvm\\s)(.*)(\\s\\(.*)");
-    private static final Matcher         GRAALVM_VERSION_MATCHER   = GRAALVM_VERSION_PATTERN.matcher("");
-    private static final Pattern         ZULU_BUILD_PATTERN        = Pattern.compile("\\((build\\s)(.*)\\)");
-    private static final Matcher         ZULU_BUILD_MATCHER        = ZULU_BUILD_PATTERN.matcher("");
-    private static final String[]        MAC_JAVA_HOME_CMDS        = { "/bin/sh", "-c", "echo $JAVA_HOME" };
-    private static final String[]        LINUX_JAVA_HOME_CMDS      = { "/usr/bin/sh", "-c", "echo $JAVA_HOME" };
-    private static final String[]        WIN_JAVA_HOME_CMDS        = { "cmd.exe", "/c", "echo %JAVA_HOME%" };
-    private              ExecutorService service                   = Executors.newSingleThreadExecutor();
-    private              Properties      releaseProperties         = new Properties();
-    private              OsArcMode       osArcMode                 = eu.hansolo.jdktools.util.Helper.getOperaringSystemArchitectureOperatingMode();
-    private              String          javaFile                  = WINDOWS == osArcMode.operatingSystem() ? "java.exe" : "java";
-    private              String          javaHome                  = "";
+    public static final  String                 MACOS_JAVA_INSTALL_PATH   = "/System/Volumes/Data/Library/Java/JavaVirtualMachines/";
+    public static final  String                 WINDOWS_JAVA_INSTALL_PATH = "C:\\Program Files\\Java\\";
+    public static final  String                 LINUX_JAVA_INSTALL_PATH   = "/usr/lib/jvm";
+    public  static final String                 SDKMAN_FOLDER             = new StringBuilder(System.getProperty("user.home")).append(File.separator).append(".sdkman").append(File.separator).append("candidates").append(File.separator).append("java").toString();
+    private static final Pattern                GRAALVM_VERSION_PATTERN   = Pattern.compile("(.*graalvm\\s)(.*)(\\s\\(.*)");
+    private static final Pattern                ZULU_BUILD_PATTERN        = Pattern.compile("\\((build\\s)(.*)\\)");
+    private static final String[]               MAC_JAVA_HOME_CMDS        = { "/bin/sh", "-c", "echo $JAVA_HOME" };
+    private static final String[]               LINUX_JAVA_HOME_CMDS      = { "/usr/bin/sh", "-c", "echo $JAVA_HOME" };
+    private static final String[]               WIN_JAVA_HOME_CMDS        = { "cmd.exe", "/c", "echo %JAVA_HOME%" };
+    private static final int                    PARALLELISM               = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final long                   PROCESS_TIMEOUT           = 10_000;
+    private static final long                   JAVA_HOME_TIMEOUT         = 5_000;
+    private              ExecutorService        service                   = Executors.newFixedThreadPool(PARALLELISM);
+    private final        Queue<String>          timedOut                  = new ConcurrentLinkedQueue<>();
+    private final        AtomicInteger          fromJdkIndex              = new AtomicInteger();
+    private final        AtomicInteger          fromReleaseFile           = new AtomicInteger();
+    private final        AtomicInteger          fromVersionOutput         = new AtomicInteger();
+    private              OsArcMode              osArcMode                 = eu.hansolo.jdktools.util.Helper.getOperaringSystemArchitectureOperatingMode();
+    private              String                 javaFile                  = WINDOWS == osArcMode.operatingSystem() ? "java.exe" : "java";
+    private              String                 javaHome                  = "";
+    private final        int                    maxDepth;
+    private final        List<String>           excludes;
+    private final        boolean                rescan;
+    private final        Set<String>            seenHomes                 = ConcurrentHashMap.newKeySet();
+    private              JdkIndex               index;
+    private final        List<Installation>     installations             = new ArrayList<>();
+    private              Consumer<Installation> consumer                  = installation -> {};
+
+    /**
+     * What the output of java -version tells about a distribution.
+     */
+    public record VersionOutput(String[] lines, String name, String apiString, VersionNumber version) {}
 
 
     public Detector() {
+        this(JdkFinder.DEFAULT_MAX_DEPTH, JdkFinder.DEFAULT_EXCLUDES, false);
+    }
+    /**
+     * With rescan all folders are listed and all JDKs are identified again,
+     * otherwise only the ones that changed since the last -fd.
+     */
+    public Detector(final int maxDepth, final List<String> excludes, final boolean rescan) {
+        this.maxDepth = maxDepth;
+        this.excludes = excludes;
+        this.rescan   = rescan;
         getJavaHome();
         if (null == this.javaHome || this.javaHome.isEmpty()) {
             if (System.getProperties() != null) {
@@ -93,11 +122,30 @@ public class Detector {
     }
 
 
-    public Set<Distro> detectDistributions() {
+    public List<Installation> detectDistributions() {
         return detectDistributions("");
     }
-    public Set<Distro> detectDistributions(final String... searchPaths) {
+    /**
+     * Prints the installations in the given paths as lines of text while
+     * they are found, followed by the ones that timed out.
+     */
+    public List<Installation> detectDistributions(final String... searchPaths) {
         System.out.println(Ansi.AUTO.string("@|cyan \nDistributions found |@"));
+        final List<Installation> found = detectDistributions(installation -> System.out.println(installation.toText()), searchPaths);
+        if (!timedOut.isEmpty()) {
+            System.out.println(Ansi.AUTO.string("@|yellow \nNo answer from java -version within " + (PROCESS_TIMEOUT / 1000) + " s |@"));
+            timedOut.forEach(parentPath -> System.out.println(Ansi.AUTO.string("@|yellow " + parentPath + " |@")));
+        }
+        System.out.println(Ansi.AUTO.string("@|cyan \n" + fromJdkIndex.get() + " unchanged since the last scan, " + fromReleaseFile.get() + " identified from release files, " + fromVersionOutput.get() + " with java -version (" + timedOut.size() + " timed out) |@"));
+        return found;
+    }
+    /**
+     * Calls the consumer with every installation in the given paths as
+     * soon as it was identified (never from two threads at the same time)
+     * and returns all of them when the scan is done. The homes where
+     * java -version did not answer in time are in getTimedOut().
+     */
+    public List<Installation> detectDistributions(final Consumer<Installation> consumer, final String... searchPaths) {
         final List<String> pathsToScan = new ArrayList<>();
         if (null == searchPaths || searchPaths.length == 0 || (searchPaths.length == 1 && (null == searchPaths[0] || searchPaths[0].isEmpty()))) {
             switch (eu.hansolo.jdktools.util.Helper.getOperatingSystem()) {
@@ -109,27 +157,54 @@ public class Detector {
         } else {
             pathsToScan.addAll(Arrays.asList(searchPaths).stream().filter(Objects::nonNull).filter(path -> !path.isEmpty()).collect(Collectors.toList()));
         }
-        Set<Distro> distros = new HashSet<>();
-
         if (service.isShutdown()) {
-            service = Executors.newSingleThreadExecutor();
+            service = Executors.newFixedThreadPool(PARALLELISM);
         }
-
-        pathsToScan.forEach(searchPath -> {
-            final Path path      = Paths.get(searchPath);
-            Set<Path>  javaFiles = findByFileNameWithoutException(path, javaFile);
-            javaFiles.stream().filter(java -> !java.toString().contains("jre")).forEach(java -> checkForDistribution(java.toString()));
-        });
+        timedOut.clear();
+        installations.clear();
+        this.consumer = consumer;
+        fromJdkIndex.set(0);
+        fromReleaseFile.set(0);
+        fromVersionOutput.set(0);
+        seenHomes.clear();
+        index = JdkIndex.load();
+
+        // The distributions are checked while the walk goes on, folders that did not change are not listed again
+        final List<Path> roots  = pathsToScan.stream().map(searchPath -> Paths.get(searchPath).toAbsolutePath().normalize()).collect(Collectors.toList());
+        final JdkFinder  finder = new JdkFinder(javaFile, maxDepth, excludes, rescan ? Map.of() : index.getListings());
+        roots.forEach(root -> finder.find(root, java -> {
+            if (!root.relativize(java).toString().contains("jre")) { checkForDistribution(java.toString()); }
+        }));
 
         service.shutdown();
         try {
-            service.awaitTermination(20000, TimeUnit.MILLISECONDS);
+            // Every java -version is destroyed at its deadline, so this ends
+            service.awaitTermination(1, TimeUnit.HOURS);
         } catch (InterruptedException e) {
-            System.out.println(Ansi.AUTO.string("@|red \nError detecting distributions |@ \n"));
+            Thread.currentThread().interrupt();
+        }
+        final List<Path> realRoots = new ArrayList<>(roots);
+        roots.forEach(root -> {
+            try { realRoots.add(root.toRealPath()); } catch (IOException e) { /* Root does not exist */ }
+        });
+        index.update(realRoots, finder.getListings(), seenHomes);
+        index.save();
+        synchronized (installations) {
+            return List.copyOf(installations);
         }
-        return distros;
     }
 
+    /**
+     * The homes of the last scan where java -version did not answer in time.
+     */
+    public List<String> getTimedOut() { return List.copyOf(timedOut); }
+
+    public int getNoOfUnchanged() { return fromJdkIndex.get(); }
+
+    public int getNoOfIdentifiedFromReleaseFiles() { return fromReleaseFile.get(); }
+
+    public int getNoOfIdentifiedWithJavaVersion() { return fromVersionOutput.get(); }
+
     /*
     public Map<Distro, List<Pkg>> getAvailableUpdates(final List<Distro> distributions) {
         Map<Distro, List<Pkg>> distrosToUpdate = new ConcurrentHashMap<>();
@@ -215,301 +290,432 @@ public class Detector {
         return result;
     }
 
-    private Set<Path> findByFileNameWithoutException(final Path path, final String fileName) {
-        Set<Path> result = new HashSet<>();
-        try (Stream<Path> stream = Files.walk(path, Integer.MAX_VALUE)) {
-            stream.filter(p -> Files.isRegularFile(p))
-                  .filter(p -> Files.isReadable(p))
-                  .filter(p -> p.getFileName().toString().equalsIgnoreCase(fileName))
-                  .forEach(p -> result.add(p));
-        } catch (Exception e) {
-            // Silence "Operation not permitted" exception
+    /**
+     * Parses the output of java -version (lines separated by |), the name
+     * stays "Unknown build of OpenJDK" if the first two lines do not tell.
+     */
+    public static VersionOutput parseVersionOutput(final String output) {
+        final String[] lines         = output.split("\\|");
+        final String   line1         = lines[0];
+        final String   line2         = lines.length > 1 ? lines[1] : "";
+        String         name          = "Unknown build of OpenJDK";
+        String         apiString     = "";
+        String         withoutPrefix = line1;
+        VersionNumber  version       = null;
+        if (line1.startsWith("openjdk")) {
+            withoutPrefix = line1.replaceFirst("openjdk version", "");
+        } else if (line1.startsWith("java")) {
+            withoutPrefix = line1.replaceFirst("java version", "");
+            name          = "Oracle";
+            apiString     = "oracle";
         }
-        return result;
+        if (line2.contains("Zulu")) {
+            name      = "Zulu";
+            apiString = "zulu";
+            final Matcher matcher = ZULU_BUILD_PATTERN.matcher(line2);
+            if (matcher.find()) { version = VersionNumber.fromText(matcher.group(2)); }
+        } else if (line2.contains("Semeru")) {
+            if (line2.contains("Certified")) {
+                name      = "Semeru certified";
+                apiString = "semeru_certified";
+            } else {
+                name      = "Semeru";
+                apiString = "semeru";
+            }
+        } else if (line2.contains("Tencent")) {
+            name      = "Kona";
+            apiString = "kona";
+        } else if (line2.contains("Bisheng")) {
+            name      = "Bishenq";
+            apiString = "bisheng";
+        }
+        if (null == version) { version = VersionNumber.fromText(withoutPrefix.substring(withoutPrefix.indexOf("\"") + 1, withoutPrefix.lastIndexOf("\""))); }
+        return new VersionOutput(lines, name, apiString, version);
     }
 
+    /**
+     * Identifies the distribution of the given java from the release file
+     * (and readme.txt) of its JDK home, java -version only runs if these
+     * do not tell the distribution and version for sure.
+     */
     private void checkForDistribution(final String java) {
-        AtomicBoolean inUse = new AtomicBoolean(false);
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(java);
-            commands.add("-version");
-
-            final String fileSeparator = File.separator;
-            final String binFolder     = new StringBuilder(fileSeparator).append("bin").append(fileSeparator).append(".*").toString();
-
-            ProcessBuilder builder  = new ProcessBuilder(commands).redirectErrorStream(true);
-            Process        process  = builder.start();
-            Streamer streamer = new Streamer(process.getInputStream(), d -> {
-                final String parentPath       = WINDOWS == osArcMode.operatingSystem() ? java.replaceAll("bin\\\\java.exe", "") : java.replaceAll(binFolder, fileSeparator);
-                final File   releaseFile      = new File(parentPath + "release");
-                String[]     lines            = d.split("\\|");
-                String       name             = "Unknown build of OpenJDK";
-                String       apiString        = "";
-                //String       operatingSystem  = "";
-                String       architecture     = "";
-                String       feature          = "";
-                Boolean      fxBundled        = Boolean.FALSE;
-                //FPU          fpu              = FPU.UNKNOWN;
-
-                if (!this.javaHome.isEmpty() && !inUse.get() && parentPath.contains(javaHome)) {
-                    inUse.set(true);
-                }
-
-                final File   jreLibExtFolder  = new File(new StringBuilder(parentPath).append("jre").append(fileSeparator).append("lib").append(fileSeparator).append("ext").toString());
-                if (jreLibExtFolder.exists()) {
-                    fxBundled = Stream.of(jreLibExtFolder.listFiles()).filter(file -> !file.isDirectory()).map(File::getName).collect(Collectors.toSet()).stream().filter(filename -> filename.equalsIgnoreCase("jfxrt.jar")).count() > 0;
-                }
-                final File   jmodsFolder      = new File(new StringBuilder(parentPath).append("jmods").toString());
-                if (jmodsFolder.exists()) {
-                    fxBundled = Stream.of(jmodsFolder.listFiles()).filter(file -> !file.isDirectory()).map(File::getName).collect(Collectors.toSet()).stream().filter(filename -> filename.startsWith("javafx")).count() > 0;
-                }
+        final String     fileSeparator     = File.separator;
+        final String     binFolder         = new StringBuilder(fileSeparator).append("bin").append(fileSeparator).append(".*").toString();
+        final String     parentPath        = WINDOWS == osArcMode.operatingSystem() ? java.replaceAll("bin\\\\java.exe", "") : java.replaceAll(binFolder, fileSeparator);
+        final File       releaseFile       = new File(parentPath + "release");
+        final Path       stampFile         = releaseFile.exists() ? releaseFile.toPath() : Paths.get(java);
+        final String     home              = toCanonicalPath(parentPath);
+        seenHomes.add(home);
+
+        if (!rescan) {
+            final Optional<JdkIndex.Entry> known = index.lookup(home, stampFile);
+            if (known.isPresent()) {
+                fromJdkIndex.incrementAndGet();
+                emit(isInUse(parentPath), known.get(), parentPath, Installation.Source.INDEX);
+                return;
+            }
+        }
 
-                VersionNumber version    = null;
-                VersionNumber jdkVersion = null;
-                BuildScope    buildScope = BuildScope.BUILD_OF_OPEN_JDK;
-
-                String        line1         = lines[0];
-                String        line2         = lines[1];
-                String        withoutPrefix = line1;
-                if (line1.startsWith("openjdk")) {
-                    withoutPrefix = line1.replaceFirst("openjdk version", "");
-                } else if (line1.startsWith("java")) {
-                    withoutPrefix = line1.replaceFirst("java version", "");
-                    name          = "Oracle";
-                    apiString     = "oracle";
-                }
-                if (line2.contains("Zulu")) {
-                    name      = "Zulu";
-                    apiString = "zulu";
-                    ZULU_BUILD_MATCHER.reset(line2);
-                    final List<MatchResult> results = ZULU_BUILD_MATCHER.results().collect(Collectors.toList());
-                    if (!results.isEmpty()) {
-                        MatchResult result = results.get(0);
-                        version = VersionNumber.fromText(result.group(2));
-                    }
-                } else if (line2.contains("Semeru")) {
-                    if (line2.contains("Certified")) {
-                        name      = "Semeru certified";
-                        apiString = "semeru_certified";
-                    } else {
-                        name      = "Semeru";
-                        apiString = "semeru";
-                    }
-                } else if (line2.contains("Tencent")) {
-                    name      = "Kona";
-                    apiString = "kona";
-                } else if (line2.contains("Bisheng")) {
-                    name      = "Bishenq";
-                    apiString = "bisheng";
-                }
+        final Properties               releaseProperties = readReleaseProperties(parentPath);
+        final Optional<JdkIndex.Entry> fromRelease       = identifyFromRelease(home, stampFile, parentPath, releaseProperties);
+        if (fromRelease.isPresent()) {
+            fromReleaseFile.incrementAndGet();
+            index.put(fromRelease.get());
+            emit(isInUse(parentPath), fromRelease.get(), parentPath, Installation.Source.RELEASE_FILE);
+            return;
+        }
 
-                if (null == version) { version = VersionNumber.fromText(withoutPrefix.substring(withoutPrefix.indexOf("\"") + 1, withoutPrefix.lastIndexOf("\""))); }
-                VersionNumber graalVersion = version;
+        // Runs on the pool, the result is printed as soon as java -version answered
+        fromVersionOutput.incrementAndGet();
+        service.submit(() -> {
+            final boolean inUse = isInUse(parentPath);
+            final String output;
+            try {
+                output = run(List.of(java, "-version"), PROCESS_TIMEOUT);
+            } catch (TimeoutException e) {
+                timedOut.add(parentPath);
+                return;
+            } catch (IOException e) {
+                // Diagnostics go to stderr, stdout only carries the installations
+                System.err.println("Error running java -version in " + parentPath + ": " + e.getMessage());
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
 
-                releaseProperties.clear();
-                if (releaseFile.exists()) {
-                    try (FileInputStream propFile = new FileInputStream(releaseFile)) {
-                        releaseProperties.load(propFile);
-                    } catch (IOException ex) {
-                        System.out.println("Error reading release properties file. " + ex);
+            VersionOutput versionOutput   = parseVersionOutput(output);
+            String[]     lines            = versionOutput.lines();
+            String       name             = versionOutput.name();
+            String       apiString        = versionOutput.apiString();
+            //String       operatingSystem  = "";
+            String       architecture     = "";
+            String       feature          = "";
+            Boolean      fxBundled        = Boolean.FALSE;
+            //FPU          fpu              = FPU.UNKNOWN;
+
+            fxBundled = isFxBundled(parentPath, releaseProperties);
+
+            VersionNumber version    = versionOutput.version();
+            VersionNumber jdkVersion = null;
+            BuildScope    buildScope = BuildScope.BUILD_OF_OPEN_JDK;
+
+            VersionNumber graalVersion = version;
+
+            if (!releaseProperties.isEmpty()) {
+                if (releaseProperties.containsKey("IMPLEMENTOR") && name.equals("Unknown build of OpenJDK")) {
+                    switch(releaseProperties.getProperty("IMPLEMENTOR").replaceAll("\"", "")) {
+                        case "AdoptOpenJDK"      : name = "Adopt OpenJDK";  apiString = "aoj";            break;
+                        case "Alibaba"           : name = "Dragonwell";     apiString = "dragonwell";     break;
+                        case "Amazon.com Inc."   : name = "Corretto";       apiString = "corretto";       break;
+                        case "Azul Systems, Inc.": name = "Zulu";           apiString = "zulu";           break;
+                        case "mandrel"           : name = "Mandrel";        apiString = "mandrel";        break;
+                        case "Microsoft"         : name = "Microsoft";      apiString = "microsoft";      break;
+                        case "ojdkbuild"         : name = "OJDK Build";     apiString = "ojdk_build";     break;
+                        case "Oracle Corporation": name = "Oracle OpenJDK"; apiString = "oracle_openjdk"; break;
+                        case "Red Hat, Inc."     : name = "Red Hat";        apiString = "redhat";         break;
+                        case "SAP SE"            : name = "SAP Machine";    apiString = "sap_machine";    break;
+                        case "OpenLogic"         : name = "OpenLogic";      apiString = "openlogic";      break;
+                        case "JetBrains s.r.o."  : name = "JetBrains";      apiString = "jetbrains";      break;
+                        case "Eclipse Foundation": name = "Temurin";        apiString = "temurin";        break;
+                        case "Tencent"           : name = "Kona";           apiString = "kona";           break;
+                        case "Bisheng"           : name = "Bisheng";        apiString = "bisheng";        break;
+                        case "Debian"            : name = "Debian";         apiString = "debian";         break;
+                        case "N/A"               : /* GraalVM */ break;
                     }
-                    if (!releaseProperties.isEmpty()) {
-                        if (releaseProperties.containsKey("IMPLEMENTOR") && name.equals("Unknown build of OpenJDK")) {
-                            switch(releaseProperties.getProperty("IMPLEMENTOR").replaceAll("\"", "")) {
-                                case "AdoptOpenJDK"      : name = "Adopt OpenJDK";  apiString = "aoj";            break;
-                                case "Alibaba"           : name = "Dragonwell";     apiString = "dragonwell";     break;
-                                case "Amazon.com Inc."   : name = "Corretto";       apiString = "corretto";       break;
-                                case "Azul Systems, Inc.": name = "Zulu";           apiString = "zulu";           break;
-                                case "mandrel"           : name = "Mandrel";        apiString = "mandrel";        break;
-                                case "Microsoft"         : name = "Microsoft";      apiString = "microsoft";      break;
-                                case "ojdkbuild"         : name = "OJDK Build";     apiString = "ojdk_build";     break;
-                                case "Oracle Corporation": name = "Oracle OpenJDK"; apiString = "oracle_openjdk"; break;
-                                case "Red Hat, Inc."     : name = "Red Hat";        apiString = "redhat";         break;
-                                case "SAP SE"            : name = "SAP Machine";    apiString = "sap_machine";    break;
-                                case "OpenLogic"         : name = "OpenLogic";      apiString = "openlogic";      break;
-                                case "JetBrains s.r.o."  : name = "JetBrains";      apiString = "jetbrains";      break;
-                                case "Eclipse Foundation": name = "Temurin";        apiString = "temurin";        break;
-                                case "Tencent"           : name = "Kona";           apiString = "kona";           break;
-                                case "Bisheng"           : name = "Bisheng";        apiString = "bisheng";        break;
-                                case "Debian"            : name = "Debian";         apiString = "debian";         break;
-                                case "N/A"               : /* GraalVM */ break;
-                            }
-                        }
-                        if (releaseProperties.containsKey("OS_ARCH")) {
-                            architecture = releaseProperties.getProperty("OS_ARCH").toLowerCase().replaceAll("\"", "");
-                        }
-                        if (releaseProperties.containsKey("JVM_VARIANT")) {
-                            if (name == "Adopt OpenJDK") {
-                                String jvmVariant = releaseProperties.getProperty("JVM_VARIANT").toLowerCase().replaceAll("\"", "");
-                                if (jvmVariant.equals("dcevm")) {
-                                    name      = "Trava OpenJDK";
-                                    apiString = "trava";
-                                } else if (jvmVariant.equals("openj9")) {
-                                    name      = "Adopt OpenJDK J9";
-                                    apiString = "aoj_openj9";
-                                }
-                            }
-                        }
-                        /*
-                        if (releaseProperties.containsKey("OS_NAME")) {
-                            switch(releaseProperties.getProperty("OS_NAME").toLowerCase().replaceAll("\"", "")) {
-                                case "darwin" : operatingSystem = "macos"; break;
-                                case "linux"  : operatingSystem = "linux"; break;
-                                case "windows": operatingSystem = "windows"; break;
-                            }
-                        }
-                        */
-                        if (releaseProperties.containsKey("MODULES") && !fxBundled) {
-                            fxBundled = (releaseProperties.getProperty("MODULES").contains("javafx"));
-                        }
-                        /*
-                        if (releaseProperties.containsKey("SUN_ARCH_ABI")) {
-                            String abi = releaseProperties.get("SUN_ARCH_ABI").toString();
-                            switch (abi) {
-                                case "gnueabi"   -> fpu = FPU.SOFT_FLOAT;
-                                case "gnueabihf" -> fpu = FPU.HARD_FLOAT;
-                            }
+                }
+                if (releaseProperties.containsKey("OS_ARCH")) {
+                    architecture = releaseProperties.getProperty("OS_ARCH").toLowerCase().replaceAll("\"", "");
+                }
+                if (releaseProperties.containsKey("JVM_VARIANT")) {
+                    if (name == "Adopt OpenJDK") {
+                        String jvmVariant = releaseProperties.getProperty("JVM_VARIANT").toLowerCase().replaceAll("\"", "");
+                        if (jvmVariant.equals("dcevm")) {
+                            name      = "Trava OpenJDK";
+                            apiString = "trava";
+                        } else if (jvmVariant.equals("openj9")) {
+                            name      = "Adopt OpenJDK J9";
+                            apiString = "aoj_openj9";
                         }
-                        */
                     }
                 }
-
-                if (lines.length > 2) {
-                    String line3 = lines[2].toLowerCase();
-                    for (String feat : Constants.FEATURES) {
-                        feat = feat.trim().toLowerCase();
-                        if (line3.contains(feat)) {
-                            feature = feat;
-                            break;
-                        }
+                /*
+                if (releaseProperties.containsKey("OS_NAME")) {
+                    switch(releaseProperties.getProperty("OS_NAME").toLowerCase().replaceAll("\"", "")) {
+                        case "darwin" : operatingSystem = "macos"; break;
+                        case "linux"  : operatingSystem = "linux"; break;
+                        case "windows": operatingSystem = "windows"; break;
+                    }
+                }
+                */
+                /*
+                if (releaseProperties.containsKey("SUN_ARCH_ABI")) {
+                    String abi = releaseProperties.get("SUN_ARCH_ABI").toString();
+                    switch (abi) {
+                        case "gnueabi"   -> fpu = FPU.SOFT_FLOAT;
+                        case "gnueabihf" -> fpu = FPU.HARD_FLOAT;
                     }
-
                 }
+                */
+            }
 
-                if (name.equalsIgnoreCase("Mandrel")) {
-                    buildScope = BuildScope.BUILD_OF_GRAALVM;
-                    if (releaseProperties.containsKey("JAVA_VERSION")) {
-                        final String javaVersion = releaseProperties.getProperty("JAVA_VERSION");
-                        if (null == jdkVersion) { jdkVersion = VersionNumber.fromText(javaVersion); }
+            if (lines.length > 2) {
+                String line3 = lines[2].toLowerCase();
+                for (String feat : Constants.FEATURES) {
+                    feat = feat.trim().toLowerCase();
+                    if (line3.contains(feat)) {
+                        feature = feat;
+                        break;
                     }
                 }
 
-                if (name.equals("Unknown build of OpenJDK") && lines.length > 2) {
-                    String line3      = lines[2].toLowerCase();
-                    File   readmeFile = new File(parentPath + "readme.txt");
-                    if (readmeFile.exists()) {
-                        try {
-                            List<String> readmeLines = Helper.readTextFileToList(readmeFile.getAbsolutePath());
-                            if (readmeLines.stream().filter(l -> l.toLowerCase().contains("liberica native image kit")).count() > 0) {
-                                name       = "Liberica Native";
-                                apiString  = "liberica_native";
-                                buildScope = BuildScope.BUILD_OF_GRAALVM;
-
-                                GRAALVM_VERSION_MATCHER.reset(line3);
-                                final List<MatchResult> results = GRAALVM_VERSION_MATCHER.results().collect(Collectors.toList());
-                                if (!results.isEmpty()) {
-                                    MatchResult result = results.get(0);
-                                    version = VersionNumber.fromText(result.group(2));
-                                }
-                                if (releaseProperties.containsKey("JAVA_VERSION")) {
-                                    final String javaVersion = releaseProperties.getProperty("JAVA_VERSION");
-                                    if (null == jdkVersion) { jdkVersion = VersionNumber.fromText(javaVersion); }
-                                }
-                            } else if (readmeLines.stream().filter(l -> l.toLowerCase().contains("liberica")).count() > 0) {
-                                name      = "Liberica";
-                                apiString = "liberica";
-                            }
-                        } catch (IOException e) {
+            }
 
-                        }
-                    } else {
-                        if (line3.contains("graalvm")) {
-                            name       = "GraalVM";
-                            apiString  = graalVersion.getMajorVersion().getAsInt() >= 8 ? "graalvm_ce" + graalVersion.getMajorVersion().getAsInt() : "";
+            if (name.equalsIgnoreCase("Mandrel")) {
+                buildScope = BuildScope.BUILD_OF_GRAALVM;
+                if (releaseProperties.containsKey("JAVA_VERSION")) {
+                    final String javaVersion = releaseProperties.getProperty("JAVA_VERSION");
+                    if (null == jdkVersion) { jdkVersion = VersionNumber.fromText(javaVersion); }
+                }
+            }
+
+            if (name.equals("Unknown build of OpenJDK") && lines.length > 2) {
+                String line3      = lines[2].toLowerCase();
+                File   readmeFile = new File(parentPath + "readme.txt");
+                if (readmeFile.exists()) {
+                    try {
+                        List<String> readmeLines = Helper.readTextFileToList(readmeFile.getAbsolutePath());
+                        if (readmeLines.stream().filter(l -> l.toLowerCase().contains("liberica native image kit")).count() > 0) {
+                            name       = "Liberica Native";
+                            apiString  = "liberica_native";
                             buildScope = BuildScope.BUILD_OF_GRAALVM;
 
-                            GRAALVM_VERSION_MATCHER.reset(line3);
-                            final List<MatchResult> results = GRAALVM_VERSION_MATCHER.results().collect(Collectors.toList());
+                            final List<MatchResult> results = GRAALVM_VERSION_PATTERN.matcher(line3).results().collect(Collectors.toList());
                             if (!results.isEmpty()) {
                                 MatchResult result = results.get(0);
                                 version = VersionNumber.fromText(result.group(2));
                             }
-
-                            if (releaseProperties.containsKey("VENDOR")) {
-                                final String vendor = releaseProperties.getProperty("VENDOR").toLowerCase().replaceAll("\"", "");
-                                if (vendor.equalsIgnoreCase("Gluon")) {
-                                    name      = "Gluon GraalVM";
-                                    apiString = "gluon_graalvm";
-                                }
-                            }
                             if (releaseProperties.containsKey("JAVA_VERSION")) {
                                 final String javaVersion = releaseProperties.getProperty("JAVA_VERSION");
                                 if (null == jdkVersion) { jdkVersion = VersionNumber.fromText(javaVersion); }
                             }
-                        } else if (line3.contains("microsoft")) {
-                            name      = "Microsoft";
-                            apiString = "microsoft";
-                        } else if (line3.contains("corretto")) {
-                            name      = "Corretto";
-                            apiString = "corretto";
-                        } else if (line3.contains("temurin")) {
-                            name      = "Temurin";
-                            apiString = "temurin";
+                        } else if (readmeLines.stream().filter(l -> l.toLowerCase().contains("liberica")).count() > 0) {
+                            name      = "Liberica";
+                            apiString = "liberica";
                         }
+                    } catch (IOException e) {
+
+                    }
+                } else {
+                    if (line3.contains("graalvm")) {
+                        name       = "GraalVM";
+                        apiString  = graalVersion.getMajorVersion().getAsInt() >= 8 ? "graalvm_ce" + graalVersion.getMajorVersion().getAsInt() : "";
+                        buildScope = BuildScope.BUILD_OF_GRAALVM;
+
+                        final List<MatchResult> results = GRAALVM_VERSION_PATTERN.matcher(line3).results().collect(Collectors.toList());
+                        if (!results.isEmpty()) {
+                            MatchResult result = results.get(0);
+                            version = VersionNumber.fromText(result.group(2));
+                        }
+
+                        if (releaseProperties.containsKey("VENDOR")) {
+                            final String vendor = releaseProperties.getProperty("VENDOR").toLowerCase().replaceAll("\"", "");
+                            if (vendor.equalsIgnoreCase("Gluon")) {
+                                name      = "Gluon GraalVM";
+                                apiString = "gluon_graalvm";
+                            }
+                        }
+                        if (releaseProperties.containsKey("JAVA_VERSION")) {
+                            final String javaVersion = releaseProperties.getProperty("JAVA_VERSION");
+                            if (null == jdkVersion) { jdkVersion = VersionNumber.fromText(javaVersion); }
+                        }
+                    } else if (line3.contains("microsoft")) {
+                        name      = "Microsoft";
+                        apiString = "microsoft";
+                    } else if (line3.contains("corretto")) {
+                        name      = "Corretto";
+                        apiString = "corretto";
+                    } else if (line3.contains("temurin")) {
+                        name      = "Temurin";
+                        apiString = "temurin";
                     }
                 }
+            }
 
-                if (null == jdkVersion) { jdkVersion = version; }
-
-                if (architecture.isEmpty()) { architecture = osArcMode.architecture().name().toLowerCase(); }
-
-                final String jkdString = new StringBuilder().append(inUse.get() ? "*" : "")
-                                                            .append(apiString).append(",")
-                                                            .append(version.toString(OutputFormat.REDUCED_COMPRESSED, true, true)).append(",")
-                                                            .append(osArcMode.operatingSystem().getApiString()).append(",")
-                                                            .append(architecture)
-                                                            .append((fxBundled ? ",fx" : ""))
-                                                            .append(feature.isEmpty() ? "" : ",")
-                                                            .append(feature)
-                                                            .append(" (").append(parentPath).append(")")
-                                                            .toString();
-                System.out.println(jkdString);
-            });
-            service.submit(streamer);
-        } catch (IOException e) {
-            e.printStackTrace();
+            if (null == jdkVersion) { jdkVersion = version; }
+
+            if (architecture.isEmpty()) { architecture = osArcMode.architecture().name().toLowerCase(); }
+
+            final JdkIndex.Entry entry = JdkIndex.Entry.of(home, stampFile, apiString, version.toString(OutputFormat.REDUCED_COMPRESSED, true, true),
+                                                           jdkVersion.toString(OutputFormat.REDUCED_COMPRESSED, true, true), architecture, fxBundled, feature, buildScope);
+            index.put(entry);
+            emit(inUse, entry, parentPath, Installation.Source.JAVA_VERSION);
+        });
+    }
+
+    /**
+     * The distribution as line of -fd if the release file tells the
+     * implementor and the version. Empty if there is no release file or
+     * if only java -version can tell (e.g. Oracle or Oracle OpenJDK,
+     * Semeru or Semeru certified, GraalVM and Liberica Native versions).
+     */
+    private Optional<JdkIndex.Entry> identifyFromRelease(final String home, final Path stampFile, final String parentPath, final Properties releaseProperties) {
+        final String implementor = getReleaseValue(releaseProperties, "IMPLEMENTOR");
+        final String javaVersion = getReleaseValue(releaseProperties, "JAVA_VERSION");
+        if (implementor.isEmpty() || javaVersion.isEmpty()) { return Optional.empty(); }
+
+        final String runtimeVersion = getReleaseValue(releaseProperties, "JAVA_RUNTIME_VERSION");
+        String apiString;
+        switch(implementor) {
+            case "AdoptOpenJDK"      :
+                switch(getReleaseValue(releaseProperties, "JVM_VARIANT").toLowerCase()) {
+                    case "dcevm" : apiString = "trava";      break;
+                    case "openj9": apiString = "aoj_openj9"; break;
+                    default      : apiString = "aoj";        break;
+                }
+                break;
+            case "Alibaba"           : apiString = "dragonwell";   break;
+            case "Amazon.com Inc."   : apiString = "corretto";     break;
+            case "Azul Systems, Inc.": apiString = "zulu";         break;
+            case "BellSoft"          : apiString = "liberica";     break;
+            case "Microsoft"         : apiString = "microsoft";    break;
+            case "ojdkbuild"         : apiString = "ojdk_build";   break;
+            case "Red Hat, Inc."     : apiString = "redhat";       break;
+            case "SAP SE"            : apiString = "sap_machine";  break;
+            case "OpenLogic"         : apiString = "openlogic";    break;
+            case "JetBrains s.r.o."  : apiString = "jetbrains";    break;
+            case "Eclipse Foundation": apiString = "temurin";      break;
+            case "Tencent"           : apiString = "kona";         break;
+            case "Bisheng"           : apiString = "bisheng";      break;
+            case "Debian"            : apiString = "debian";       break;
+            case "Oracle Corporation":
+                // Only the commercial builds say so, others might be Oracle or Oracle OpenJDK
+                if (!"commercial".equals(getReleaseValue(releaseProperties, "BUILD_TYPE"))) { return Optional.empty(); }
+                apiString = "oracle";
+                break;
+            default                  : return Optional.empty();
         }
+
+        // Liberica Native Image Kit also says BellSoft, its GraalVM version is only in java -version
+        final File readmeFile = new File(parentPath + "readme.txt");
+        if (readmeFile.exists()) {
+            try {
+                if (Helper.readTextFileToList(readmeFile.getAbsolutePath()).stream().anyMatch(l -> l.toLowerCase().contains("liberica native image kit"))) { return Optional.empty(); }
+            } catch (IOException e) {
+                return Optional.empty();
+            }
+        }
+        if (!getReleaseValue(releaseProperties, "GRAALVM_VERSION").isEmpty()) { return Optional.empty(); }
+
+        final VersionNumber version;
+        try {
+            // java -version of Zulu tells the build, the others only the version
+            if ("zulu".equals(apiString) && !runtimeVersion.isEmpty()) {
+                version = VersionNumber.fromText(runtimeVersion);
+            } else {
+                version = VersionNumber.fromText(runtimeVersion.contains("-ea") && !javaVersion.contains("-ea") ? javaVersion + "-ea" : javaVersion);
+            }
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+
+        final String architecture   = getReleaseValue(releaseProperties, "OS_ARCH").toLowerCase();
+        final String versionDetails = (runtimeVersion + " " + getReleaseValue(releaseProperties, "IMPLEMENTOR_VERSION")).toLowerCase();
+        String       feature        = "";
+        for (String feat : Constants.FEATURES) {
+            feat = feat.trim().toLowerCase();
+            if (versionDetails.contains(feat)) {
+                feature = feat;
+                break;
+            }
+        }
+        final String versionString = version.toString(OutputFormat.REDUCED_COMPRESSED, true, true);
+        return Optional.of(JdkIndex.Entry.of(home, stampFile, apiString, versionString, versionString, architecture.isEmpty() ? osArcMode.architecture().name().toLowerCase() : architecture,
+                                             isFxBundled(parentPath, releaseProperties), feature, BuildScope.BUILD_OF_OPEN_JDK));
     }
 
-    private void getJavaHome() {
+    private void emit(final boolean inUse, final JdkIndex.Entry entry, final String parentPath, final Installation.Source source) {
+        final Installation installation = new Installation(parentPath, entry.distribution(), entry.version(), entry.jdkVersion(), osArcMode.operatingSystem().getApiString(), entry.architecture(),
+                                                           entry.fxBundled(), entry.feature(), entry.buildScope(), inUse, source);
+        synchronized (installations) {
+            installations.add(installation);
+            consumer.accept(installation);
+        }
+    }
+
+    private static String toCanonicalPath(final String path) {
         try {
-            ProcessBuilder processBuilder = WINDOWS == osArcMode.operatingSystem() ? new ProcessBuilder(WIN_JAVA_HOME_CMDS) : OperatingSystem.MACOS == osArcMode.operatingSystem() ? new ProcessBuilder(MAC_JAVA_HOME_CMDS) : new ProcessBuilder(LINUX_JAVA_HOME_CMDS);
-            Process        process        = processBuilder.start();
-            Streamer       streamer       = new Streamer(process.getInputStream(), d -> this.javaHome = d);
-            service.submit(streamer);
+            return Paths.get(path).toRealPath().toString();
         } catch (IOException e) {
-            e.printStackTrace();
+            return Paths.get(path).toAbsolutePath().normalize().toString();
+        }
+    }
+
+    private boolean isInUse(final String parentPath) {
+        return !this.javaHome.isEmpty() && parentPath.contains(javaHome);
+    }
+
+    private boolean isFxBundled(final String parentPath, final Properties releaseProperties) {
+        final String fileSeparator   = File.separator;
+        final File   jreLibExtFolder = new File(new StringBuilder(parentPath).append("jre").append(fileSeparator).append("lib").append(fileSeparator).append("ext").toString());
+        if (jreLibExtFolder.exists() && Stream.of(jreLibExtFolder.listFiles()).filter(file -> !file.isDirectory()).anyMatch(file -> file.getName().equalsIgnoreCase("jfxrt.jar"))) {
+            return true;
+        }
+        final File   jmodsFolder     = new File(new StringBuilder(parentPath).append("jmods").toString());
+        if (jmodsFolder.exists() && Stream.of(jmodsFolder.listFiles()).filter(file -> !file.isDirectory()).anyMatch(file -> file.getName().startsWith("javafx"))) {
+            return true;
         }
+        return getReleaseValue(releaseProperties, "MODULES").contains("javafx");
     }
 
+    private Properties readReleaseProperties(final String parentPath) {
+        final Properties releaseProperties = new Properties();
+        final File       releaseFile       = new File(parentPath + "release");
+        if (releaseFile.exists()) {
+            try (FileInputStream propFile = new FileInputStream(releaseFile)) {
+                releaseProperties.load(propFile);
+            } catch (IOException ex) {
+                System.err.println("Error reading release properties file. " + ex);
+            }
+        }
+        return releaseProperties;
+    }
 
-    private class Streamer implements Runnable {
-        private InputStream      inputStream;
-        private Consumer<String> consumer;
+    private static String getReleaseValue(final Properties releaseProperties, final String key) {
+        return releaseProperties.getProperty(key, "").replaceAll("\"", "").trim();
+    }
 
-        public Streamer(final InputStream inputStream, final Consumer<String> consumer) {
-            this.inputStream = inputStream;
-            this.consumer    = consumer;
+    private void getJavaHome() {
+        final String[] commands = WINDOWS == osArcMode.operatingSystem() ? WIN_JAVA_HOME_CMDS : OperatingSystem.MACOS == osArcMode.operatingSystem() ? MAC_JAVA_HOME_CMDS : LINUX_JAVA_HOME_CMDS;
+        try {
+            this.javaHome = run(Arrays.asList(commands), JAVA_HOME_TIMEOUT);
+        } catch (IOException | TimeoutException e) {
+            // Falls back to java.home
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        @Override public void run() {
+    /**
+     * Runs the given command and returns its output (lines separated by |).
+     * The process is destroyed if it did not finish before the timeout.
+     */
+    private static String run(final List<String> commands, final long timeoutMillis) throws IOException, InterruptedException, TimeoutException {
+        final Process process = new ProcessBuilder(commands).redirectErrorStream(true).start();
+        try {
+            if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) { throw new TimeoutException(String.join(" ", commands)); }
+            // The few lines of output fit into the pipe, so it is read after the process ended
             final StringBuilder builder = new StringBuilder();
-            new BufferedReader(new InputStreamReader(inputStream)).lines().forEach(line -> builder.append(line).append("|"));
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                reader.lines().forEach(line -> builder.append(line).append("|"));
+            }
             if (builder.length() > 0) {
                 builder.setLength(builder.length() - 1);
             }
-            consumer.accept(builder.toString());
+            return builder.toString();
+        } finally {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
         }
     }
 }
@@ -0,0 +1,273 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * The distributions known to discocli. The registry is seeded from the
+ * Distro enum and extended by the distributions endpoint of the Disco API,
+ * whose response is cached in ~/.discocli/distributions.json, so that new
+ * vendors can be used without a new release. The names, api strings and
+ * synonyms of all distributions are in one case insensitive hash index,
+ * lookups do not allocate.
+ */
+public final class Distributions {
+    public  static final Duration                   MAX_AGE             = Duration.ofDays(1);
+    private static final String                     FIELD_RESULT        = "result";
+    private static final String                     FIELD_API_PARAMETER = "api_parameter";
+    private static final int                        SPACER_WIDTH        = 17;
+    private static final Object                     LOCK                = new Object();
+    private static volatile Path                    file                = Paths.get(Constants.DISCOCLI_FOLDER).resolve(Constants.DISTRIBUTION_JSON);
+    private static volatile Registry                registry;
+    private static          CompletableFuture<Boolean> refresh;
+
+    private record Registry(List<Distribution> distributions, AliasIndex index) {}
+
+
+    // ******************** Constructors **************************************
+    private Distributions() {}
+
+
+    // ******************** Methods *******************************************
+    /**
+     * The distribution with the given name, api string or synonym (ignoring
+     * the case), null if there is none.
+     */
+    public static Distribution fromText(final String text) {
+        if (null == text) { return null; }
+        return getRegistry().index().get(text);
+    }
+
+    /**
+     * Like fromText() but refreshes the registry from the Disco API once if
+     * the distribution is not known (e.g. a vendor added after the release).
+     */
+    public static Distribution resolve(final String text) {
+        final Distribution distribution = fromText(text);
+        if (null != distribution || null == text || text.isBlank() || Helper.isOffline()) { return distribution; }
+        refresh().join();
+        return fromText(text);
+    }
+
+    /**
+     * All known distributions, the built-in ones first.
+     */
+    public static List<Distribution> getAll() { return getRegistry().distributions(); }
+
+    /**
+     * The cached response of the distributions endpoint.
+     */
+    public static Path getFile() { return file; }
+
+    public static void setFile(final Path path) {
+        synchronized (LOCK) {
+            file     = path;
+            registry = null;
+        }
+    }
+
+    public static boolean isStale() {
+        try {
+            return !Files.isRegularFile(file) || System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() > MAX_AGE.toMillis();
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Refreshes the registry in the background if the cached distributions
+     * are older than a day. Completes with true if the registry changed.
+     */
+    public static CompletableFuture<Boolean> refreshIfStale() {
+        if (Helper.isOffline() || !isStale()) { return CompletableFuture.completedFuture(Boolean.FALSE); }
+        return refresh();
+    }
+
+    /**
+     * Fetches the distributions from the Disco API, caches the response and
+     * rebuilds the registry. Concurrent calls share one request. Completes
+     * with true if the registry changed, false if nothing changed or the
+     * request failed (the registry stays as it is).
+     */
+    public static CompletableFuture<Boolean> refresh() {
+        synchronized (LOCK) {
+            if (null != refresh && !refresh.isDone()) { return refresh; }
+            final String uri = Helper.getApiUrl() + Constants.DISTRIBUTIONS_ENDPOINT + "?include_versions=false&include_synonyms=true";
+            refresh = Helper.fetch(uri).thenApply(result -> {
+                if (!result.isOk()) { return Boolean.FALSE; }
+                final String             json          = result.value().body();
+                final List<Distribution> distributions = fromJson(json);
+                if (distributions.isEmpty()) { return Boolean.FALSE; }
+                write(json);
+                final Registry updated = build(distributions);
+                synchronized (LOCK) {
+                    final boolean changed = null == registry || !registry.distributions().equals(updated.distributions());
+                    registry = updated;
+                    return changed;
+                }
+            });
+            return refresh;
+        }
+    }
+
+    /**
+     * The distributions of a response of the distributions endpoint.
+     */
+    public static List<Distribution> fromJson(final String json) {
+        final List<Distribution> distributions = new ArrayList<>();
+        try {
+            final JsonElement element = JsonParser.parseString(json);
+            if (!element.isJsonObject() || !element.getAsJsonObject().has(FIELD_RESULT) || !element.getAsJsonObject().get(FIELD_RESULT).isJsonArray()) { return distributions; }
+            for (JsonElement entry : element.getAsJsonObject().getAsJsonArray(FIELD_RESULT)) {
+                if (!entry.isJsonObject()) { continue; }
+                final JsonObject   obj        = entry.getAsJsonObject();
+                final String       apiString  = getString(obj, FIELD_API_PARAMETER, getString(obj, Distribution.FIELD_API_STRING, "")).trim().toLowerCase(Locale.ENGLISH);
+                if (apiString.isEmpty()) { continue; }
+                final String       uiString   = getString(obj, Distribution.FIELD_UI_STRING, getString(obj, Distribution.FIELD_NAME, apiString));
+                final boolean      maintained = !obj.has(Distribution.FIELD_MAINTAINED) || obj.get(Distribution.FIELD_MAINTAINED).getAsBoolean();
+                final List<String> synonyms   = new ArrayList<>();
+                if (obj.has(Distribution.FIELD_SYNONYMS) && obj.get(Distribution.FIELD_SYNONYMS).isJsonArray()) {
+                    obj.getAsJsonArray(Distribution.FIELD_SYNONYMS).forEach(synonym -> { if (synonym.isJsonPrimitive()) { synonyms.add(synonym.getAsString()); } });
+                }
+                distributions.add(new Distribution(apiString.toUpperCase(Locale.ENGLISH), uiString, apiString, maintained, List.copyOf(synonyms), " ".repeat(Math.max(1, SPACER_WIDTH - apiString.length()))));
+            }
+        } catch (RuntimeException e) {
+            distributions.clear();
+        }
+        return distributions;
+    }
+
+    private static Registry getRegistry() {
+        Registry current = registry;
+        if (null == current) {
+            synchronized (LOCK) {
+                if (null == registry) { registry = build(read()); }
+                current = registry;
+            }
+        }
+        return current;
+    }
+
+    private static List<Distribution> read() {
+        try {
+            return Files.isRegularFile(file) ? fromJson(Files.readString(file, StandardCharsets.UTF_8)) : List.of();
+        } catch (IOException e) {
+            return List.of();
+        }
+    }
+
+    private static void write(final String json) {
+        final Path target = file;
+        final Path tmp    = target.resolveSibling(target.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            Files.writeString(tmp, json, StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            try { Files.deleteIfExists(tmp); } catch (IOException ex) { /* Best effort */ }
+        }
+    }
+
+    // The built-in distributions win, the synonyms the api knows in addition point to them
+    private static Registry build(final List<Distribution> fromApi) {
+        final Map<String, Distribution> byApiString = new LinkedHashMap<>();
+        Distro.getDistributions().forEach(distribution -> byApiString.put(distribution.apiString(), distribution));
+        fromApi.forEach(distribution -> byApiString.putIfAbsent(distribution.apiString(), distribution));
+
+        final Map<String, Distribution> aliases = new LinkedHashMap<>();
+        byApiString.values().forEach(distribution -> aliases.putIfAbsent(distribution.apiString().toLowerCase(Locale.ENGLISH), distribution));
+        byApiString.values().forEach(distribution -> distribution.synonyms().forEach(synonym -> aliases.putIfAbsent(synonym.toLowerCase(Locale.ENGLISH), distribution)));
+        fromApi.forEach(distribution -> distribution.synonyms().forEach(synonym -> aliases.putIfAbsent(synonym.toLowerCase(Locale.ENGLISH), byApiString.get(distribution.apiString()))));
+        byApiString.values().forEach(distribution -> {
+            aliases.putIfAbsent(distribution.name().toLowerCase(Locale.ENGLISH), distribution);
+            aliases.putIfAbsent(distribution.uiString().toLowerCase(Locale.ENGLISH), distribution);
+        });
+        return new Registry(Collections.unmodifiableList(new ArrayList<>(byApiString.values())), new AliasIndex(aliases));
+    }
+
+    private static String getString(final JsonObject obj, final String field, final String defaultValue) {
+        return obj.has(field) && obj.get(field).isJsonPrimitive() ? obj.get(field).getAsString() : defaultValue;
+    }
+
+
+    // ******************** Inner Classes *************************************
+    /**
+     * Open addressing over the lower case aliases. The hash folds upper case
+     * ascii letters while it is computed, so lookups neither create a lower
+     * case copy of the text nor box anything.
+     */
+    private static final class AliasIndex {
+        private final String[]       keys;
+        private final Distribution[] values;
+        private final int            mask;
+
+        AliasIndex(final Map<String, Distribution> aliases) {
+            final int capacity = Integer.highestOneBit(Math.max(2, aliases.size()) * 2 - 1) << 1;
+            this.keys   = new String[capacity];
+            this.values = new Distribution[capacity];
+            this.mask   = capacity - 1;
+            aliases.forEach((alias, distribution) -> {
+                int i = hash(alias) & mask;
+                while (null != keys[i]) { i = (i + 1) & mask; }
+                keys[i]   = alias;
+                values[i] = distribution;
+            });
+        }
+
+        Distribution get(final String text) {
+            for (int i = hash(text) & mask ; ; i = (i + 1) & mask) {
+                final String key = keys[i];
+                if (null == key) { return null; }
+                if (key.length() == text.length() && key.equalsIgnoreCase(text)) { return values[i]; }
+            }
+        }
+
+        private static int hash(final String text) {
+            int hash = 0;
+            for (int i = 0 ; i < text.length() ; i++) {
+                final char c = text.charAt(i);
+                hash = 31 * hash + (c >= 'A' && c <= 'Z' ? c + 32 : c);
+            }
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
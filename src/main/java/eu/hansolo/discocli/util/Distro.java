@@ -24,6 +24,8 @@ import eu.hansolo.jdktools.util.OutputFormat;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 
@@ -33,7 +35,7 @@ public enum Distro implements Api {
     BISHENG(new Distribution("BISHENG", "Bi Sheng", "bisheng", true, List.of("bisheng", "BISHENG", "BiSheng", "bi_sheng", "BI_SHENG", "bi-sheng", "BI-SHENG", "bi sheng", "BI SHENG", "Bi Sheng"), "          ")),
     CORRETTO(new Distribution("CORRETTO", "Corretto", "corretto", true, List.of("corretto","CORRETTO","Corretto"), "         ")),
     DRAGONWELL(new Distribution("DRAGONWELL", "Dragonwell", "dragonwell", true, List.of("dragonwell","DRAGONWELL","Dragonwell"), "       ")),
-    GLUON_GRAALVM(new Distribution("GLUON_GRAALVM", "Gluon GraalVM", "gluon_graalvm", true, List.of("gluon_graalvm", "GLUON_GRAALVM", "gluongraalvm", "GLUONGRAALVM", "gluon graalvm", "Gluon GraalVM", "GluonGraalVM"), "    ")),
+    GLUON_GRAALVM(new Distribution("GLUON_GRAALVM", "Gluon GraalVM", "gluon_graalvm", true, List.of("gluon_graalvm", "GLUON_GRAALVM", "gluongraalvm", "GLUONGRAALVM", "gluon graalvm", "Gluon GraalVM", "GluonGraalVM", "Gluon"), "    ")),
     GRAALVM_CE8(new Distribution("GRAALVM_CE8", "GraalVM CE8", "graalvm_ce8", false, List.of("GraalVM CE 8","GraalVMCE8","GraalVM_CE8"), "      ")),
     GRAALVM_CE11(new Distribution("GRAALVM_CE11", "GraalVM CE11", "graalvm_ce11", true, List.of("GraalVM CE 11","GraalVMCE11","GraalVM_CE11"), "     ")),
     GRAALVM_CE16(new Distribution("GRAALVM_CE16", "GraalVM CE16", "graalvm_ce16", true, List.of("GraalVM CE 16","GraalVMCE16","GraalVM_CE16"), "     ")),
@@ -43,7 +45,7 @@ public enum Distro implements Api {
     LIBERICA(new Distribution("LIBERICA", "Liberica", "liberica", true, List.of("liberica","LIBERICA","Liberica"), "         ")),
     LIBERICA_NATIVE(new Distribution("LIBERICA_NATIVE", "Liberica Native", "liberica_native", true, List.of("liberica_native","LIBERICA_NATIVE","libericaNative","LibericaNative","liberica native","LIBERICA NATIVE","Liberica Native"), "  ")),
     MANDREL(new Distribution("MANDREL", "Mandrel", "mandrel", true, List.of("mandrel", "MANDREL", "Mandrel"), "          ")),
-    MICROSOFT(new Distribution("MICROSOFT", "Microsoft", "microsoft", true, List.of("microsoft", "MICROSOFT", "Microsoft"), "        ")),
+    MICROSOFT(new Distribution("MICROSOFT", "Microsoft", "microsoft", true, List.of("microsoft", "MICROSOFT", "Microsoft", "Microsoft OpenJDK", "Microsoft Build of OpenJDK"), "        ")),
     OJDK_BUILD(new Distribution("OJDK_BUILD", "OJDK Build", "ojdk_build", true, List.of("ojdk_build","OJDK_BUILD","OJDK Build","ojdk build","ojdkbuild","OJDKBuild"), "       ")),
     OPEN_LOGIC(new Distribution("OPEN_LOGIC", "OpenLogic", "openlogic", true, List.of("openlogic","OPENLOGIC","OpenLogic","open_logic","OPEN_LOGIC","Open Logic","OPEN LOGIC","open logic"), "        ")),
     ORACLE_OPEN_JDK(new Distribution("ORACLE_OPEN_JDK", "Oracle OpenJDK", "oracle_open_jdk", true, List.of("oracle_open_jdk","ORACLE_OPEN_JDK","oracle_openjdk","ORACLE_OPENJDK","Oracle_OpenJDK","Oracle OpenJDK","oracle openjdk","ORACLE OPENJDK","open_jdk","openjdk","OpenJDK","Open JDK","OPEN_JDK","open-jdk","OPEN-JDK","Oracle-OpenJDK","oracle-openjdk","ORACLE-OPENJDK","oracle-open-jdk","ORACLE-OPEN-JDK"), "  ")),
@@ -52,12 +54,14 @@ public enum Distro implements Api {
     SEMERU(new Distribution("SEMERU", "Semeru", "semeru", true, List.of("semeru", "Semeru", "SEMERU"), "           ")),
     SEMERU_CERTIFIED(new Distribution("SEMERU_CERTIFIED", "Semeru certified", "semeru_certified", true, List.of("semeru_certified", "SEMERU_CERTIFIED", "Semeru_Certified", "Semeru_certified", "semeru certified", "SEMERU CERTIFIED", "Semeru Certified", "Semeru certified"), " ")),
     TEMURIN(new Distribution("TEMURIN", "Temurin", "temurin", true, List.of("temurin","TEMURIN","Temurin"), "          ")),
-    TRAVA(new Distribution("TRAVA", "Trava", "trava", true, List.of("trava", "TRAVA", "Trava"), "            ")),
+    TRAVA(new Distribution("TRAVA", "Trava", "trava", true, List.of("trava", "TRAVA", "Trava", "trava_openjdk", "trava openjdk"), "            ")),
     ZULU(new Distribution("ZULU", "Zulu", "zulu", true, List.of("zulu","ZULU","Zulu","zulucore","ZULUCORE","ZuluCore","zulu_core","ZULU_CORE","Zulu_Core","zulu core","ZULU CORE","Zulu Core"), "             ")),
     ZULU_PRIME(new Distribution("ZULU_PRIME", "Zulu Prime", "zulu_prime", true, List.of("zing","ZING","Zing","prime","PRIME","Prime","zuluprime","ZULUPRIME","ZuluPrime","zulu_prime","ZULU_PRIME","Zulu_Prime","zulu prime","ZULU PRIME","Zulu Prime"), "       ")),
     NONE(null),
     NOT_FOUND(null);
 
+    private static final Map<String, Distro> BY_API_STRING = Arrays.stream(values()).filter(distro -> null != distro.distribution).collect(Collectors.toUnmodifiableMap(distro -> distro.distribution.apiString(), Function.identity()));
+
     private final Distribution distribution;
 
 
@@ -82,209 +86,16 @@ public enum Distro implements Api {
 
     public static final Distribution distributionFromText(final String text) { return fromText(text).get(); }
 
+    /**
+     * The built-in distribution with the given name, api string or synonym
+     * (ignoring the case), distributions only known from the Disco API are
+     * NOT_FOUND (see Distributions).
+     */
     public static final Distro fromText(final String text) {
-        if (null == text) { return NOT_FOUND; }
-        switch (text) {
-            case "zulu":
-            case "ZULU":
-            case "Zulu":
-            case "zulucore":
-            case "ZULUCORE":
-            case "ZuluCore":
-            case "zulu_core":
-            case "ZULU_CORE":
-            case "Zulu_Core":
-            case "zulu core":
-            case "ZULU CORE":
-            case "Zulu Core":
-                return ZULU;
-            case "zing":
-            case "ZING":
-            case "Zing":
-            case "prime":
-            case "PRIME":
-            case "Prime":
-            case "zuluprime":
-            case "ZULUPRIME":
-            case "ZuluPrime":
-            case "zulu_prime":
-            case "ZULU_PRIME":
-            case "Zulu_Prime":
-            case "zulu prime":
-            case "ZULU PRIME":
-            case "Zulu Prime":
-                return ZULU_PRIME;
-            case "aoj":
-            case "AOJ":
-                return AOJ;
-            case "aoj_openj9":
-            case "AOJ_OpenJ9":
-            case "AOJ_OPENJ9":
-            case "AOJ OpenJ9":
-            case "AOJ OPENJ9":
-            case "aoj openj9":
-                return AOJ_OPENJ9;
-            case "corretto":
-            case "CORRETTO":
-            case "Corretto":
-                return CORRETTO;
-            case "dragonwell":
-            case "DRAGONWELL":
-            case "Dragonwell":
-                return DRAGONWELL;
-            case "gluon_graalvm":
-            case "GLUON_GRAALVM":
-            case "gluongraalvm":
-            case "GLUONGRAALVM":
-            case "gluon graalvm":
-            case "GLUON GRAALVM":
-            case "Gluon GraalVM":
-            case "Gluon":
-                return GLUON_GRAALVM;
-            case "graalvm_ce8":
-            case "graalvmce8":
-            case "GraalVM CE 8":
-            case "GraalVMCE8":
-            case "GraalVM_CE8":
-                return GRAALVM_CE8;
-            case "graalvm_ce11":
-            case "graalvmce11":
-            case "GraalVM CE 11":
-            case "GraalVMCE11":
-            case "GraalVM_CE11":
-                return GRAALVM_CE11;
-            case "graalvm_ce16":
-            case "graalvmce16":
-            case "GraalVM CE 16":
-            case "GraalVMCE16":
-            case "GraalVM_CE16":
-                return GRAALVM_CE16;
-            case "graalvm_ce17":
-            case "graalvmce17":
-            case "GraalVM CE 17":
-            case "GraalVMCE17":
-            case "GraalVM_CE17":
-                return GRAALVM_CE17;
-            case "jetbrains":
-            case "JetBrains":
-            case "JETBRAINS":
-                return JETBRAINS;
-            case "liberica":
-            case "LIBERICA":
-            case "Liberica":
-                return LIBERICA;
-            case "liberica_native":
-            case "LIBERICA_NATIVE":
-            case "libericaNative":
-            case "LibericaNative":
-            case "liberica native":
-            case "LIBERICA NATIVE":
-            case "Liberica Native":
-                return LIBERICA_NATIVE;
-            case "mandrel":
-            case "MANDREL":
-            case "Mandrel":
-                return MANDREL;
-            case "microsoft":
-            case "Microsoft":
-            case "MICROSOFT":
-            case "Microsoft OpenJDK":
-            case "Microsoft Build of OpenJDK":
-                return MICROSOFT;
-            case "ojdk_build":
-            case "OJDK_BUILD":
-            case "OJDK Build":
-            case "ojdk build":
-            case "ojdkbuild":
-            case "OJDKBuild":
-                return OJDK_BUILD;
-            case "openlogic":
-            case "OPENLOGIC":
-            case "OpenLogic":
-            case "open_logic":
-            case "OPEN_LOGIC":
-            case "Open Logic":
-            case "OPEN LOGIC":
-            case "open logic":
-                return OPEN_LOGIC;
-            case "oracle":
-            case "Oracle":
-            case "ORACLE":
-                return ORACLE;
-            case "oracle_open_jdk":
-            case "ORACLE_OPEN_JDK":
-            case "oracle_openjdk":
-            case "ORACLE_OPENJDK":
-            case "Oracle_OpenJDK":
-            case "Oracle OpenJDK":
-            case "oracle openjdk":
-            case "ORACLE OPENJDK":
-            case "open_jdk":
-            case "openjdk":
-            case "OpenJDK":
-            case "Open JDK":
-            case "OPEN_JDK":
-            case "open-jdk":
-            case "OPEN-JDK":
-            case "Oracle-OpenJDK":
-            case "oracle-openjdk":
-            case "ORACLE-OPENJDK":
-            case "oracle-open-jdk":
-            case "ORACLE-OPEN-JDK":
-                return ORACLE_OPEN_JDK;
-            case "sap_machine":
-            case "sapmachine":
-            case "SAPMACHINE":
-            case "SAP_MACHINE":
-            case "SAPMachine":
-            case "SAP Machine":
-            case "sap-machine":
-            case "SAP-Machine":
-            case "SAP-MACHINE":
-                return SAP_MACHINE;
-            case "semeru":
-            case "Semeru":
-            case "SEMERU":
-                return SEMERU;
-            case "semeru_certified":
-            case "SEMERU_CERTIFIED":
-            case "Semeru_Certified":
-            case "Semeru_certified":
-            case "semeru certified":
-            case "SEMERU CERTIFIED":
-            case "Semeru Certified":
-            case "Semeru certified":
-                return SEMERU_CERTIFIED;
-            case "temurin":
-            case "Temurin":
-            case "TEMURIN":
-                return TEMURIN;
-            case "trava":
-            case "TRAVA":
-            case "Trava":
-            case "trava_openjdk":
-            case "TRAVA_OPENJDK":
-            case "trava openjdk":
-            case "TRAVA OPENJDK":
-                return TRAVA;
-            case "kona":
-            case "KONA":
-            case "Kona":
-                return KONA;
-            case "bisheng":
-            case "BISHENG":
-            case "BiSheng":
-            case "bi_sheng":
-            case "BI_SHENG":
-            case "bi-sheng":
-            case "BI-SHENG":
-            case "bi sheng":
-            case "Bi Sheng":
-            case "BI SHENG":
-                return BISHENG;
-            default:
-                return NOT_FOUND;
-        }
+        final Distribution distribution = Distributions.fromText(text);
+        if (null == distribution) { return NOT_FOUND; }
+        final Distro distro = BY_API_STRING.get(distribution.apiString());
+        return null == distro ? NOT_FOUND : distro;
     }
 
     public final Distribution get() { return distribution; }
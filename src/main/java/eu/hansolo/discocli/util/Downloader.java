@@ -0,0 +1,448 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+public class Downloader {
+    public  static final int                        DOWNLOAD_OK           = 0;
+    public  static final int                        DOWNLOAD_FAILED       = 1;
+    public  static final int                        DOWNLOAD_EXISTS       = 2;
+    public  static final int                        CHECKSUM_MISMATCH     = 3;
+    public  static final int                        DEFAULT_CONNECTIONS   = 1;
+    public  static final int                        MAX_CONNECTIONS       = 16;
+    public  static final long                       MIN_SEGMENT_SIZE      = 4 * 1024 * 1024;
+    public  static final Duration                   DEFAULT_READ_TIMEOUT  = Duration.ofSeconds(30);
+    private static final int                        BUFFER_SIZE           = 256 * 1024;
+    private static final long                       CHECKPOINT_INTERVAL   = 1_000;
+    private static final Pattern                    CONTENT_RANGE_PATTERN = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+    private final        int                        connections;
+    private final        Duration                   readTimeout;
+    private final        HttpClient                 httpClient;
+    private final        Set<FileChannelSubscriber> activeSubscribers;
+    private final        AtomicLong                 reported;
+    private              MessageDigest              digest;
+    private              boolean                    checksumVerified;
+    private              Progress                   sharedProgress;
+    private              Progress                   progress;
+    private              Exception                  lastError;
+
+
+    // ******************** Constructors **************************************
+    public Downloader() {
+        this(DEFAULT_CONNECTIONS);
+    }
+    public Downloader(final int connections) {
+        this(connections, DEFAULT_READ_TIMEOUT);
+    }
+    public Downloader(final int connections, final Duration readTimeout) {
+        this.connections       = Math.max(1, Math.min(MAX_CONNECTIONS, connections));
+        this.readTimeout       = null == readTimeout || readTimeout.isNegative() || readTimeout.isZero() ? DEFAULT_READ_TIMEOUT : readTimeout;
+        this.httpClient        = Helper.getDownloadClient();
+        this.activeSubscribers = ConcurrentHashMap.newKeySet();
+        this.reported          = new AtomicLong();
+    }
+
+
+    // ******************** Methods *******************************************
+    public boolean isChecksumVerified() { return checksumVerified; }
+
+    /**
+     * The System.nanoTime() when the first byte of the last download was received, 0 if there was none.
+     */
+    public long getFirstByteNanos() { return null == progress ? 0 : progress.getFirstByteNanos(); }
+
+    /**
+     * Reports the received bytes to the given progress instead of rendering
+     * an own one, e.g. if several downloads run at the same time.
+     */
+    public void setProgress(final Progress progress) { this.sharedProgress = progress; }
+
+    public int download(final String url, final String filename, final long size) {
+        return download(url, filename, size, null, null);
+    }
+    /**
+     * Downloads the file and retries failed transfers with the backoff of
+     * the current retry policy. The part file of a failed transfer is kept,
+     * so every retry resumes where the previous one stopped. A status the
+     * retry policy does not accept (e.g. 404 or 403) fails right away.
+     */
+    public int download(final String url, final String filename, final long size, final String checksum, final String checksumType) {
+        final RetryPolicy policy = Helper.getRetryPolicy();
+        reported.set(0);
+        int result = transfer(url, filename, size, checksum, checksumType);
+        for (int retry = 1 ; DOWNLOAD_FAILED == result && retry <= policy.getRetries() && isRetryable() ; retry++) {
+            policy.downloadRetried();
+            try {
+                Thread.sleep(policy.getBackoff(retry).toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return result;
+            }
+            result = transfer(url, filename, size, checksum, checksumType);
+        }
+        return result;
+    }
+
+    private int transfer(final String url, final String filename, final long size, final String checksum, final String checksumType) {
+        final Path target = Paths.get(filename);
+        if (Files.exists(target)) { return DOWNLOAD_EXISTS; }
+
+        this.checksumVerified = false;
+        this.lastError        = null;
+        this.digest           = null == checksum || checksum.isBlank() ? null : Helper.getMessageDigest(checksumType);
+
+        final PartFile                 partFile     = new PartFile(target);
+        final Thread                   shutdownHook = new Thread(partFile::save);
+        final ScheduledExecutorService watchdog     = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "discocli-watchdog"));
+        boolean                        resumable    = partFile.load();
+        try {
+            // Cancel every transfer that did not receive data within the read timeout
+            final long timeoutNanos = readTimeout.toNanos();
+            watchdog.scheduleAtFixedRate(() -> activeSubscribers.stream()
+                                                                .filter(subscriber -> subscriber.isIdle(timeoutNanos))
+                                                                .forEach(subscriber -> subscriber.cancel(new HttpTimeoutException("Read timed out"))), 250, 250, TimeUnit.MILLISECONDS);
+            // Save the state of the part file in the background so that the I/O threads only update counters
+            final ScheduledFuture<?> checkpoints = watchdog.scheduleAtFixedRate(partFile::save, CHECKPOINT_INTERVAL, CHECKPOINT_INTERVAL, TimeUnit.MILLISECONDS);
+
+            final RangeSupport rangeSupport = connections > 1 || resumable ? probe(url) : null;
+            if (resumable && !(rangeSupport.supported() && partFile.canResume(url, rangeSupport.size(), rangeSupport.etag(), rangeSupport.lastModified()))) {
+                partFile.discard();
+                resumable = false;
+            }
+            if (!resumable) {
+                final long fileSize     = null != rangeSupport && rangeSupport.size() > 0 ? rangeSupport.size() : size;
+                final int  noOfSegments = null != rangeSupport && rangeSupport.supported() && fileSize >= 2 * MIN_SEGMENT_SIZE ? (int) Math.min(connections, fileSize / MIN_SEGMENT_SIZE) : 1;
+                partFile.init(url, fileSize, null == rangeSupport ? null : rangeSupport.etag(), null == rangeSupport ? null : rangeSupport.lastModified(), noOfSegments);
+            }
+            if (null == sharedProgress) {
+                this.progress = new Progress(target.getFileName().toString(), partFile.getSize() > 0 ? partFile.getSize() : size);
+                reported.set(0);
+            } else {
+                this.progress = sharedProgress;
+            }
+            // A retry must not count the bytes of the previous attempt again
+            progress.skip(partFile.getTotalWritten() - reported.getAndSet(partFile.getTotalWritten()));
+
+            partFile.save();
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+            // Use the uri after following redirects to talk to the vendor CDN directly
+            final URI resolvedUri = null == rangeSupport ? URI.create(url) : rangeSupport.uri();
+            if (partFile.getNoOfSegments() > 1) {
+                downloadSegmented(resolvedUri, partFile);
+            } else {
+                downloadSequential(resolvedUri, partFile);
+            }
+            removeShutdownHook(shutdownHook);
+            checkpoints.cancel(false);
+            if (null != digest) {
+                if (!HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(checksum.trim())) {
+                    partFile.discard();
+                    return CHECKSUM_MISMATCH;
+                }
+                checksumVerified = true;
+            }
+            partFile.complete();
+            return DOWNLOAD_OK;
+        } catch (IOException | IllegalArgumentException e) {
+            this.lastError = e;
+            removeShutdownHook(shutdownHook);
+            // Keep the part file and its sidecar so that the next run can resume
+            partFile.save();
+            return DOWNLOAD_FAILED;
+        } finally {
+            watchdog.shutdownNow();
+            activeSubscribers.clear();
+            if (null != progress && progress != sharedProgress) { progress.close(); }
+        }
+    }
+
+    private void downloadSequential(final URI uri, final PartFile partFile) throws IOException {
+        final long offset = partFile.getWritten(0);
+        if (null != digest && offset > 0) { updateDigest(partFile, 0, offset); }
+        if (partFile.getSize() > 0 && offset == partFile.getSize()) { return; }
+
+        final HttpRequest.Builder requestBuilder = requestBuilder(uri);
+        if (offset > 0) {
+            requestBuilder.header("Range", "bytes=" + offset + "-");
+            if (partFile.hasValidator()) { requestBuilder.header("If-Range", partFile.getValidator()); }
+        }
+
+        try (FileChannel channel = FileChannel.open(partFile.getPart(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            final BodyHandler<Long> bodyHandler = responseInfo -> {
+                final FileChannelSubscriber subscriber;
+                if (responseInfo.statusCode() == 206 && offset > 0) {
+                    subscriber = new FileChannelSubscriber(channel, offset, -1, digest, count -> written(partFile, 0, count));
+                } else if (responseInfo.statusCode() == 200) {
+                    // Server does not support ranges or the file changed, start from scratch
+                    final HttpHeaders headers = responseInfo.headers();
+                    progress.skip(-partFile.getWritten(0));
+                    reported.addAndGet(-partFile.getWritten(0));
+                    partFile.setWritten(0, 0);
+                    if (null != digest) { digest.reset(); }
+                    partFile.update(headers.firstValueAsLong("Content-Length").orElse(-1), headers.firstValue("ETag").orElse(null), headers.firstValue("Last-Modified").orElse(null));
+                    // Drop the old content right away, a crash during the restart must not leave its tail behind
+                    try {
+                        channel.truncate(0);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    partFile.save();
+                    subscriber = new FileChannelSubscriber(channel, 0, -1, digest, count -> written(partFile, 0, count));
+                } else {
+                    return new CancellingSubscriber<>(-1L);
+                }
+                activeSubscribers.add(subscriber);
+                return subscriber;
+            };
+            final HttpResponse<Long> response = send(requestBuilder.build(), bodyHandler);
+            if (response.body() < 0) { throw new StatusException(response.statusCode()); }
+            if (channel.size() > partFile.getWritten(0)) { channel.truncate(partFile.getWritten(0)); }
+        }
+        if (partFile.getSize() > 0 && partFile.getWritten(0) != partFile.getSize()) {
+            throw new IOException("Download incomplete");
+        }
+    }
+
+    private void downloadSegmented(final URI uri, final PartFile partFile) throws IOException {
+        final List<Integer>   incomplete = partFile.getIncompleteSegments();
+        final ExecutorService hasher     = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "discocli-hasher"));
+        try (FileChannel channel = FileChannel.open(partFile.getPart(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < partFile.getSize()) {
+                channel.write(ByteBuffer.wrap(new byte[1]), partFile.getSize() - 1);
+            }
+            final List<CompletableFuture<HttpResponse<Long>>> futures = new ArrayList<>(incomplete.size());
+            for (int segment : incomplete) {
+                futures.add(downloadRange(uri, channel, partFile, segment));
+            }
+            // Hash the contiguous part of the file that has been written so far while the download is running
+            final Future<Void> hashFuture = null == digest ? null : hasher.submit(() -> { followDigest(channel, partFile); return null; });
+            try {
+                for (CompletableFuture<HttpResponse<Long>> future : futures) {
+                    final HttpResponse<Long> response = future.join();
+                    if (response.statusCode() >= 400) { throw new StatusException(response.statusCode()); }
+                    if (response.statusCode() != 206) { throw new IOException("Server did not respond with a partial content"); }
+                }
+                if (null != hashFuture) { hashFuture.get(); }
+            } catch (CompletionException | ExecutionException e) {
+                futures.forEach(future -> future.cancel(true));
+                activeSubscribers.forEach(subscriber -> subscriber.cancel(e.getCause()));
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        } finally {
+            hasher.shutdownNow();
+        }
+    }
+
+    private CompletableFuture<HttpResponse<Long>> downloadRange(final URI uri, final FileChannel channel, final PartFile partFile, final int segment) {
+        final long                start          = partFile.getStart(segment) + partFile.getWritten(segment);
+        final long                end            = partFile.getEnd(segment);
+        final HttpRequest.Builder requestBuilder = requestBuilder(uri).header("Range", "bytes=" + start + "-" + end);
+        if (partFile.hasValidator()) { requestBuilder.header("If-Range", partFile.getValidator()); }
+        final BodyHandler<Long> bodyHandler = responseInfo -> {
+            if (responseInfo.statusCode() != 206) { return new CancellingSubscriber<>(-1L); }
+            // Segments arrive out of order, the follower hashes them in file order
+            final FileChannelSubscriber subscriber = new FileChannelSubscriber(channel, start, end - start + 1, null, count -> written(partFile, segment, count));
+            activeSubscribers.add(subscriber);
+            return subscriber;
+        };
+        return httpClient.sendAsync(requestBuilder.build(), bodyHandler).thenApply(response -> {
+            if (response.statusCode() == 206 && start + response.body() != end + 1) {
+                throw new CompletionException(new IOException("Range " + start + "-" + end + " incomplete"));
+            }
+            return response;
+        });
+    }
+
+    private void followDigest(final FileChannel channel, final PartFile partFile) throws IOException, InterruptedException {
+        final ByteBuffer buffer   = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final long       size     = partFile.getSize();
+        long             position = 0;
+        int              segment  = 0;
+        while (position < size) {
+            while (segment < partFile.getNoOfSegments() - 1 && position > partFile.getEnd(segment)) { segment++; }
+            final long available = partFile.getStart(segment) + partFile.getWritten(segment);
+            if (available <= position) {
+                Thread.sleep(5);
+                continue;
+            }
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, available - position));
+            final int read = channel.read(buffer, position);
+            if (read < 0) { throw new IOException("Unexpected end of file while verifying checksum"); }
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+    }
+
+    private void updateDigest(final PartFile partFile, final long from, final long to) throws IOException {
+        try (FileChannel channel = FileChannel.open(partFile.getPart(), StandardOpenOption.READ)) {
+            final ByteBuffer buffer   = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            long             position = from;
+            while (position < to) {
+                buffer.clear().limit((int) Math.min(BUFFER_SIZE, to - position));
+                final int read = channel.read(buffer, position);
+                if (read < 0) { throw new IOException("Unexpected end of part file"); }
+                buffer.flip();
+                digest.update(buffer);
+                position += read;
+            }
+        }
+    }
+
+    // A status that will not change on the next attempt (e.g. 404 or 403) or an invalid url is not retried
+    private boolean isRetryable() {
+        if (lastError instanceof StatusException statusException) { return RetryPolicy.isRetryable(statusException.getStatusCode()); }
+        return lastError instanceof IOException && RetryPolicy.isRetryable(lastError);
+    }
+
+    private RangeSupport probe(final String url) throws IOException {
+        // A server that ignores the range answers with the whole archive, it is not read
+        final HttpRequest        request  = requestBuilder(URI.create(url)).header("Range", "bytes=0-0").build();
+        final HttpResponse<Void> response = send(request, responseInfo -> responseInfo.statusCode() == 206 ? BodySubscribers.discarding() : new CancellingSubscriber<>(null));
+        final HttpHeaders        headers  = response.headers();
+        final URI                uri      = response.uri(); // Uri after following redirects
+        final String             etag     = headers.firstValue("ETag").orElse(null);
+        final String             modified = headers.firstValue("Last-Modified").orElse(null);
+        if (response.statusCode() == 206) {
+            final Matcher matcher = CONTENT_RANGE_PATTERN.matcher(headers.firstValue("Content-Range").orElse(""));
+            if (matcher.find() && !matcher.group(3).equals("*")) {
+                return new RangeSupport(uri, true, Long.parseLong(matcher.group(3)), etag, modified);
+            }
+            return new RangeSupport(uri, true, -1, etag, modified);
+        }
+        return new RangeSupport(uri, false, headers.firstValueAsLong("Content-Length").orElse(-1), etag, modified);
+    }
+
+    private HttpRequest.Builder requestBuilder(final URI uri) {
+        return HttpRequest.newBuilder(uri)
+                          .GET()
+                          .setHeader("User-Agent", "DiscoCLI")
+                          .timeout(readTimeout);
+    }
+
+    private <T> HttpResponse<T> send(final HttpRequest request, final BodyHandler<T> bodyHandler) throws IOException {
+        try {
+            return httpClient.send(request, bodyHandler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    // Runs on the HttpClient threads, the part file is saved and the progress is rendered by other threads
+    private void written(final PartFile partFile, final int segment, final long count) {
+        partFile.addWritten(segment, count);
+        reported.addAndGet(count);
+        progress.add(count);
+    }
+
+    private void removeShutdownHook(final Thread shutdownHook) {
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Shutdown already in progress
+        }
+    }
+
+    private static Thread daemon(final Runnable runnable, final String name) {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+
+    // ******************** Inner Classes *************************************
+    private record RangeSupport(URI uri, boolean supported, long size, String etag, String lastModified) {}
+
+    private static final class StatusException extends IOException {
+        private final int statusCode;
+
+        StatusException(final int statusCode) {
+            super("Server responded with status code " + statusCode);
+            this.statusCode = statusCode;
+        }
+
+        int getStatusCode() { return statusCode; }
+    }
+
+    /**
+     * Cancels the body right away (closes the connection) instead of
+     * reading it, the response completes with the given value.
+     */
+    private static final class CancellingSubscriber<T> implements BodySubscriber<T> {
+        private final CompletableFuture<T> body;
+
+        CancellingSubscriber(final T value) {
+            this.body = CompletableFuture.completedFuture(value);
+        }
+
+        @Override public CompletionStage<T> getBody() { return body; }
+
+        @Override public void onSubscribe(final Flow.Subscription subscription) { subscription.cancel(); }
+
+        @Override public void onNext(final List<ByteBuffer> item) {}
+
+        @Override public void onError(final Throwable throwable) {}
+
+        @Override public void onComplete() {}
+    }
+}
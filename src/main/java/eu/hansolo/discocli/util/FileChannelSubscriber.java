@@ -0,0 +1,100 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import java.io.IOException;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow.Subscription;
+import java.util.function.LongConsumer;
+
+
+/**
+ * Writes the buffers handed over by the HttpClient directly into a
+ * FileChannel at the given position without copying them into an
+ * intermediate byte array.
+ */
+public class FileChannelSubscriber implements BodySubscriber<Long> {
+    private final    FileChannel             channel;
+    private final    long                    start;
+    private final    long                    maxBytes;
+    private final    MessageDigest           digest;
+    private final    LongConsumer            onWritten;
+    private final    CompletableFuture<Long> result;
+    private volatile Subscription            subscription;
+    private volatile long                    lastActivity;
+    private          long                    position;
+
+
+    // ******************** Constructors **************************************
+    public FileChannelSubscriber(final FileChannel channel, final long start, final long maxBytes, final MessageDigest digest, final LongConsumer onWritten) {
+        this.channel      = channel;
+        this.start        = start;
+        this.maxBytes     = maxBytes;
+        this.digest       = digest;
+        this.onWritten    = onWritten;
+        this.result       = new CompletableFuture<>();
+        this.position     = start;
+        this.lastActivity = System.nanoTime();
+    }
+
+
+    // ******************** Methods *******************************************
+    @Override public void onSubscribe(final Subscription subscription) {
+        this.subscription = subscription;
+        this.lastActivity = System.nanoTime();
+        subscription.request(1);
+    }
+
+    @Override public void onNext(final List<ByteBuffer> buffers) {
+        try {
+            for (ByteBuffer buffer : buffers) {
+                final int count = buffer.remaining();
+                if (maxBytes >= 0 && position - start + count > maxBytes) { throw new IOException("Server sent more data than requested"); }
+                if (null != digest) { digest.update(buffer.duplicate()); }
+                while (buffer.hasRemaining()) { position += channel.write(buffer, position); }
+                onWritten.accept(count);
+            }
+            lastActivity = System.nanoTime();
+            subscription.request(1);
+        } catch (IOException e) {
+            cancel(e);
+        }
+    }
+
+    @Override public void onError(final Throwable throwable) { result.completeExceptionally(throwable); }
+
+    @Override public void onComplete() { result.complete(position - start); }
+
+    @Override public CompletionStage<Long> getBody() { return result; }
+
+    public long getPosition() { return position; }
+
+    public boolean isIdle(final long timeoutNanos) { return !result.isDone() && System.nanoTime() - lastActivity > timeoutNanos; }
+
+    public void cancel(final Throwable reason) {
+        if (null != subscription) { subscription.cancel(); }
+        result.completeExceptionally(reason);
+    }
+}
@@ -18,10 +18,9 @@
 
 package eu.hansolo.discocli.util;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import eu.hansolo.discocli.util.ApiResult.Failure;
 import eu.hansolo.jdktools.Architecture;
 import eu.hansolo.jdktools.ArchiveType;
 import eu.hansolo.jdktools.LibCType;
@@ -31,25 +30,38 @@ import eu.hansolo.jdktools.TermOfSupport;
 import eu.hansolo.jdktools.versioning.VersionNumber;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpClient.Redirect;
 import java.net.http.HttpClient.Version;
 import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
 import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
 import java.net.http.HttpResponse.BodyHandlers;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 
@@ -59,206 +71,28 @@ public class Helper {
 
 
     // ******************** Methods *******************************************
-    private static HttpClient httpClient;
-
-    public static final Distribution getDistributionFromText(final String text) {
-        if (null == text) { return null; }
-        switch (text) {
-            case "zulu":
-            case "ZULU":
-            case "Zulu":
-            case "zulucore":
-            case "ZULUCORE":
-            case "ZuluCore":
-            case "zulu_core":
-            case "ZULU_CORE":
-            case "Zulu_Core":
-            case "zulu core":
-            case "ZULU CORE":
-            case "Zulu Core":
-                return Distro.ZULU.get();
-            case "zing":
-            case "ZING":
-            case "Zing":
-            case "prime":
-            case "PRIME":
-            case "Prime":
-            case "zuluprime":
-            case "ZULUPRIME":
-            case "ZuluPrime":
-            case "zulu_prime":
-            case "ZULU_PRIME":
-            case "Zulu_Prime":
-            case "zulu prime":
-            case "ZULU PRIME":
-            case "Zulu Prime":
-                return Distro.ZULU_PRIME.get();
-            case "aoj":
-            case "AOJ":
-                return Distro.AOJ.get();
-            case "aoj_openj9":
-            case "AOJ_OpenJ9":
-            case "AOJ_OPENJ9":
-            case "AOJ OpenJ9":
-            case "AOJ OPENJ9":
-            case "aoj openj9":
-                return Distro.AOJ_OPENJ9.get();
-            case "corretto":
-            case "CORRETTO":
-            case "Corretto":
-                return Distro.CORRETTO.get();
-            case "dragonwell":
-            case "DRAGONWELL":
-            case "Dragonwell":
-                return Distro.DRAGONWELL.get();
-            case "graalvm_ce8":
-            case "graalvmce8":
-            case "GraalVM CE 8":
-            case "GraalVMCE8":
-            case "GraalVM_CE8":
-                return Distro.GRAALVM_CE8.get();
-            case "graalvm_ce11":
-            case "graalvmce11":
-            case "GraalVM CE 11":
-            case "GraalVMCE11":
-            case "GraalVM_CE11":
-                return Distro.GRAALVM_CE11.get();
-            case "graalvm_ce16":
-            case "graalvmce16":
-            case "GraalVM CE 16":
-            case "GraalVMCE16":
-            case "GraalVM_CE16":
-                return Distro.GRAALVM_CE16.get();
-            case "graalvm_ce17":
-            case "graalvmce17":
-            case "GraalVM CE 17":
-            case "GraalVMCE17":
-            case "GraalVM_CE17":
-                return Distro.GRAALVM_CE17.get();
-            case "jetbrains":
-            case "JetBrains":
-            case "JETBRAINS":
-                return Distro.JETBRAINS.get();
-            case "liberica":
-            case "LIBERICA":
-            case "Liberica":
-                return Distro.LIBERICA.get();
-            case "liberica_native":
-            case "LIBERICA_NATIVE":
-            case "libericaNative":
-            case "LibericaNative":
-            case "liberica native":
-            case "LIBERICA NATIVE":
-            case "Liberica Native":
-                return Distro.LIBERICA_NATIVE.get();
-            case "mandrel":
-            case "MANDREL":
-            case "Mandrel":
-                return Distro.MANDREL.get();
-            case "microsoft":
-            case "Microsoft":
-            case "MICROSOFT":
-            case "Microsoft OpenJDK":
-            case "Microsoft Build of OpenJDK":
-                return Distro.MICROSOFT.get();
-            case "ojdk_build":
-            case "OJDK_BUILD":
-            case "OJDK Build":
-            case "ojdk build":
-            case "ojdkbuild":
-            case "OJDKBuild":
-                return Distro.OJDK_BUILD.get();
-            case "openlogic":
-            case "OPENLOGIC":
-            case "OpenLogic":
-            case "open_logic":
-            case "OPEN_LOGIC":
-            case "Open Logic":
-            case "OPEN LOGIC":
-            case "open logic":
-                return Distro.OPEN_LOGIC.get();
-            case "oracle":
-            case "Oracle":
-            case "ORACLE":
-                return Distro.ORACLE.get();
-            case "oracle_open_jdk":
-            case "ORACLE_OPEN_JDK":
-            case "oracle_openjdk":
-            case "ORACLE_OPENJDK":
-            case "Oracle_OpenJDK":
-            case "Oracle OpenJDK":
-            case "oracle openjdk":
-            case "ORACLE OPENJDK":
-            case "open_jdk":
-            case "openjdk":
-            case "OpenJDK":
-            case "Open JDK":
-            case "OPEN_JDK":
-            case "open-jdk":
-            case "OPEN-JDK":
-            case "Oracle-OpenJDK":
-            case "oracle-openjdk":
-            case "ORACLE-OPENJDK":
-            case "oracle-open-jdk":
-            case "ORACLE-OPEN-JDK":
-                return Distro.ORACLE_OPEN_JDK.get();
-            case "sap_machine":
-            case "sapmachine":
-            case "SAPMACHINE":
-            case "SAP_MACHINE":
-            case "SAPMachine":
-            case "SAP Machine":
-            case "sap-machine":
-            case "SAP-Machine":
-            case "SAP-MACHINE":
-                return Distro.SAP_MACHINE.get();
-            case "semeru":
-            case "Semeru":
-            case "SEMERU":
-                return Distro.SEMERU.get();
-            case "semeru_certified":
-            case "SEMERU_CERTIFIED":
-            case "Semeru_Certified":
-            case "Semeru_certified":
-            case "semeru certified":
-            case "SEMERU CERTIFIED":
-            case "Semeru Certified":
-            case "Semeru certified":
-                return Distro.SEMERU_CERTIFIED.get();
-            case "temurin":
-            case "Temurin":
-            case "TEMURIN":
-                return Distro.TEMURIN.get();
-            case "trava":
-            case "TRAVA":
-            case "Trava":
-            case "trava_openjdk":
-            case "TRAVA_OPENJDK":
-            case "trava openjdk":
-            case "TRAVA OPENJDK":
-                return Distro.TRAVA.get();
-            case "kona":
-            case "KONA":
-            case "Kona":
-                return Distro.KONA.get();
-            case "bisheng":
-            case "BISHENG":
-            case "BiSheng":
-            case "bi_sheng":
-            case "BI_SHENG":
-            case "bi-sheng":
-            case "BI-SHENG":
-            case "bi sheng":
-            case "Bi Sheng":
-            case "BI SHENG":
-                return Distro.BISHENG.get();
-            default:
-                return null;
-        }
-    }
+    private static final    Object                  CLIENT_LOCK    = new Object();
+    private static volatile HttpClient              httpClient;
+    private static volatile HttpClient              downloadClient;
+    private static volatile Duration                connectTimeout = Duration.ofSeconds(20);
+    private static volatile ResponseCache           responseCache  = new ResponseCache();
+    private static volatile Catalog                 offlineCatalog;
+    private static volatile RetryPolicy             retryPolicy    = new RetryPolicy();
+    private static volatile TokenBucket             rateLimit      = new TokenBucket();
+    private static volatile String                  apiUrl         = toApiUrl(System.getProperty(Constants.API_URL_PROPERTY, System.getenv(Constants.API_URL_ENV)));
+    private static          CompletableFuture<Void> connection;
+
+    public static final Distribution getDistributionFromText(final String text) { return Distributions.fromText(text); }
 
     public static final List<Pkg> getPkgsForDistributionAndMajorVersion(final Distribution distribution, final int majorVersion, final OperatingSystem operatingSystem, final LibCType libcType, final Architecture architecture, final PackageType packageType, final ArchiveType archiveType, final boolean includeEA) {
-        StringBuilder builder = new StringBuilder().append(Constants.DISCO_API_URL).append(Constants.PACKAGES_ENDPOINT).append("?distro=").append(distribution.apiString()).append("&version=").append(majorVersion);
+        return fetchPkgs(getPkgsForDistributionAndMajorVersionUri(distribution, majorVersion, operatingSystem, libcType, architecture, packageType, archiveType, includeEA)).join().orElse(List.of());
+    }
+
+    /**
+     * The packages request for all pkgs of the given major version, parameters that are null are not part of the request.
+     */
+    public static final String getPkgsForDistributionAndMajorVersionUri(final Distribution distribution, final int majorVersion, final OperatingSystem operatingSystem, final LibCType libcType, final Architecture architecture, final PackageType packageType, final ArchiveType archiveType, final boolean includeEA) {
+        StringBuilder builder = new StringBuilder().append(getApiUrl()).append(Constants.PACKAGES_ENDPOINT).append("?distro=").append(distribution.apiString()).append("&version=").append(majorVersion);
         if (null != operatingSystem) {
             builder.append("&operating_system=").append(operatingSystem.getApiString());
             if (null != libcType) {
@@ -270,30 +104,76 @@ public class Helper {
         if (null != archiveType) { builder.append("&archive_type=").append(archiveType.getApiString()); }
         builder.append(includeEA ? "&release_status=ea&release_status=ga" : "&release_status=ga");
         builder.append("&latest=all_of_version");
+        return builder.toString();
+    }
 
-        String request = builder.toString();
-
-        HttpResponse<String> response = get(request);
-        if (null == response || response.statusCode() != 200 || null == response.body() || response.body().isEmpty()) {
-            return List.of();
+    /**
+     * Returns the distinct pkgs contained in the result of a packages request to the Disco API.
+     */
+    public static final Set<Pkg> getPkgsFromJson(final String json) {
+        if (null == json || json.isEmpty()) { return new HashSet<>(); }
+        try {
+            return getPkgsFromJson(new StringReader(json));
+        } catch (IOException | RuntimeException e) {
+            return new HashSet<>();
         }
+    }
 
-        List<Pkg>   pkgs      = new LinkedList<>();
-        String      bodyText  = response.body();
-        Set<Pkg>    pkgsFound = new HashSet<>();
-        Gson        gson      = new Gson();
-        JsonElement element   = gson.fromJson(bodyText, JsonElement.class);
-        if (element instanceof JsonObject) {
-            final JsonObject jsonObject = element.getAsJsonObject();
-            final JsonArray  jsonArray  = jsonObject.getAsJsonArray("result");
-            for (int i = 0; i < jsonArray.size(); i++) {
-                final JsonObject pkgJsonObj = jsonArray.get(i).getAsJsonObject();
-                pkgsFound.add(new Pkg(pkgJsonObj.toString()));
+    /**
+     * Decodes the pkgs in one pass over the given json without building a json tree.
+     */
+    public static final Set<Pkg> getPkgsFromJson(final Reader json) throws IOException {
+        final Set<Pkg>   pkgsFound = new HashSet<>();
+        final JsonReader reader    = new JsonReader(json);
+        if (JsonToken.BEGIN_OBJECT != reader.peek()) { return pkgsFound; }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("result".equals(reader.nextName()) && JsonToken.BEGIN_ARRAY == reader.peek()) {
+                reader.beginArray();
+                while (reader.hasNext()) { pkgsFound.add(new Pkg(reader)); }
+                reader.endArray();
+            } else {
+                reader.skipValue();
             }
         }
-        pkgs.addAll(pkgsFound);
-        Collections.sort(pkgs, Comparator.comparing(Pkg::getJavaVersion).reversed());
-        return pkgs;
+        return pkgsFound;
+    }
+
+    public static final MessageDigest getMessageDigest(final String checksumType) {
+        if (null == checksumType) { return null; }
+        final String algorithm;
+        switch (checksumType.toLowerCase().replaceAll("[-_\\s]", "")) {
+            case "sha256": algorithm = "SHA-256"; break;
+            case "sha512": algorithm = "SHA-512"; break;
+            case "sha384": algorithm = "SHA-384"; break;
+            case "sha1"  : algorithm = "SHA-1";   break;
+            case "md5"   : algorithm = "MD5";     break;
+            default      : return null;
+        }
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    public static final String getChecksumFromText(final String text) {
+        if (null == text || text.isBlank()) { return ""; }
+        // Checksum files contain either just the checksum or the checksum followed by the filename
+        final String checksum = text.trim().split("\\s+")[0];
+        return checksum.matches("[0-9a-fA-F]+") ? checksum : "";
+    }
+
+    public static final String getChecksumTypeFromChecksum(final String checksum) {
+        if (null == checksum) { return ""; }
+        switch (checksum.trim().length()) {
+            case 32 : return "md5";
+            case 40 : return "sha1";
+            case 64 : return "sha256";
+            case 96 : return "sha384";
+            case 128: return "sha512";
+            default : return "";
+        }
     }
 
     public static final List<String> readTextFileToList(final String filename) throws IOException {
@@ -343,29 +223,406 @@ public class Helper {
 
 
     // ******************** REST calls ****************************************
+    public static final void setConnectTimeout(final Duration timeout) {
+        if (null == timeout || timeout.isNegative() || timeout.isZero() || timeout.equals(connectTimeout)) { return; }
+        synchronized (CLIENT_LOCK) {
+            connectTimeout = timeout;
+            httpClient     = null;
+            downloadClient = null;
+            connection     = null;
+        }
+    }
+
+    /**
+     * The base url of the Disco API, the foojay api unless it was replaced
+     * by -api, the discocli.api.url system property or the DISCOCLI_API_URL
+     * environment variable (e.g. with the url of the local stand-in).
+     */
+    public static final String getApiUrl() { return apiUrl; }
+
+    /**
+     * Replaces the base url of the Disco API, null or an empty url restores the foojay api.
+     */
+    public static final void setApiUrl(final String url) {
+        final String newApiUrl = toApiUrl(url);
+        if (newApiUrl.equals(apiUrl)) { return; }
+        synchronized (CLIENT_LOCK) {
+            apiUrl     = newApiUrl;
+            connection = null;
+        }
+    }
+
+    /**
+     * The client for the Disco API, all requests are multiplexed over one
+     * HTTP/2 connection and their callbacks run on virtual threads if the
+     * runtime supports them.
+     */
+    public static final HttpClient getHttpClient() {
+        HttpClient client = httpClient;
+        if (null == client) {
+            synchronized (CLIENT_LOCK) {
+                if (null == httpClient) { httpClient = createHttpClient(); }
+                client = httpClient;
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Downloads use HTTP/1.1 so that parallel range requests to the vendor
+     * CDN run over separate pooled keep-alive connections instead of being
+     * multiplexed over one HTTP/2 connection.
+     */
+    public static final HttpClient getDownloadClient() {
+        HttpClient client = downloadClient;
+        if (null == client) {
+            synchronized (CLIENT_LOCK) {
+                if (null == downloadClient) { downloadClient = createDownloadClient(); }
+                client = downloadClient;
+            }
+        }
+        return client;
+    }
+
     private static HttpClient createHttpClient() {
         return HttpClient.newBuilder()
-                         .connectTimeout(Duration.ofSeconds(20))
+                         .connectTimeout(connectTimeout)
                          .version(Version.HTTP_2)
                          .followRedirects(Redirect.NORMAL)
-                         //.executor(Executors.newFixedThreadPool(4))
+                         .executor(ExecutorHolder.EXECUTOR)
+                         .build();
+    }
+
+    private static HttpClient createDownloadClient() {
+        return HttpClient.newBuilder()
+                         .connectTimeout(connectTimeout)
+                         .version(Version.HTTP_1_1)
+                         .followRedirects(Redirect.NORMAL)
                          .build();
     }
 
+    // Virtual threads if the runtime has them (Java 21+), a cached pool of daemon threads otherwise
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            final AtomicInteger counter = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = new Thread(runnable, "discocli-http-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Sets the cache for the responses of get() and getAsync(), null disables caching.
+     */
+    public static final void setResponseCache(final ResponseCache cache) { responseCache = cache; }
+
+    /**
+     * Answers the requests from the given catalog without using the network, null switches back to online mode.
+     */
+    public static final void setOfflineCatalog(final Catalog catalog) { offlineCatalog = catalog; }
+
+    public static final boolean isOffline() { return null != offlineCatalog; }
+
+    /**
+     * Sets how failed requests (and downloads) are retried and if requests are hedged.
+     */
+    public static final void setRetryPolicy(final RetryPolicy policy) { retryPolicy = null == policy ? new RetryPolicy(0, false) : policy; }
+
+    public static final RetryPolicy getRetryPolicy() { return retryPolicy; }
+
+    /**
+     * Limits the rate of the requests to the Disco API, null disables the limit.
+     */
+    public static final void setRateLimit(final TokenBucket bucket) { rateLimit = bucket; }
+
+    /**
+     * Opens the TLS (and HTTP/2) connection to the Disco API in the
+     * background, e.g. while the parameters are validated. Requests that are
+     * sent before the connection is up wait for it instead of opening a
+     * second connection. The returned future completes when the connection
+     * is up or could not be opened.
+     */
+    public static final CompletableFuture<Void> prewarm() {
+        if (isOffline()) { return whenConnected(); }
+        final HttpClient client = getHttpClient();
+        synchronized (CLIENT_LOCK) {
+            if (null == connection) { connection = client.sendAsync(createHeadRequest(apiUrl), BodyHandlers.discarding()).handle((response, throwable) -> null); }
+            return connection;
+        }
+    }
+
+    /**
+     * Completes when the connection to the Disco API is up (or could not be
+     * opened), requests sent after it share that connection.
+     */
+    public static final CompletableFuture<Void> whenConnected() {
+        synchronized (CLIENT_LOCK) {
+            return null == connection ? CompletableFuture.completedFuture(null) : connection;
+        }
+    }
+
+    /**
+     * Opens the connection to the host of the given download uri (and the
+     * hosts it redirects to) so that the download can reuse it.
+     */
+    public static final CompletableFuture<Void> prewarmDownload(final String uri) {
+        if (isOffline() || null == uri || uri.isBlank()) { return CompletableFuture.completedFuture(null); }
+        try {
+            return getDownloadClient().sendAsync(createHeadRequest(uri), BodyHandlers.discarding()).handle((response, throwable) -> null);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    public static final CompletableFuture<HttpResponse<String>> getAsync(final String uri) {
+        if (isOffline()) {
+            final HttpResponse<String> response = getOffline(uri);
+            return null == response ? CompletableFuture.failedFuture(new IOException("Not available offline: " + uri)) : CompletableFuture.completedFuture(response);
+        }
+        final HttpClient                    httpClient = getHttpClient();
+        final ResponseCache                 cache      = responseCache;
+        final ResponseCache.Entry           entry      = null == cache ? null : cache.get(uri).orElse(null);
+        final HttpRequest                   request    = createRequest(uri, entry);
+        if (null != entry && entry.isFresh()) { return CompletableFuture.completedFuture(ResponseCache.toResponse(entry, request)); }
+        return execute(httpClient, request, ContentEncoding.ofString(), retryPolicy, 0).handle((response, throwable) -> {
+            if (null == throwable) { return handleResponse(cache, uri, entry, response); }
+            // Serve the cached response if the api cannot be reached
+            if (null != entry && entry.isUsableStale()) { return ResponseCache.toResponse(entry, request); }
+            throw throwable instanceof CompletionException ? (CompletionException) throwable : new CompletionException(throwable);
+        });
+    }
+
+    /**
+     * Blocking variant of getAsync(), returns null if the request failed.
+     * Use fetch() to get the reason.
+     */
     public static final HttpResponse<String> get(final String uri) {
-        if (null == httpClient) { httpClient = createHttpClient(); }
-        HttpRequest request = HttpRequest.newBuilder()
-                                         .GET()
-                                         .uri(URI.create(uri))
-                                         .setHeader("Accept", "application/json")
-                                         .setHeader("User-Agent", "DiscoCLI")
-                                         .timeout(Duration.ofSeconds(10))
-                                         .build();
+        return getAsync(uri).handle((response, throwable) -> response).join();
+    }
+
+    /**
+     * Requests the given uri and completes with the response if the Disco
+     * API answered with 200 and with the failure otherwise, the returned
+     * future never completes exceptionally.
+     */
+    public static final CompletableFuture<ApiResult<HttpResponse<String>>> fetch(final String uri) {
+        final CompletableFuture<HttpResponse<String>> future;
         try {
-            HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
-            return response;
-        } catch (CompletionException | InterruptedException | IOException e) {
-            return null;
+            future = getAsync(uri);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ApiResult.failed(e));
         }
+        return future.handle((response, throwable) -> {
+            if (null != throwable) { return isOffline() ? ApiResult.failed(Failure.OFFLINE, -1, null) : ApiResult.failed(throwable); }
+            if (response.statusCode() != 200) { return ApiResult.failed(Failure.HTTP_STATUS, response.statusCode(), "Disco API responded with status code " + response.statusCode()); }
+            return ApiResult.ok(response, response.statusCode());
+        });
+    }
+
+    /**
+     * Sends the given request to the Disco API with the rate limit and the
+     * retries of all other requests, a compressed body is decoded. Other
+     * status codes than 200 (e.g. 304 for a conditional request) are left
+     * to the caller and the response is not cached.
+     */
+    public static final CompletableFuture<HttpResponse<String>> sendAsync(final HttpRequest request) {
+        return execute(getHttpClient(), request, ContentEncoding.ofString(), retryPolicy, 0);
+    }
+
+    /**
+     * Requests the pkgs of the given packages uri, sorted by java version
+     * (latest first). The (compressed) response is decoded while it
+     * arrives and written to the response cache at the same time, it is
+     * never held in memory as a whole.
+     */
+    public static final CompletableFuture<ApiResult<List<Pkg>>> fetchPkgs(final String uri) {
+        if (isOffline()) { return fetch(uri).thenApply(result -> result.map(response -> sortPkgs(getPkgsFromJson(response.body())))); }
+        final ResponseCache       cache = responseCache;
+        final ResponseCache.Entry entry = null == cache ? null : cache.get(uri).orElse(null);
+        if (null != entry && entry.isFresh()) { return CompletableFuture.completedFuture(ApiResult.ok(sortPkgs(getPkgsFromJson(entry.body())), 200)); }
+        final HttpRequest request;
+        try {
+            request = createRequest(uri, entry);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ApiResult.failed(e));
+        }
+        // Decode on a thread of the executor, reading the body blocks until the data arrived
+        return execute(getHttpClient(), request, ContentEncoding.ofBody(), retryPolicy, 0).handleAsync((response, throwable) -> {
+            final boolean stale = null != entry && entry.isUsableStale();
+            if (null != throwable) { return stale ? ApiResult.ok(sortPkgs(getPkgsFromJson(entry.body())), 200) : ApiResult.<List<Pkg>>failed(throwable); }
+            final int statusCode = response.statusCode();
+            if (statusCode == 200) {
+                try (ContentEncoding.Body body = response.body()) {
+                    final Set<Pkg> pkgs = null == cache ? getPkgsFromJson(body.openReader()) : cache.put(uri, response.headers(), body.openStream(), Helper::getPkgsFromJson);
+                    return ApiResult.ok(sortPkgs(pkgs), statusCode);
+                } catch (IOException | RuntimeException e) {
+                    return ApiResult.<List<Pkg>>failed(Failure.INVALID_RESPONSE, statusCode, Failure.INVALID_RESPONSE.getUiString() + " (" + e.getMessage() + ")");
+                }
+            } else if (statusCode == 304 && null != entry) {
+                return ApiResult.ok(sortPkgs(getPkgsFromJson(cache.refresh(entry, response.headers()).body())), 200);
+            } else if ((statusCode == 429 || statusCode >= 500) && stale) {
+                return ApiResult.ok(sortPkgs(getPkgsFromJson(entry.body())), 200);
+            }
+            return ApiResult.<List<Pkg>>failed(Failure.HTTP_STATUS, statusCode, "Disco API responded with status code " + statusCode);
+        }, ExecutorHolder.EXECUTOR);
+    }
+
+    private static List<Pkg> sortPkgs(final Set<Pkg> pkgSet) {
+        final List<Pkg> pkgs = new ArrayList<>(pkgSet);
+        pkgs.sort(Comparator.comparing(Pkg::getJavaVersion).reversed());
+        return pkgs;
+    }
+
+    // Waits for the rate limit, sends the request (hedged if enabled) and retries it if it failed or the server asked for it
+    private static <T> CompletableFuture<HttpResponse<T>> execute(final HttpClient client, final HttpRequest request, final BodyHandler<T> handler, final RetryPolicy policy, final int retry) {
+        final TokenBucket             bucket = rateLimit;
+        final CompletableFuture<Void> permit = null == bucket ? CompletableFuture.completedFuture(null) : bucket.acquire();
+        return permit.thenCompose(granted -> hedge(client, request, handler, policy)).handle((response, throwable) -> {
+            Duration delay = null;
+            if (retry < policy.getRetries()) {
+                if (null != throwable && RetryPolicy.isRetryable(throwable)) {
+                    delay = policy.getBackoff(retry + 1);
+                } else if (null == throwable && RetryPolicy.isRetryable(response.statusCode())) {
+                    final Optional<Duration> retryAfter = RetryPolicy.getRetryAfter(response.headers());
+                    // Give up if the server wants us to wait longer than makes sense for a command line tool
+                    if (retryAfter.isEmpty() || retryAfter.get().compareTo(RetryPolicy.MAX_RETRY_AFTER) <= 0) { delay = retryAfter.orElseGet(() -> policy.getBackoff(retry + 1)); }
+                    if (null != delay && 429 == response.statusCode()) {
+                        policy.throttled();
+                        // Hold back all requests, the retry then waits in the bucket
+                        if (null != bucket) {
+                            bucket.pause(delay);
+                            delay = Duration.ZERO;
+                        }
+                    }
+                }
+            }
+            if (null == delay) { return null == throwable ? CompletableFuture.completedFuture(response) : CompletableFuture.<HttpResponse<T>>failedFuture(throwable); }
+            policy.retried();
+            return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS)).thenCompose(waited -> execute(client, request, handler, policy, retry + 1));
+        }).thenCompose(Function.identity());
+    }
+
+    // Sends a duplicate of the request if it did not complete within the hedge delay, the first response wins
+    private static <T> CompletableFuture<HttpResponse<T>> hedge(final HttpClient client, final HttpRequest request, final BodyHandler<T> handler, final RetryPolicy policy) {
+        final long start = System.nanoTime();
+        policy.requestSent();
+        final CompletableFuture<HttpResponse<T>> primary = send(client, request, handler);
+        primary.thenAccept(response -> policy.addLatency(System.nanoTime() - start));
+        if (!policy.isHedging()) { return primary; }
+
+        final CompletableFuture<HttpResponse<T>> result  = new CompletableFuture<>();
+        final AtomicInteger                      pending = new AtomicInteger(1);
+        primary.whenComplete((response, throwable) -> {
+            if (null == throwable) {
+                if (!result.complete(response)) { closeBody(response); }
+            } else if (0 == pending.decrementAndGet()) {
+                result.completeExceptionally(throwable);
+            }
+        });
+        CompletableFuture.delayedExecutor(policy.getHedgeDelay().toNanos(), TimeUnit.NANOSECONDS).execute(() -> {
+            if (result.isDone()) { return; }
+            pending.incrementAndGet();
+            policy.hedged();
+            policy.requestSent();
+            final CompletableFuture<HttpResponse<T>> duplicate = client.sendAsync(request, handler);
+            duplicate.whenComplete((response, throwable) -> {
+                if (null == throwable) {
+                    if (result.complete(response)) {
+                        policy.hedgeWon();
+                        primary.cancel(true);
+                    } else {
+                        closeBody(response);
+                    }
+                } else if (0 == pending.decrementAndGet()) {
+                    result.completeExceptionally(throwable);
+                }
+            });
+            result.whenComplete((response, throwable) -> { if (!duplicate.isDone()) { duplicate.cancel(true); } });
+        });
+        return result;
+    }
+
+    // The first request to the api opens the connection, requests sent before it is up wait for it instead of opening their own
+    private static <T> CompletableFuture<HttpResponse<T>> send(final HttpClient client, final HttpRequest request, final BodyHandler<T> handler) {
+        final CompletableFuture<Void> gate;
+        synchronized (CLIENT_LOCK) {
+            gate = connection;
+            if (null == gate) {
+                final CompletableFuture<HttpResponse<T>> future = client.sendAsync(request, handler);
+                connection = future.handle((response, throwable) -> null);
+                return future;
+            }
+        }
+        return gate.isDone() ? client.sendAsync(request, handler) : gate.thenCompose(connected -> client.sendAsync(request, handler));
+    }
+
+    // Releases the connection of a response that will not be read (e.g. the loser of a hedged request)
+    private static void closeBody(final HttpResponse<?> response) {
+        if (null != response && response.body() instanceof Closeable closeable) {
+            try { closeable.close(); } catch (IOException e) { /* Best effort */ }
+        }
+    }
+
+    // Packages requests are answered by the catalog, everything else is served from the response cache (even if stale)
+    private static HttpResponse<String> getOffline(final String uri) {
+        final HttpRequest      request = createRequest(uri, null);
+        final Optional<String> result  = offlineCatalog.query(uri);
+        if (result.isPresent()) {
+            final long now = System.currentTimeMillis();
+            return ResponseCache.toResponse(new ResponseCache.Entry(uri, result.get(), "", "", "application/json", now, now), request);
+        }
+        final ResponseCache.Entry entry = null == responseCache ? null : responseCache.get(uri).orElse(null);
+        return null == entry ? null : ResponseCache.toResponse(entry, request);
+    }
+
+    private static HttpRequest createRequest(final String uri, final ResponseCache.Entry entry) {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder()
+                                                       .GET()
+                                                       .uri(URI.create(uri))
+                                                       .setHeader("Accept", "application/json")
+                                                       .setHeader("Accept-Encoding", ContentEncoding.ACCEPT_ENCODING)
+                                                       .setHeader("User-Agent", "DiscoCLI")
+                                                       .timeout(Duration.ofSeconds(10));
+        return ResponseCache.conditional(builder, null != entry && entry.hasValidator() ? entry : null).build();
+    }
+
+    private static String toApiUrl(final String url) {
+        if (null == url || url.isBlank()) { return Constants.DISCO_API_URL; }
+        final String trimmed = url.trim();
+        return trimmed.endsWith("/") ? trimmed : trimmed + "/";
+    }
+
+    private static HttpRequest createHeadRequest(final String uri) {
+        return HttpRequest.newBuilder()
+                          .method("HEAD", BodyPublishers.noBody())
+                          .uri(URI.create(uri))
+                          .setHeader("User-Agent", "DiscoCLI")
+                          .timeout(Duration.ofSeconds(10))
+                          .build();
+    }
+
+    private static HttpResponse<String> handleResponse(final ResponseCache cache, final String uri, final ResponseCache.Entry entry, final HttpResponse<String> response) {
+        if (null == cache) { return response; }
+        final int statusCode = response.statusCode();
+        if (statusCode == 304 && null != entry) {
+            return ResponseCache.toResponse(cache.refresh(entry, response.headers()), response.request());
+        } else if (statusCode == 200) {
+            cache.put(uri, response);
+        } else if ((statusCode == 429 || statusCode >= 500) && null != entry && entry.isUsableStale()) {
+            // Throttled or server error, the cached response is better than nothing
+            return ResponseCache.toResponse(entry, response.request());
+        }
+        return response;
+    }
+
+
+    // ******************** Inner Classes *************************************
+    // Creates the executor with the first client that needs it
+    private static final class ExecutorHolder {
+        private static final ExecutorService EXECUTOR = createExecutor();
     }
 }
@@ -0,0 +1,104 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package eu.hansolo.discocli.util;
+
+import com.google.gson.stream.JsonWriter;
+import eu.hansolo.jdktools.scopes.BuildScope;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+
+
+/**
+ * A JDK found by -fd. The version is the one of the distribution (e.g.
+ * the GraalVM version), the jdk version the one of the JDK it is built on.
+ */
+public record Installation(String path, String distribution, String version, String jdkVersion, String operatingSystem, String architecture, boolean fxBundled, String feature,
+                           BuildScope buildScope, boolean inUse, Source source) {
+    public static final String FIELD_PATH             = "path";
+    public static final String FIELD_DISTRIBUTION     = "distribution";
+    public static final String FIELD_VERSION          = "version";
+    public static final String FIELD_JDK_VERSION      = "jdk_version";
+    public static final String FIELD_OPERATING_SYSTEM = "operating_system";
+    public static final String FIELD_ARCHITECTURE     = "architecture";
+    public static final String FIELD_FX_BUNDLED       = "fx_bundled";
+    public static final String FIELD_FEATURE          = "feature";
+    public static final String FIELD_BUILD_SCOPE      = "build_scope";
+    public static final String FIELD_IN_USE           = "in_use";
+    public static final String FIELD_SOURCE           = "source";
+
+    /**
+     * Where the identification came from.
+     */
+    public enum Source {
+        INDEX, RELEASE_FILE, JAVA_VERSION;
+
+        public String getApiString() { return name().toLowerCase(Locale.ENGLISH); }
+    }
+
+
+    /**
+     * The line of -fd (e.g. *zulu,17.0.2,macos,aarch64,fx (/path/)), an
+     * installation that is in use (JAVA_HOME) starts with a '*'.
+     */
+    public String toText() {
+        return new StringBuilder().append(inUse ? "*" : "")
+                                  .append(distribution).append(",")
+                                  .append(version).append(",")
+                                  .append(operatingSystem).append(",")
+                                  .append(architecture)
+                                  .append((fxBundled ? ",fx" : ""))
+                                  .append(feature.isEmpty() ? "" : ",")
+                                  .append(feature)
+                                  .append(" (").append(path).append(")")
+                                  .toString();
+    }
+
+    /**
+     * The installation as one line of json.
+     */
+    public String toJson() {
+        final StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writeTo(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    public void writeTo(final JsonWriter writer) throws IOException {
+        writer.beginObject()
+              .name(FIELD_PATH).value(path)
+              .name(FIELD_DISTRIBUTION).value(distribution)
+              .name(FIELD_VERSION).value(version)
+              .name(FIELD_JDK_VERSION).value(jdkVersion)
+              .name(FIELD_OPERATING_SYSTEM).value(operatingSystem)
+              .name(FIELD_ARCHITECTURE).value(architecture)
+              .name(FIELD_FX_BUNDLED).value(fxBundled)
+              .name(FIELD_FEATURE).value(feature)
+              .name(FIELD_BUILD_SCOPE).value(buildScope.getApiString())
+              .name(FIELD_IN_USE).value(inUse)
+              .name(FIELD_SOURCE).value(source.getApiString())
+              .endObject();
+    }
+}
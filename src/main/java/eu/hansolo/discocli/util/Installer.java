@@ -0,0 +1,263 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import eu.hansolo.jdktools.ArchiveType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpTimeoutException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+
+/**
+ * Installs a JDK pkg by extracting it while it is being downloaded. The
+ * network, the gzip inflater and the tar/zip extraction run as separate
+ * stages that are connected by bounded buffers, so the extraction is
+ * finished shortly after the last byte arrived. Everything is extracted
+ * into a staging folder that will only be moved into the target folder
+ * if the checksum matched.
+ */
+public class Installer {
+    public  static final int        INSTALL_OK        = 0;
+    public  static final int        INSTALL_FAILED    = 1;
+    public  static final int        INSTALL_EXISTS    = 2;
+    public  static final int        CHECKSUM_MISMATCH = 3;
+    private static final int        NETWORK_BUFFERS   = 64;
+    private static final int        INFLATED_CHUNKS   = 32;
+    private static final int        CHUNK_SIZE        = 256 * 1024;
+    private final        Duration   readTimeout;
+    private final        HttpClient httpClient;
+    private final        List<Path> installed;
+    private              boolean    checksumVerified;
+    private              Progress   progress;
+
+
+    // ******************** Constructors **************************************
+    public Installer() {
+        this(Downloader.DEFAULT_READ_TIMEOUT);
+    }
+    public Installer(final Duration readTimeout) {
+        this.readTimeout = null == readTimeout || readTimeout.isNegative() || readTimeout.isZero() ? Downloader.DEFAULT_READ_TIMEOUT : readTimeout;
+        this.httpClient  = Helper.getDownloadClient();
+        this.installed   = new ArrayList<>();
+    }
+
+
+    // ******************** Methods *******************************************
+    public static boolean isSupported(final ArchiveType archiveType) {
+        switch (archiveType) {
+            case TAR_GZ:
+            case TGZ:
+            case TAR:
+            case ZIP: return true;
+            default : return false;
+        }
+    }
+
+    public boolean isChecksumVerified() { return checksumVerified; }
+
+    /**
+     * The System.nanoTime() when the first byte of the last download was received, 0 if there was none.
+     */
+    public long getFirstByteNanos() { return null == progress ? 0 : progress.getFirstByteNanos(); }
+
+    /**
+     * Returns the top level entries that have been moved into the target folder.
+     */
+    public List<Path> getInstalled() { return installed; }
+
+    /**
+     * Downloads the archive from the given url and extracts it into the
+     * given folder on the fly. If keepFile is not null the archive will
+     * also be written to that file.
+     */
+    public int install(final String url, final Path folder, final ArchiveType archiveType, final long size, final String checksum, final String checksumType, final Path keepFile) {
+        if (!isSupported(archiveType)) { return INSTALL_FAILED; }
+        final MessageDigest digest = null == checksum || checksum.isBlank() ? null : Helper.getMessageDigest(checksumType);
+        checksumVerified = false;
+
+        final ScheduledExecutorService watchdog   = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "discocli-watchdog"));
+        PipeSubscriber                 subscriber = null;
+        Path                           staging    = null;
+        progress = new Progress(url.substring(url.lastIndexOf('/') + 1), size);
+        try (FileChannel keepChannel = null == keepFile ? null : FileChannel.open(keepFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            staging = createStaging(folder);
+
+            // Stage 1: the HttpClient pushes the received buffers into the pipe (and into the digest and keep file)
+            subscriber = new PipeSubscriber(NETWORK_BUFFERS, digest, keepChannel, progress::add);
+            final PipeSubscriber pipeSubscriber = subscriber;
+            final HttpRequest    request        = HttpRequest.newBuilder(URI.create(url)).GET().setHeader("User-Agent", "DiscoCLI").timeout(readTimeout).build();
+            final CompletableFuture<HttpResponse<Void>> response = httpClient.sendAsync(request, responseInfo -> responseInfo.statusCode() == 200 ? pipeSubscriber : BodySubscribers.replacing(null));
+            response.whenComplete((r, throwable) -> {
+                if (null != throwable)          { pipeSubscriber.cancel(throwable); }
+                else if (r.statusCode() != 200) { pipeSubscriber.cancel(new IOException("Server responded with status code " + r.statusCode())); }
+            });
+
+            final long timeoutNanos = readTimeout.toNanos();
+            watchdog.scheduleAtFixedRate(() -> { if (pipeSubscriber.isIdle(timeoutNanos)) { pipeSubscriber.cancel(new HttpTimeoutException("Read timed out")); } }, 250, 250, TimeUnit.MILLISECONDS);
+
+            extract(subscriber.getInputStream(), staging, archiveType);
+            response.join();
+
+            if (null != digest) {
+                if (!HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(checksum.trim())) {
+                    delete(staging);
+                    return CHECKSUM_MISMATCH;
+                }
+                checksumVerified = true;
+            }
+            return publish(staging, folder);
+        } catch (Exception e) {
+            if (null != staging) { delete(staging); }
+            return INSTALL_FAILED;
+        } finally {
+            watchdog.shutdownNow();
+            progress.close();
+            // Stops the transfer if the extraction failed before the download was complete
+            if (null != subscriber) { subscriber.cancel(new IOException("Installation aborted")); }
+        }
+    }
+
+    /**
+     * Extracts a local archive (e.g. from the package store) into the given folder.
+     */
+    public int install(final Path archive, final Path folder, final ArchiveType archiveType) {
+        if (!isSupported(archiveType)) { return INSTALL_FAILED; }
+        Path staging = null;
+        try (InputStream in = Files.newInputStream(archive)) {
+            staging = createStaging(folder);
+            extract(in, staging, archiveType);
+            return publish(staging, folder);
+        } catch (Exception e) {
+            if (null != staging) { delete(staging); }
+            return INSTALL_FAILED;
+        }
+    }
+
+    private void extract(final InputStream in, final Path staging, final ArchiveType archiveType) throws IOException, InterruptedException {
+        switch (archiveType) {
+            case TAR_GZ:
+            case TGZ:
+                // Stage 2 inflates in its own thread, stage 3 (untar) runs in the calling thread
+                final BoundedPipe     pipe     = new BoundedPipe(INFLATED_CHUNKS, CHUNK_SIZE);
+                final ExecutorService inflater = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "discocli-inflater"));
+                final Future<?>       inflated = inflater.submit(() -> {
+                    try (GZIPInputStream gzipIn = new GZIPInputStream(in, CHUNK_SIZE); OutputStream out = pipe.getOutputStream()) {
+                        gzipIn.transferTo(out);
+                        // Read what follows the gzip stream to feed the complete file into the digest
+                        in.transferTo(OutputStream.nullOutputStream());
+                    } catch (Throwable t) {
+                        pipe.fail(t);
+                    }
+                });
+                try (InputStream tarIn = pipe.getInputStream()) {
+                    ArchiveExtractor.untar(tarIn, staging);
+                    tarIn.transferTo(OutputStream.nullOutputStream());
+                    inflated.get();
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                } finally {
+                    inflater.shutdownNow();
+                }
+                break;
+            case TAR:
+                ArchiveExtractor.untar(in, staging);
+                in.transferTo(OutputStream.nullOutputStream());
+                break;
+            case ZIP:
+                ArchiveExtractor.unzip(in, staging);
+                in.transferTo(OutputStream.nullOutputStream());
+                break;
+            default:
+                throw new IOException("Unsupported archive type " + archiveType);
+        }
+    }
+
+    private Path createStaging(final Path folder) throws IOException {
+        Files.createDirectories(folder);
+        return Files.createTempDirectory(folder, ".discocli-install-");
+    }
+
+    // Move the extracted top level entries from the staging folder into the target folder
+    private int publish(final Path staging, final Path folder) throws IOException {
+        final List<Path> entries = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(staging)) {
+            paths.forEach(entries::add);
+        }
+        for (Path entry : entries) {
+            if (Files.exists(folder.resolve(entry.getFileName()), LinkOption.NOFOLLOW_LINKS)) {
+                delete(staging);
+                installed.add(folder.resolve(entry.getFileName()));
+                return INSTALL_EXISTS;
+            }
+        }
+        for (Path entry : entries) {
+            final Path target = folder.resolve(entry.getFileName());
+            try {
+                Files.move(entry, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(entry, target);
+            }
+            installed.add(target);
+        }
+        delete(staging);
+        return INSTALL_OK;
+    }
+
+    private static void delete(final Path folder) {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try { Files.deleteIfExists(path); } catch (IOException e) { /* Best effort */ }
+            });
+        } catch (IOException e) { /* Best effort */ }
+    }
+
+    private static Thread daemon(final Runnable runnable, final String name) {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+
+/**
+ * Java version as used in the Disco API (e.g. 17.0.2+8, 19-ea+8) reduced
+ * to the parts that are needed to filter and sort pkgs locally. Versions
+ * are ordered by their numbers, then ea before ga, then by build.
+ */
+public record JavaVersion(int[] numbers, boolean ea, int build) implements Comparable<JavaVersion> {
+
+    public static JavaVersion fromText(final String text) {
+        final String trimmed = null == text ? "" : text.trim();
+        int end = 0;
+        while (end < trimmed.length() && (Character.isDigit(trimmed.charAt(end)) || trimmed.charAt(end) == '.')) { end++; }
+        final String  numberPart = trimmed.substring(0, end);
+        final int[]   numbers    = numberPart.isEmpty() ? new int[0] : Arrays.stream(numberPart.split("\\.")).filter(part -> !part.isEmpty()).mapToInt(JavaVersion::toInt).toArray();
+        final boolean ea         = trimmed.toLowerCase(Locale.ENGLISH).contains("-ea");
+        final int     plus       = trimmed.indexOf('+');
+        int           build      = -1;
+        if (plus >= 0) {
+            int buildEnd = plus + 1;
+            while (buildEnd < trimmed.length() && Character.isDigit(trimmed.charAt(buildEnd))) { buildEnd++; }
+            build = buildEnd > plus + 1 ? toInt(trimmed.substring(plus + 1, buildEnd)) : -1;
+        }
+        return new JavaVersion(numbers, ea, build);
+    }
+
+    public int getFeature() { return number(0); }
+
+    public int number(final int index) { return index < numbers.length ? numbers[index] : 0; }
+
+    /**
+     * True if the given version starts with this version (e.g. 17 matches
+     * 17.0.2), if exact is true all numbers have to be equal. A build of
+     * this version has to match in both cases.
+     */
+    public boolean matches(final JavaVersion other, final boolean exact) {
+        return compareNumbers(other, exact) == 0 && (build < 0 || build == other.build);
+    }
+
+    /**
+     * Compares only the numbers of both versions (this one is the pattern),
+     * if exact is false only the numbers given in this version are compared.
+     */
+    public int compareNumbers(final JavaVersion other, final boolean exact) {
+        final int length = exact ? Math.max(numbers.length, other.numbers.length) : numbers.length;
+        for (int i = 0 ; i < length ; i++) {
+            final int result = Integer.compare(number(i), other.number(i));
+            if (result != 0) { return result; }
+        }
+        return 0;
+    }
+
+    @Override public int compareTo(final JavaVersion other) {
+        final int result = compareNumbers(other, true);
+        if (result != 0)    { return result; }
+        if (ea != other.ea) { return ea ? -1 : 1; }
+        return Integer.compare(build, other.build);
+    }
+
+    @Override public boolean equals(final Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof JavaVersion)) { return false; }
+        return compareTo((JavaVersion) o) == 0;
+    }
+
+    @Override public int hashCode() {
+        int length = numbers.length;
+        while (length > 0 && numbers[length - 1] == 0) { length--; }
+        return 31 * (31 * Arrays.hashCode(Arrays.copyOf(numbers, length)) + Boolean.hashCode(ea)) + build;
+    }
+
+    private static int toInt(final String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+
+/**
+ * Finds the java executables below a folder. Every folder is listed by a
+ * task of a fork/join pool, the entries are checked with the attributes
+ * that come with the listing (no extra calls per entry) and the sub
+ * folders are walked in parallel. A folder with a release file and a
+ * bin/java is a JDK home, its java is reported and the walk does not
+ * descend into it. Symbolic links to folders are not followed.
+ * The listings of the folders can be kept (e.g. in the JdkIndex), a
+ * folder with the same last modified time as before is not listed again.
+ */
+public class JdkFinder {
+    public  static final int          DEFAULT_MAX_DEPTH = Integer.MAX_VALUE;
+    public  static final List<String> DEFAULT_EXCLUDES  = List.of("**/.git", "**/node_modules");
+    private static final String       RELEASE_FILE      = "release";
+    private static final String       BIN_FOLDER        = "bin";
+    private static final int          PARALLELISM       = Math.min(32, Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    private final        String             javaFile;
+    private final        int                maxDepth;
+    private final        List<PathMatcher>  excludes;
+    private final        Map<Path, Listing> previous;
+    private final        Map<Path, Listing> listings;
+
+
+    /**
+     * The entries of a folder the walk is interested in. The entries of a
+     * folder only change together with its last modified time.
+     */
+    public record Listing(long modified, List<String> folders, List<String> javas, boolean jdkHome) {}
+
+
+    // ******************** Constructors **************************************
+    public JdkFinder(final String javaFile) {
+        this(javaFile, DEFAULT_MAX_DEPTH, DEFAULT_EXCLUDES);
+    }
+    public JdkFinder(final String javaFile, final int maxDepth, final List<String> excludeGlobs) {
+        this(javaFile, maxDepth, excludeGlobs, Map.of());
+    }
+    public JdkFinder(final String javaFile, final int maxDepth, final List<String> excludeGlobs, final Map<Path, Listing> previous) {
+        this.javaFile = javaFile;
+        this.maxDepth = maxDepth < 0 ? DEFAULT_MAX_DEPTH : maxDepth;
+        this.excludes = null == excludeGlobs ? List.of() : excludeGlobs.stream()
+                                                                       .map(String::trim)
+                                                                       .filter(glob -> !glob.isEmpty())
+                                                                       .map(glob -> FileSystems.getDefault().getPathMatcher("glob:" + glob))
+                                                                       .collect(Collectors.toList());
+        this.previous = null == previous ? Map.of() : previous;
+        this.listings = new ConcurrentHashMap<>();
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Walks the given folder and calls the consumer with every java
+     * executable as soon as it was found. The consumer is called by the
+     * threads of the walk but never by two at the same time. Returns the
+     * number of java executables found.
+     */
+    public int find(final Path root, final Consumer<Path> consumer) {
+        final AtomicInteger  found = new AtomicInteger();
+        final Object         lock  = new Object();
+        final Consumer<Path> emit  = java -> {
+            synchronized (lock) { consumer.accept(java); }
+            found.incrementAndGet();
+        };
+        final ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        try {
+            pool.invoke(new Walk(root, 0, emit));
+        } finally {
+            pool.shutdown();
+        }
+        return found.get();
+    }
+
+    public Set<Path> find(final Path root) {
+        final Set<Path> javas = Collections.synchronizedSet(new HashSet<>());
+        find(root, javas::add);
+        return javas;
+    }
+
+    /**
+     * The listings of all folders walked so far.
+     */
+    public Map<Path, Listing> getListings() { return listings; }
+
+    private boolean isExcluded(final Path path) {
+        for (PathMatcher exclude : excludes) {
+            if (exclude.matches(path) || exclude.matches(path.getFileName())) { return true; }
+        }
+        return false;
+    }
+
+    private boolean isJava(final Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).isRegularFile() && Files.isReadable(path);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    // ******************** Inner Classes *************************************
+    private final class Walk extends RecursiveAction {
+        private final Path           folder;
+        private final int            depth;
+        private final Consumer<Path> emit;
+
+        Walk(final Path folder, final int depth, final Consumer<Path> emit) {
+            this.folder = folder;
+            this.depth  = depth;
+            this.emit   = emit;
+        }
+
+        @Override protected void compute() {
+            final long modified;
+            try {
+                modified = Files.getLastModifiedTime(folder).toMillis();
+            } catch (IOException e) {
+                return;
+            }
+            Listing listing = previous.get(folder);
+            if (null == listing || listing.modified() != modified) {
+                listing = list(modified);
+                if (null == listing) { return; }
+            }
+            listings.put(folder, listing);
+
+            listing.javas().stream().map(folder::resolve).filter(JdkFinder.this::isJava).forEach(emit);
+
+            // A JDK home, nothing below it is of interest
+            if (listing.jdkHome()) {
+                final Path java = folder.resolve(BIN_FOLDER).resolve(javaFile);
+                if (isJava(java)) {
+                    emit.accept(java);
+                    return;
+                }
+            }
+
+            if (depth >= maxDepth || listing.folders().isEmpty()) { return; }
+            final List<Walk> walks = new ArrayList<>(listing.folders().size());
+            listing.folders().stream().map(folder::resolve).filter(subFolder -> !isExcluded(subFolder)).forEach(subFolder -> walks.add(new Walk(subFolder, depth + 1, emit)));
+            invokeAll(walks);
+        }
+
+        private Listing list(final long modified) {
+            final List<String> folders    = new ArrayList<>();
+            final List<String> javas      = new ArrayList<>(1);
+            final boolean[]    hasRelease = { false };
+            final boolean[]    hasBin     = { false };
+            try {
+                // Lists the folder, the attributes of each entry come with the listing
+                Files.walkFileTree(folder, Set.of(), 1, new SimpleFileVisitor<>() {
+                    @Override public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) {
+                        final String name = file.getFileName().toString();
+                        if (attributes.isDirectory()) {
+                            if (BIN_FOLDER.equals(name)) { hasBin[0] = true; }
+                            folders.add(name);
+                        } else if (attributes.isRegularFile()) {
+                            if (RELEASE_FILE.equals(name))      { hasRelease[0] = true; }
+                            if (name.equalsIgnoreCase(javaFile)) { javas.add(name); }
+                        } else if (attributes.isSymbolicLink() && name.equalsIgnoreCase(javaFile)) {
+                            javas.add(name);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override public FileVisitResult visitFileFailed(final Path file, final IOException e) { return FileVisitResult.CONTINUE; }
+                });
+            } catch (IOException e) {
+                // Silence "Operation not permitted" exception
+                return null;
+            }
+            return new Listing(modified, List.copyOf(folders), List.copyOf(javas), hasRelease[0] && hasBin[0]);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package eu.hansolo.discocli.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import eu.hansolo.discocli.util.JdkFinder.Listing;
+import eu.hansolo.jdktools.scopes.BuildScope;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * The JDKs that -fd found before, keyed by the canonical path of their
+ * home, together with the listings of the folders that were walked. An
+ * entry stays valid as long as the release file of its home (the java
+ * executable if there is none) has the same size and last modified time
+ * or, if only the time changed, the same hash. So a rescan only lists
+ * the folders that changed and only identifies the JDKs that changed.
+ */
+public class JdkIndex {
+    private static final String FIELD_ENTRIES      = "entries";
+    private static final String FIELD_FOLDERS      = "folders";
+    private static final String FIELD_HOME         = "home";
+    private static final String FIELD_PATH         = "path";
+    private static final String FIELD_MODIFIED     = "modified";
+    private static final String FIELD_SIZE         = "size";
+    private static final String FIELD_HASH         = "hash";
+    private static final String FIELD_DISTRIBUTION = "distribution";
+    private static final String FIELD_VERSION      = "version";
+    private static final String FIELD_JDK_VERSION  = "jdk_version";
+    private static final String FIELD_BUILD_SCOPE  = "build_scope";
+    private static final String FIELD_ARCHITECTURE = "architecture";
+    private static final String FIELD_FX_BUNDLED   = "fx_bundled";
+    private static final String FIELD_FEATURE      = "feature";
+    private static final String FIELD_JAVAS        = "javas";
+    private static final String FIELD_JDK_HOME     = "jdk_home";
+    private static final String HASH_TYPE          = "sha256";
+    private final        Path               file;
+    private final        Map<String, Entry> entries;
+    private final        Map<Path, Listing> listings;
+
+
+    /**
+     * A JDK as identified by -fd, modified, size and hash are the ones of
+     * the file that tells if the JDK changed.
+     */
+    public record Entry(String home, long modified, long size, String hash, String distribution, String version, String jdkVersion, String architecture, boolean fxBundled, String feature, BuildScope buildScope) {
+
+        /**
+         * The entry with the current size, last modified time and hash of the given file.
+         */
+        public static Entry of(final String home, final Path stampFile, final String distribution, final String version, final String jdkVersion, final String architecture, final boolean fxBundled, final String feature, final BuildScope buildScope) {
+            long   modified = -1;
+            long   size     = -1;
+            String hash     = "";
+            try {
+                final BasicFileAttributes attributes = Files.readAttributes(stampFile, BasicFileAttributes.class);
+                modified = attributes.lastModifiedTime().toMillis();
+                size     = attributes.size();
+                hash     = PackageStore.hash(stampFile, HASH_TYPE)[0];
+            } catch (IOException e) {
+                // Will be identified again next time
+            }
+            return new Entry(home, modified, size, hash, distribution, version, jdkVersion, architecture, fxBundled, feature, buildScope);
+        }
+    }
+
+
+    // ******************** Constructors **************************************
+    private JdkIndex(final Path file) {
+        this.file     = file;
+        this.entries  = new ConcurrentHashMap<>();
+        this.listings = new ConcurrentHashMap<>();
+    }
+
+
+    // ******************** Methods *******************************************
+    public static JdkIndex load() {
+        return load(Paths.get(Constants.DISCOCLI_FOLDER).resolve(Constants.JDK_INDEX_JSON));
+    }
+    /**
+     * The index in the given file, empty if the file does not exist or
+     * cannot be read.
+     */
+    public static JdkIndex load(final Path file) {
+        final JdkIndex index = new JdkIndex(file);
+        if (!Files.isRegularFile(file)) { return index; }
+        try {
+            final JsonElement element = JsonParser.parseString(Files.readString(file, StandardCharsets.UTF_8));
+            if (!element.isJsonObject()) { return index; }
+            final JsonObject json = element.getAsJsonObject();
+            if (json.has(FIELD_ENTRIES) && json.get(FIELD_ENTRIES).isJsonArray()) {
+                for (JsonElement e : json.getAsJsonArray(FIELD_ENTRIES)) {
+                    if (!e.isJsonObject()) { continue; }
+                    final JsonObject obj = e.getAsJsonObject();
+                    // Entries of older versions without jdk version and build scope are identified again
+                    if (!obj.has(FIELD_JDK_VERSION) || !obj.has(FIELD_BUILD_SCOPE)) { continue; }
+                    final Entry entry = new Entry(obj.get(FIELD_HOME).getAsString(), obj.get(FIELD_MODIFIED).getAsLong(), obj.get(FIELD_SIZE).getAsLong(), obj.get(FIELD_HASH).getAsString(),
+                                                  obj.get(FIELD_DISTRIBUTION).getAsString(), obj.get(FIELD_VERSION).getAsString(), obj.get(FIELD_JDK_VERSION).getAsString(),
+                                                  obj.get(FIELD_ARCHITECTURE).getAsString(), obj.get(FIELD_FX_BUNDLED).getAsBoolean(), obj.get(FIELD_FEATURE).getAsString(),
+                                                  BuildScope.valueOf(obj.get(FIELD_BUILD_SCOPE).getAsString()));
+                    index.entries.put(entry.home(), entry);
+                }
+            }
+            if (json.has(FIELD_FOLDERS) && json.get(FIELD_FOLDERS).isJsonArray()) {
+                for (JsonElement e : json.getAsJsonArray(FIELD_FOLDERS)) {
+                    if (!e.isJsonObject()) { continue; }
+                    final JsonObject obj = e.getAsJsonObject();
+                    index.listings.put(Paths.get(obj.get(FIELD_PATH).getAsString()), new Listing(obj.get(FIELD_MODIFIED).getAsLong(), toList(obj.getAsJsonArray(FIELD_FOLDERS)),
+                                                                                                 toList(obj.getAsJsonArray(FIELD_JAVAS)), obj.get(FIELD_JDK_HOME).getAsBoolean()));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // A broken index is as good as none
+            index.entries.clear();
+            index.listings.clear();
+        }
+        return index;
+    }
+
+    public Path getFile() { return file; }
+
+    public Collection<Entry> getEntries() { return entries.values(); }
+
+    /**
+     * The listings of the folders walked last time.
+     */
+    public Map<Path, Listing> getListings() { return listings; }
+
+    /**
+     * The entry of the given home if the given file did not change since
+     * the home was identified. If only the last modified time changed but
+     * not the content, the entry is updated and kept.
+     */
+    public Optional<Entry> lookup(final String home, final Path stampFile) {
+        final Entry entry = entries.get(home);
+        if (null == entry) { return Optional.empty(); }
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(stampFile, BasicFileAttributes.class);
+            if (attributes.size() != entry.size()) { return Optional.empty(); }
+            if (attributes.lastModifiedTime().toMillis() == entry.modified()) { return Optional.of(entry); }
+            if (!PackageStore.hash(stampFile, HASH_TYPE)[0].equals(entry.hash())) { return Optional.empty(); }
+            final Entry touched = new Entry(home, attributes.lastModifiedTime().toMillis(), entry.size(), entry.hash(), entry.distribution(), entry.version(), entry.jdkVersion(),
+                                            entry.architecture(), entry.fxBundled(), entry.feature(), entry.buildScope());
+            entries.put(home, touched);
+            return Optional.of(touched);
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    public void put(final Entry entry) { entries.put(entry.home(), entry); }
+
+    /**
+     * Replaces everything below the given roots with the result of the
+     * last walk. Entries of homes below the roots that were not seen are
+     * removed, everything else is kept.
+     */
+    public void update(final Collection<Path> roots, final Map<Path, Listing> walked, final Set<String> seenHomes) {
+        listings.keySet().removeIf(folder -> isBelow(folder, roots));
+        listings.putAll(walked);
+        entries.keySet().removeIf(home -> !seenHomes.contains(home) && isBelow(Paths.get(home), roots));
+    }
+
+    /**
+     * Writes the index to a temporary file that replaces the index file.
+     */
+    public void save() {
+        final Path tmp = file.resolveSibling(file.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8); JsonWriter writer = new JsonWriter(out)) {
+                writer.beginObject().name(FIELD_ENTRIES).beginArray();
+                for (Entry entry : entries.values()) {
+                    writer.beginObject()
+                          .name(FIELD_HOME).value(entry.home())
+                          .name(FIELD_MODIFIED).value(entry.modified())
+                          .name(FIELD_SIZE).value(entry.size())
+                          .name(FIELD_HASH).value(entry.hash())
+                          .name(FIELD_DISTRIBUTION).value(entry.distribution())
+                          .name(FIELD_VERSION).value(entry.version())
+                          .name(FIELD_JDK_VERSION).value(entry.jdkVersion())
+                          .name(FIELD_ARCHITECTURE).value(entry.architecture())
+                          .name(FIELD_FX_BUNDLED).value(entry.fxBundled())
+                          .name(FIELD_FEATURE).value(entry.feature())
+                          .name(FIELD_BUILD_SCOPE).value(entry.buildScope().name())
+                          .endObject();
+                }
+                writer.endArray().name(FIELD_FOLDERS).beginArray();
+                for (Map.Entry<Path, Listing> folder : listings.entrySet()) {
+                    final Listing listing = folder.getValue();
+                    writer.beginObject()
+                          .name(FIELD_PATH).value(folder.getKey().toString())
+                          .name(FIELD_MODIFIED).value(listing.modified())
+                          .name(FIELD_JDK_HOME).value(listing.jdkHome());
+                    writer.name(FIELD_FOLDERS).beginArray();
+                    for (String name : listing.folders()) { writer.value(name); }
+                    writer.endArray().name(FIELD_JAVAS).beginArray();
+                    for (String name : listing.javas()) { writer.value(name); }
+                    writer.endArray().endObject();
+                }
+                writer.endArray().endObject();
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            try { Files.deleteIfExists(tmp); } catch (IOException ex) { /* Best effort */ }
+        }
+    }
+
+    private static boolean isBelow(final Path path, final Collection<Path> roots) {
+        for (Path root : roots) {
+            if (path.startsWith(root)) { return true; }
+        }
+        return false;
+    }
+
+    private static List<String> toList(final JsonArray array) {
+        final List<String> list = new ArrayList<>(null == array ? 0 : array.size());
+        if (null != array) { array.forEach(element -> list.add(element.getAsString())); }
+        return List.copyOf(list);
+    }
+}
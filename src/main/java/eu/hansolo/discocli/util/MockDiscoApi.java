@@ -0,0 +1,378 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Local stand-in for the Disco API to measure and test discocli without
+ * network. The packages, ids, distributions and major_versions endpoints
+ * are answered from recorded fixtures, which are stored like the response
+ * cache (keyed by the uri of the real api). In record mode requests
+ * without a fixture are forwarded to the real api and recorded. The
+ * download links of ids responses point to fake archives of the
+ * configured size (with Range support). Latency, a bandwidth limit,
+ * server errors (503) and throttling (429 with Retry-After) can be
+ * injected into every response.
+ */
+public class MockDiscoApi implements Closeable {
+    public  static final String   BASE_PATH            = "/disco/v3.0/";
+    public  static final String   ARCHIVE_PATH         = "/archives/";
+    public  static final String   PROPERTIES_FILE      = "mock.properties";
+    public  static final long     DEFAULT_ARCHIVE_SIZE = 16 * 1024 * 1024;
+    private static final String   KEY_LATENCY          = "latency_ms";
+    private static final String   KEY_JITTER           = "jitter_ms";
+    private static final String   KEY_BANDWIDTH        = "bandwidth_kb_per_second";
+    private static final String   KEY_ERROR_RATE       = "error_rate";
+    private static final String   KEY_THROTTLE_RATE    = "throttle_rate";
+    private static final String   KEY_RETRY_AFTER      = "retry_after_seconds";
+    private static final String   KEY_ARCHIVE_SIZE     = "archive_size";
+    private static final String   KEY_RECORD           = "record";
+    private static final String   ARCHIVE_ETAG         = "\"discocli-mock\"";
+    private static final int      BLOCK_SIZE           = 64 * 1024;
+    private static final Pattern  RANGE_PATTERN        = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    private final        Path     fixtureFolder;
+    private final        ResponseCache fixtures;
+    private final        Faults   faults;
+    private final        long     archiveSize;
+    private final        byte[]   archiveBlock;
+    private final        String   archiveChecksum;
+    private final        HttpClient upstream;
+    private final        AtomicLong requests;
+    private final        AtomicLong injectedErrors;
+    private final        AtomicLong injectedThrottles;
+    private              HttpServer server;
+    private              ExecutorService executor;
+
+    /**
+     * What is injected into every response. The bandwidth is in bytes per
+     * second (0 is unlimited), the rates are between 0 and 1.
+     */
+    public record Faults(Duration latency, Duration jitter, long bytesPerSecond, double errorRate, double throttleRate, Duration retryAfter) {
+        public static final Faults NONE = new Faults(Duration.ZERO, Duration.ZERO, 0, 0, 0, Duration.ofSeconds(1));
+
+        public static Faults fromProperties(final Properties properties) {
+            return new Faults(Duration.ofMillis(Long.parseLong(properties.getProperty(KEY_LATENCY, "0").trim())),
+                              Duration.ofMillis(Long.parseLong(properties.getProperty(KEY_JITTER, "0").trim())),
+                              Long.parseLong(properties.getProperty(KEY_BANDWIDTH, "0").trim()) * 1024,
+                              Double.parseDouble(properties.getProperty(KEY_ERROR_RATE, "0").trim()),
+                              Double.parseDouble(properties.getProperty(KEY_THROTTLE_RATE, "0").trim()),
+                              Duration.ofSeconds(Long.parseLong(properties.getProperty(KEY_RETRY_AFTER, "1").trim())));
+        }
+    }
+
+
+    // ******************** Constructors **************************************
+    public MockDiscoApi(final Path fixtureFolder) {
+        this(fixtureFolder, Faults.NONE, DEFAULT_ARCHIVE_SIZE, false);
+    }
+    public MockDiscoApi(final Path fixtureFolder, final Faults faults, final long archiveSize, final boolean record) {
+        this.fixtureFolder     = fixtureFolder;
+        this.fixtures          = new ResponseCache(fixtureFolder);
+        this.faults            = null == faults ? Faults.NONE : faults;
+        this.archiveSize       = Math.max(0, archiveSize);
+        this.archiveBlock      = new byte[BLOCK_SIZE];
+        new Random(42).nextBytes(archiveBlock);
+        this.archiveChecksum   = computeChecksum();
+        this.upstream          = record ? HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build() : null;
+        this.requests          = new AtomicLong();
+        this.injectedErrors    = new AtomicLong();
+        this.injectedThrottles = new AtomicLong();
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Creates the stand-in with the settings of the mock.properties file in
+     * the given folder (if there is one), the fixtures are in the same folder.
+     */
+    public static MockDiscoApi fromFolder(final Path folder) throws IOException {
+        final Properties properties = new Properties();
+        final Path       file       = folder.resolve(PROPERTIES_FILE);
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            }
+        }
+        try {
+            return new MockDiscoApi(folder, Faults.fromProperties(properties), Long.parseLong(properties.getProperty(KEY_ARCHIVE_SIZE, Long.toString(DEFAULT_ARCHIVE_SIZE)).trim()),
+                                    Boolean.parseBoolean(properties.getProperty(KEY_RECORD, "false").trim()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid value in " + file + " (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * Starts the server on the given port (0 for a free one) of the loopback interface.
+     */
+    public MockDiscoApi start(final int port) throws IOException {
+        executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "discocli-mock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(executor);
+        server.createContext(BASE_PATH, this::handleApi);
+        server.createContext(ARCHIVE_PATH, this::handleArchive);
+        server.start();
+        return this;
+    }
+
+    /**
+     * The base url to use instead of the real api (e.g. with -api).
+     */
+    public String getApiUrl() { return getBaseUrl() + BASE_PATH; }
+
+    public Path getFixtureFolder() { return fixtureFolder; }
+
+    public Faults getFaults() { return faults; }
+
+    public boolean isRecording() { return null != upstream; }
+
+    public long getRequests() { return requests.get(); }
+
+    public long getInjectedErrors() { return injectedErrors.get(); }
+
+    public long getInjectedThrottles() { return injectedThrottles.get(); }
+
+    @Override public void close() {
+        if (null != server)   { server.stop(0); }
+        if (null != executor) { executor.shutdownNow(); }
+    }
+
+    private String getBaseUrl() { return "http://127.0.0.1:" + server.getAddress().getPort(); }
+
+    private void handleApi(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            if (injectFaults(exchange)) { return; }
+            final URI    requestUri  = exchange.getRequestURI();
+            final String relative    = requestUri.getRawPath().substring(BASE_PATH.length()) + (null == requestUri.getRawQuery() ? "" : "?" + requestUri.getRawQuery());
+            final String upstreamUri = Constants.DISCO_API_URL + relative;
+            Optional<ResponseCache.Entry> fixture = fixtures.get(upstreamUri);
+            if (fixture.isEmpty() && null != upstream) { fixture = record(upstreamUri); }
+            if (fixture.isEmpty()) {
+                send(exchange, 404, "{\"result\":[],\"message\":\"No fixture for " + relative.replace("\"", "") + "\"}");
+                return;
+            }
+            final String body = relative.startsWith(Constants.IDS_ENDPOINT) ? rewriteDownloadLinks(fixture.get().body()) : fixture.get().body();
+            send(exchange, 200, body);
+        }
+    }
+
+    private void handleArchive(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            if (injectFaults(exchange)) { return; }
+            final String path = exchange.getRequestURI().getPath();
+            if (path.endsWith(".sha256")) {
+                send(exchange, 200, archiveChecksum + "  " + path.substring(ARCHIVE_PATH.length(), path.length() - ".sha256".length()));
+                return;
+            }
+            final String  range   = exchange.getRequestHeaders().getFirst("Range");
+            final Matcher matcher = null == range ? null : RANGE_PATTERN.matcher(range);
+            long start = 0;
+            long end   = archiveSize - 1;
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().add("ETag", ARCHIVE_ETAG);
+            exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+            if (null != matcher && matcher.matches()) {
+                start = Long.parseLong(matcher.group(1));
+                if (!matcher.group(2).isEmpty()) { end = Math.min(end, Long.parseLong(matcher.group(2))); }
+                if (start > end) {
+                    exchange.getResponseHeaders().add("Content-Range", "bytes */" + archiveSize);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + archiveSize);
+                exchange.sendResponseHeaders(206, "HEAD".equals(exchange.getRequestMethod()) ? -1 : end - start + 1);
+            } else {
+                if ("HEAD".equals(exchange.getRequestMethod())) { exchange.getResponseHeaders().add("Content-Length", Long.toString(archiveSize)); }
+                // A length of 0 would switch to chunked encoding, -1 sends an empty body
+                exchange.sendResponseHeaders(200, "HEAD".equals(exchange.getRequestMethod()) || 0 == archiveSize ? -1 : archiveSize);
+            }
+            if ("HEAD".equals(exchange.getRequestMethod())) { return; }
+            try (OutputStream out = exchange.getResponseBody()) {
+                writeArchive(out, start, end + 1);
+            }
+        }
+    }
+
+    // Returns true if the response has been replaced by an error or a throttle
+    private boolean injectFaults(final HttpExchange exchange) throws IOException {
+        final long jitter = faults.jitter().toMillis();
+        final long delay  = faults.latency().toMillis() + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        final double dice = ThreadLocalRandom.current().nextDouble();
+        if (dice < faults.throttleRate()) {
+            injectedThrottles.incrementAndGet();
+            exchange.getResponseHeaders().add("Retry-After", Long.toString(faults.retryAfter().toSeconds()));
+            send(exchange, 429, "{\"result\":[],\"message\":\"Too many requests\"}");
+            return true;
+        } else if (dice < faults.throttleRate() + faults.errorRate()) {
+            injectedErrors.incrementAndGet();
+            send(exchange, 503, "{\"result\":[],\"message\":\"Service unavailable\"}");
+            return true;
+        }
+        return false;
+    }
+
+    private Optional<ResponseCache.Entry> record(final String upstreamUri) {
+        try {
+            final HttpRequest          request  = HttpRequest.newBuilder(URI.create(upstreamUri)).GET().setHeader("Accept", "application/json").setHeader("User-Agent", "DiscoCLI").timeout(Duration.ofSeconds(30)).build();
+            final HttpResponse<String> response = upstream.send(request, BodyHandlers.ofString());
+            if (200 != response.statusCode()) { return Optional.empty(); }
+            fixtures.put(upstreamUri, response);
+            return fixtures.get(upstreamUri);
+        } catch (IOException | IllegalArgumentException e) {
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+    }
+
+    // Lets the ids response point to the fake archives of this server
+    private String rewriteDownloadLinks(final String json) {
+        final JsonElement element = JsonParser.parseString(json);
+        if (!element.isJsonObject() || !element.getAsJsonObject().has("result") || !element.getAsJsonObject().get("result").isJsonArray()) { return json; }
+        final JsonArray result = element.getAsJsonObject().getAsJsonArray("result");
+        for (JsonElement pkgInfo : result) {
+            if (!pkgInfo.isJsonObject()) { continue; }
+            final JsonObject info     = pkgInfo.getAsJsonObject();
+            final String     filename = info.has(Constants.FIELD_FILENAME) ? info.get(Constants.FIELD_FILENAME).getAsString() : "archive.tar.gz";
+            final String     uri      = getBaseUrl() + ARCHIVE_PATH + URLEncoder.encode(filename, StandardCharsets.UTF_8);
+            info.addProperty(Constants.FIELD_DIRECT_DOWNLOAD_URI, uri);
+            info.addProperty(Constants.FIELD_CHECKSUM_URI, uri + ".sha256");
+            info.addProperty(Constants.FIELD_CHECKSUM, archiveChecksum);
+            info.addProperty(Constants.FIELD_CHECKSUM_TYPE, "sha256");
+        }
+        return element.toString();
+    }
+
+    private void send(final HttpExchange exchange, final int statusCode, final String text) throws IOException {
+        final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        byte[]       body           = text.getBytes(StandardCharsets.UTF_8);
+        if (null != acceptEncoding && acceptEncoding.contains("gzip")) {
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(statusCode, 0 == body.length ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            write(out, body, 0, body.length, System.nanoTime(), 0);
+        }
+    }
+
+    private void writeArchive(final OutputStream out, final long from, final long to) throws IOException {
+        final long start   = System.nanoTime();
+        long       written = 0;
+        for (long position = from ; position < to ; ) {
+            final int offset = (int) (position % BLOCK_SIZE);
+            final int length = (int) Math.min(BLOCK_SIZE - offset, to - position);
+            written   = write(out, archiveBlock, offset, length, start, written);
+            position += length;
+        }
+    }
+
+    // Writes in chunks and sleeps whenever the bandwidth limit would be exceeded
+    private long write(final OutputStream out, final byte[] data, final int offset, final int length, final long start, final long alreadyWritten) throws IOException {
+        final int chunk   = faults.bytesPerSecond() > 0 ? (int) Math.max(1024, Math.min(BLOCK_SIZE, faults.bytesPerSecond() / 20)) : length;
+        long      written = alreadyWritten;
+        for (int position = offset ; position < offset + length ; position += chunk) {
+            final int count = Math.min(chunk, offset + length - position);
+            out.write(data, position, count);
+            written += count;
+            if (faults.bytesPerSecond() > 0) {
+                final long aheadNanos = written * 1_000_000_000L / faults.bytesPerSecond() - (System.nanoTime() - start);
+                if (aheadNanos > 0) {
+                    try {
+                        Thread.sleep(aheadNanos / 1_000_000, (int) (aheadNanos % 1_000_000));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted");
+                    }
+                }
+            }
+        }
+        return written;
+    }
+
+    // The archive is the same block over and over again
+    private String computeChecksum() {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (long position = 0 ; position < archiveSize ; position += BLOCK_SIZE) { digest.update(archiveBlock, 0, (int) Math.min(BLOCK_SIZE, archiveSize - position)); }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ * Content addressed store for downloaded JDK pkgs that is shared by all
+ * invocations of discocli. Files are stored as
+ * <store>/<checksum type>/<checksum>/<filename> and the pkg ids of the
+ * Disco API are mapped to them by small files in <store>/ids.
+ * Pkgs are handed out by hardlink and copied if linking is not possible.
+ * Stored files are read only, so a linked file cannot be changed in place.
+ * On file systems without posix permissions files are copied, not linked.
+ * Only pkgs that were verified against the checksum of the Disco API are
+ * mapped to their pkg id.
+ */
+public class PackageStore {
+    public  static final String[]     IMPORT_TYPES      = { "sha256", "sha1", "md5" };
+    private static final String       IDS_FOLDER        = "ids";
+    private static final String       TMP_FOLDER        = "tmp";
+    private static final String       KEY_CHECKSUM      = "checksum";
+    private static final String       KEY_CHECKSUM_TYPE = "checksum_type";
+    private static final String       KEY_FILENAME      = "filename";
+    private static final String       KEY_SIZE          = "size";
+    private static final String       KEY_VERIFIED      = "verified";
+    private static final List<String> ARCHIVE_SUFFIXES  = List.of(".tar.gz", ".tgz", ".zip", ".tar", ".msi", ".pkg", ".dmg", ".deb", ".rpm", ".apk", ".cab");
+    private static final int          BUFFER_SIZE       = 1024 * 1024;
+    private static final boolean      POSIX             = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    private final        Path         root;
+
+    public enum Mode { LINKED, COPIED }
+
+
+    // ******************** Constructors **************************************
+    public PackageStore() {
+        this(Paths.get(Constants.STORE_FOLDER));
+    }
+    public PackageStore(final Path root) {
+        this.root = root;
+    }
+
+
+    // ******************** Methods *******************************************
+    public Path getRoot() { return root; }
+
+    /**
+     * Returns the stored file for the given pkg id if it exists, was
+     * verified when it was added and has the expected size (a size <= 0
+     * will not be checked).
+     */
+    public Optional<Path> findById(final String pkgId, final long size) {
+        final Path idFile = getIdFile(pkgId);
+        if (null == idFile || !Files.isRegularFile(idFile)) { return Optional.empty(); }
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(idFile)) {
+            properties.load(in);
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+        if (!Boolean.parseBoolean(properties.getProperty(KEY_VERIFIED, "false"))) { return Optional.empty(); }
+        final Path blob = getBlobFolder(properties.getProperty(KEY_CHECKSUM, ""), properties.getProperty(KEY_CHECKSUM_TYPE, ""));
+        if (null == blob) { return Optional.empty(); }
+        final Path file = blob.resolve(properties.getProperty(KEY_FILENAME, ""));
+        return isValid(file, size) ? Optional.of(file) : Optional.empty();
+    }
+
+    /**
+     * Returns a stored file with the given checksum if there is one with
+     * the expected size (a size <= 0 will not be checked).
+     */
+    public Optional<Path> findByChecksum(final String checksum, final String checksumType, final long size) {
+        final Path blob = getBlobFolder(checksum, checksumType);
+        if (null == blob || !Files.isDirectory(blob)) { return Optional.empty(); }
+        try (Stream<Path> files = Files.list(blob)) {
+            return files.filter(file -> isValid(file, size)).findFirst();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Puts the given file into the store under the given checksum and maps
+     * the pkg id to it. The checksum must only be given if the file was
+     * verified against it. If no checksum is given the file will be hashed
+     * with sha256 and is not mapped to the pkg id, it can only be found by
+     * its checksum. The file is hardlinked into the store (copied if that
+     * fails) so it does not take additional space.
+     */
+    public boolean add(final Path file, final String pkgId, final String checksum, final String checksumType) {
+        try {
+            final boolean verified = null != checksum && !checksum.isBlank() && null != Helper.getMessageDigest(checksumType);
+            final String  type     = verified ? checksumType.toLowerCase(Locale.ENGLISH) : IMPORT_TYPES[0];
+            final String  hash     = verified ? checksum.toLowerCase(Locale.ENGLISH) : hash(file, type)[0];
+            final Path    blob     = store(file, hash, type);
+            if (null == blob) { return false; }
+            if (verified && null != pkgId && !pkgId.isBlank()) { writeId(pkgId, hash, type, blob.getFileName().toString(), Files.size(blob)); }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a new file in the store folder for an archive that is going
+     * to be added, it is on the same file system so add() can link it.
+     */
+    public Path createTempFile(final String filename) throws IOException {
+        final Path folder = root.resolve(TMP_FOLDER);
+        Files.createDirectories(folder);
+        return folder.resolve(ProcessHandle.current().pid() + "-" + Paths.get(filename).getFileName());
+    }
+
+    /**
+     * Makes the stored file available at the given target by creating a
+     * hardlink or, if that is not possible (e.g. different file systems),
+     * by copying it.
+     */
+    public Mode materialize(final Path stored, final Path target) throws IOException {
+        final Path parent = target.toAbsolutePath().getParent();
+        if (null != parent) { Files.createDirectories(parent); }
+        final Path tmp = target.resolveSibling(target.getFileName() + ".store.tmp");
+        Files.deleteIfExists(tmp);
+        Mode mode;
+        try {
+            if (!POSIX) { throw new UnsupportedOperationException("Stored files cannot be protected"); }
+            Files.createLink(tmp, stored);
+            mode = Mode.LINKED;
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(stored, tmp, StandardCopyOption.REPLACE_EXISTING);
+            tmp.toFile().setWritable(true);
+            mode = Mode.COPIED;
+        }
+        move(tmp, target);
+        return mode;
+    }
+
+    /**
+     * Seeds the store with the archives found in the given folders (and
+     * their subfolders). The files are hashed in parallel and each file is
+     * read only once to compute all checksum types in IMPORT_TYPES.
+     * Returns the number of imported files.
+     */
+    public int importFolders(final String... folders) {
+        final List<Path> files = Stream.of(folders)
+                                       .map(String::trim)
+                                       .filter(folder -> !folder.isEmpty())
+                                       .map(Paths::get)
+                                       .filter(Files::isDirectory)
+                                       .flatMap(PackageStore::findArchives)
+                                       .filter(file -> !file.toAbsolutePath().normalize().startsWith(root.toAbsolutePath().normalize()))
+                                       .distinct()
+                                       .collect(Collectors.toList());
+        if (files.isEmpty()) { return 0; }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            final List<Future<Boolean>> results = files.stream().map(file -> executor.submit(() -> importFile(file))).collect(Collectors.toList());
+            int imported = 0;
+            for (Future<Boolean> result : results) {
+                try {
+                    if (result.get()) { imported++; }
+                } catch (Exception e) { /* Skip files that could not be imported */ }
+            }
+            return imported;
+        } finally {
+            executor.shutdown();
+            try { executor.awaitTermination(10, TimeUnit.SECONDS); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+    }
+
+    private boolean importFile(final Path file) throws IOException {
+        final String[] hashes = hash(file, IMPORT_TYPES);
+        boolean stored = false;
+        for (int i = 0; i < IMPORT_TYPES.length; i++) {
+            stored |= null != store(file, hashes[i], IMPORT_TYPES[i]);
+        }
+        return stored;
+    }
+
+    private Path store(final Path file, final String checksum, final String checksumType) throws IOException {
+        final Path blobFolder = getBlobFolder(checksum, checksumType);
+        if (null == blobFolder) { return null; }
+        final Path blob = blobFolder.resolve(file.getFileName().toString());
+        if (isValid(blob, Files.size(file))) {
+            blob.toFile().setWritable(false, false);
+            return blob;
+        }
+        Files.createDirectories(blobFolder);
+        final Path tmp = blobFolder.resolve(file.getFileName() + "." + ProcessHandle.current().pid() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            if (!POSIX) { throw new UnsupportedOperationException("Stored files cannot be protected"); }
+            Files.createLink(tmp, file);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(file, tmp, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // Read only, a file that was linked out of the store must not change the stored one
+        tmp.toFile().setWritable(false, false);
+        move(tmp, blob);
+        return blob;
+    }
+
+    private void writeId(final String pkgId, final String checksum, final String checksumType, final String filename, final long size) throws IOException {
+        final Path idFile = getIdFile(pkgId);
+        if (null == idFile) { return; }
+        Files.createDirectories(idFile.getParent());
+        final Properties properties = new Properties();
+        properties.setProperty(KEY_CHECKSUM, checksum);
+        properties.setProperty(KEY_CHECKSUM_TYPE, checksumType);
+        properties.setProperty(KEY_FILENAME, filename);
+        properties.setProperty(KEY_SIZE, Long.toString(size));
+        properties.setProperty(KEY_VERIFIED, Boolean.TRUE.toString());
+        final Path tmp = idFile.resolveSibling(idFile.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            properties.store(out, "DiscoCLI package store");
+        }
+        move(tmp, idFile);
+    }
+
+    private Path getBlobFolder(final String checksum, final String checksumType) {
+        if (null == checksum || null == checksumType) { return null; }
+        final String hash = checksum.toLowerCase(Locale.ENGLISH);
+        final String type = checksumType.toLowerCase(Locale.ENGLISH).replaceAll("[-_\\s]", "");
+        if (!hash.matches("[0-9a-f]{32,128}") || !type.matches("[a-z0-9]+")) { return null; }
+        return root.resolve(type).resolve(hash);
+    }
+
+    private Path getIdFile(final String pkgId) {
+        if (null == pkgId || !pkgId.matches("[A-Za-z0-9_\\-]+")) { return null; }
+        return root.resolve(IDS_FOLDER).resolve(pkgId);
+    }
+
+    private static boolean isValid(final Path file, final long size) {
+        try {
+            return Files.isRegularFile(file) && !file.getFileName().toString().endsWith(".tmp") && (size <= 0 || Files.size(file) == size);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void move(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Stream<Path> findArchives(final Path folder) {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            return paths.filter(Files::isRegularFile)
+                        .filter(path -> ARCHIVE_SUFFIXES.stream().anyMatch(suffix -> path.getFileName().toString().toLowerCase(Locale.ENGLISH).endsWith(suffix)))
+                        .collect(Collectors.toList())
+                        .stream();
+        } catch (IOException e) {
+            return Stream.empty();
+        }
+    }
+
+    /**
+     * Reads the given file once and returns its hex encoded checksums for
+     * all the given checksum types.
+     */
+    public static String[] hash(final Path file, final String... checksumTypes) throws IOException {
+        final MessageDigest[] digests = new MessageDigest[checksumTypes.length];
+        for (int i = 0; i < checksumTypes.length; i++) {
+            digests[i] = Helper.getMessageDigest(checksumTypes[i]);
+            if (null == digests[i]) { throw new IOException("Unsupported checksum type " + checksumTypes[i]); }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                for (MessageDigest digest : digests) { digest.update(buffer.duplicate()); }
+                buffer.clear();
+            }
+        }
+        final String[] hashes = new String[digests.length];
+        for (int i = 0; i < digests.length; i++) { hashes[i] = HexFormat.of().formatHex(digests[i].digest()); }
+        return hashes;
+    }
+}
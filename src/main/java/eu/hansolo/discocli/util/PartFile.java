@@ -0,0 +1,234 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Keeps track of a partially downloaded file (<filename>.part) and its
+ * sidecar (<filename>.part.properties) which stores the url, the expected
+ * size, the validator of the remote file and the progress of each segment.
+ */
+public class PartFile {
+    public  static final String PART_SUFFIX       = ".part";
+    public  static final String SIDECAR_SUFFIX    = ".part.properties";
+    private static final String KEY_URL           = "url";
+    private static final String KEY_SIZE          = "size";
+    private static final String KEY_ETAG          = "etag";
+    private static final String KEY_LAST_MODIFIED = "last_modified";
+    private static final String KEY_SEGMENTS      = "segments";
+    private static final String KEY_SEGMENT       = "segment.";
+    private final        Path            target;
+    private final        Path            part;
+    private final        Path            sidecar;
+    private              String          url;
+    private              long            size;
+    private              String          etag;
+    private              String          lastModified;
+    private              long[]          starts;
+    private              long[]          ends;
+    private              AtomicLongArray written;
+
+
+    // ******************** Constructors **************************************
+    public PartFile(final Path target) {
+        this.target       = target;
+        this.part         = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        this.sidecar      = target.resolveSibling(target.getFileName() + SIDECAR_SUFFIX);
+        this.url          = "";
+        this.size         = -1;
+        this.etag         = "";
+        this.lastModified = "";
+        this.starts       = new long[0];
+        this.ends         = new long[0];
+        this.written      = new AtomicLongArray(0);
+    }
+
+
+    // ******************** Methods *******************************************
+    public Path getTarget() { return target; }
+
+    public Path getPart() { return part; }
+
+    public Path getSidecar() { return sidecar; }
+
+    public String getUrl() { return url; }
+
+    public long getSize() { return size; }
+
+    public String getEtag() { return etag; }
+
+    public String getLastModified() { return lastModified; }
+
+    public int getNoOfSegments() { return starts.length; }
+
+    public long getStart(final int segment) { return starts[segment]; }
+
+    public long getEnd(final int segment) { return ends[segment]; }
+
+    public long getWritten(final int segment) { return written.get(segment); }
+
+    public void addWritten(final int segment, final long bytes) { written.addAndGet(segment, bytes); }
+
+    public void setWritten(final int segment, final long bytes) { written.set(segment, bytes); }
+
+    public long getTotalWritten() {
+        long total = 0;
+        for (int i = 0; i < written.length(); i++) { total += written.get(i); }
+        return total;
+    }
+
+    public boolean isSegmentComplete(final int segment) {
+        return ends[segment] >= 0 && starts[segment] + written.get(segment) > ends[segment];
+    }
+
+    /**
+     * Returns true if a previous download left a part file with a sidecar
+     * that matches the given url and validators of the remote file.
+     */
+    public boolean canResume(final String url, final long size, final String etag, final String lastModified) {
+        if (!Files.exists(part) || !Files.exists(sidecar) || starts.length == 0)              { return false; }
+        if (!this.url.equals(url))                                                            { return false; }
+        if (size > 0 && this.size > 0 && size != this.size)                                   { return false; }
+        if (!this.etag.isEmpty() && null != etag && !etag.isEmpty())                          { return this.etag.equals(etag); }
+        if (!this.lastModified.isEmpty() && null != lastModified && !lastModified.isEmpty()) { return this.lastModified.equals(lastModified); }
+        // Without a validator we cannot tell if the remote file changed
+        return false;
+    }
+
+    public boolean hasValidator() { return !etag.isEmpty() || !lastModified.isEmpty(); }
+
+    public String getValidator() { return etag.isEmpty() ? lastModified : etag; }
+
+    public void init(final String url, final long size, final String etag, final String lastModified, final int noOfSegments) {
+        this.url          = url;
+        this.size         = size;
+        this.etag         = null == etag         ? "" : etag;
+        this.lastModified = null == lastModified ? "" : lastModified;
+        this.starts       = new long[noOfSegments];
+        this.ends         = new long[noOfSegments];
+        this.written      = new AtomicLongArray(noOfSegments);
+        if (size <= 0) {
+            starts[0] = 0;
+            ends[0]   = -1;
+            return;
+        }
+        final long segmentSize = size / noOfSegments;
+        for (int i = 0; i < noOfSegments; i++) {
+            starts[i] = i * segmentSize;
+            ends[i]   = i == noOfSegments - 1 ? size - 1 : starts[i] + segmentSize - 1;
+        }
+    }
+
+    public void update(final long size, final String etag, final String lastModified) {
+        if (size > 0) {
+            this.size = size;
+            if (starts.length == 1) { ends[0] = size - 1; }
+        }
+        if (null != etag)         { this.etag         = etag; }
+        if (null != lastModified) { this.lastModified = lastModified; }
+    }
+
+    public boolean load() {
+        if (!Files.exists(sidecar)) { return false; }
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(sidecar)) {
+            properties.load(in);
+            this.url          = properties.getProperty(KEY_URL, "");
+            this.size         = Long.parseLong(properties.getProperty(KEY_SIZE, "-1"));
+            this.etag         = properties.getProperty(KEY_ETAG, "");
+            this.lastModified = properties.getProperty(KEY_LAST_MODIFIED, "");
+            final int noOfSegments = Integer.parseInt(properties.getProperty(KEY_SEGMENTS, "0"));
+            this.starts  = new long[noOfSegments];
+            this.ends    = new long[noOfSegments];
+            this.written = new AtomicLongArray(noOfSegments);
+            for (int i = 0; i < noOfSegments; i++) {
+                final String[] parts = properties.getProperty(KEY_SEGMENT + i, "").split(",");
+                if (parts.length != 3) { return false; }
+                starts[i] = Long.parseLong(parts[0]);
+                ends[i]   = Long.parseLong(parts[1]);
+                written.set(i, Long.parseLong(parts[2]));
+            }
+            // A single segment is written in order, the bytes beyond the saved offset may still be left from a restarted transfer
+            if (noOfSegments == 1) {
+                written.set(0, Files.exists(part) ? Math.min(written.get(0), Files.size(part)) : 0);
+            }
+            return noOfSegments > 0;
+        } catch (IOException | NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public synchronized void save() {
+        final Properties properties = new Properties();
+        properties.setProperty(KEY_URL, url);
+        properties.setProperty(KEY_SIZE, Long.toString(size));
+        properties.setProperty(KEY_ETAG, etag);
+        properties.setProperty(KEY_LAST_MODIFIED, lastModified);
+        properties.setProperty(KEY_SEGMENTS, Integer.toString(starts.length));
+        for (int i = 0; i < starts.length; i++) {
+            properties.setProperty(KEY_SEGMENT + i, starts[i] + "," + ends[i] + "," + written.get(i));
+        }
+        final Path tmp = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            properties.store(out, "DiscoCLI partial download");
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            Files.move(tmp, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try { Files.move(tmp, sidecar, StandardCopyOption.REPLACE_EXISTING); } catch (IOException ex) { /* Keep the old sidecar */ }
+        }
+    }
+
+    public synchronized void discard() {
+        try {
+            Files.deleteIfExists(part);
+            Files.deleteIfExists(sidecar);
+        } catch (IOException e) { /* Nothing we can do here */ }
+    }
+
+    public synchronized void complete() throws IOException {
+        try {
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(sidecar);
+    }
+
+    public List<Integer> getIncompleteSegments() {
+        final List<Integer> incomplete = new ArrayList<>();
+        for (int i = 0; i < starts.length; i++) {
+            if (!isSegmentComplete(i)) { incomplete.add(i); }
+        }
+        return incomplete;
+    }
+}
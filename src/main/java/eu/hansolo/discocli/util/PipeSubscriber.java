@@ -0,0 +1,184 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.LongConsumer;
+
+
+/**
+ * Hands the buffers received by the HttpClient over to a consumer thread
+ * that reads them as an InputStream. Only a bounded number of buffer lists
+ * is requested ahead of the consumer, so a slow consumer slows down the
+ * network instead of piling up memory. The received bytes can be hashed
+ * and written to a file (tee) on the way.
+ */
+public class PipeSubscriber implements BodySubscriber<Void> {
+    private static final List<ByteBuffer>                EOF = Collections.unmodifiableList(new ArrayList<>()); // Identity marker, must not be shared with other empty lists
+    private final        int                             capacity;
+    private final        BlockingQueue<List<ByteBuffer>> queue;
+    private final        MessageDigest                   digest;
+    private final        FileChannel                     tee;
+    private final        LongConsumer                    onReceived;
+    private final        CompletableFuture<Void>         result;
+    private final        InputStream                     inputStream;
+    private volatile     Subscription                    subscription;
+    private volatile     Throwable                       failure;
+    private volatile     long                            lastActivity;
+    private              long                            teePosition;
+
+
+    // ******************** Constructors **************************************
+    public PipeSubscriber(final int capacity, final MessageDigest digest, final FileChannel tee, final LongConsumer onReceived) {
+        this.capacity     = Math.max(1, capacity);
+        this.queue        = new LinkedBlockingQueue<>();
+        this.digest       = digest;
+        this.tee          = tee;
+        this.onReceived   = onReceived;
+        this.result       = new CompletableFuture<>();
+        this.inputStream  = new PipeInputStream();
+        this.lastActivity = System.nanoTime();
+    }
+
+
+    // ******************** Methods *******************************************
+    @Override public void onSubscribe(final Subscription subscription) {
+        this.subscription = subscription;
+        this.lastActivity = System.nanoTime();
+        subscription.request(capacity);
+    }
+
+    @Override public void onNext(final List<ByteBuffer> buffers) {
+        try {
+            long count = 0;
+            for (ByteBuffer buffer : buffers) {
+                count += buffer.remaining();
+                if (null != digest) { digest.update(buffer.duplicate()); }
+                if (null != tee) {
+                    final ByteBuffer copy = buffer.duplicate();
+                    while (copy.hasRemaining()) { teePosition += tee.write(copy, teePosition); }
+                }
+            }
+            lastActivity = System.nanoTime();
+            queue.add(buffers);
+            onReceived.accept(count);
+        } catch (IOException e) {
+            cancel(e);
+        }
+    }
+
+    @Override public void onError(final Throwable throwable) {
+        failure = throwable;
+        result.completeExceptionally(throwable);
+        queue.add(EOF);
+    }
+
+    @Override public void onComplete() {
+        result.complete(null);
+        queue.add(EOF);
+    }
+
+    @Override public CompletionStage<Void> getBody() { return result; }
+
+    public InputStream getInputStream() { return inputStream; }
+
+    /**
+     * Returns true if the consumer is waiting for data but nothing arrived
+     * within the given time.
+     */
+    public boolean isIdle(final long timeoutNanos) { return !result.isDone() && queue.isEmpty() && System.nanoTime() - lastActivity > timeoutNanos; }
+
+    public void cancel(final Throwable reason) {
+        if (result.isDone()) { return; }
+        failure = reason;
+        if (null != subscription) { subscription.cancel(); }
+        result.completeExceptionally(reason);
+        queue.add(EOF);
+    }
+
+
+    // ******************** Inner Classes *************************************
+    private class PipeInputStream extends InputStream {
+        private List<ByteBuffer> current;
+        private int              index;
+
+
+        @Override public int read() throws IOException {
+            final ByteBuffer buffer = nextBuffer();
+            return null == buffer ? -1 : buffer.get() & 0xFF;
+        }
+
+        @Override public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            if (length == 0) { return 0; }
+            final ByteBuffer buffer = nextBuffer();
+            if (null == buffer) { return -1; }
+            final int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override public int available() {
+            return null == current || current == EOF || index >= current.size() ? 0 : current.get(index).remaining();
+        }
+
+        @Override public void close() {
+            if (current != EOF) { cancel(new IOException("Stream closed")); }
+        }
+
+        private ByteBuffer nextBuffer() throws IOException {
+            while (true) {
+                if (current == EOF) {
+                    if (null != failure) { throw failure instanceof IOException ? (IOException) failure : new IOException(failure); }
+                    return null;
+                }
+                if (null != current) {
+                    while (index < current.size()) {
+                        final ByteBuffer buffer = current.get(index);
+                        if (buffer.hasRemaining()) { return buffer; }
+                        index++;
+                    }
+                    // The list was consumed completely, ask for the next one
+                    current = null;
+                    subscription.request(1);
+                }
+                try {
+                    current = queue.take();
+                    index   = 0;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+}
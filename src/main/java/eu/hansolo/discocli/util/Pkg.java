@@ -18,8 +18,8 @@
 
 package eu.hansolo.discocli.util;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import eu.hansolo.jdktools.Architecture;
 import eu.hansolo.jdktools.ArchiveType;
 import eu.hansolo.jdktools.Bitness;
@@ -35,6 +35,8 @@ import eu.hansolo.jdktools.versioning.Semver;
 import eu.hansolo.jdktools.versioning.VersionNumber;
 import picocli.CommandLine.Help.Ansi;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.Objects;
 import java.util.OptionalInt;
 
@@ -102,33 +104,17 @@ public class Pkg {
         if (null == packageJson || packageJson.isEmpty()) {
             throw new IllegalArgumentException("Package json string cannot be null or empty.");
         }
-        final Gson       gson = new Gson();
-        final JsonObject json = gson.fromJson(packageJson, JsonObject.class);
-
-        this.id                   = json.has(FIELD_ID)                     ? json.get(FIELD_ID).getAsString() : "";
-        this.distribution         = json.has(FIELD_DISTRIBUTION)           ? Helper.getDistributionFromText(json.get(FIELD_DISTRIBUTION).getAsString()) : null;
-        this.majorVersion         = json.has(FIELD_MAJOR_VERSION)          ? new MajorVersion(json.get(FIELD_MAJOR_VERSION).getAsInt())                 : new MajorVersion(1);
-        this.javaVersion          = json.has(FIELD_JAVA_VERSION)           ? Semver.fromText(json.get(FIELD_JAVA_VERSION).getAsString()).getSemver1()   : new Semver(new VersionNumber());
-        this.distributionVersion  = json.has(FIELD_DISTRIBUTION)           ? VersionNumber.fromText(json.get(FIELD_DISTRIBUTION_VERSION).getAsString()) : new VersionNumber();
-        this.latestBuildAvailable = json.has(FIELD_LATEST_BUILD_AVAILABLE) ? json.get(FIELD_LATEST_BUILD_AVAILABLE).getAsBoolean()                      : Boolean.FALSE;
-        this.architecture         = json.has(FIELD_ARCHITECTURE)           ? Architecture.fromText(json.get(FIELD_ARCHITECTURE).getAsString())          : Architecture.NOT_FOUND;
-        this.fpu                  = json.has(FIELD_FPU)                    ? FPU.fromText(json.get(FIELD_FPU).getAsString())                            : FPU.NOT_FOUND;
-        this.operatingSystem      = json.has(FIELD_OPERATING_SYSTEM)       ? OperatingSystem.fromText(json.get(FIELD_OPERATING_SYSTEM).getAsString())   : OperatingSystem.NOT_FOUND;
-        this.libcType             = json.has(FIELD_LIB_C_TYPE)             ? LibCType.fromText(json.get(FIELD_LIB_C_TYPE).getAsString())                : LibCType.NOT_FOUND;
-        this.packageType          = json.has(FIELD_PACKAGE_TYPE)           ? PackageType.fromText(json.get(FIELD_PACKAGE_TYPE).getAsString())           : PackageType.NOT_FOUND;
-        this.releaseStatus        = json.has(FIELD_RELEASE_STATUS)         ? ReleaseStatus.fromText(json.get(FIELD_RELEASE_STATUS).getAsString())       : ReleaseStatus.NOT_FOUND;
-        this.archiveType          = json.has(FIELD_ARCHIVE_TYPE)           ? ArchiveType.fromText(json.get(FIELD_ARCHIVE_TYPE).getAsString())           : ArchiveType.NOT_FOUND;
-        this.termOfSupport        = json.has(FIELD_TERM_OF_SUPPORT)        ? TermOfSupport.fromText(json.get(FIELD_TERM_OF_SUPPORT).getAsString())      : TermOfSupport.NOT_FOUND;
-        this.javafxBundled        = json.has(FIELD_JAVAFX_BUNDLED)         ? json.get(FIELD_JAVAFX_BUNDLED).getAsBoolean()                              : Boolean.FALSE;
-        this.directlyDownloadable = json.has(FIELD_DIRECTLY_DOWNLOADABLE)  ? json.get(FIELD_DIRECTLY_DOWNLOADABLE).getAsBoolean()                       : Boolean.FALSE;
-        this.filename             = json.has(FIELD_FILENAME)               ? json.get(FIELD_FILENAME).getAsString()                                     : "";
-        this.ephemeralId          = json.has(FIELD_EPHEMERAL_ID)           ? json.get(FIELD_EPHEMERAL_ID).getAsString()                                 : "";
-        this.freeUseInProduction  = json.has(FIELD_FREE_USE_IN_PROD)       ? json.get(FIELD_FREE_USE_IN_PROD).getAsBoolean()                            : Boolean.TRUE;
-        this.tckTested            = json.has(FIELD_TCK_TESTED)             ? Verification.fromText(json.get(FIELD_TCK_TESTED).getAsString())            : Verification.UNKNOWN;
-        this.tckCertUri           = json.has(FIELD_TCK_CERT_URI)           ? json.get(FIELD_TCK_CERT_URI).getAsString()                                 : "";
-        this.aqavitCertified      = json.has(FIELD_AQAVIT_CERTIFIED)       ? Verification.fromText(json.get(FIELD_AQAVIT_CERTIFIED).getAsString())      : Verification.UNKNOWN;
-        this.aqavitCertUri        = json.has(FIELD_AQAVIT_CERT_URI)        ? json.get(FIELD_AQAVIT_CERT_URI).getAsString()                              : "";
-        this.size                 = json.has(FIELD_SIZE)                   ? json.get(FIELD_SIZE).getAsLong()                                           : -1;
+        try (JsonReader reader = new JsonReader(new StringReader(packageJson))) {
+            read(reader);
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new IllegalArgumentException("Package json string cannot be parsed.", e);
+        }
+    }
+    /**
+     * Reads the next json object of the given reader field by field without building a json tree.
+     */
+    public Pkg(final JsonReader reader) throws IOException {
+        read(reader);
     }
 
 
@@ -193,6 +179,77 @@ public class Pkg {
 
     public long getSize() { return size; }
 
+    private void read(final JsonReader reader) throws IOException {
+        String  distributionVersionText = null;
+        boolean hasDistribution         = false;
+        this.id                   = "";
+        this.distribution         = null;
+        this.majorVersion         = new MajorVersion(1);
+        this.javaVersion          = new Semver(new VersionNumber());
+        this.latestBuildAvailable = Boolean.FALSE;
+        this.architecture         = Architecture.NOT_FOUND;
+        this.fpu                  = FPU.NOT_FOUND;
+        this.operatingSystem      = OperatingSystem.NOT_FOUND;
+        this.libcType             = LibCType.NOT_FOUND;
+        this.packageType          = PackageType.NOT_FOUND;
+        this.releaseStatus        = ReleaseStatus.NOT_FOUND;
+        this.archiveType          = ArchiveType.NOT_FOUND;
+        this.termOfSupport        = TermOfSupport.NOT_FOUND;
+        this.javafxBundled        = Boolean.FALSE;
+        this.directlyDownloadable = Boolean.FALSE;
+        this.filename             = "";
+        this.ephemeralId          = "";
+        this.freeUseInProduction  = Boolean.TRUE;
+        this.tckTested            = Verification.UNKNOWN;
+        this.tckCertUri           = "";
+        this.aqavitCertified      = Verification.UNKNOWN;
+        this.aqavitCertUri        = "";
+        this.size                 = -1;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (JsonToken.NULL == reader.peek()) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case FIELD_ID                    : this.id                   = reader.nextString(); break;
+                case FIELD_DISTRIBUTION          : this.distribution         = Helper.getDistributionFromText(reader.nextString()); hasDistribution = true; break;
+                case FIELD_MAJOR_VERSION         : this.majorVersion         = new MajorVersion(reader.nextInt()); break;
+                case FIELD_JAVA_VERSION          : this.javaVersion          = Semver.fromText(reader.nextString()).getSemver1(); break;
+                case FIELD_DISTRIBUTION_VERSION  : distributionVersionText   = reader.nextString(); break;
+                case FIELD_LATEST_BUILD_AVAILABLE: this.latestBuildAvailable = nextBoolean(reader); break;
+                case FIELD_ARCHITECTURE          : this.architecture         = Architecture.fromText(reader.nextString()); break;
+                case FIELD_FPU                   : this.fpu                  = FPU.fromText(reader.nextString()); break;
+                case FIELD_OPERATING_SYSTEM      : this.operatingSystem      = OperatingSystem.fromText(reader.nextString()); break;
+                case FIELD_LIB_C_TYPE            : this.libcType             = LibCType.fromText(reader.nextString()); break;
+                case FIELD_PACKAGE_TYPE          : this.packageType          = PackageType.fromText(reader.nextString()); break;
+                case FIELD_RELEASE_STATUS        : this.releaseStatus        = ReleaseStatus.fromText(reader.nextString()); break;
+                case FIELD_ARCHIVE_TYPE          : this.archiveType          = ArchiveType.fromText(reader.nextString()); break;
+                case FIELD_TERM_OF_SUPPORT       : this.termOfSupport        = TermOfSupport.fromText(reader.nextString()); break;
+                case FIELD_JAVAFX_BUNDLED        : this.javafxBundled        = nextBoolean(reader); break;
+                case FIELD_DIRECTLY_DOWNLOADABLE : this.directlyDownloadable = nextBoolean(reader); break;
+                case FIELD_FILENAME              : this.filename             = reader.nextString(); break;
+                case FIELD_EPHEMERAL_ID          : this.ephemeralId          = reader.nextString(); break;
+                case FIELD_FREE_USE_IN_PROD      : this.freeUseInProduction  = nextBoolean(reader); break;
+                case FIELD_TCK_TESTED            : this.tckTested            = Verification.fromText(reader.nextString()); break;
+                case FIELD_TCK_CERT_URI          : this.tckCertUri           = reader.nextString(); break;
+                case FIELD_AQAVIT_CERTIFIED      : this.aqavitCertified      = Verification.fromText(reader.nextString()); break;
+                case FIELD_AQAVIT_CERT_URI       : this.aqavitCertUri        = reader.nextString(); break;
+                case FIELD_SIZE                  : this.size                 = reader.nextLong(); break;
+                default                          : reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        // The fields can come in any order, the distribution version only counts if there is a distribution
+        this.distributionVersion = hasDistribution && null != distributionVersionText ? VersionNumber.fromText(distributionVersionText) : new VersionNumber();
+    }
+
+    private static Boolean nextBoolean(final JsonReader reader) throws IOException {
+        return JsonToken.STRING == reader.peek() ? Boolean.valueOf(reader.nextString()) : Boolean.valueOf(reader.nextBoolean());
+    }
+
     @Override public boolean equals(final Object o) {
         if (this == o) { return true; }
         if (o == null || getClass() != o.getClass()) { return false; }
@@ -0,0 +1,246 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import eu.hansolo.jdktools.util.OutputFormat;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+
+/**
+ * In memory index over pkgs. Every value of every dimension has a bitmap
+ * of the pkgs that have this value, so a query with several criteria is
+ * the intersection of a few bitmaps. The pkgs are numbered in version
+ * order, which turns version and range queries into a range of bits and
+ * latest queries into a search for the highest set bit.
+ */
+public class PkgIndex<T> {
+    public enum Dimension { DISTRIBUTION, OPERATING_SYSTEM, LIB_C_TYPE, ARCHITECTURE, PACKAGE_TYPE, ARCHIVE_TYPE, RELEASE_STATUS, TERM_OF_SUPPORT, JAVAFX_BUNDLED, DIRECTLY_DOWNLOADABLE }
+
+    private static final BitSet                                  EMPTY = new BitSet();
+    private final        List<T>                                 rows;
+    private final        JavaVersion[]                           versions;
+    private final        EnumMap<Dimension, Map<String, BitSet>> bitmaps;
+
+
+    // ******************** Constructors **************************************
+    /**
+     * Builds the index, keys returns the value of a row for a dimension
+     * (null if unknown) and version the java version of a row.
+     */
+    public PkgIndex(final Collection<T> pkgs, final BiFunction<T, Dimension, String> keys, final Function<T, String> version) {
+        final List<T>       unsorted = new ArrayList<>(pkgs);
+        final JavaVersion[] parsed   = new JavaVersion[unsorted.size()];
+        final List<Integer> order    = new ArrayList<>(unsorted.size());
+        for (int i = 0 ; i < unsorted.size() ; i++) {
+            parsed[i] = JavaVersion.fromText(version.apply(unsorted.get(i)));
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(i -> parsed[i]));
+
+        this.rows     = new ArrayList<>(unsorted.size());
+        this.versions = new JavaVersion[unsorted.size()];
+        this.bitmaps  = new EnumMap<>(Dimension.class);
+        for (Dimension dimension : Dimension.values()) { bitmaps.put(dimension, new HashMap<>()); }
+        for (int id = 0 ; id < order.size() ; id++) {
+            final T row = unsorted.get(order.get(id));
+            rows.add(row);
+            versions[id] = parsed[order.get(id)];
+            for (Dimension dimension : Dimension.values()) {
+                final String key = keys.apply(row, dimension);
+                if (null == key) { continue; }
+                bitmaps.get(dimension).computeIfAbsent(normalize(key), k -> new BitSet()).set(id);
+            }
+        }
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Creates an index over the given pkgs using the api strings of their properties.
+     */
+    public static PkgIndex<Pkg> of(final Collection<Pkg> pkgs) {
+        return new PkgIndex<>(pkgs, PkgIndex::getKey, pkg -> pkg.getJavaVersion().getVersionNumber().toString(OutputFormat.REDUCED_COMPRESSED, true, true));
+    }
+
+    public int size() { return rows.size(); }
+
+    public Query query() { return new Query(); }
+
+    /**
+     * Returns the values of the given dimension that are in the index.
+     */
+    public List<String> getValues(final Dimension dimension) {
+        final List<String> values = new ArrayList<>(bitmaps.get(dimension).keySet());
+        Collections.sort(values);
+        return values;
+    }
+
+    private static String getKey(final Pkg pkg, final Dimension dimension) {
+        switch (dimension) {
+            case DISTRIBUTION         : return null == pkg.getDistribution() ? null : pkg.getDistribution().apiString();
+            case OPERATING_SYSTEM     : return pkg.getOperatingSystem().getApiString();
+            case LIB_C_TYPE           : return pkg.getLibCType().getApiString();
+            case ARCHITECTURE         : return pkg.getArchitecture().getApiString();
+            case PACKAGE_TYPE         : return pkg.getPackageType().getApiString();
+            case ARCHIVE_TYPE         : return pkg.getArchiveType().getApiString();
+            case RELEASE_STATUS       : return pkg.getReleaseStatus().getApiString();
+            case TERM_OF_SUPPORT      : return pkg.getTermOfSupport().getApiString();
+            case JAVAFX_BUNDLED       : return Boolean.toString(pkg.isJavaFXBundled());
+            case DIRECTLY_DOWNLOADABLE: return Boolean.toString(pkg.isDirectlyDownloadable());
+            default                   : return null;
+        }
+    }
+
+    private static String normalize(final String key) { return key.toLowerCase(Locale.ENGLISH); }
+
+    // First id in [from, to) for which the predicate is true, the predicate has to be monotone in version order
+    private int lowerBound(final int from, final int to, final Function<JavaVersion, Boolean> isAtOrAfter) {
+        int low  = from;
+        int high = to;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (isAtOrAfter.apply(versions[mid])) { high = mid; } else { low = mid + 1; }
+        }
+        return low;
+    }
+
+
+    // ******************** Inner Classes *************************************
+    /**
+     * A query narrows down the set of matching pkgs step by step, all criteria have to match.
+     */
+    public class Query {
+        private final BitSet bits;
+
+
+        private Query() {
+            bits = new BitSet(rows.size());
+            bits.set(0, rows.size());
+        }
+
+
+        /**
+         * Keeps the pkgs that have one of the given values in the given dimension.
+         */
+        public Query where(final Dimension dimension, final String... values) {
+            if (values.length == 1) {
+                bits.and(bitmaps.get(dimension).getOrDefault(normalize(values[0]), EMPTY));
+                return this;
+            }
+            final BitSet union = new BitSet(rows.size());
+            for (String value : values) { union.or(bitmaps.get(dimension).getOrDefault(normalize(value), EMPTY)); }
+            bits.and(union);
+            return this;
+        }
+        public Query where(final Dimension dimension, final boolean value) { return where(dimension, Boolean.toString(value)); }
+
+        /**
+         * Keeps the pkgs with the given version. If exact is false 17
+         * matches all 17.x.y versions, otherwise all numbers have to match.
+         */
+        public Query version(final JavaVersion version, final boolean exact) {
+            final int from = lowerBound(0, rows.size(), v -> version.compareNumbers(v, exact) <= 0);
+            final int to   = lowerBound(from, rows.size(), v -> version.compareNumbers(v, exact) < 0);
+            keepRange(from, to);
+            if (version.build() >= 0) {
+                for (int id = bits.nextSetBit(from) ; id >= 0 && id < to ; id = bits.nextSetBit(id + 1)) {
+                    if (versions[id].build() != version.build()) { bits.clear(id); }
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Keeps the pkgs with a version in [from, to), null means open.
+         */
+        public Query between(final JavaVersion from, final JavaVersion to) {
+            final int start = null == from ? 0           : lowerBound(0, rows.size(), v -> v.compareTo(from) >= 0);
+            final int end   = null == to   ? rows.size() : lowerBound(start, rows.size(), v -> v.compareTo(to) >= 0);
+            keepRange(start, end);
+            return this;
+        }
+
+        /**
+         * Keeps the pkgs whose version numbers (ignoring the build) are higher than the given ones.
+         */
+        public Query newerThan(final JavaVersion version) {
+            keepRange(lowerBound(0, rows.size(), v -> version.compareNumbers(v, true) < 0 || (version.compareNumbers(v, true) == 0 && version.ea() && !v.ea())), rows.size());
+            return this;
+        }
+
+        /**
+         * Keeps only the pkgs with the highest version of the current result.
+         */
+        public Query latest() {
+            final int last = bits.previousSetBit(rows.size() - 1);
+            if (last < 0) { return this; }
+            final JavaVersion newest = versions[last];
+            final int         first  = lowerBound(0, last + 1, v -> v.compareTo(newest) >= 0);
+            keepRange(first, last + 1);
+            return this;
+        }
+
+        public int count() { return bits.cardinality(); }
+
+        /**
+         * Returns the matching pkgs in ascending version order.
+         */
+        public List<T> list() {
+            final List<T> result = new ArrayList<>(bits.cardinality());
+            for (int id = bits.nextSetBit(0) ; id >= 0 ; id = bits.nextSetBit(id + 1)) { result.add(rows.get(id)); }
+            return result;
+        }
+
+        /**
+         * Returns the matching pkgs latest first, the order the Disco API answers with.
+         */
+        public List<T> listDescending() {
+            final List<T> result = new ArrayList<>(bits.cardinality());
+            for (int id = bits.previousSetBit(rows.size() - 1) ; id >= 0 ; id = bits.previousSetBit(id - 1)) { result.add(rows.get(id)); }
+            return result;
+        }
+
+        /**
+         * Returns the matching pkg with the highest version.
+         */
+        public Optional<T> newest() {
+            final int last = bits.previousSetBit(rows.size() - 1);
+            return last < 0 ? Optional.empty() : Optional.of(rows.get(last));
+        }
+
+        private void keepRange(final int from, final int to) {
+            if (from >= to)       { bits.clear(); return; }
+            if (from > 0)         { bits.clear(0, from); }
+            if (to < rows.size()) { bits.clear(to, rows.size()); }
+        }
+    }
+}
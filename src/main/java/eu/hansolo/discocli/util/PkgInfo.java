@@ -0,0 +1,63 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Optional;
+
+
+/**
+ * Download information of a pkg as returned by the ids endpoint of the Disco API.
+ */
+public record PkgInfo(String filename, String directDownloadUri, String checksumUri, String checksum, String checksumType) {
+
+    public static Optional<PkgInfo> fromJson(final String json) {
+        final JsonElement element = new Gson().fromJson(json, JsonElement.class);
+        if (!(element instanceof JsonObject)) { return Optional.empty(); }
+        final JsonArray jsonArray = element.getAsJsonObject().getAsJsonArray("result");
+        if (null == jsonArray || jsonArray.size() == 0) { return Optional.empty(); }
+
+        final JsonObject packageInfoJson   = jsonArray.get(0).getAsJsonObject();
+        final String     filename          = packageInfoJson.has(Constants.FIELD_FILENAME)            ? packageInfoJson.get(Constants.FIELD_FILENAME).getAsString()            : "";
+        final String     directDownloadUri = packageInfoJson.has(Constants.FIELD_DIRECT_DOWNLOAD_URI) ? packageInfoJson.get(Constants.FIELD_DIRECT_DOWNLOAD_URI).getAsString() : "";
+        final String     checksumUri       = packageInfoJson.has(Constants.FIELD_CHECKSUM_URI)        ? packageInfoJson.get(Constants.FIELD_CHECKSUM_URI).getAsString()        : "";
+        final String     checksum          = packageInfoJson.has(Constants.FIELD_CHECKSUM)            ? packageInfoJson.get(Constants.FIELD_CHECKSUM).getAsString()            : "";
+        final String     checksumType;
+        if (checksum.isBlank()) {
+            checksumType = "";
+        } else {
+            checksumType = packageInfoJson.has(Constants.FIELD_CHECKSUM_TYPE) ? packageInfoJson.get(Constants.FIELD_CHECKSUM_TYPE).getAsString() : Helper.getChecksumTypeFromChecksum(checksum);
+        }
+        return Optional.of(new PkgInfo(filename, directDownloadUri, checksumUri, checksum, checksumType));
+    }
+
+    public boolean hasChecksum() { return !checksum.isBlank(); }
+
+    /**
+     * Returns a copy with the checksum taken from the content of the checksum_uri.
+     */
+    public PkgInfo withChecksumFromText(final String text) {
+        final String parsedChecksum = Helper.getChecksumFromText(text);
+        return new PkgInfo(filename, directDownloadUri, checksumUri, parsedChecksum, Helper.getChecksumTypeFromChecksum(parsedChecksum));
+    }
+}
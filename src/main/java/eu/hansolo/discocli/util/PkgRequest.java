@@ -0,0 +1,192 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import eu.hansolo.jdktools.Architecture;
+import eu.hansolo.jdktools.ArchiveType;
+import eu.hansolo.jdktools.LibCType;
+import eu.hansolo.jdktools.OperatingMode;
+import eu.hansolo.jdktools.OperatingSystem;
+import eu.hansolo.jdktools.PackageType;
+import eu.hansolo.jdktools.util.Helper.OsArcMode;
+import eu.hansolo.jdktools.util.OutputFormat;
+import eu.hansolo.jdktools.versioning.VersionNumber;
+
+import java.io.File;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static eu.hansolo.jdktools.OperatingSystem.WINDOWS;
+
+
+/**
+ * The validated parameters of a pkg query, either from the command line
+ * or from a line of a batch manifest. Missing parameters are filled in
+ * with the values of the current system.
+ */
+public record PkgRequest(Distribution distro, VersionNumber versionNumber, OperatingSystem operatingSystem, LibCType libcType, Architecture architecture,
+                         PackageType packageType, ArchiveType archiveType, String path, boolean find, boolean ea, boolean fx, boolean latest, boolean lts) {
+
+    /**
+     * Validates the given parameters (null if not set) and throws an
+     * IllegalArgumentException with a message for the user if they are invalid.
+     */
+    public static PkgRequest parse(final String d, final String v, final String os, final String lc, final String arc, final String pt, final String at, final String p,
+                                   final boolean find, final boolean ea, final boolean fx, final boolean latest, final boolean lts) {
+        final OsArcMode sysInfo = eu.hansolo.jdktools.util.Helper.getOperaringSystemArchitectureOperatingMode();
+
+        // Parse distro
+        final Distribution parsedDistro = null == d ? Distro.ZULU.get() : Distributions.resolve(d);
+        final Distribution distro       = null == parsedDistro ? Distro.ZULU.get() : parsedDistro;
+
+        // Parse operating system
+        final OperatingSystem parsedOperatingSystem = null == os ? sysInfo.operatingSystem() : OperatingSystem.fromText(os);
+        final OperatingSystem operatingSystem;
+        if (find && null == os) {
+            operatingSystem = OperatingSystem.NONE;
+        } else if (OperatingSystem.NONE == parsedOperatingSystem || OperatingSystem.NOT_FOUND == parsedOperatingSystem) {
+            operatingSystem = sysInfo.operatingSystem();
+        } else {
+            operatingSystem = parsedOperatingSystem;
+        }
+        if (!find && (OperatingSystem.NOT_FOUND == operatingSystem || OperatingSystem.NONE == operatingSystem)) { throw new IllegalArgumentException("Operating system cannot be found"); }
+
+        // Parse lib c type
+        final LibCType parsedLibcType = null == lc ? operatingSystem.getLibCType() : LibCType.fromText(lc);
+        final LibCType libcType;
+        if (find && OperatingSystem.NONE == operatingSystem) {
+            libcType = LibCType.NONE;
+        } else if (LibCType.NONE == parsedLibcType || LibCType.NOT_FOUND == parsedLibcType) {
+            libcType = operatingSystem.getLibCType();
+        } else {
+            libcType = parsedLibcType;
+        }
+        if (!find && (LibCType.NONE == libcType || LibCType.NOT_FOUND == libcType)) { throw new IllegalArgumentException("Lib C type cannot be found"); }
+
+        // Parse architecture
+        final boolean      rosetta2           = OperatingSystem.MACOS == sysInfo.operatingSystem() && OperatingMode.EMULATED == sysInfo.operatingMode();
+        final Architecture parsedArchitecture = null == arc ? rosetta2 ? Architecture.AARCH64 : sysInfo.architecture() : Architecture.fromText(arc);
+        final Architecture architecture;
+        if (find && null == arc) {
+            architecture = Architecture.NONE;
+        } else if (Architecture.NONE == parsedArchitecture || Architecture.NOT_FOUND == parsedArchitecture) {
+            architecture = Architecture.X64;
+        } else {
+            architecture = parsedArchitecture;
+        }
+        if (!find && (Architecture.NONE == architecture || Architecture.NOT_FOUND == architecture)) { throw new IllegalArgumentException("Architecture cannot be found"); }
+
+        // Parse package type
+        final PackageType parsedPackageType = null == pt ? PackageType.JDK : PackageType.fromText(pt);
+        final PackageType packageType;
+        if (find && null == pt) {
+            packageType = PackageType.NONE;
+        } else if (PackageType.NONE == parsedPackageType || PackageType.NOT_FOUND == parsedPackageType) {
+            packageType = PackageType.JDK;
+        } else {
+            packageType = parsedPackageType;
+        }
+        if (!find && (PackageType.NOT_FOUND == packageType || PackageType.NONE == packageType)) { throw new IllegalArgumentException("Package type cannot be found"); }
+
+        // Parse archive type
+        final ArchiveType parsedArchiveType = null == at ? (WINDOWS == operatingSystem ? ArchiveType.ZIP : ArchiveType.TAR_GZ) : ArchiveType.fromText(at);
+        final ArchiveType archiveType;
+        if (find && null == at) {
+            archiveType = ArchiveType.NONE;
+        } else if (ArchiveType.NONE == parsedArchiveType || ArchiveType.NOT_FOUND == parsedArchiveType) {
+            archiveType = (WINDOWS == operatingSystem ? ArchiveType.ZIP : ArchiveType.TAR_GZ);
+        } else {
+            archiveType = parsedArchiveType;
+        }
+        if (!find && (ArchiveType.NOT_FOUND == archiveType || ArchiveType.NONE == archiveType)) { throw new IllegalArgumentException("Archive type cannot be found"); }
+
+        // Parse path
+        final String parsedPath = null == p ? null : (p.endsWith(File.separator) ? p : p + File.separator);
+        if (null != parsedPath) {
+            final Path path = Paths.get(parsedPath);
+            if (!Files.exists(path))      { throw new IllegalArgumentException("Given path does not exists"); }
+            if (!Files.isDirectory(path)) { throw new IllegalArgumentException("Given path is not a folder"); }
+            if (!Files.isWritable(path))  { throw new IllegalArgumentException("No rights to write to given path"); }
+        }
+
+        // Parse version number
+        VersionNumber versionNumber;
+        if (null == v) {
+            versionNumber = null;
+        } else {
+            if (v.startsWith("-")) { throw new IllegalArgumentException("Version number cannot be negative"); }
+            try {
+                versionNumber = VersionNumber.fromText(v);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Version number cannot be parsed");
+            }
+        }
+
+        if (lts && (null != versionNumber || latest || ea)) { throw new IllegalArgumentException(" -latest-lts only works without a given version number, latest or ea"); }
+        if (null == versionNumber && latest)                { throw new IllegalArgumentException(" -latest only works with a given version number (e.g. -v 17 -latest)"); }
+        if (null == v && find)                              { throw new IllegalArgumentException(" -find only works with a given version number and distribution (e.g. -d zulu -v 17)"); }
+        if (null == d && find)                              { throw new IllegalArgumentException(" -find only works with a given version number and distribution (e.g. -d zulu -v 17)"); }
+
+        return new PkgRequest(distro, versionNumber, operatingSystem, libcType, architecture, packageType, archiveType, parsedPath, find, ea, fx, latest, lts);
+    }
+
+    /**
+     * Returns the uri of the Disco API packages endpoint for this request.
+     */
+    public String toRequestUri() {
+        final boolean majorVersionOnly = null != versionNumber && (versionNumber.getInterim().getAsInt() == 0 && versionNumber.getUpdate().getAsInt() == 0 && versionNumber.getPatch().getAsInt() == 0);
+
+        final String distributionParam         = "?distro=" + distro.apiString();
+        final String versionParam              = null == versionNumber ? "" : "&version=" + URLEncoder.encode(versionNumber.toString(OutputFormat.FULL_COMPRESSED, true, true), StandardCharsets.UTF_8);
+        final String operatingSystemParam      = OperatingSystem.NONE == operatingSystem ? "" : "&operating_system=" + operatingSystem.getApiString();
+        final String libcTypeParam             = LibCType.NONE == libcType ? "" : "&lib_c_type=" + libcType.getApiString();
+        final String architectureParam         = Architecture.NONE == architecture ? "" : "&architecture=" + architecture.getApiString();
+        final String archiveTypeParam          = ArchiveType.NONE == archiveType ? "" : "&archive_type=" + archiveType.getApiString();
+        final String packageTypeParam          = PackageType.NONE == packageType ? "" : "&package_type=" + packageType.getApiString();
+        final String latestParam               = find ? (majorVersionOnly ? "&latest=all_of_version" : "") : ((null == versionNumber || latest) ? lts ? "" : "&latest=available" : "");
+        final String latestLtsParam            = lts ? "&latest=available&version_by_definition=latest_lts" : "";
+        final String javafxBundledParam        = fx ? "&javafx_bundled=true" : "";
+        final String releaseStatusParam        = ea ? "&release_status=ea&release_status=ga" : "&release_status=ga";
+        final String directlyDownloadableParam = "&directlyDownloadable=true";
+
+        return new StringBuilder().append(Helper.getApiUrl())
+                                  .append(Constants.PACKAGES_ENDPOINT)
+                                  .append(distributionParam)
+                                  .append(operatingSystemParam)
+                                  .append(libcTypeParam)
+                                  .append(architectureParam)
+                                  .append(versionParam)
+                                  .append(latestParam)
+                                  .append(latestLtsParam)
+                                  .append(archiveTypeParam)
+                                  .append(javafxBundledParam)
+                                  .append(packageTypeParam)
+                                  .append(directlyDownloadableParam)
+                                  .append(releaseStatusParam)
+                                  .toString();
+    }
+
+    /**
+     * Returns the path of the given file in the requested folder (or the current folder).
+     */
+    public String getTarget(final String filename) { return null == path ? filename : path + filename; }
+}
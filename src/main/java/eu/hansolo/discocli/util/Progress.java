@@ -0,0 +1,198 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Shows the progress of a transfer. The I/O threads only add to an atomic
+ * counter, a ticker thread samples the counter at a fixed rate and renders
+ * a single line bar with throughput and ETA on a terminal or writes NDJSON
+ * progress events to stderr if the output is redirected.
+ */
+public class Progress implements AutoCloseable {
+    public enum Format { NONE, BAR, NDJSON }
+
+    private static final long                     BAR_TICK     = 200;
+    private static final long                     NDJSON_TICK  = 1_000;
+    private static final int                      BAR_WIDTH    = 30;
+    private static final double                   RATE_WEIGHT  = 0.3;
+    private static final double                   MB           = 1024.0 * 1024.0;
+    private final        String                   name;
+    private final        Format                   format;
+    private final        AtomicLong               received;
+    private final        AtomicLong               skipped;
+    private final        AtomicLong               total;
+    private final        AtomicLong               firstByteNanos;
+    private final        long                     startNanos;
+    private final        ScheduledExecutorService ticker;
+    private              long                     lastBytes;
+    private              long                     lastNanos;
+    private              double                   rate;
+    private              int                      lineLength;
+    private              boolean                  closed;
+
+
+    // ******************** Constructors **************************************
+    public Progress(final String name, final long total) {
+        this(name, total, detectFormat());
+    }
+    public Progress(final String name, final long total, final Format format) {
+        this.name           = name;
+        this.format         = format;
+        this.received       = new AtomicLong();
+        this.skipped        = new AtomicLong();
+        this.total          = new AtomicLong(total);
+        this.firstByteNanos = new AtomicLong();
+        this.startNanos     = System.nanoTime();
+        this.lastNanos      = startNanos;
+        if (Format.NONE == format) {
+            this.ticker = null;
+        } else {
+            final long tick = Format.BAR == format ? BAR_TICK : NDJSON_TICK;
+            this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "discocli-progress");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.ticker.scheduleAtFixedRate(() -> render(false), tick, tick, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Renders a bar if stdout is a terminal and NDJSON events on stderr otherwise.
+     */
+    public static Format detectFormat() { return null == System.console() ? Format.NDJSON : Format.BAR; }
+
+    /**
+     * Called from the I/O threads for every buffer that has been received.
+     */
+    public void add(final long count) {
+        if (0 == firstByteNanos.get()) { firstByteNanos.compareAndSet(0, System.nanoTime()); }
+        received.addAndGet(count);
+    }
+
+    /**
+     * Adds bytes that have not been transferred now (e.g. from a resumed download)
+     * so that they do not show up in the throughput.
+     */
+    public void skip(final long count) {
+        skipped.addAndGet(count);
+        received.addAndGet(count);
+    }
+
+    public void addTotal(final long count) { total.addAndGet(count); }
+
+    public long getReceived() { return received.get(); }
+
+    /**
+     * The System.nanoTime() when the first byte was received, 0 if nothing was received yet.
+     */
+    public long getFirstByteNanos() { return firstByteNanos.get(); }
+
+    /**
+     * Prints a line without breaking the progress bar.
+     */
+    public synchronized void println(final String line) {
+        if (Format.BAR == format && lineLength > 0) {
+            System.out.print("\r" + " ".repeat(lineLength) + "\r");
+            lineLength = 0;
+        }
+        System.out.println(line);
+    }
+
+    @Override public void close() {
+        if (null != ticker) { ticker.shutdownNow(); }
+        render(true);
+    }
+
+    private synchronized void render(final boolean done) {
+        if (closed || Format.NONE == format) { return; }
+        closed = done;
+
+        final long now   = System.nanoTime();
+        final long bytes = received.get();
+        final long size  = total.get();
+        final long delta = (bytes - skipped.get()) - lastBytes;
+        if (now > lastNanos) {
+            final double current = Math.max(0, delta) * 1_000_000_000.0 / (now - lastNanos);
+            rate = lastBytes == 0 && rate == 0 ? current : RATE_WEIGHT * current + (1 - RATE_WEIGHT) * rate;
+        }
+        lastBytes = bytes - skipped.get();
+        lastNanos = now;
+
+        final double seconds = (now - startNanos) / 1_000_000_000.0;
+        final double average = seconds > 0 ? lastBytes / seconds : 0;
+        final double speed   = done ? average : rate;
+        final long   eta     = size > 0 && speed > 0 ? (long) Math.ceil(Math.max(0, size - bytes) / speed) : -1;
+
+        if (Format.BAR == format) {
+            final StringBuilder line = new StringBuilder().append(name).append(' ');
+            if (size > 0) {
+                final int filled = (int) Math.min(BAR_WIDTH, bytes * BAR_WIDTH / size);
+                line.append('[').append("#".repeat(filled)).append("-".repeat(BAR_WIDTH - filled)).append(']')
+                    .append(String.format(Locale.ENGLISH, " %3d%%  %.1f/%.1f MB", Math.min(100, bytes * 100 / size), bytes / MB, size / MB));
+            } else {
+                line.append(String.format(Locale.ENGLISH, "%.1f MB", bytes / MB));
+            }
+            line.append(String.format(Locale.ENGLISH, "  %.1f MB/s", speed / MB));
+            if (done) {
+                line.append(String.format(Locale.ENGLISH, "  %.1f s", seconds));
+            } else if (eta >= 0) {
+                line.append(String.format(Locale.ENGLISH, "  ETA %d:%02d", eta / 60, eta % 60));
+            }
+            final int length = line.length();
+            if (length < lineLength) { line.append(" ".repeat(lineLength - length)); }
+            lineLength = done ? 0 : length;
+            System.out.print("\r" + line + (done ? "\n" : ""));
+            System.out.flush();
+        } else {
+            final StringWriter event = new StringWriter();
+            try (JsonWriter writer = new JsonWriter(event)) {
+                writer.beginObject()
+                      .name("event").value(done ? "done" : "progress")
+                      .name("name").value(name)
+                      .name("bytes").value(bytes)
+                      .name("total").value(size);
+                if (size > 0) { writer.name("percent").value(round(Math.min(100.0, bytes * 100.0 / size))); }
+                writer.name("bytes_per_second").value((long) speed)
+                      .name("elapsed_seconds").value(round(seconds));
+                if (!done && eta >= 0) { writer.name("eta_seconds").value(eta); }
+                writer.endObject();
+            } catch (IOException e) {
+                return;
+            }
+            System.err.println(event);
+        }
+    }
+
+    // One decimal is enough for the events
+    private static double round(final double value) { return Math.round(value * 10.0) / 10.0; }
+}
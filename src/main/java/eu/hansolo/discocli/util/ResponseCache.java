@@ -0,0 +1,344 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import javax.net.ssl.SSLSession;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+
+/**
+ * On disk cache for the responses of the Disco API shared by all
+ * invocations of discocli. Entries are keyed by the canonical request uri
+ * (the order of the query parameters does not matter) and are fresh for
+ * the max-age given by the server or, if there is none, for a ttl that
+ * depends on the endpoint. Expired entries are revalidated with
+ * If-None-Match/If-Modified-Since and served stale if the api cannot be
+ * reached.
+ */
+public class ResponseCache {
+    public  static final Duration IDS_TTL           = Duration.ofHours(24);
+    public  static final Duration PACKAGES_TTL      = Duration.ofHours(1);
+    public  static final Duration CATALOG_TTL       = Duration.ofHours(12);
+    public  static final Duration DEFAULT_TTL       = Duration.ofMinutes(30);
+    public  static final Duration MAX_STALE         = Duration.ofDays(30);
+    private static final String   KEY_URI           = "uri";
+    private static final String   KEY_ETAG          = "etag";
+    private static final String   KEY_LAST_MODIFIED = "last_modified";
+    private static final String   KEY_CONTENT_TYPE  = "content_type";
+    private static final String   KEY_STORED        = "stored";
+    private static final String   KEY_EXPIRES       = "expires";
+    private static final String   KEY_LENGTH        = "length";
+    private static final Pattern  MAX_AGE_PATTERN   = Pattern.compile("(?:s-maxage|max-age)\\s*=\\s*\"?(\\d+)");
+    private final        Path     root;
+
+    /**
+     * A cached response, fresh until the expires timestamp (epoch millis).
+     */
+    public record Entry(String uri, String body, String etag, String lastModified, String contentType, long stored, long expires) {
+        public boolean isFresh() { return System.currentTimeMillis() < expires; }
+
+        public boolean isUsableStale() { return System.currentTimeMillis() - stored < MAX_STALE.toMillis(); }
+
+        public boolean hasValidator() { return !etag.isEmpty() || !lastModified.isEmpty(); }
+    }
+
+
+    // ******************** Constructors **************************************
+    public ResponseCache() {
+        this(Paths.get(Constants.CACHE_FOLDER));
+    }
+    public ResponseCache(final Path root) {
+        this.root = root;
+    }
+
+
+    // ******************** Methods *******************************************
+    public Path getRoot() { return root; }
+
+    public Optional<Entry> get(final String uri) {
+        final String     key        = getKey(uri);
+        final Path       metaFile   = root.resolve(key + ".properties");
+        final Path       bodyFile   = root.resolve(key + ".body");
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(metaFile)) {
+            properties.load(in);
+            final byte[] body = Files.readAllBytes(bodyFile);
+            if (body.length != Long.parseLong(properties.getProperty(KEY_LENGTH, "-1"))) { return Optional.empty(); }
+            return Optional.of(new Entry(properties.getProperty(KEY_URI, uri), new String(body, StandardCharsets.UTF_8),
+                                         properties.getProperty(KEY_ETAG, ""), properties.getProperty(KEY_LAST_MODIFIED, ""), properties.getProperty(KEY_CONTENT_TYPE, ""),
+                                         Long.parseLong(properties.getProperty(KEY_STORED, "0")), Long.parseLong(properties.getProperty(KEY_EXPIRES, "0"))));
+        } catch (IOException | NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores a successful response, responses with Cache-Control no-store are ignored.
+     */
+    public void put(final String uri, final HttpResponse<String> response) {
+        if (response.statusCode() != 200 || null == response.body()) { return; }
+        final HttpHeaders headers = response.headers();
+        if (isNoStore(headers)) { return; }
+        write(createEntry(uri, response.body(), headers), true);
+    }
+
+    /**
+     * Stores the (decompressed) body of a successful response while the
+     * given decoder reads it, so that the body is never held in memory as
+     * a whole. Returns what the decoder returned.
+     */
+    public <T> T put(final String uri, final HttpHeaders headers, final InputStream body, final Decoder<T> decoder) throws IOException {
+        if (isNoStore(headers)) { return decoder.decode(new InputStreamReader(body, StandardCharsets.UTF_8)); }
+        final String key = getKey(uri);
+        final Path   tmp = root.resolve(key + getTmpSuffix());
+        final T      result;
+        final long   length;
+        Files.createDirectories(root);
+        try (OutputStream copy = Files.newOutputStream(tmp); TeeInputStream tee = new TeeInputStream(body, copy)) {
+            result = decoder.decode(new InputStreamReader(tee, StandardCharsets.UTF_8));
+            // Store what the decoder did not read
+            tee.transferTo(OutputStream.nullOutputStream());
+            length = tee.getCount();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        try {
+            move(tmp, root.resolve(key + ".body"));
+            writeProperties(key, createEntry(uri, "", headers), length);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+        }
+        return result;
+    }
+
+    /**
+     * Called after a 304 (Not Modified), the cached body is fresh again.
+     */
+    public Entry refresh(final Entry entry, final HttpHeaders headers) {
+        final long  now       = System.currentTimeMillis();
+        final Entry refreshed = new Entry(entry.uri(), entry.body(), headers.firstValue("ETag").orElse(entry.etag()), headers.firstValue("Last-Modified").orElse(entry.lastModified()),
+                                          entry.contentType(), now, now + getTtl(entry.uri(), headers).toMillis());
+        write(refreshed, false);
+        return refreshed;
+    }
+
+    /**
+     * Adds the validators of the given entry to the request.
+     */
+    public static HttpRequest.Builder conditional(final HttpRequest.Builder builder, final Entry entry) {
+        if (null == entry) { return builder; }
+        if (!entry.etag().isEmpty())         { builder.setHeader("If-None-Match", entry.etag()); }
+        if (!entry.lastModified().isEmpty()) { builder.setHeader("If-Modified-Since", entry.lastModified()); }
+        return builder;
+    }
+
+    /**
+     * Returns a response with the cached body for the given request.
+     */
+    public static HttpResponse<String> toResponse(final Entry entry, final HttpRequest request) {
+        final Map<String, List<String>> headers = new LinkedHashMap<>();
+        if (!entry.contentType().isEmpty())  { headers.put("Content-Type", List.of(entry.contentType())); }
+        if (!entry.etag().isEmpty())         { headers.put("ETag", List.of(entry.etag())); }
+        if (!entry.lastModified().isEmpty()) { headers.put("Last-Modified", List.of(entry.lastModified())); }
+        headers.put("Age", List.of(Long.toString(Math.max(0, (System.currentTimeMillis() - entry.stored()) / 1000))));
+        return new CachedResponse(request, entry.body(), HttpHeaders.of(headers, (name, value) -> true));
+    }
+
+    /**
+     * The canonical form of the uri, scheme and host in lower case, without
+     * the default port and with the query parameters sorted.
+     */
+    public static String canonicalize(final String uri) {
+        final URI     parsed = URI.create(uri.trim());
+        final String  scheme = null == parsed.getScheme() ? "" : parsed.getScheme().toLowerCase(Locale.ENGLISH);
+        final String  host   = null == parsed.getHost()   ? "" : parsed.getHost().toLowerCase(Locale.ENGLISH);
+        final int     port   = parsed.getPort();
+        final boolean defaultPort = port == -1 || ("https".equals(scheme) && port == 443) || ("http".equals(scheme) && port == 80);
+        final String  path   = null == parsed.getRawPath() || parsed.getRawPath().isEmpty() ? "/" : parsed.getRawPath();
+        final String  query  = null == parsed.getRawQuery() ? "" : Arrays.stream(parsed.getRawQuery().split("&")).filter(param -> !param.isEmpty()).sorted().collect(Collectors.joining("&"));
+        return scheme + "://" + host + (defaultPort ? "" : ":" + port) + path + (query.isEmpty() ? "" : "?" + query);
+    }
+
+    /**
+     * The max-age of the Cache-Control header or the ttl of the endpoint.
+     */
+    public static Duration getTtl(final String uri, final HttpHeaders headers) {
+        final List<String> cacheControl = null == headers ? List.of() : headers.allValues("Cache-Control");
+        for (String value : cacheControl) {
+            final String lowerCase = value.toLowerCase(Locale.ENGLISH);
+            if (lowerCase.contains("no-cache")) { return Duration.ZERO; }
+            final Matcher matcher = MAX_AGE_PATTERN.matcher(lowerCase);
+            if (matcher.find()) { return Duration.ofSeconds(Long.parseLong(matcher.group(1))); }
+        }
+        final String path = URI.create(uri).getPath();
+        if (null == path)                                                                                        { return DEFAULT_TTL; }
+        if (path.contains("/" + Constants.IDS_ENDPOINT))                                                          { return IDS_TTL; }
+        if (path.endsWith("/" + Constants.PACKAGES_ENDPOINT))                                                     { return PACKAGES_TTL; }
+        if (path.contains("/" + Constants.DISTRIBUTIONS_ENDPOINT) || path.contains("/" + Constants.MAJOR_VERSIONS_ENDPOINT)) { return CATALOG_TTL; }
+        return DEFAULT_TTL;
+    }
+
+    private void write(final Entry entry, final boolean withBody) {
+        final String key  = getKey(entry.uri());
+        final byte[] body = entry.body().getBytes(StandardCharsets.UTF_8);
+        final Path   tmp  = root.resolve(key + getTmpSuffix());
+        try {
+            Files.createDirectories(root);
+            if (withBody) {
+                Files.write(tmp, body);
+                move(tmp, root.resolve(key + ".body"));
+            }
+            writeProperties(key, entry, body.length);
+        } catch (IOException e) {
+            try { Files.deleteIfExists(tmp); } catch (IOException ex) { /* Best effort */ }
+        }
+    }
+
+    private void writeProperties(final String key, final Entry entry, final long length) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty(KEY_URI, entry.uri());
+        properties.setProperty(KEY_ETAG, entry.etag());
+        properties.setProperty(KEY_LAST_MODIFIED, entry.lastModified());
+        properties.setProperty(KEY_CONTENT_TYPE, entry.contentType());
+        properties.setProperty(KEY_STORED, Long.toString(entry.stored()));
+        properties.setProperty(KEY_EXPIRES, Long.toString(entry.expires()));
+        properties.setProperty(KEY_LENGTH, Long.toString(length));
+        final Path tmp = root.resolve(key + getTmpSuffix());
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            properties.store(out, "DiscoCLI response cache");
+        }
+        move(tmp, root.resolve(key + ".properties"));
+    }
+
+    private static Entry createEntry(final String uri, final String body, final HttpHeaders headers) {
+        final long now = System.currentTimeMillis();
+        return new Entry(uri, body, headers.firstValue("ETag").orElse(""), headers.firstValue("Last-Modified").orElse(""), headers.firstValue("Content-Type").orElse(""),
+                         now, now + getTtl(uri, headers).toMillis());
+    }
+
+    private static boolean isNoStore(final HttpHeaders headers) {
+        return headers.allValues("Cache-Control").stream().anyMatch(value -> value.toLowerCase(Locale.ENGLISH).contains("no-store"));
+    }
+
+    // Temp files are unique per thread so that concurrent requests for the same uri do not clash
+    private static String getTmpSuffix() { return "." + ProcessHandle.current().pid() + "-" + Thread.currentThread().getId() + ".tmp"; }
+
+    private static void move(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String getKey(final String uri) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonicalize(uri).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(canonicalize(uri).hashCode());
+        }
+    }
+
+
+    // ******************** Inner Classes *************************************
+    /**
+     * Reads the value (e.g. the pkgs) from the body of a response.
+     */
+    @FunctionalInterface public interface Decoder<T> {
+        T decode(Reader reader) throws IOException;
+    }
+
+    // Copies every byte that is read to the given output
+    private static final class TeeInputStream extends FilterInputStream {
+        private final OutputStream copy;
+        private       long         count;
+
+        TeeInputStream(final InputStream in, final OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        long getCount() { return count; }
+
+        @Override public int read() throws IOException {
+            final int value = super.read();
+            if (-1 != value) {
+                copy.write(value);
+                count++;
+            }
+            return value;
+        }
+
+        @Override public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                copy.write(buffer, offset, read);
+                count += read;
+            }
+            return read;
+        }
+
+        @Override public long skip(final long n) throws IOException { return Math.max(0, read(new byte[(int) Math.min(8192, Math.max(0, n))])); }
+
+        @Override public boolean markSupported() { return false; }
+    }
+
+    private record CachedResponse(HttpRequest request, String body, HttpHeaders headers) implements HttpResponse<String> {
+        @Override public int statusCode() { return 200; }
+
+        @Override public Optional<HttpResponse<String>> previousResponse() { return Optional.empty(); }
+
+        @Override public Optional<SSLSession> sslSession() { return Optional.empty(); }
+
+        @Override public URI uri() { return request.uri(); }
+
+        @Override public Version version() { return Version.HTTP_1_1; }
+    }
+}
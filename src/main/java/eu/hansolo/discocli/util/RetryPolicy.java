@@ -0,0 +1,177 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Decides if and when a failed request will be sent again and keeps the
+ * numbers for the run summary. Retries use an exponential backoff with
+ * jitter (half fixed, half random) or the Retry-After of a 429/503. If
+ * hedging is enabled a duplicate of a request is sent when the first one
+ * did not answer within the p95 of the latencies seen so far.
+ */
+public class RetryPolicy {
+    public  static final int        DEFAULT_RETRIES     = 2;
+    public  static final int        MAX_RETRIES         = 10;
+    public  static final Duration   BASE_DELAY          = Duration.ofMillis(250);
+    public  static final Duration   MAX_DELAY           = Duration.ofSeconds(8);
+    public  static final Duration   MAX_RETRY_AFTER     = Duration.ofSeconds(30);
+    public  static final Duration   DEFAULT_HEDGE_DELAY = Duration.ofSeconds(1);
+    public  static final Duration   MIN_HEDGE_DELAY     = Duration.ofMillis(50);
+    private static final int        LATENCY_SAMPLES     = 128;
+    private static final int        MIN_SAMPLES         = 10;
+    private final        int        retries;
+    private final        boolean    hedging;
+    private final        long[]     latencies;
+    private final        AtomicLong requests;
+    private final        AtomicLong retried;
+    private final        AtomicLong throttled;
+    private final        AtomicLong hedged;
+    private final        AtomicLong hedgesWon;
+    private final        AtomicLong downloadRetries;
+    private              int        noOfLatencies;
+    private              int        nextLatency;
+
+    /**
+     * The numbers of a run, requests are the requests sent to the server (including retries and hedges).
+     */
+    public record Stats(long requests, long retries, long throttled, long hedged, long hedgesWon, long downloadRetries) {
+        public boolean hasRetriesOrHedges() { return retries > 0 || hedged > 0 || downloadRetries > 0; }
+
+        @Override public String toString() {
+            return new StringBuilder().append(requests).append(" api requests, ")
+                                      .append(retries).append(" retried (").append(throttled).append(" throttled), ")
+                                      .append(hedged).append(" hedged (").append(hedgesWon).append(" won), ")
+                                      .append(downloadRetries).append(" download retries")
+                                      .toString();
+        }
+    }
+
+
+    // ******************** Constructors **************************************
+    public RetryPolicy() {
+        this(DEFAULT_RETRIES, false);
+    }
+    public RetryPolicy(final int retries, final boolean hedging) {
+        this.retries         = Math.max(0, Math.min(MAX_RETRIES, retries));
+        this.hedging         = hedging;
+        this.latencies       = new long[LATENCY_SAMPLES];
+        this.requests        = new AtomicLong();
+        this.retried         = new AtomicLong();
+        this.throttled       = new AtomicLong();
+        this.hedged          = new AtomicLong();
+        this.hedgesWon       = new AtomicLong();
+        this.downloadRetries = new AtomicLong();
+    }
+
+
+    // ******************** Methods *******************************************
+    public int getRetries() { return retries; }
+
+    public boolean isHedging() { return hedging; }
+
+    /**
+     * Backoff before the given retry (1, 2, 3...), BASE_DELAY * 2^(retry - 1)
+     * capped at MAX_DELAY of which the second half is random.
+     */
+    public Duration getBackoff(final int retry) {
+        final long ceiling = Math.min(MAX_DELAY.toMillis(), BASE_DELAY.toMillis() << Math.min(16, Math.max(0, retry - 1)));
+        return Duration.ofMillis(ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1));
+    }
+
+    /**
+     * The delay after which a hedged request is sent, the p95 of the
+     * recent latencies or DEFAULT_HEDGE_DELAY if there are not enough.
+     */
+    public synchronized Duration getHedgeDelay() {
+        if (noOfLatencies < MIN_SAMPLES) { return DEFAULT_HEDGE_DELAY; }
+        final long[] sorted = Arrays.copyOf(latencies, noOfLatencies);
+        Arrays.sort(sorted);
+        final long p95 = sorted[Math.min(noOfLatencies - 1, (int) Math.ceil(noOfLatencies * 0.95) - 1)];
+        return Duration.ofNanos(Math.max(MIN_HEDGE_DELAY.toNanos(), p95));
+    }
+
+    public synchronized void addLatency(final long nanos) {
+        latencies[nextLatency] = nanos;
+        nextLatency            = (nextLatency + 1) % LATENCY_SAMPLES;
+        noOfLatencies          = Math.min(LATENCY_SAMPLES, noOfLatencies + 1);
+    }
+
+    /**
+     * Status codes that are worth another try, throttling and temporary server errors.
+     */
+    public static boolean isRetryable(final int statusCode) {
+        switch (statusCode) {
+            case 408:
+            case 429:
+            case 502:
+            case 503:
+            case 504: return true;
+            default : return false;
+        }
+    }
+
+    /**
+     * Timeouts and I/O errors are retried, invalid requests are not.
+     */
+    public static boolean isRetryable(final Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause instanceof CompletionException && null != cause.getCause()) { cause = cause.getCause(); }
+        return cause instanceof IOException;
+    }
+
+    /**
+     * The Retry-After header in seconds or as http date.
+     */
+    public static Optional<Duration> getRetryAfter(final HttpHeaders headers) {
+        final String value = null == headers ? "" : headers.firstValue("Retry-After").orElse("").trim();
+        if (value.isEmpty()) { return Optional.empty(); }
+        try {
+            return Optional.of(Duration.ofSeconds(Math.max(0, Long.parseLong(value))));
+        } catch (NumberFormatException e) {
+            try {
+                final Duration duration = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME));
+                return Optional.of(duration.isNegative() ? Duration.ZERO : duration);
+            } catch (DateTimeParseException ex) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    public void requestSent()     { requests.incrementAndGet(); }
+    public void retried()         { retried.incrementAndGet(); }
+    public void throttled()       { throttled.incrementAndGet(); }
+    public void hedged()          { hedged.incrementAndGet(); }
+    public void hedgeWon()        { hedgesWon.incrementAndGet(); }
+    public void downloadRetried() { downloadRetries.incrementAndGet(); }
+
+    public Stats getStats() { return new Stats(requests.get(), retried.get(), throttled.get(), hedged.get(), hedgesWon.get(), downloadRetries.get()); }
+}
@@ -0,0 +1,92 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * Records when the phases of a run (connect, packages, ids, download...)
+ * started and ended relative to the start of the JVM. Phases that run
+ * at the same time overlap in the printed breakdown.
+ */
+public class Timing {
+    private final long        origin;
+    private final List<Phase> phases;
+
+    /**
+     * A phase of the run, start and end are nanoseconds since the start of the JVM.
+     */
+    public record Phase(String name, long start, long end) {
+        public long getDurationNanos() { return end - start; }
+    }
+
+
+    // ******************** Constructors **************************************
+    public Timing() {
+        final long    now      = System.nanoTime();
+        final Instant jvmStart = ProcessHandle.current().info().startInstant().orElse(null);
+        final long    startup  = null == jvmStart ? 0 : Math.max(0, Duration.between(jvmStart, Instant.now()).toNanos());
+        this.origin = now - startup;
+        this.phases = new CopyOnWriteArrayList<>();
+        if (startup > 0) { phases.add(new Phase("jvm startup", 0, startup)); }
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Records the time from now until the given future completes (normally
+     * or exceptionally). Join the returned future to be sure the phase has
+     * been recorded.
+     */
+    public <T> CompletableFuture<T> track(final String name, final CompletableFuture<T> future) {
+        final long start = System.nanoTime();
+        return future.whenComplete((result, throwable) -> add(name, start, System.nanoTime()));
+    }
+
+    /**
+     * Adds a phase with the given System.nanoTime() values.
+     */
+    public void add(final String name, final long startNanos, final long endNanos) {
+        if (0 == startNanos || endNanos < startNanos) { return; }
+        phases.add(new Phase(name, startNanos - origin, endNanos - origin));
+    }
+
+    /**
+     * Adds an event without a duration (e.g. the first byte of a download).
+     */
+    public void mark(final String name, final long nanos) { add(name, nanos, nanos); }
+
+    public List<Phase> getPhases() { return phases.stream().sorted(Comparator.comparingLong(Phase::start)).toList(); }
+
+    public void print(final PrintStream out) {
+        out.println("\nTiming (ms since JVM start)");
+        out.println(String.format("%-22s %8s %8s %8s", "phase", "start", "end", "duration"));
+        for (Phase phase : getPhases()) {
+            out.println(String.format("%-22s %8.1f %8.1f %8.1f", phase.name(), phase.start() / 1e6, phase.end() / 1e6, phase.getDurationNanos() / 1e6));
+        }
+        out.println();
+    }
+}
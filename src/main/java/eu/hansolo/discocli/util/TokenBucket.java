@@ -0,0 +1,86 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Client side rate limit for the requests to the Disco API. The bucket
+ * holds up to burst tokens and refills at the given rate, a request that
+ * finds the bucket empty is delayed (not rejected) until its token is
+ * available. After a 429 the whole bucket can be paused.
+ */
+public class TokenBucket {
+    public  static final double DEFAULT_RATE  = 20;
+    public  static final int    DEFAULT_BURST = 40;
+    private final        double ratePerNano;
+    private final        double burst;
+    private              double tokens;
+    private              long   lastRefill;
+    private              long   pausedUntil;
+
+
+    // ******************** Constructors **************************************
+    public TokenBucket() {
+        this(DEFAULT_RATE, DEFAULT_BURST);
+    }
+    public TokenBucket(final double requestsPerSecond, final int burst) {
+        if (requestsPerSecond <= 0) { throw new IllegalArgumentException("Rate must be positive"); }
+        this.ratePerNano = requestsPerSecond / 1e9;
+        this.burst       = Math.max(1, burst);
+        this.tokens      = this.burst;
+        this.lastRefill  = System.nanoTime();
+        this.pausedUntil = lastRefill;
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Takes a token and completes when the request may be sent.
+     */
+    public CompletableFuture<Void> acquire() {
+        final long waitNanos = reserve();
+        if (waitNanos <= 0) { return CompletableFuture.completedFuture(null); }
+        return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Takes a token and returns the nanoseconds to wait before the request may be sent.
+     */
+    public synchronized long reserve() {
+        final long now = System.nanoTime();
+        tokens     = Math.min(burst, tokens + (now - lastRefill) * ratePerNano);
+        lastRefill = now;
+        tokens    -= 1;
+        final long tokenWait = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / ratePerNano);
+        return Math.max(tokenWait, pausedUntil - now);
+    }
+
+    /**
+     * Delays all requests for the given time, e.g. after the server responded with 429.
+     */
+    public synchronized void pause(final Duration duration) {
+        if (null == duration || duration.isNegative() || duration.isZero()) { return; }
+        final long until = System.nanoTime() + duration.toNanos();
+        if (until - pausedUntil > 0) { pausedUntil = until; }
+    }
+}
@@ -3,6 +3,7 @@ module eu.hansolo.discocli {
     // Base
     requires java.base;
     requires java.net.http;
+    requires jdk.httpserver;
 
     // 3rd party
     requires eu.hansolo.jdktools;
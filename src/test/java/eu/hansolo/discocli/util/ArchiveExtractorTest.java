@@ -0,0 +1,155 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Archives that try to write outside of the target folder have to be
+ * rejected before anything is written there. The fixtures are built in
+ * memory, every entry is a regular file (0), a folder (5) or a link (1, 2).
+ */
+class ArchiveExtractorTest {
+    @TempDir Path folder;
+
+
+    @Test void extractsAValidArchive() throws IOException {
+        final byte[] tar = tar(entry('5', "jdk/", ""), entry('0', "jdk/release", "JAVA_VERSION=\"17\""), entry('2', "jdk/latest", "release"), entry('1', "jdk/copy", "jdk/release"));
+        assertEquals(4, ArchiveExtractor.untar(new ByteArrayInputStream(tar), target()));
+        assertEquals("JAVA_VERSION=\"17\"", Files.readString(target().resolve("jdk/latest")));
+        assertEquals("JAVA_VERSION=\"17\"", Files.readString(target().resolve("jdk/copy")));
+    }
+
+    @Test void rejectsTarEntriesThatLeaveTheFolder() {
+        assertRejected(tar(entry('0', "../evil", "x")));
+        assertRejected(tar(entry('0', "jdk/../../evil", "x")));
+    }
+
+    @Test void rejectsAbsoluteTarEntries() {
+        assertRejected(tar(entry('0', folder.resolve("evil").toString(), "x")));
+        assertRejected(tar(entry('0', "/evil", "x")));
+    }
+
+    @Test void rejectsLinksThatPointOutside() {
+        assertRejected(tar(entry('2', "jdk/link", "../../evil")));
+        assertRejected(tar(entry('2', "jdk/link", folder.resolve("evil").toString())));
+        assertRejected(tar(entry('1', "jdk/link", "../evil")));
+    }
+
+    @Test void rejectsEntriesBelowALinkExtractedBefore() {
+        // Each link stays inside, but together they point above the target folder
+        assertRejected(tar(entry('2', "x/y", ".."), entry('2', "x/y/z", ".."), entry('0', "x/y/z/evil", "x")));
+        assertRejected(tar(entry('5', "jdk/", ""), entry('2', "link", "jdk"), entry('0', "link/evil", "x")));
+    }
+
+    @Test void rejectsZipEntriesThatLeaveTheFolder() throws IOException {
+        assertRejectedZip(zip("../evil"));
+        assertRejectedZip(zip("jdk/../../evil"));
+        assertRejectedZip(zip("..\\evil"));
+    }
+
+    @Test void rejectsAbsoluteZipEntries() throws IOException {
+        assertRejectedZip(zip("/evil"));
+        assertRejectedZip(zip(folder.resolve("evil").toString()));
+        assertRejectedZip(zip("C:/evil"));
+    }
+
+
+    private Path target() { return folder.resolve("target"); }
+
+    private void assertRejected(final byte[] tar) {
+        assertThrows(IOException.class, () -> ArchiveExtractor.untar(new ByteArrayInputStream(tar), target()));
+        assertNothingOutside();
+    }
+
+    private void assertRejectedZip(final byte[] zip) {
+        assertThrows(IOException.class, () -> ArchiveExtractor.unzip(new ByteArrayInputStream(zip), target()));
+        assertNothingOutside();
+    }
+
+    private void assertNothingOutside() {
+        assertFalse(Files.exists(folder.resolve("evil")), "Written outside of the target folder");
+        assertFalse(Files.exists(folder.getParent().resolve("evil")), "Written outside of the target folder");
+        assertFalse(Files.exists(Path.of("/evil")), "Written to the root folder");
+    }
+
+    private static byte[] zip(final String name) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOut = new ZipOutputStream(out)) {
+            zipOut.putNextEntry(new ZipEntry(name));
+            zipOut.write('x');
+            zipOut.closeEntry();
+        }
+        return out.toByteArray();
+    }
+
+    private record Entry(char type, String name, String content) {}
+
+    private static Entry entry(final char type, final String name, final String contentOrLink) { return new Entry(type, name, contentOrLink); }
+
+    // A ustar archive, links keep their target in the link name field
+    private static byte[] tar(final Entry... entries) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Entry entry : entries) {
+            final boolean link    = entry.type() == '1' || entry.type() == '2';
+            final byte[]  content = link ? new byte[0] : entry.content().getBytes(StandardCharsets.UTF_8);
+            final byte[]  header  = new byte[512];
+            put(header, 0, entry.name());
+            put(header, 100, String.format("%07o", entry.type() == '5' ? 0755 : 0644));
+            put(header, 108, "0000000");
+            put(header, 116, "0000000");
+            put(header, 124, String.format("%011o", content.length));
+            put(header, 136, String.format("%011o", 0));
+            header[156] = (byte) entry.type();
+            if (link) { put(header, 157, entry.content()); }
+            put(header, 257, "ustar");
+            put(header, 263, "00");
+            for (int i = 148 ; i < 156 ; i++) { header[i] = ' '; }
+            int checksum = 0;
+            for (byte b : header) { checksum += b & 0xFF; }
+            put(header, 148, String.format("%06o", checksum));
+            out.writeBytes(header);
+            out.writeBytes(content);
+            out.writeBytes(new byte[(512 - content.length % 512) % 512]);
+        }
+        out.writeBytes(new byte[1024]);
+        return out.toByteArray();
+    }
+
+    private static void put(final byte[] header, final int offset, final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+}
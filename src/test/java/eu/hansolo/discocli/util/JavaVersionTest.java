@@ -0,0 +1,76 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class JavaVersionTest {
+
+    @Test void parsesNumbersEarlyAccessAndBuild() {
+        final JavaVersion ga = JavaVersion.fromText("17.0.4.1+1");
+        assertEquals(List.of(17, 0, 4, 1), Stream.of(0, 1, 2, 3).map(ga::number).collect(Collectors.toList()));
+        assertEquals(17, ga.getFeature());
+        assertFalse(ga.ea());
+        assertEquals(1, ga.build());
+
+        final JavaVersion ea = JavaVersion.fromText("19-ea+8");
+        assertEquals(19, ea.getFeature());
+        assertTrue(ea.ea());
+        assertEquals(8, ea.build());
+
+        assertEquals(-1, JavaVersion.fromText("17").build());
+        assertEquals(0, JavaVersion.fromText("").getFeature());
+        assertEquals(0, JavaVersion.fromText(null).getFeature());
+    }
+
+    @Test void ordersByNumbersThenEarlyAccessThenBuild() {
+        final List<String> expected = List.of("17-ea+30", "17", "17+35", "17.0.1+12", "17.0.2-ea+1", "17.0.2+8", "17.0.2+9", "17.0.9+9", "17.0.10+7", "18");
+        final List<String> shuffled = new ArrayList<>(expected);
+        Collections.shuffle(shuffled, new Random(42));
+        assertEquals(expected, shuffled.stream().sorted((a, b) -> JavaVersion.fromText(a).compareTo(JavaVersion.fromText(b))).collect(Collectors.toList()));
+    }
+
+    @Test void trailingZerosDoNotMakeADifferentVersion() {
+        assertEquals(JavaVersion.fromText("17"), JavaVersion.fromText("17.0.0"));
+        assertEquals(JavaVersion.fromText("17").hashCode(), JavaVersion.fromText("17.0.0").hashCode());
+        assertFalse(JavaVersion.fromText("17").equals(JavaVersion.fromText("17-ea")));
+    }
+
+    @Test void matchesAPrefixUnlessExact() {
+        final JavaVersion feature = JavaVersion.fromText("17");
+        assertTrue(feature.matches(JavaVersion.fromText("17.0.2+8"), false));
+        assertFalse(feature.matches(JavaVersion.fromText("17.0.2+8"), true));
+        assertFalse(feature.matches(JavaVersion.fromText("18"), false));
+        // A build given in the pattern has to match
+        assertTrue(JavaVersion.fromText("17.0.2+8").matches(JavaVersion.fromText("17.0.2+8"), true));
+        assertFalse(JavaVersion.fromText("17.0.2+8").matches(JavaVersion.fromText("17.0.2+9"), true));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class PartFileTest {
+    private static final String URL      = "https://cdn.example.com/jdk-17.tar.gz";
+    private static final String ETAG     = "\"abc\"";
+    private static final String MODIFIED = "Tue, 18 Jul 2023 10:00:00 GMT";
+
+    @TempDir Path folder;
+
+
+    @Test void resumesASingleSegmentFromTheSavedOffset() throws IOException {
+        save(1000, ETAG, "", 1, 400);
+        Files.write(partFile().getPart(), new byte[600]);
+        final PartFile partFile = partFile();
+        assertTrue(partFile.load());
+        // The bytes behind the saved offset may be left from a restarted transfer
+        assertEquals(400, partFile.getWritten(0));
+    }
+
+    @Test void resumesASingleSegmentFromThePartFileIfItIsShorter() throws IOException {
+        save(1000, ETAG, "", 1, 800);
+        Files.write(partFile().getPart(), new byte[300]);
+        final PartFile partFile = partFile();
+        assertTrue(partFile.load());
+        assertEquals(300, partFile.getWritten(0));
+    }
+
+    @Test void startsOverIfThePartFileIsMissing() {
+        save(1000, ETAG, "", 1, 800);
+        final PartFile partFile = partFile();
+        assertTrue(partFile.load());
+        assertEquals(0, partFile.getWritten(0));
+        assertFalse(partFile.canResume(URL, 1000, ETAG, null));
+    }
+
+    @Test void keepsTheSavedProgressOfSegments() throws IOException {
+        save(1000, ETAG, "", 4, 100);
+        Files.write(partFile().getPart(), new byte[1000]);
+        final PartFile partFile = partFile();
+        assertTrue(partFile.load());
+        assertEquals(4, partFile.getNoOfSegments());
+        assertEquals(400, partFile.getTotalWritten());
+    }
+
+    @Test void resumesIfUrlSizeAndValidatorMatch() throws IOException {
+        final PartFile partFile = loaded(1000, ETAG, MODIFIED);
+        assertTrue(partFile.canResume(URL, 1000, ETAG, MODIFIED));
+        // The size is unknown if the server did not send one
+        assertTrue(partFile.canResume(URL, -1, ETAG, null));
+    }
+
+    @Test void doesNotResumeIfTheSizeChanged() throws IOException {
+        assertFalse(loaded(1000, ETAG, MODIFIED).canResume(URL, 1001, ETAG, MODIFIED));
+    }
+
+    @Test void doesNotResumeIfTheUrlChanged() throws IOException {
+        assertFalse(loaded(1000, ETAG, MODIFIED).canResume(URL + "?v=2", 1000, ETAG, MODIFIED));
+    }
+
+    @Test void doesNotResumeIfTheEtagChanged() throws IOException {
+        assertFalse(loaded(1000, ETAG, MODIFIED).canResume(URL, 1000, "\"def\"", MODIFIED));
+    }
+
+    @Test void doesNotResumeIfLastModifiedChanged() throws IOException {
+        assertFalse(loaded(1000, "", MODIFIED).canResume(URL, 1000, null, "Wed, 19 Jul 2023 10:00:00 GMT"));
+        assertTrue(loaded(1000, "", MODIFIED).canResume(URL, 1000, null, MODIFIED));
+    }
+
+    @Test void doesNotResumeWithoutAValidator() throws IOException {
+        // Nothing tells if the remote file is still the same
+        assertFalse(loaded(1000, "", "").canResume(URL, 1000, null, null));
+        assertFalse(loaded(1000, "", "").canResume(URL, 1000, ETAG, MODIFIED));
+        assertFalse(loaded(1000, ETAG, MODIFIED).canResume(URL, 1000, null, null));
+    }
+
+    @Test void doesNotLoadABrokenSidecar() throws IOException {
+        Files.writeString(partFile().getSidecar(), "segments=2\nsegment.0=0,499,10\n");
+        assertFalse(partFile().load());
+    }
+
+
+    private PartFile partFile() { return new PartFile(folder.resolve("jdk-17.tar.gz")); }
+
+    private PartFile loaded(final long size, final String etag, final String lastModified) throws IOException {
+        save(size, etag, lastModified, 1, 100);
+        Files.write(partFile().getPart(), new byte[100]);
+        final PartFile partFile = partFile();
+        assertTrue(partFile.load());
+        return partFile;
+    }
+
+    // Writes the sidecar like an interrupted download does, every segment with the given progress
+    private void save(final long size, final String etag, final String lastModified, final int noOfSegments, final long writtenPerSegment) {
+        final PartFile partFile = partFile();
+        partFile.init(URL, size, etag, lastModified, noOfSegments);
+        for (int i = 0 ; i < noOfSegments ; i++) { partFile.setWritten(i, writtenPerSegment); }
+        partFile.save();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.discocli.util;
+
+import eu.hansolo.discocli.util.PkgIndex.Dimension;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Compares the queries of the index with the linear filters they replaced
+ * (e.g. the stream filter of -fu that compared the versions without build).
+ */
+class PkgIndexTest {
+    private static final List<Row> ROWS = List.of(new Row("linux",   "x64",     "ga", false, "17.0.1+12"),
+                                                  new Row("linux",   "x64",     "ga", true,  "17.0.1+12"),
+                                                  new Row("linux",   "x64",     "ga", false, "17.0.2+8"),
+                                                  new Row("linux",   "x64",     "ga", false, "17.0.2+9"),
+                                                  new Row("windows", "x64",     "ga", true,  "17.0.2+8"),
+                                                  new Row("linux",   "x64",     "ea", false, "17.0.3-ea+1"),
+                                                  new Row("linux",   "x64",     "ea", true,  "17.0.3-ea+2"),
+                                                  new Row("linux",   "x64",     "ga", false, "17.0.3+7"),
+                                                  new Row("linux",   "aarch64", "ga", false, "17.0.3+7"),
+                                                  new Row("macos",   "aarch64", "ga", true,  "17.0.4+8"),
+                                                  new Row("linux",   "x64",     "ga", false, "17.0.4.1+1"),
+                                                  new Row("linux",   null,      "ga", false, "17.0.10+7"),
+                                                  new Row("windows", "x64",     "ga", false, "17.0.10+7"));
+
+    private record Row(String os, String arc, String releaseStatus, boolean javafxBundled, String version) {
+        private String get(final Dimension dimension) {
+            switch (dimension) {
+                case OPERATING_SYSTEM: return os;
+                case ARCHITECTURE    : return arc;
+                case RELEASE_STATUS  : return releaseStatus;
+                case JAVAFX_BUNDLED  : return Boolean.toString(javafxBundled);
+                default              : return null;
+            }
+        }
+
+        private JavaVersion javaVersion() { return JavaVersion.fromText(version); }
+    }
+
+
+    @Test void newerThanIgnoresTheBuild() {
+        final List<Row> updates = index(ROWS).query().newerThan(JavaVersion.fromText("17.0.2+8")).list();
+        assertTrue(updates.stream().noneMatch(row -> row.version().startsWith("17.0.2")), "17.0.2+9 is no update of 17.0.2+8");
+        assertSameRows(filter(ROWS, null, "17.0.2+8"), updates);
+    }
+
+    @Test void newerThanAnEarlyAccessVersionKeepsItsRelease() {
+        final List<Row> updates = index(ROWS).query().newerThan(JavaVersion.fromText("17.0.3-ea+1")).list();
+        assertTrue(updates.stream().anyMatch(row -> row.version().equals("17.0.3+7")));
+        assertTrue(updates.stream().noneMatch(row -> row.version().startsWith("17.0.3-ea")));
+        assertSameRows(filter(ROWS, null, "17.0.3-ea+1"), updates);
+    }
+
+    @Test void newerThanAReleaseKeepsTheEarlyAccessBuildsOfTheNextVersion() {
+        final List<Row> updates = index(ROWS).query().newerThan(JavaVersion.fromText("17.0.2")).list();
+        assertTrue(updates.stream().anyMatch(row -> row.version().equals("17.0.3-ea+1")));
+        final List<Row> ga = index(ROWS).query().where(Dimension.RELEASE_STATUS, "ga").newerThan(JavaVersion.fromText("17.0.2")).list();
+        assertTrue(ga.stream().noneMatch(row -> "ea".equals(row.releaseStatus())));
+    }
+
+    @Test void javafxBundledIsFilteredLikeTheUpdateFilter() {
+        for (boolean fx : new boolean[] { true, false }) {
+            final List<Row> updates = index(ROWS).query().where(Dimension.JAVAFX_BUNDLED, fx).newerThan(JavaVersion.fromText("17.0.1+12")).list();
+            assertTrue(updates.stream().allMatch(row -> row.javafxBundled() == fx));
+            assertSameRows(filter(ROWS, fx, "17.0.1+12"), updates);
+        }
+    }
+
+    @Test void everyUpdateQueryMatchesTheLinearFilter() {
+        final PkgIndex<Row> index = index(ROWS);
+        for (Row requested : ROWS) {
+            for (Boolean fx : new Boolean[] { null, true, false }) {
+                final PkgIndex<Row>.Query query = index.query();
+                if (null != fx) { query.where(Dimension.JAVAFX_BUNDLED, fx); }
+                assertSameRows(filter(ROWS, fx, requested.version()), query.newerThan(requested.javaVersion()).list());
+            }
+        }
+    }
+
+    @Test void listDescendingReturnsTheLatestFirst() {
+        final PkgIndex<Row> index = index(ROWS);
+        final List<Row>     list  = index.query().where(Dimension.OPERATING_SYSTEM, "linux").list();
+        final List<Row>     desc  = index.query().where(Dimension.OPERATING_SYSTEM, "linux").listDescending();
+        Collections.reverse(desc);
+        assertEquals(list, desc);
+        assertEquals("17.0.10+7", index.query().listDescending().get(0).version());
+    }
+
+    @Test void versionMatchesAllBuildsUnlessABuildIsGiven() {
+        final PkgIndex<Row> index = index(ROWS);
+        assertEquals(2, index.query().where(Dimension.OPERATING_SYSTEM, "linux").version(JavaVersion.fromText("17.0.2"), true).count());
+        assertEquals(1, index.query().version(JavaVersion.fromText("17.0.2+9"), true).count());
+        assertEquals(ROWS.size(), index.query().version(JavaVersion.fromText("17"), false).count());
+        assertEquals(0, index.query().version(JavaVersion.fromText("17"), true).count());
+    }
+
+    @Test void latestKeepsOnlyTheHighestVersion() {
+        final List<Row> latest = index(ROWS).query().where(Dimension.ARCHITECTURE, "x64").latest().list();
+        assertEquals(List.of("17.0.10+7"), latest.stream().map(Row::version).collect(Collectors.toList()));
+    }
+
+    @Test void severalValuesOfADimensionAreAlternatives() {
+        final PkgIndex<Row> index = index(ROWS);
+        assertEquals(index.query().where(Dimension.OPERATING_SYSTEM, "linux").count() + index.query().where(Dimension.OPERATING_SYSTEM, "macos").count(),
+                     index.query().where(Dimension.OPERATING_SYSTEM, "linux", "MacOS").count());
+    }
+
+    @Test void unknownValuesAndMissingDimensionsMatchNothing() {
+        final PkgIndex<Row> index = index(ROWS);
+        assertEquals(0, index.query().where(Dimension.OPERATING_SYSTEM, "aix").count());
+        assertTrue(index.query().where(Dimension.OPERATING_SYSTEM, "aix").newest().isEmpty());
+        assertTrue(index.query().where(Dimension.OPERATING_SYSTEM, "aix").latest().listDescending().isEmpty());
+        // Rows without a value are not found by any value of the dimension
+        assertEquals(ROWS.size() - 1, index.query().where(Dimension.ARCHITECTURE, "x64", "aarch64").count());
+        assertEquals(List.of("aarch64", "x64"), index.getValues(Dimension.ARCHITECTURE));
+        // A dimension without any values filters out everything
+        assertTrue(index.getValues(Dimension.DISTRIBUTION).isEmpty());
+        assertEquals(0, index.query().where(Dimension.DISTRIBUTION, "zulu").count());
+    }
+
+    @Test void anEmptyIndexAnswersEveryQueryWithNothing() {
+        final PkgIndex<Row> index = index(List.of());
+        assertEquals(0, index.size());
+        assertTrue(index.query().newerThan(JavaVersion.fromText("17")).list().isEmpty());
+        assertTrue(index.query().version(JavaVersion.fromText("17"), false).latest().listDescending().isEmpty());
+        assertTrue(index.query().between(JavaVersion.fromText("11"), null).newest().isEmpty());
+    }
+
+
+    private static PkgIndex<Row> index(final List<Row> rows) {
+        // Shuffled, the index has to sort the rows by version itself
+        final List<Row> shuffled = new ArrayList<>(rows);
+        Collections.reverse(shuffled);
+        return new PkgIndex<>(shuffled, Row::get, Row::version);
+    }
+
+    // The -fu filter before the index: same javafx flag and a version (without build) higher than the requested one
+    private static List<Row> filter(final List<Row> rows, final Boolean fx, final String requested) {
+        final JavaVersion withoutBuild = withoutBuild(JavaVersion.fromText(requested));
+        return rows.stream()
+                   .filter(row -> null == fx || row.javafxBundled() == fx)
+                   .filter(row -> withoutBuild(row.javaVersion()).compareTo(withoutBuild) > 0)
+                   .collect(Collectors.toList());
+    }
+
+    // Same rows and the result in ascending version order, rows with the same version may come in any order
+    private static void assertSameRows(final List<Row> expected, final List<Row> actual) {
+        for (int i = 1 ; i < actual.size() ; i++) { assertTrue(actual.get(i - 1).javaVersion().compareTo(actual.get(i).javaVersion()) <= 0, "Not in version order: " + actual); }
+        assertEquals(sorted(expected), sorted(actual));
+    }
+
+    private static List<Row> sorted(final List<Row> rows) {
+        return rows.stream().sorted(Comparator.comparing(Row::javaVersion).thenComparing(Row::toString)).collect(Collectors.toList());
+    }
+
+    private static JavaVersion withoutBuild(final JavaVersion version) { return new JavaVersion(version.numbers(), version.ea(), -1); }
+}